@@ -0,0 +1,64 @@
+package recording.audio.prototype;
+
+/**
+ * One measured case of the benchmark suite. The runner calls run() over and
+ * over on one thread, and measures how often it can do so.
+ *
+ * @author Jafeth
+ */
+public interface BenchmarkCase {
+
+    /**
+     * Gives back the name of the case, which stays the same across releases
+     * so results can be compared.
+     *
+     * @return The name of the case.
+     */
+    String getName();
+
+    /**
+     * Prepares the case before it is measured.
+     *
+     * @throws Exception If the case can not be prepared.
+     */
+    void setUp() throws Exception;
+
+    /**
+     * Runs one operation of the case.
+     *
+     * @throws Exception If the operation fails.
+     */
+    void run() throws Exception;
+
+    /**
+     * Gives back the amount of audio bytes processed since setUp().
+     *
+     * @return The amount of bytes processed.
+     */
+    long getBytesProcessed();
+
+    /**
+     * Gives back the amount of audio bytes per second of the format the case
+     * processes, to express throughput as a multiple of real time.
+     *
+     * @return The byte rate of the audio format.
+     */
+    double getAudioBytesPerSecond();
+
+    /**
+     * Gives back how many times smaller the output of the case is than the
+     * audio data it processed, for cases that compress.
+     *
+     * @return The compression ratio, 0 if the case does not compress.
+     */
+    default double getCompressionRatio() {
+        return 0;
+    }
+
+    /**
+     * Cleans up after the case has been measured.
+     *
+     * @throws Exception If the case can not be cleaned up.
+     */
+    void tearDown() throws Exception;
+}
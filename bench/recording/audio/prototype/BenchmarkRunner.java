@@ -0,0 +1,215 @@
+package recording.audio.prototype;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileReader;
+import java.io.FileWriter;
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Runs the benchmark suite of the recording data path. Every case gets a
+ * few warmup iterations and then a few measured iterations of a fixed time.
+ * The results are printed and written as CSV, so runs of different releases
+ * can be compared, also by this runner itself.
+ *
+ * Usage: BenchmarkRunner [-wi warmup iterations] [-i iterations]
+ * [-t milliseconds per iteration] [-o results.csv] [-compare old.csv]
+ * [regular expression of case names]
+ *
+ * @author Jafeth
+ */
+public class BenchmarkRunner {
+
+    private static final String HEADER = "benchmark,MB/s,MB/s error,realtime,cpu %,ratio";//The header of the results file.
+
+    private int warmupIterations = 2;//The amount of iterations before measuring.
+    private int iterations = 3;//The amount of measured iterations.
+    private long iterationMillis = 100;//The time of one iteration.
+    private File output;//The file the results are written to.
+    private File compareTo;//The results of an earlier run to compare to.
+    private Pattern filter = Pattern.compile(".*");//Selects the cases to run.
+
+    /**
+     * Runs the benchmark suite.
+     *
+     * @param args The options of the run.
+     * @throws Exception If a case fails.
+     */
+    public static void main(String[] args) throws Exception {
+        BenchmarkRunner runner = new BenchmarkRunner();
+        runner.parse(args);
+        runner.run(PipelineBenchmarks.all());
+    }
+
+    /**
+     * Reads the options of the run.
+     *
+     * @param args The options.
+     */
+    private void parse(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            switch (args[i]) {
+                case "-wi":
+                    warmupIterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-i":
+                    iterations = Integer.parseInt(args[++i]);
+                    break;
+                case "-t":
+                    iterationMillis = Long.parseLong(args[++i]);
+                    break;
+                case "-o":
+                    output = new File(args[++i]);
+                    break;
+                case "-compare":
+                    compareTo = new File(args[++i]);
+                    break;
+                default:
+                    filter = Pattern.compile(args[i]);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Runs the selected cases and reports their results.
+     *
+     * @param cases Every case of the suite.
+     * @throws Exception If a case fails.
+     */
+    private void run(List<BenchmarkCase> cases) throws Exception {
+        Map<String, Double> previous = compareTo != null ? readResults(compareTo) : new LinkedHashMap<>();
+        List<String> lines = new ArrayList<>();
+
+        System.out.printf("%-40s %10s %10s %10s %8s %7s%s%n", "benchmark", "MB/s", "error", "realtime", "cpu %", "ratio", previous.isEmpty() ? "" : "   change");
+        for (BenchmarkCase benchmark : cases) {
+            if (!filter.matcher(benchmark.getName()).find()) {
+                continue;
+            }
+
+            double[] result = measure(benchmark);
+            lines.add(String.format("%s,%.3f,%.3f,%.2f,%.2f,%.3f", benchmark.getName(), result[0], result[1], result[2], result[3], result[4]));
+
+            String change = "";
+            Double before = previous.get(benchmark.getName());
+            if (before != null && before > 0) {
+                change = String.format("  %+6.1f%%", (result[0] / before - 1) * 100);
+            }
+            String ratio = result[4] > 0 ? String.format("%.2f", result[4]) : "-";
+            System.out.printf("%-40s %10.1f %10.1f %10.1f %8.2f %7s%s%n", benchmark.getName(), result[0], result[1], result[2], result[3], ratio, change);
+        }
+
+        if (output != null) {
+            writeResults(output, lines);
+        }
+    }
+
+    /**
+     * Measures one case.
+     *
+     * @param benchmark The case to measure.
+     * @return The mean throughput in MB/s, its standard deviation, the mean
+     * multiple of real time, the CPU time of the measuring thread as a
+     * percentage of the wall time and the compression ratio.
+     * @throws Exception If the case fails.
+     */
+    private double[] measure(BenchmarkCase benchmark) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        double[] throughput = new double[iterations];
+        double cpu = 0;
+        double wall = 0;
+
+        benchmark.setUp();
+        try {
+            for (int i = -warmupIterations; i < iterations; i++) {
+                long bytesStart = benchmark.getBytesProcessed();
+                long cpuStart = threads.getCurrentThreadCpuTime();
+                long start = System.nanoTime();
+                long end = start + iterationMillis * 1000000;
+
+                long now;
+                do {
+                    benchmark.run();
+                    now = System.nanoTime();
+                } while (now < end);
+
+                if (i >= 0) {
+                    throughput[i] = (benchmark.getBytesProcessed() - bytesStart) / 1e6 / ((now - start) / 1e9);
+                    cpu += threads.getCurrentThreadCpuTime() - cpuStart;
+                    wall += now - start;
+                }
+            }
+        } finally {
+            benchmark.tearDown();
+        }
+
+        double mean = 0;
+        for (double value : throughput) {
+            mean += value / iterations;
+        }
+        double variance = 0;
+        for (double value : throughput) {
+            variance += (value - mean) * (value - mean) / Math.max(1, iterations - 1);
+        }
+        return new double[]{mean, Math.sqrt(variance), mean * 1e6 / benchmark.getAudioBytesPerSecond(), cpu / wall * 100, benchmark.getCompressionRatio()};
+    }
+
+    /**
+     * Writes the results with a description of the machine they were
+     * measured on.
+     *
+     * @param file The file to write.
+     * @param lines The result lines.
+     * @throws IOException If the file can not be written.
+     */
+    private void writeResults(File file, List<String> lines) throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        try (PrintWriter writer = new PrintWriter(new FileWriter(file))) {
+            writer.println("# date: " + new Date());
+            writer.println("# java: " + System.getProperty("java.vm.name") + " " + System.getProperty("java.version"));
+            writer.println("# os: " + System.getProperty("os.name") + " " + System.getProperty("os.arch") + ", " + Runtime.getRuntime().availableProcessors() + " processors");
+            writer.println("# iterations: " + warmupIterations + " warmup, " + iterations + " x " + iterationMillis + " ms");
+            writer.println(HEADER);
+            for (String line : lines) {
+                writer.println(line);
+            }
+        }
+        System.out.println("Results written to " + file);
+    }
+
+    /**
+     * Reads the throughput of every case from an earlier results file.
+     *
+     * @param file The results file.
+     * @return The throughput in MB/s of every case by name.
+     * @throws IOException If the file can not be read.
+     */
+    private static Map<String, Double> readResults(File file) throws IOException {
+        Map<String, Double> results = new LinkedHashMap<>();
+        try (BufferedReader reader = new BufferedReader(new FileReader(file))) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                if (line.startsWith("#") || line.equals(HEADER)) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                if (fields.length >= 2) {
+                    results.put(fields[0], Double.parseDouble(fields[1]));
+                }
+            }
+        }
+        return results;
+    }
+}
@@ -0,0 +1,350 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.util.ArrayDeque;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Measures how often the line overflows and how late the audio is read with
+ * every buffer profile, for a low, a common and a heavy format. The rest of
+ * the program is idle, keeps every core busy with twice as many threads, or
+ * churns through a large heap so the garbage collector stops the capturing
+ * thread now and then, which is what makes a Java recorder miss its line
+ * most. The line is simulated by a clock: like a sound card, it hands over
+ * a quarter of its buffer at a time and throws away what does not fit. The
+ * latency of a read is the age of its oldest sample, from the moment the
+ * sample was taken to the moment the read gave it back.
+ *
+ * Usage: BufferProfileBenchmark [seconds per run] [directory]
+ *
+ * @author Jafeth
+ */
+public class BufferProfileBenchmark {
+
+    private static final int PERIODS_PER_BUFFER = 4;//The amount of parts the simulated line hands its buffer over in.
+    private static final int GARBAGE_OBJECTS = 400 * 1024;//The amount of objects of a kilobyte the garbage thread keeps alive.
+    private static final String[] LOADS = {"idle", "busy cores", "garbage"};//What the rest of the program does during a run.
+
+    private static volatile long busyResult;//Keeps the work of the busy threads from being left out by the compiler.
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of seconds recorded per run and the directory
+     * of the file.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 10;
+        File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        File file = new File(directory, "benchmark-buffers.wav");
+        int cores = Runtime.getRuntime().availableProcessors();
+
+        AudioFormat[] formats = {new AudioFormat(8000, 16, 1, true, false), new AudioFormat(48000, 16, 2, true, false),
+            new AudioFormat(192000, 24, 6, true, false)};
+        System.out.println("cores: " + cores);
+        System.out.println("format,load,profile,block bytes,line bytes at start,line bytes at end,reads/s,line overflows,"
+                + "found full,frames lost reopening,overflows/min,% audio lost,latency p50 ms,p99 ms,max ms");
+        for (String load : LOADS) {
+            for (AudioFormat format : formats) {
+                for (BufferProfile profile : BufferProfile.values()) {
+                    run(format, BufferSettings.of(profile), load, seconds, file);
+                }
+            }
+        }
+        file.delete();
+    }
+
+    /**
+     * Records from a simulated line for a while and prints what happened.
+     *
+     * @param format The audio format.
+     * @param settings How the line is buffered.
+     * @param load What the rest of the program does.
+     * @param seconds The length of the recording.
+     * @param file The file of the recording.
+     * @throws Exception If the recording fails.
+     */
+    private static void run(AudioFormat format, BufferSettings settings, String load, int seconds, File file) throws Exception {
+        AtomicBoolean busy = new AtomicBoolean(true);
+        int cores = Runtime.getRuntime().availableProcessors();
+        int loadThreads = load.equals("busy cores") ? cores * 2 : load.equals("garbage") ? 1 : 0;
+        for (int i = 0; i < loadThreads; i++) {
+            Thread thread = new Thread(load.equals("garbage") ? () -> churn(busy) : () -> spin(busy));
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        SimulatedLine line = new SimulatedLine();
+        RecordingSession session = new RecordingSession(line, format, file, OutputMode.Stream);
+        session.setBufferSettings(settings);
+        session.open();
+        int startSize = session.getLineBufferSize();
+        Thread writer = new Thread(() -> {
+            try {
+                session.writeAll();
+            } catch (Exception ex) {
+                ex.printStackTrace();
+            }
+        });
+        writer.start();
+        Thread capture = new Thread(() -> {
+            try {
+                while (session.captureBlock()) {
+                    //Keeps capturing until the line is stopped.
+                }
+            } finally {
+                session.endCapture();
+            }
+        });
+        capture.setPriority(Thread.MAX_PRIORITY);
+        capture.start();
+
+        Thread.sleep(seconds * 1000L);
+        session.stop();
+        capture.join();
+        writer.join();
+        busy.set(false);
+
+        LogHistogram latency = line.getLatencyNanos();
+        double produced = line.getBytesProduced();
+        System.out.printf("%s,%s,%s,%d,%d,%d,%.0f,%d,%d,%d,%.1f,%.3f,%.2f,%.2f,%.2f%n", PipelineBenchmarks.describe(format), load,
+                settings.getProfile(), session.getBlockSize(), startSize, session.getLineBufferSize(), line.getReads() / (double) seconds, line.getOverflows(),
+                session.getLineOverruns(), session.getReopenGapFrames(), line.getOverflows() * 60.0 / seconds, 100 * line.getBytesLost() / Math.max(1, produced),
+                latency.getValueAtPercentile(50) / 1e6, latency.getValueAtPercentile(99) / 1e6, latency.getMax() / 1e6);
+    }
+
+    /**
+     * Keeps a core busy until told to stop.
+     *
+     * @param busy Tells whether to go on.
+     */
+    private static void spin(AtomicBoolean busy) {
+        long x = 1;
+        while (busy.get()) {
+            x = x * 6364136223846793005L + 1442695040888963407L;
+        }
+        busyResult = x;
+    }
+
+    /**
+     * Keeps a large heap alive and replaces parts of it at random, so the
+     * garbage collector has to go through all of it now and then, until told
+     * to stop.
+     *
+     * @param busy Tells whether to go on.
+     */
+    private static void churn(AtomicBoolean busy) {
+        byte[][] kept = new byte[GARBAGE_OBJECTS][];
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        while (busy.get()) {
+            kept[random.nextInt(kept.length)] = new byte[1024];
+        }
+    }
+
+    /**
+     * A line that fills by the clock. Every period a quarter of the buffer
+     * comes in, and what does not fit in the buffer is lost. When the line
+     * is opened again, what it held and what came in while it was closed is
+     * lost as well.
+     */
+    private static class SimulatedLine implements CaptureSource {
+
+        private final LogHistogram latencyNanos = new LogHistogram();//The age of the oldest sample of every read.
+        private final ArrayDeque<long[]> pieces = new ArrayDeque<>();//The parts of the stream in the buffer, as the position they started at and their length.
+        private AudioFormat format;//The audio format.
+        private double bytesPerNano;//The amount of bytes that comes in per nanosecond.
+        private int bufferSize;//The size of the buffer.
+        private int periodSize;//The amount of bytes that comes in at once.
+        private long periodNanos;//The time between two periods.
+        private long startNanos;//The moment the line was started.
+        private long periods;//The amount of periods that have come in since the line was started.
+        private long streamStart;//The position in the stream at which the line was started.
+        private long produced;//The amount of bytes that has come in, lost ones included.
+        private int fill;//The amount of bytes in the buffer.
+        private long lost;//The amount of bytes that did not fit.
+        private long overflows;//The amount of times the line overflowed, however many periods were lost each time.
+        private boolean overflowing;//Tells whether a period has been lost since the last read.
+        private long reads;//The amount of reads.
+        private boolean started;//Tells whether the line is started.
+        private boolean open;//Tells whether the line is open.
+
+        @Override
+        public boolean isFormatSupported(AudioFormat format) {
+            return true;
+        }
+
+        @Override
+        public void open(AudioFormat format) throws LineUnavailableException {
+            open(format, 0);
+        }
+
+        @Override
+        public synchronized void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+            this.format = format;
+            int frameSize = format.getFrameSize();
+            this.bufferSize = bufferSize > 0 ? bufferSize : (int) (format.getFrameRate() / 2) * frameSize;
+            periodSize = Math.max(frameSize, this.bufferSize / PERIODS_PER_BUFFER / frameSize * frameSize);
+            bytesPerNano = format.getFrameRate() * frameSize / 1e9;
+            periodNanos = (long) (periodSize / bytesPerNano);
+            lost += fill;
+            pieces.clear();
+            fill = 0;
+            open = true;
+        }
+
+        @Override
+        public synchronized void start() {
+            //A line opened again goes on where the stream was, the time in between is lost.
+            long now = System.nanoTime();
+            if (startNanos != 0) {
+                long gap = Math.max(0, streamStart + (long) ((now - startNanos) * bytesPerNano) - produced);
+                lost += gap;
+                produced += gap;
+                streamStart = produced;
+            }
+            startNanos = now;
+            periods = 0;
+            started = true;
+        }
+
+        /**
+         * Lets the periods come in that are due.
+         */
+        private void advance() {
+            if (!started) {
+                return;
+            }
+            long due = (System.nanoTime() - startNanos) / periodNanos;
+            while (periods < due) {
+                periods++;
+                int fits = Math.min(periodSize, bufferSize - fill);
+                if (fits > 0) {
+                    pieces.add(new long[]{produced, fits});
+                    fill += fits;
+                }
+                if (fits < periodSize) {
+                    if (!overflowing) {
+                        overflows++;
+                        overflowing = true;
+                    }
+                    lost += periodSize - fits;
+                }
+                produced += periodSize;
+            }
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int done = 0;
+            long oldest = -1;
+            while (done < length) {
+                synchronized (this) {
+                    if (!open) {
+                        return done > 0 ? done : -1;
+                    }
+                    advance();
+                    if (fill > 0) {
+                        overflowing = false;
+                    }
+                    while (done < length && fill > 0) {
+                        long[] piece = pieces.peek();
+                        if (oldest < 0) {
+                            oldest = piece[0];
+                        }
+                        int chunk = (int) Math.min(length - done, piece[1]);
+                        piece[0] += chunk;
+                        piece[1] -= chunk;
+                        if (piece[1] == 0) {
+                            pieces.poll();
+                        }
+                        fill -= chunk;
+                        done += chunk;
+                    }
+                    if (done < length && !started) {
+                        return done > 0 ? done : -1;
+                    }
+                }
+                if (done < length) {
+                    sleepUntilNextPeriod();
+                }
+            }
+            synchronized (this) {
+                //The age counts from the moment the sample was taken, so waiting for the period to end is part of it.
+                long taken = startNanos + (long) ((oldest - streamStart) / bytesPerNano);
+                latencyNanos.record(Math.max(0, System.nanoTime() - taken));
+                reads++;
+            }
+            return done;
+        }
+
+        /**
+         * Sleeps until the next period is due.
+         */
+        private void sleepUntilNextPeriod() {
+            long wait;
+            synchronized (this) {
+                wait = startNanos + (periods + 1) * periodNanos - System.nanoTime();
+            }
+            if (wait > 0) {
+                LockSupport.parkNanos(wait);
+            }
+        }
+
+        @Override
+        public synchronized int available() {
+            advance();
+            return fill;
+        }
+
+        @Override
+        public synchronized long getLongFramePosition() {
+            return produced / format.getFrameSize();
+        }
+
+        @Override
+        public synchronized int getBufferSize() {
+            return bufferSize;
+        }
+
+        @Override
+        public synchronized AudioFormat getFormat() {
+            return open ? format : null;
+        }
+
+        @Override
+        public synchronized void stop() {
+            advance();
+            started = false;
+        }
+
+        @Override
+        public synchronized void close() {
+            open = false;
+        }
+
+        synchronized LogHistogram getLatencyNanos() {
+            return latencyNanos;
+        }
+
+        synchronized long getBytesProduced() {
+            return produced;
+        }
+
+        synchronized long getBytesLost() {
+            return lost;
+        }
+
+        synchronized long getOverflows() {
+            return overflows;
+        }
+
+        synchronized long getReads() {
+            return reads;
+        }
+    }
+}
@@ -0,0 +1,435 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Measures how well a capture group lines up devices whose clocks drift.
+ * Every simulated device takes the same signal at its own rate, a few
+ * parts per million off, and starts a few milliseconds after the others,
+ * like separate sound cards that hear the same sound. As every device took
+ * the same signal, every track of the file should be the same as the
+ * reference. The offset of every track is found by cross-correlation near
+ * the start, in the middle and near the end, and the difference with the
+ * reference is given as a signal-to-noise ratio. Then the processor time of
+ * lining up and resampling is measured for more and more devices, leaving
+ * out the capture threads, as they spend their time making the signal.
+ *
+ * Usage: CaptureGroupBenchmark [seconds per run] [directory]
+ *
+ * @author Jafeth
+ */
+public class CaptureGroupBenchmark {
+
+    private static final double[] DRIFTS = {0, 80, -50, 200};//The drift of every device in ppm, the reference first.
+    private static final double[] DELAYS = {0, 3.1, 7.7, 1.3};//How much later every device starts, in milliseconds.
+    private static final int TONES = 48;//The amount of sine waves the signal is made of.
+    private static final long EPOCH = System.nanoTime();//The moment the signal starts at.
+    private static final double[] FREQUENCIES = new double[TONES];//The frequencies of the sine waves in Hz.
+    private static final double[] PHASES = new double[TONES];//The phases of the sine waves.
+    private static final double AMPLITUDE = 0.02;//The amplitude of every sine wave.
+
+    static {
+        //Random frequencies spread evenly over the band make a signal close to noise, so the cross-correlation has one clear peak.
+        Random random = new Random(25);
+        for (int i = 0; i < TONES; i++) {
+            FREQUENCIES[i] = 100 + 13900 * random.nextDouble();
+            PHASES[i] = 2 * Math.PI * random.nextDouble();
+        }
+    }
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of seconds recorded per run and the directory
+     * of the file.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 30;
+        File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        File file = new File(directory, "benchmark-group.wav");
+        System.out.println("cores: " + Runtime.getRuntime().availableProcessors());
+
+        System.out.println("format,compensated,device,drift ppm,measured ppm,start ms,measured start ms,"
+                + "offset start samples,middle,end,SNR start dB,middle,end");
+        AudioFormat[] formats = {new AudioFormat(48000, 24, 1, true, false), new AudioFormat(48000, 16, 1, true, false)};
+        for (AudioFormat format : formats) {
+            for (boolean compensated : new boolean[]{true, false}) {
+                align(format, compensated, seconds, file);
+            }
+        }
+
+        System.out.println();
+        System.out.println("format,devices,processor time % of one core");
+        AudioFormat stereo = new AudioFormat(48000, 24, 2, true, false);
+        for (int devices : new int[]{1, 2, 4, 8}) {
+            System.out.printf("%s,%d,%.2f%n", PipelineBenchmarks.describe(stereo), devices, load(stereo, devices, Math.max(5, seconds / 3), file));
+        }
+        file.delete();
+    }
+
+    /**
+     * Records the simulated devices and prints how well they are lined up.
+     *
+     * @param format The audio format of every device.
+     * @param compensated Tells whether the drift is followed.
+     * @param seconds The length of the recording.
+     * @param file The file of the recording.
+     * @throws Exception If the recording fails.
+     */
+    private static void align(AudioFormat format, boolean compensated, int seconds, File file) throws Exception {
+        List<CaptureSource> sources = new ArrayList<>();
+        for (int i = 0; i < DRIFTS.length; i++) {
+            sources.add(new DriftingSource(DRIFTS[i], DELAYS[i]));
+        }
+        CaptureGroup group = new CaptureGroup(sources, format, file, OutputMode.Stream);
+        group.setDriftCompensation(compensated);
+        group.start();
+        Thread.sleep(seconds * 1000L);
+        group.stop();
+        group.awaitFinished();
+
+        double[][] tracks = readTracks(file);
+        int rate = (int) format.getSampleRate();
+        int window = rate / 5;
+        int[] starts = {rate / 5, (tracks[0].length - window) / 2, tracks[0].length - window - rate / 5};
+        for (int i = 1; i < tracks.length; i++) {
+            StringBuilder offsets = new StringBuilder();
+            StringBuilder ratios = new StringBuilder();
+            for (int start : starts) {
+                offsets.append(String.format(",%.3f", offset(tracks[0], tracks[i], start, window, rate / 50)));
+                ratios.append(String.format(",%.1f", snr(tracks[0], tracks[i], start, window)));
+            }
+            System.out.printf("%s,%s,%d,%.0f,%.2f,%.1f,%.3f%s%s%n", PipelineBenchmarks.describe(format), compensated, i, DRIFTS[i],
+                    group.getDriftPpm(i), DELAYS[i], -group.getStartOffsetMillis(i), offsets, ratios);
+        }
+    }
+
+    /**
+     * Records a number of simulated devices and measures the processor time
+     * of the aligner and resampling threads.
+     *
+     * @param format The audio format of every device.
+     * @param devices The amount of devices.
+     * @param seconds The length of the recording.
+     * @param file The file of the recording.
+     * @return The processor time as a part of the time recorded, in percent
+     * of one core.
+     * @throws Exception If the recording fails.
+     */
+    private static double load(AudioFormat format, int devices, int seconds, File file) throws Exception {
+        List<CaptureSource> sources = new ArrayList<>();
+        for (int i = 0; i < devices; i++) {
+            sources.add(new DriftingSource(DRIFTS[i % DRIFTS.length], DELAYS[i % DELAYS.length]));
+        }
+        CaptureGroup group = new CaptureGroup(sources, format, file, OutputMode.Stream);
+        group.start();
+        long start = System.nanoTime();
+        long before = groupCpuNanos();
+        Thread.sleep(seconds * 1000L);
+        long cpu = groupCpuNanos() - before;
+        long elapsed = System.nanoTime() - start;
+        group.stop();
+        group.awaitFinished();
+        return 100.0 * cpu / elapsed;
+    }
+
+    /**
+     * Gives back the processor time used so far by the threads that line up
+     * and resample capture groups.
+     *
+     * @return The processor time in nanoseconds.
+     */
+    private static long groupCpuNanos() {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        long total = 0;
+        for (Thread thread : Thread.getAllStackTraces().keySet()) {
+            if (thread.getName().startsWith("capture-group-aligner") || thread.getName().startsWith("capture-group-resampler")) {
+                total += Math.max(0, threads.getThreadCpuTime(thread.getId()));
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Reads every channel of a WAV file.
+     *
+     * @param file The file.
+     * @return The samples of every channel, between -1 and 1.
+     * @throws Exception If the file can not be read.
+     */
+    private static double[][] readTracks(File file) throws Exception {
+        try (AudioInputStream stream = AudioSystem.getAudioInputStream(file)) {
+            AudioFormat format = stream.getFormat();
+            int channels = format.getChannels();
+            int bytesPerSample = format.getFrameSize() / channels;
+            int frames = (int) stream.getFrameLength();
+            byte[] data = new byte[frames * format.getFrameSize()];
+            int done = 0;
+            while (done < data.length) {
+                int read = stream.read(data, done, data.length - done);
+                if (read < 0) {
+                    break;
+                }
+                done += read;
+            }
+            double fullScale = 1L << (format.getSampleSizeInBits() - 1);
+            double[][] tracks = new double[channels][frames];
+            int position = 0;
+            for (int j = 0; j < frames; j++) {
+                for (int c = 0; c < channels; c++, position += bytesPerSample) {
+                    int value = data[position + bytesPerSample - 1];
+                    for (int k = bytesPerSample - 2; k >= 0; k--) {
+                        value = value << 8 | (data[position + k] & 0xFF);
+                    }
+                    tracks[c][j] = value / fullScale;
+                }
+            }
+            return tracks;
+        }
+    }
+
+    /**
+     * Finds how many samples later a track has the same audio as the
+     * reference, by cross-correlation and then to a fraction of a sample from
+     * the slope of the signal.
+     *
+     * @param reference The samples of the reference.
+     * @param track The samples of the track.
+     * @param start The first sample of the part that is compared.
+     * @param length The amount of samples compared.
+     * @param reach The largest offset looked for.
+     * @return The offset in samples, positive if the track is late.
+     */
+    private static double offset(double[] reference, double[] track, int start, int length, int reach) {
+        int best = 0;
+        double bestSum = Double.NEGATIVE_INFINITY;
+        for (int lag = -reach; lag <= reach; lag++) {
+            double sum = 0;
+            for (int n = start; n < start + length; n++) {
+                int j = n + lag;
+                if (j >= 0 && j < track.length) {
+                    sum += reference[n] * track[j];
+                }
+            }
+            if (sum > bestSum) {
+                bestSum = sum;
+                best = lag;
+            }
+        }
+
+        double dot = 0;
+        double slopes = 0;
+        for (int n = start; n < start + length; n++) {
+            int j = n + best;
+            if (j > 0 && j + 1 < track.length) {
+                double slope = (track[j + 1] - track[j - 1]) / 2;
+                dot += (reference[n] - track[j]) * slope;
+                slopes += slope * slope;
+            }
+        }
+        return best + (slopes > 0 ? dot / slopes : 0);
+    }
+
+    /**
+     * Gives back how much louder the reference is than its difference with
+     * a track, sample by sample.
+     *
+     * @param reference The samples of the reference.
+     * @param track The samples of the track.
+     * @param start The first sample of the part that is compared.
+     * @param length The amount of samples compared.
+     * @return The ratio in dB.
+     */
+    private static double snr(double[] reference, double[] track, int start, int length) {
+        double signal = 0;
+        double noise = 0;
+        for (int n = start; n < start + length; n++) {
+            signal += reference[n] * reference[n];
+            noise += (track[n] - reference[n]) * (track[n] - reference[n]);
+        }
+        return 10 * Math.log10(signal / Math.max(noise, 1e-30));
+    }
+
+    /**
+     * A device with a clock of its own. It takes the signal at its own rate,
+     * which is a number of parts per million off the nominal rate, from a
+     * moment a bit after it was started. Frames that do not fit in its
+     * buffer are lost, as on a sound card.
+     */
+    private static class DriftingSource implements CaptureSource {
+
+        private final double driftPpm;//How much the clock of the device is off, in parts per million.
+        private final long delayNanos;//How long after being started the device takes its first frame.
+        private AudioFormat format;//The audio format.
+        private final double[] real = new double[TONES];//The cosine of the phase of every sine wave at the next frame.
+        private final double[] imaginary = new double[TONES];//The sine of the phase of every sine wave at the next frame.
+        private final double[] turnCos = new double[TONES];//The cosine of the angle every sine wave turns from one frame to the next.
+        private final double[] turnSin = new double[TONES];//The sine of the angle every sine wave turns from one frame to the next.
+        private double rate;//The real rate of the device in frames per second.
+        private int frameSize;//The size of one frame in bytes.
+        private int bufferFrames;//The amount of frames the buffer holds.
+        private long startNanos;//The moment the first frame is taken.
+        private long stopNanos = Long.MAX_VALUE;//The moment the device was stopped.
+        private long readFrames;//The amount of frames read or lost.
+        private volatile boolean started;//Tells whether the device was started.
+
+        /**
+         * Constructor for the DriftingSource class.
+         *
+         * @param driftPpm How much the clock of the device is off, in parts
+         * per million.
+         * @param delayMillis How long after being started the device takes
+         * its first frame.
+         */
+        DriftingSource(double driftPpm, double delayMillis) {
+            this.driftPpm = driftPpm;
+            this.delayNanos = (long) (delayMillis * 1e6);
+        }
+
+        @Override
+        public boolean isFormatSupported(AudioFormat format) {
+            return true;
+        }
+
+        @Override
+        public void open(AudioFormat format) throws LineUnavailableException {
+            open(format, 0);
+        }
+
+        @Override
+        public synchronized void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+            this.format = format;
+            frameSize = format.getFrameSize();
+            rate = format.getSampleRate() * (1 + driftPpm * 1e-6);
+            for (int i = 0; i < TONES; i++) {
+                turnCos[i] = Math.cos(2 * Math.PI * FREQUENCIES[i] / rate);
+                turnSin[i] = Math.sin(2 * Math.PI * FREQUENCIES[i] / rate);
+            }
+            bufferFrames = bufferSize > 0 ? bufferSize / frameSize : (int) format.getSampleRate() / 2;
+        }
+
+        @Override
+        public synchronized void start() {
+            startNanos = System.nanoTime() + delayNanos;
+            started = true;
+        }
+
+        /**
+         * Gives back the amount of frames the device has taken so far.
+         *
+         * @return The amount of frames.
+         */
+        private synchronized long captured() {
+            long now = Math.min(System.nanoTime(), stopNanos);
+            return Math.max(0, (long) Math.floor((now - startNanos) * rate / 1e9));
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            int frames = length / frameSize;
+            while (!started) {
+                LockSupport.parkNanos(1000000);
+            }
+            while (true) {
+                long captured = captured();
+                synchronized (this) {
+                    //Frames that did not fit in the buffer are gone.
+                    readFrames = Math.max(readFrames, captured - bufferFrames);
+                    long ready = captured - readFrames;
+                    boolean ended = stopNanos != Long.MAX_VALUE;
+                    if (ready >= frames || ended) {
+                        int count = (int) Math.min(frames, ready);
+                        if (count <= 0) {
+                            return -1;
+                        }
+                        fill(buffer, offset, readFrames, count);
+                        readFrames += count;
+                        return count * frameSize;
+                    }
+                }
+                long due = startNanos + (long) Math.ceil((readFrames + frames) / rate * 1e9);
+                LockSupport.parkNanos(Math.max(100000, due - System.nanoTime()));
+            }
+        }
+
+        /**
+         * Takes the signal for a number of frames. Every sine wave is turned
+         * on by a fixed angle from one frame to the next, starting from its
+         * exact phase at the first frame.
+         *
+         * @param buffer The buffer the frames are put in.
+         * @param offset The offset in the buffer.
+         * @param first The number of the first frame.
+         * @param count The amount of frames.
+         */
+        private void fill(byte[] buffer, int offset, long first, int count) {
+            int bytesPerSample = frameSize / format.getChannels();
+            double fullScale = 1L << (format.getSampleSizeInBits() - 1);
+            double begin = (startNanos - EPOCH) / 1e9 + first / rate;
+            for (int i = 0; i < TONES; i++) {
+                double phase = 2 * Math.PI * FREQUENCIES[i] * begin + PHASES[i];
+                real[i] = Math.cos(phase);
+                imaginary[i] = Math.sin(phase);
+            }
+            int position = offset;
+            for (int j = 0; j < count; j++) {
+                double sum = 0;
+                for (int i = 0; i < TONES; i++) {
+                    sum += imaginary[i];
+                    double re = real[i];
+                    real[i] = re * turnCos[i] - imaginary[i] * turnSin[i];
+                    imaginary[i] = re * turnSin[i] + imaginary[i] * turnCos[i];
+                }
+                long value = Math.round(sum * AMPLITUDE * fullScale);
+                for (int c = 0; c < format.getChannels(); c++) {
+                    for (int k = 0; k < bytesPerSample; k++) {
+                        buffer[position++] = (byte) (value >> (8 * k));
+                    }
+                }
+            }
+        }
+
+        @Override
+        public synchronized int available() {
+            long ready = Math.min(bufferFrames, captured() - readFrames);
+            return (int) Math.max(0, ready) * frameSize;
+        }
+
+        @Override
+        public long getLongFramePosition() {
+            return captured();
+        }
+
+        @Override
+        public synchronized int getBufferSize() {
+            return bufferFrames * frameSize;
+        }
+
+        @Override
+        public synchronized AudioFormat getFormat() {
+            return format;
+        }
+
+        @Override
+        public synchronized void stop() {
+            if (stopNanos == Long.MAX_VALUE) {
+                stopNanos = System.nanoTime();
+            }
+        }
+
+        @Override
+        public void close() {
+        }
+    }
+}
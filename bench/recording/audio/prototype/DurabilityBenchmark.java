@@ -0,0 +1,89 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Measures what keeping a recording safe on disk costs and how much of it a
+ * crash of the machine could lose, for every durability policy. Writes
+ * blocks of noise as fast as the disk takes them. The loss window is the
+ * largest amount of audio that was written but not yet synced at any moment,
+ * in milliseconds of audio. Without syncing that is everything the operating
+ * system has not written back yet, which it does on its own schedule.
+ *
+ * Usage: DurabilityBenchmark [seconds of audio] [directory]
+ *
+ * @author Jafeth
+ */
+public class DurabilityBenchmark {
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of seconds written and the directory of the
+     * file.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 120;
+        File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        File file = new File(directory, "benchmark-durable.wav");
+        AudioFormat format = new AudioFormat(48000, 24, 2, true, false);
+
+        DurabilitySettings[] settings = {
+            DurabilitySettings.none(),
+            DurabilitySettings.groupCommit(1000, 16L * 1024 * 1024),
+            DurabilitySettings.groupCommit(100, 1024 * 1024),
+            DurabilitySettings.perBlock()
+        };
+        System.out.println("policy,audio s,MB/s,x real time,write p50 us,write p99 us,write max us,loss window max ms,commits");
+        for (DurabilitySettings durability : settings) {
+            //Warms the code up, so the first measured run is not slower.
+            write(file, format, durability, 5);
+            long[] result = write(file, format, durability, seconds);
+            double wallSeconds = result[0] / 1e9;
+            double byteRate = PipelineBenchmarks.byteRate(format);
+            System.out.printf("\"%s\",%d,%.1f,%.0f,%.1f,%.1f,%.1f,%s,%d%n", durability, seconds, seconds * byteRate / wallSeconds / 1e6, seconds / wallSeconds,
+                    result[1] / 1e3, result[2] / 1e3, result[3] / 1e3,
+                    durability.getPolicy() == DurabilityPolicy.None ? "unbounded" : String.format("%.0f", result[4] * 1000 / byteRate), result[5]);
+        }
+        file.delete();
+    }
+
+    /**
+     * Writes the given amount of audio with the given durability.
+     *
+     * @param file The file to write.
+     * @param format The audio format.
+     * @param durability How the file is kept safe on disk.
+     * @param seconds The amount of seconds of audio.
+     * @return The wall time, the 50th and 99th percentile and the longest
+     * write time, the largest amount of unsynced bytes and the amount of
+     * commits.
+     * @throws Exception If the file can not be written.
+     */
+    private static long[] write(File file, AudioFormat format, DurabilitySettings durability, int seconds) throws Exception {
+        byte[] block = PipelineBenchmarks.noiseBlock(format);
+        int blocks = (int) (seconds * PipelineBenchmarks.byteRate(format) / block.length);
+        LogHistogram writeNanos = new LogHistogram();
+        long atRisk = 0;
+        long commits = 0;
+        long lastCommitted = 0;
+
+        long start = System.nanoTime();
+        WavFileWriter writer = new WavFileWriter(file, format, durability);
+        for (int i = 0; i < blocks; i++) {
+            long before = System.nanoTime();
+            writer.write(block, 0, block.length);
+            writeNanos.record(System.nanoTime() - before);
+            if (writer.getCommittedBytes() != lastCommitted) {
+                lastCommitted = writer.getCommittedBytes();
+                commits++;
+            }
+            atRisk = Math.max(atRisk, writer.getBytesWritten() - writer.getCommittedBytes());
+        }
+        writer.finish();
+        long wall = System.nanoTime() - start;
+        return new long[]{wall, writeNanos.getValueAtPercentile(50), writeNanos.getValueAtPercentile(99), writeNanos.getMax(), atRisk, commits};
+    }
+}
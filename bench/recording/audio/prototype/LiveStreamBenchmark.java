@@ -0,0 +1,133 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Measures what publishing a recording in a live stream costs the writing
+ * side and how long it takes a block to reach the subscribers, for a growing
+ * amount of subscribers. Every block carries the moment it was written, so
+ * the subscribers can tell its age. Blocks are written at ten times real
+ * time. The last row adds a subscriber that is too slow and uses
+ * backpressure, to show the writing side stops waiting for it.
+ *
+ * Usage: LiveStreamBenchmark [blocks] [directory]
+ *
+ * @author Jafeth
+ */
+public class LiveStreamBenchmark {
+
+    private static final AudioFormat FORMAT = new AudioFormat(48000, 16, 2, true, false);//The format of the stream.
+    private static final int BLOCK_SIZE = 960 * 4;//The size of one block, 20 milliseconds.
+    private static final long BLOCK_NANOS = 2000000L;//The time between two written blocks, ten times real time.
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of blocks and the directory of the stream file.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int blocks = args.length > 0 ? Integer.parseInt(args[0]) : 2000;
+        File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        File file = new File(directory, "benchmark-live.pcm");
+
+        System.out.println("subscribers,slow,write p50 us,write p99 us,latency p50 us,latency p99 us,latency max us,dropped bytes,stalls");
+        for (int subscribers : new int[]{0, 1, 4, 8}) {
+            run(file, blocks, subscribers, false);
+        }
+        run(file, blocks, 4, true);
+        file.delete();
+    }
+
+    /**
+     * Writes the blocks with the given subscribers reading and prints one
+     * line of results.
+     *
+     * @param file The stream file.
+     * @param blocks The amount of blocks to write.
+     * @param subscribers The amount of subscribers that keep up.
+     * @param slow Tells whether to add a subscriber that is too slow.
+     * @throws Exception If the run fails.
+     */
+    private static void run(File file, int blocks, int subscribers, boolean slow) throws Exception {
+        //Holds a whole amount of blocks, so every block starts at the start of a view.
+        LiveStreamWriter writer = new LiveStreamWriter(file, FORMAT, 64 * 960 / FORMAT.getFrameRate(), 5);
+        LogHistogram writeNanos = new LogHistogram();
+        LogHistogram latency = new LogHistogram();
+        long[] dropped = new long[1];
+        int readers = subscribers + (slow ? 1 : 0);
+        CountDownLatch subscribed = new CountDownLatch(readers);
+        List<Thread> threads = new ArrayList<>();
+        for (int i = 0; i < readers; i++) {
+            boolean tooSlow = slow && i == subscribers;
+            Thread thread = new Thread(() -> read(file, tooSlow, subscribed, latency, dropped), "live-subscriber");
+            thread.setDaemon(true);
+            thread.start();
+            threads.add(thread);
+        }
+        subscribed.await();
+
+        byte[] block = new byte[BLOCK_SIZE];
+        ByteBuffer stamp = ByteBuffer.wrap(block).order(ByteOrder.LITTLE_ENDIAN);
+        long next = System.nanoTime();
+        for (int i = 0; i < blocks; i++) {
+            long start = System.nanoTime();
+            stamp.putLong(0, start);
+            writer.write(block, 0, block.length);
+            writeNanos.record(System.nanoTime() - start);
+            next += BLOCK_NANOS;
+            LockSupport.parkNanos(next - System.nanoTime());
+        }
+        writer.finish();
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        System.out.printf("%d,%s,%.1f,%.1f,%.1f,%.1f,%.1f,%d,%d%n", subscribers, slow, writeNanos.getValueAtPercentile(50) / 1e3,
+                writeNanos.getValueAtPercentile(99) / 1e3, latency.getValueAtPercentile(50) / 1e3, latency.getValueAtPercentile(99) / 1e3,
+                latency.getMax() / 1e3, dropped[0], writer.getStalls());
+    }
+
+    /**
+     * Reads the stream until it ends, measuring the age of every block the
+     * subscriber keeps up with.
+     *
+     * @param file The stream file.
+     * @param tooSlow Tells whether to read slower than the blocks come in,
+     * using backpressure.
+     * @param subscribed Is counted down once subscribed.
+     * @param latency Is given the age of every block.
+     * @param dropped Is added the amount of bytes dropped.
+     */
+    private static void read(File file, boolean tooSlow, CountDownLatch subscribed, LogHistogram latency, long[] dropped) {
+        try (LiveStreamReader reader = new LiveStreamReader(file, tooSlow ? LiveStreamPolicy.Backpressure : LiveStreamPolicy.Drop)) {
+            subscribed.countDown();
+            while (!reader.isEnded()) {
+                ByteBuffer view = reader.next(BLOCK_SIZE, 100);
+                if (view == null) {
+                    continue;
+                }
+                if (tooSlow) {
+                    LockSupport.parkNanos(BLOCK_NANOS * 4);
+                } else if (reader.getPosition() % BLOCK_SIZE == 0) {
+                    long written = view.order(ByteOrder.LITTLE_ENDIAN).getLong(0);
+                    latency.record(System.nanoTime() - written);
+                }
+                reader.release();
+            }
+            synchronized (dropped) {
+                dropped[0] += reader.getDroppedBytes();
+            }
+        } catch (IOException ex) {
+            throw new IllegalStateException(ex);
+        }
+    }
+}
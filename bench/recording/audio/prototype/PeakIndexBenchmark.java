@@ -0,0 +1,117 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Measures what building the peak index costs the writing side, and how
+ * fast the waveform of a long recording can be drawn from it. The cost is
+ * the processor time of the index alone, in front of a file that throws the
+ * audio away, as a part of one core while recording in real time. The
+ * queries ask for the waveform of a recording of hours at several zooms,
+ * 1920 columns wide.
+ *
+ * Usage: PeakIndexBenchmark [seconds of audio] [hours of the long recording] [directory]
+ *
+ * @author Jafeth
+ */
+public class PeakIndexBenchmark {
+
+    private static final int COLUMNS = 1920;//The width of the drawn waveform.
+    private static final int QUERIES = 200;//The amount of queries per zoom.
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of seconds written per format, the length of
+     * the long recording and the directory of the files.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        double hours = args.length > 1 ? Double.parseDouble(args[1]) : 10;
+        File directory = new File(args.length > 2 ? args[2] : System.getProperty("java.io.tmpdir"));
+        File indexFile = new File(directory, "benchmark-peaks.peaks");
+
+        System.out.println("format,audio s,index cpu ms,ns per sample,% of a core in real time,sidecar bytes,% of audio bytes");
+        AudioFormat[] formats = {new AudioFormat(44100, 16, 2, true, false), new AudioFormat(48000, 24, 2, true, false),
+            new AudioFormat(96000, 24, 6, true, false), new AudioFormat(192000, 32, 2, true, true)};
+        for (AudioFormat format : formats) {
+            //Warms the code up, so the first measured run is not slower.
+            index(format, 30, indexFile);
+            long cpu = index(format, seconds, indexFile);
+            double samples = seconds * format.getFrameRate() * format.getChannels();
+            System.out.printf("%s,%d,%.1f,%.2f,%.3f,%d,%.2f%n", PipelineBenchmarks.describe(format), seconds, cpu / 1e6, cpu / samples,
+                    100.0 * cpu / (seconds * 1e9), indexFile.length(), 100.0 * indexFile.length() / (seconds * PipelineBenchmarks.byteRate(format)));
+        }
+
+        AudioFormat format = new AudioFormat(48000, 16, 2, true, false);
+        int longSeconds = (int) (hours * 3600);
+        long build = index(format, longSeconds, indexFile);
+        System.out.printf("%nlong recording: %s, %.1f h, index built in %.1f s of processor time, sidecar %d bytes%n",
+                PipelineBenchmarks.describe(format), hours, build / 1e9, indexFile.length());
+
+        System.out.println("zoom,frames per column,open us,query p50 us,query max us");
+        try (PeakIndex warm = new PeakIndex(indexFile)) {
+            for (int i = 0; i < QUERIES; i++) {
+                warm.query(0, warm.getFrames(), COLUMNS);
+            }
+        }
+        long frames = (long) longSeconds * (long) format.getFrameRate();
+        for (long span : new long[]{frames, 3600L * 48000, 600L * 48000, 60L * 48000, 48000, COLUMNS * 64L}) {
+            long start = System.nanoTime();
+            PeakIndex index = new PeakIndex(indexFile);
+            long open = System.nanoTime() - start;
+            LogHistogram queryNanos = new LogHistogram();
+            for (int i = 0; i < QUERIES; i++) {
+                long first = (frames - span) * i / QUERIES;
+                long before = System.nanoTime();
+                index.query(first, first + span, COLUMNS);
+                queryNanos.record(System.nanoTime() - before);
+            }
+            index.close();
+            System.out.printf("%.0f s,%d,%.0f,%.1f,%.1f%n", span / format.getFrameRate(), span / COLUMNS, open / 1e3,
+                    queryNanos.getValueAtPercentile(50) / 1e3, queryNanos.getMax() / 1e3);
+        }
+        indexFile.delete();
+    }
+
+    /**
+     * Builds the index of the given amount of noise, in front of a file
+     * that throws the audio away.
+     *
+     * @param format The audio format.
+     * @param seconds The amount of seconds of audio.
+     * @param indexFile The sidecar file.
+     * @return The processor time of the index in nanoseconds.
+     * @throws Exception If the index can not be written.
+     */
+    private static long index(AudioFormat format, int seconds, File indexFile) throws Exception {
+        ThreadMXBean threads = ManagementFactory.getThreadMXBean();
+        byte[] block = PipelineBenchmarks.noiseBlock(format);
+        long blocks = (long) (seconds * PipelineBenchmarks.byteRate(format) / block.length);
+        PeakIndexWriter writer = new PeakIndexWriter(new AudioSink() {
+            @Override
+            public void write(byte[] data, int offset, int length) {
+            }
+
+            @Override
+            public long getBytesWritten() {
+                return 0;
+            }
+
+            @Override
+            public void finish() {
+            }
+        }, format, indexFile);
+
+        long cpu = threads.getCurrentThreadCpuTime();
+        for (long i = 0; i < blocks; i++) {
+            writer.write(block, 0, block.length);
+        }
+        writer.finish();
+        return threads.getCurrentThreadCpuTime() - cpu;
+    }
+}
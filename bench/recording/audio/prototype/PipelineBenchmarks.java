@@ -0,0 +1,655 @@
+package recording.audio.prototype;
+
+import java.io.ByteArrayInputStream;
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * The cases of the benchmark suite, covering the data path of a recording:
+ * writing files in every format the GUI offers, converting samples to the
+ * layout of a WAV file, splitting channels, encoding FLAC, level metering
+ * and recording from start to end.
+ *
+ * @author Jafeth
+ */
+public class PipelineBenchmarks {
+
+    private static final float[] SAMPLE_RATES = {8000, 16000, 32000, 44100, 48000, 96000, 192000};//The sample rates the GUI offers.
+    private static final int[] SAMPLE_SIZES = {8, 16, 20, 24, 32};//The sample sizes the GUI offers.
+    private static final int[] CHANNELS = {1, 2, 4, 6};//The channel counts the GUI offers.
+    private static final int BLOCKS_PER_SECOND = 50;//The amount of blocks the recorder splits one second in.
+    private static final long ROTATE_BYTES = 256L * 1024 * 1024;//The file size at which a written file is started over.
+    private static final long SEGMENT_SECONDS = 10;//The length of one file when writing a series of files.
+    private static final int TAKE_SECONDS = 2;//The length of one recording when whole recordings are measured.
+
+    /**
+     * Gives back every case of the suite.
+     *
+     * @return The cases, in the order they are run.
+     */
+    public static List<BenchmarkCase> all() {
+        File directory = new File(System.getProperty("java.io.tmpdir"));
+        List<BenchmarkCase> cases = new ArrayList<>();
+
+        for (OutputMode mode : OutputMode.values()) {
+            for (float sampleRate : SAMPLE_RATES) {
+                for (int sampleSize : SAMPLE_SIZES) {
+                    for (int channels : CHANNELS) {
+                        cases.add(new WriteCase(new AudioFormat(sampleRate, sampleSize, channels, true, true), mode, directory));
+                    }
+                }
+            }
+        }
+
+        for (int sampleSize : SAMPLE_SIZES) {
+            for (boolean bigEndian : new boolean[]{true, false}) {
+                cases.add(new ConvertCase(new AudioFormat(192000, sampleSize, 6, true, bigEndian)));
+            }
+        }
+
+        //The converter of Java Sound only handles 8 and 16 bit samples on every JDK.
+        for (boolean bigEndian : new boolean[]{true, false}) {
+            cases.add(new JavaSoundConvertCase(new AudioFormat(192000, 16, 6, true, bigEndian)));
+        }
+
+        //Splitting while recording against splitting the interleaved file afterwards, in formats WAV keeps as they are.
+        for (int channels : new int[]{4, 6}) {
+            for (AudioFormat format : new AudioFormat[]{new AudioFormat(48000, 16, channels, true, false), new AudioFormat(48000, 24, channels, true, false), new AudioFormat(192000, 32, channels, true, false)}) {
+                cases.add(new SplitCase(format, false, directory));
+                cases.add(new SplitCase(format, true, directory));
+            }
+        }
+
+        //Noise is the worst case for the encoder, a pure tone about the best.
+        for (Waveform waveform : new Waveform[]{Waveform.Noise, Waveform.Sine}) {
+            cases.add(new FlacCase(new AudioFormat(44100, 16, 2, true, false), waveform, directory));
+            cases.add(new FlacCase(new AudioFormat(48000, 24, 2, true, false), waveform, directory));
+            cases.add(new FlacCase(new AudioFormat(96000, 24, 6, true, false), waveform, directory));
+            cases.add(new FlacCase(new AudioFormat(192000, 24, 6, true, false), waveform, directory));
+            cases.add(new FlacCase(new AudioFormat(192000, 32, 6, true, false), waveform, directory));
+        }
+
+        for (int sampleSize : SAMPLE_SIZES) {
+            cases.add(new MeterCase(new AudioFormat(192000, sampleSize, 6, true, true)));
+        }
+
+        for (OutputMode mode : OutputMode.values()) {
+            cases.add(new EndToEndCase(new AudioFormat(44100, 16, 2, true, true), mode, directory));
+            cases.add(new EndToEndCase(new AudioFormat(48000, 24, 2, true, true), mode, directory));
+            cases.add(new EndToEndCase(new AudioFormat(192000, 32, 6, true, true), mode, directory));
+        }
+        return cases;
+    }
+
+    /**
+     * Gives back a short description of an audio format for case names.
+     *
+     * @param format The audio format.
+     * @return The description.
+     */
+    static String describe(AudioFormat format) {
+        return Math.round(format.getSampleRate()) + "Hz/" + format.getSampleSizeInBits() + "bit/" + format.getChannels() + "ch";
+    }
+
+    /**
+     * Gives back the size of the blocks the recorder captures in.
+     *
+     * @param format The audio format.
+     * @return The block size in bytes.
+     */
+    static int blockSize(AudioFormat format) {
+        return Math.max(1, (int) (format.getFrameRate() / BLOCKS_PER_SECOND)) * format.getFrameSize();
+    }
+
+    /**
+     * Generates one block of noise in the given format.
+     *
+     * @param format The audio format.
+     * @return The block.
+     * @throws LineUnavailableException If the format can not be generated.
+     */
+    static byte[] noiseBlock(AudioFormat format) throws LineUnavailableException {
+        return signalBlock(format, Waveform.Noise);
+    }
+
+    /**
+     * Generates one block of the given waveform in the given format.
+     *
+     * @param format The audio format.
+     * @param waveform The waveform, Sine or Noise.
+     * @return The block.
+     * @throws LineUnavailableException If the format can not be generated.
+     */
+    static byte[] signalBlock(AudioFormat format, Waveform waveform) throws LineUnavailableException {
+        SyntheticCaptureSource source = new SyntheticCaptureSource(waveform, 1000, 0);
+        source.open(format);
+        source.start();
+        byte[] block = new byte[blockSize(format)];
+        source.read(block, 0, block.length);
+        source.close();
+        return block;
+    }
+
+    /**
+     * Gives back the amount of bytes per second of an audio format.
+     *
+     * @param format The audio format.
+     * @return The byte rate.
+     */
+    static double byteRate(AudioFormat format) {
+        return format.getFrameRate() * format.getFrameSize();
+    }
+
+    /**
+     * Creates a file writer for the given output mode.
+     *
+     * @param file The file to write.
+     * @param format The audio format.
+     * @param mode The output mode.
+     * @return The file writer.
+     * @throws java.io.IOException If the file can not be created.
+     */
+    static AudioSink createSink(File file, AudioFormat format, OutputMode mode) throws java.io.IOException {
+        switch (mode) {
+            case Mapped:
+                return new MappedWavFileWriter(file, format);
+            case Segmented:
+                return new SegmentingWavWriter(file.getParentFile(), segmentName(file), format, OutputMode.Stream, SegmentingWavWriter.segmentBytes(format, SEGMENT_SECONDS));
+            case Flac:
+                return new FlacFileWriter(flacFile(file), format);
+            case Split:
+                return new ChannelSplitWriter(file.getParentFile(), segmentName(file), format, OutputMode.Stream);
+            default:
+                return new WavFileWriter(file, format);
+        }
+    }
+
+    /**
+     * Gives back the name a series of files written for the given file gets.
+     *
+     * @param file The file of the recording.
+     * @return The name of the files, without the number and extension.
+     */
+    static String segmentName(File file) {
+        return file.getName().replaceFirst("\\.wav$", "");
+    }
+
+    /**
+     * Gives back the file a FLAC recording of the given file is written to.
+     *
+     * @param file The file of the recording.
+     * @return The FLAC file.
+     */
+    static File flacFile(File file) {
+        return new File(file.getParentFile(), segmentName(file) + ".flac");
+    }
+
+    /**
+     * Deletes the file written for the given output mode.
+     *
+     * @param file The file that was written.
+     * @param format The audio format.
+     * @param mode The output mode.
+     */
+    static void deleteOutput(File file, AudioFormat format, OutputMode mode) {
+        file.delete();
+        flacFile(file).delete();
+        if (mode == OutputMode.Segmented) {
+            for (int number = 1; SegmentingWavWriter.segmentFile(file.getParentFile(), segmentName(file), number).delete(); number++) {
+                //Deletes the files in order until one is missing.
+            }
+        }
+        for (String speaker : Channel.getSpeakerNames(format.getChannels())) {
+            new File(file.getParentFile(), segmentName(file) + "-" + speaker + ".wav").delete();
+        }
+    }
+
+    /**
+     * Writes captured blocks to a WAV file.
+     */
+    static class WriteCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format.
+        private final OutputMode mode;//The way the file is written.
+        private final File file;//The file that is written.
+        private byte[] block;//The block that is written over and over.
+        private AudioSink sink;//The writer of the file.
+        private long bytesProcessed;//The amount of bytes written to earlier files.
+
+        WriteCase(AudioFormat format, OutputMode mode, File directory) {
+            this.format = format;
+            this.mode = mode;
+            this.file = new File(directory, "benchmark-write.wav");
+        }
+
+        @Override
+        public String getName() {
+            return "Write/" + mode + "/" + describe(format);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            block = noiseBlock(format);
+            sink = createSink(file, format, mode);
+            bytesProcessed = 0;
+        }
+
+        @Override
+        public void run() throws Exception {
+            sink.write(block, 0, block.length);
+
+            //Starts the file over, so a long run does not fill the disk.
+            if (sink.getBytesWritten() >= ROTATE_BYTES) {
+                bytesProcessed += sink.getBytesWritten();
+                sink.finish();
+                sink = createSink(file, format, mode);
+            }
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return bytesProcessed + sink.getBytesWritten();
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            sink.finish();
+            deleteOutput(file, format, mode);
+        }
+    }
+
+    /**
+     * Converts captured blocks to the layout of a WAV file, in place in the
+     * buffer of the writer.
+     */
+    static class ConvertCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format.
+        private SampleConverter converter;//The converter.
+        private byte[] block;//The block that is copied in over and over.
+        private ByteBuffer buffer;//The buffer the block is converted in.
+        private long bytesProcessed;//The amount of bytes converted.
+
+        ConvertCase(AudioFormat format) {
+            this.format = format;
+        }
+
+        @Override
+        public String getName() {
+            return "Convert/" + describe(format) + "/" + (format.isBigEndian() ? "big-endian" : "little-endian");
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            block = noiseBlock(format);
+            buffer = ByteBuffer.allocateDirect(block.length);
+            converter = new SampleConverter(format);
+            bytesProcessed = 0;
+        }
+
+        @Override
+        public void run() {
+            //Copies the block in as the writer does, so the case measures the whole conversion stage.
+            buffer.clear();
+            buffer.put(block);
+            converter.convert(buffer, 0, block.length);
+            bytesProcessed += block.length;
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public void tearDown() {
+            block = null;
+            buffer = null;
+        }
+    }
+
+    /**
+     * Converts captured blocks to the layout of a WAV file with the format
+     * converter of Java Sound, as a baseline for the conversion stage.
+     */
+    static class JavaSoundConvertCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format.
+        private AudioFormat targetFormat;//The layout of a WAV file.
+        private byte[] block;//The block that is converted over and over.
+        private byte[] target;//The converted block.
+        private long bytesProcessed;//The amount of bytes converted.
+
+        JavaSoundConvertCase(AudioFormat format) {
+            this.format = format;
+        }
+
+        @Override
+        public String getName() {
+            return "ConvertJavaSound/" + describe(format) + "/" + (format.isBigEndian() ? "big-endian" : "little-endian");
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            block = noiseBlock(format);
+            target = new byte[block.length];
+            targetFormat = new AudioFormat(format.getSampleRate(), format.getSampleSizeInBits(), format.getChannels(), true, false);
+            bytesProcessed = 0;
+        }
+
+        @Override
+        public void run() throws IOException {
+            AudioInputStream captured = new AudioInputStream(new ByteArrayInputStream(block), format, block.length / format.getFrameSize());
+            try (AudioInputStream converted = AudioSystem.getAudioInputStream(targetFormat, captured)) {
+                int read = 0;
+                while (read < target.length) {
+                    int count = converted.read(target, read, target.length - read);
+                    if (count < 0) {
+                        break;
+                    }
+                    read += count;
+                }
+                bytesProcessed += read;
+            }
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public void tearDown() {
+            block = null;
+            target = null;
+        }
+    }
+
+    /**
+     * Records takes of a few seconds into one mono file per channel, either
+     * split while recording or split afterwards by reading back the
+     * interleaved file.
+     */
+    static class SplitCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format, which a WAV file keeps as it is.
+        private final boolean postHoc;//Tells whether the interleaved file is split afterwards.
+        private final File file;//The interleaved file, and the name of the mono files.
+        private byte[] block;//The block that is recorded over and over.
+        private long bytesProcessed;//The amount of bytes recorded.
+
+        SplitCase(AudioFormat format, boolean postHoc, File directory) {
+            this.format = format;
+            this.postHoc = postHoc;
+            this.file = new File(directory, "benchmark-split.wav");
+        }
+
+        @Override
+        public String getName() {
+            return (postHoc ? "SplitAfter/" : "Split/") + describe(format);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            block = noiseBlock(format);
+            bytesProcessed = 0;
+        }
+
+        @Override
+        public void run() throws Exception {
+            int blocks = TAKE_SECONDS * BLOCKS_PER_SECOND;
+            if (postHoc) {
+                AudioSink interleaved = new WavFileWriter(file, format);
+                for (int i = 0; i < blocks; i++) {
+                    interleaved.write(block, 0, block.length);
+                }
+                interleaved.finish();
+
+                //Reads the file back block by block, skipping the header.
+                AudioSink split = new ChannelSplitWriter(file.getParentFile(), segmentName(file), format, OutputMode.Stream);
+                byte[] readBlock = new byte[block.length];
+                try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+                    channel.position(new WavHeader(format).size());
+                    ByteBuffer buffer = ByteBuffer.wrap(readBlock);
+                    for (int i = 0; i < blocks; i++) {
+                        buffer.clear();
+                        while (buffer.hasRemaining() && channel.read(buffer) >= 0) {
+                            //Reads until the block is full.
+                        }
+                        split.write(readBlock, 0, buffer.position());
+                    }
+                }
+                split.finish();
+            } else {
+                AudioSink split = new ChannelSplitWriter(file.getParentFile(), segmentName(file), format, OutputMode.Stream);
+                for (int i = 0; i < blocks; i++) {
+                    split.write(block, 0, block.length);
+                }
+                split.finish();
+            }
+            bytesProcessed += (long) blocks * block.length;
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public void tearDown() {
+            deleteOutput(file, format, OutputMode.Split);
+        }
+    }
+
+    /**
+     * Encodes captured blocks into a FLAC file on every core, measuring how
+     * far the encoder is ahead of real time and how much it compresses.
+     */
+    static class FlacCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format.
+        private final Waveform waveform;//The signal that is encoded.
+        private final File file;//The file that is written.
+        private byte[] block;//The block that is encoded over and over.
+        private FlacFileWriter sink;//The writer of the file.
+        private long bytesProcessed;//The amount of bytes encoded into earlier files.
+        private long encodedBytes;//The size of the earlier files.
+        private double compressionRatio;//The compression ratio over the whole run.
+
+        FlacCase(AudioFormat format, Waveform waveform, File directory) {
+            this.format = format;
+            this.waveform = waveform;
+            this.file = new File(directory, "benchmark-encode.flac");
+        }
+
+        @Override
+        public String getName() {
+            return "Flac/" + describe(format) + "/" + waveform;
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            block = signalBlock(format, waveform);
+            sink = new FlacFileWriter(file, format);
+            bytesProcessed = 0;
+            encodedBytes = 0;
+        }
+
+        @Override
+        public void run() throws Exception {
+            sink.write(block, 0, block.length);
+
+            //Starts the file over, so a long run does not fill the disk.
+            if (sink.getBytesWritten() >= ROTATE_BYTES) {
+                sink.finish();
+                bytesProcessed += sink.getBytesWritten();
+                encodedBytes += sink.getEncodedBytes();
+                sink = new FlacFileWriter(file, format);
+            }
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return bytesProcessed + sink.getBytesWritten();
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public double getCompressionRatio() {
+            return compressionRatio;
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            sink.finish();
+            compressionRatio = (double) (bytesProcessed + sink.getBytesWritten()) / (encodedBytes + sink.getEncodedBytes());
+            file.delete();
+        }
+    }
+
+    /**
+     * Measures the levels of captured blocks.
+     */
+    static class MeterCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format.
+        private LevelMeter meter;//The level meter.
+        private byte[] block;//The block that is measured over and over.
+        private long bytesProcessed;//The amount of bytes measured.
+
+        MeterCase(AudioFormat format) {
+            this.format = format;
+        }
+
+        @Override
+        public String getName() {
+            return "Meter/" + describe(format);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            block = noiseBlock(format);
+            meter = new LevelMeter(format);
+            bytesProcessed = 0;
+        }
+
+        @Override
+        public void run() {
+            meter.process(block, 0, block.length);
+            bytesProcessed += block.length;
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return bytesProcessed;
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public void tearDown() {
+            meter.readPeaks();
+        }
+    }
+
+    /**
+     * Records from an unthrottled synthetic source through the ring buffer
+     * into a file. The measured thread captures, a second thread writes, and
+     * the throughput is what reaches the file.
+     */
+    static class EndToEndCase implements BenchmarkCase {
+
+        private final AudioFormat format;//The audio format.
+        private final OutputMode mode;//The way the file is written.
+        private final File file;//The file that is written.
+        private RecordingSession session;//The recording.
+        private Thread writer;//The thread that writes the file.
+
+        EndToEndCase(AudioFormat format, OutputMode mode, File directory) {
+            this.format = format;
+            this.mode = mode;
+            this.file = new File(directory, "benchmark-record.wav");
+        }
+
+        @Override
+        public String getName() {
+            return "Record/" + mode + "/" + describe(format);
+        }
+
+        @Override
+        public void setUp() throws Exception {
+            session = new RecordingSession(new SyntheticCaptureSource(Waveform.Noise, 0, 0), format, file, mode);
+            session.setSegmentSeconds(SEGMENT_SECONDS);
+            session.open();
+            writer = new Thread(() -> {
+                try {
+                    session.writeAll();
+                } catch (java.io.IOException ex) {
+                    ex.printStackTrace();
+                }
+            }, "benchmark-writer");
+            writer.start();
+        }
+
+        @Override
+        public void run() {
+            session.captureBlock();
+        }
+
+        @Override
+        public long getBytesProcessed() {
+            return session.getBytesWritten();
+        }
+
+        @Override
+        public double getAudioBytesPerSecond() {
+            return byteRate(format);
+        }
+
+        @Override
+        public void tearDown() throws Exception {
+            session.stop();
+            while (session.captureBlock()) {
+                //Reads the source to its end, which closes the ring buffer.
+            }
+            writer.join();
+            deleteOutput(file, format, mode);
+        }
+    }
+}
@@ -0,0 +1,68 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Runs many real-time synthetic recordings at once on one engine, and reports
+ * the throughput of every session and of the engine as a whole.
+ *
+ * Usage: RecordingEngineBenchmark [sessions] [seconds] [directory]
+ *
+ * @author Jafeth
+ */
+public class RecordingEngineBenchmark {
+
+    /**
+     * Runs the benchmark.
+     *
+     * @param args The amount of sessions, the seconds to record and the
+     * directory to write in.
+     * @throws IOException If a file can not be written.
+     * @throws LineUnavailableException If a synthetic source can not be
+     * opened.
+     * @throws InterruptedException If the benchmark is interrupted.
+     */
+    public static void main(String[] args) throws IOException, LineUnavailableException, InterruptedException {
+        int sessionCount = args.length > 0 ? Integer.parseInt(args[0]) : 200;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        File directory = new File(args.length > 2 ? args[2] : System.getProperty("java.io.tmpdir"), "RecordingEngineBenchmark");
+        directory.mkdirs();
+
+        AudioFormat format = new AudioFormat(48000f, 16, 2, true, true);
+        double expected = format.getFrameRate() * format.getFrameSize();
+
+        RecordingEngine engine = new RecordingEngine();
+        List<RecordingSession> sessions = new ArrayList<>();
+        for (int i = 0; i < sessionCount; i++) {
+            SyntheticCaptureSource source = new SyntheticCaptureSource(Waveform.Sine, 220 + i, 1);
+            sessions.add(engine.startSession(source, format, new File(directory, "session-" + i + ".wav"), OutputMode.Stream));
+        }
+
+        Thread.sleep(seconds * 1000L);
+        double aggregate = engine.getTotalThroughput();
+        long overruns = engine.getTotalOverruns();
+
+        double min = Double.MAX_VALUE;
+        double max = 0;
+        for (RecordingSession session : sessions) {
+            min = Math.min(min, session.getThroughput());
+            max = Math.max(max, session.getThroughput());
+        }
+        engine.shutdown();
+
+        long written = 0;
+        for (RecordingSession session : sessions) {
+            written += session.getBytesWritten();
+            session.getFile().delete();
+        }
+        directory.delete();
+
+        System.out.println("sessions,seconds,expected KB/s per session,min KB/s,max KB/s,aggregate MB/s,overruns,MB written");
+        System.out.printf("%d,%d,%.1f,%.1f,%.1f,%.2f,%d,%.1f%n", sessionCount, seconds, expected / 1e3, min / 1e3, max / 1e3, aggregate / 1e6, overruns, written / 1e6);
+    }
+}
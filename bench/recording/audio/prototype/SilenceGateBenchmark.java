@@ -0,0 +1,108 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.lang.management.ManagementFactory;
+import java.nio.file.Files;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Measures the disk and processor time the silence gate saves. Records the
+ * same stretch of speech-like sound, which sounds a bit under half of the
+ * time, as fast as it can be generated, once writing everything and once
+ * behind the gate. Reads and writes on one thread, so no block is thrown
+ * away and both runs write the same audio. The processor time is that of the whole process, so the
+ * encoder threads of FLAC are included.
+ *
+ * Usage: SilenceGateBenchmark [seconds of audio] [directory]
+ *
+ * @author Jafeth
+ */
+public class SilenceGateBenchmark {
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of seconds recorded and the directory of the
+     * files.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 600;
+        File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"));
+        File file = new File(directory, "benchmark-silence.wav");
+
+        System.out.println("format,mode,gate,audio s,disk bytes,disk saved %,cpu ms,cpu saved %,wall ms,segments");
+        for (AudioFormat format : new AudioFormat[]{new AudioFormat(16000, 16, 1, true, false), new AudioFormat(48000, 24, 2, true, false)}) {
+            for (OutputMode mode : new OutputMode[]{OutputMode.Stream, OutputMode.Flac}) {
+                //Warms the code up, so the first measured run is not slower.
+                record(file, format, mode, SilenceSettings.speech(), 30);
+                record(file, format, mode, null, 30);
+
+                long[] plain = record(file, format, mode, null, seconds);
+                long[] gated = record(file, format, mode, SilenceSettings.speech(), seconds);
+                report(format, mode, false, seconds, plain, plain);
+                report(format, mode, true, seconds, gated, plain);
+            }
+        }
+    }
+
+    /**
+     * Records the given amount of audio, reading the source and writing the
+     * file on one thread, so every block reaches the file.
+     *
+     * @param file The file to record to.
+     * @param format The audio format.
+     * @param mode The way the file is written, Stream or Flac.
+     * @param settings The settings of the gate, or null to write everything.
+     * @param seconds The amount of seconds of audio.
+     * @return The bytes on disk, the processor time, the wall time and the
+     * amount of segments.
+     * @throws Exception If the recording fails.
+     */
+    private static long[] record(File file, AudioFormat format, OutputMode mode, SilenceSettings settings, int seconds) throws Exception {
+        com.sun.management.OperatingSystemMXBean system = (com.sun.management.OperatingSystemMXBean) ManagementFactory.getOperatingSystemMXBean();
+        long cpu = system.getProcessCpuTime();
+        long start = System.nanoTime();
+
+        File written = mode == OutputMode.Flac ? new File(file.getParentFile(), "benchmark-silence.flac") : file;
+        File segmentFile = new File(file.getParentFile(), "benchmark-silence.segments.csv");
+        AudioSink sink = mode == OutputMode.Flac ? new FlacFileWriter(written, format) : new WavFileWriter(written, format);
+        if (settings != null) {
+            sink = new SilenceGate(sink, format, settings, segmentFile);
+        }
+        SyntheticCaptureSource source = new SyntheticCaptureSource(Waveform.Speech, 140, 0);
+        source.open(format);
+        source.start();
+        byte[] block = new byte[PipelineBenchmarks.blockSize(format)];
+        long bytes = (long) (seconds * PipelineBenchmarks.byteRate(format));
+        for (long read = 0; read < bytes; read += block.length) {
+            source.read(block, 0, block.length);
+            sink.write(block, 0, block.length);
+        }
+        source.close();
+        sink.finish();
+
+        long wall = System.nanoTime() - start;
+        long used = system.getProcessCpuTime() - cpu;
+        long disk = written.length() + (segmentFile.exists() ? segmentFile.length() : 0);
+        long segments = segmentFile.exists() ? Files.readAllLines(segmentFile.toPath()).size() - 1 : 0;
+        written.delete();
+        segmentFile.delete();
+        return new long[]{disk, used, wall, segments};
+    }
+
+    /**
+     * Prints one line of results.
+     *
+     * @param format The audio format.
+     * @param mode The output mode.
+     * @param gate Tells whether the gate was used.
+     * @param seconds The amount of seconds of audio.
+     * @param result The results of the run.
+     * @param plain The results of the run without the gate.
+     */
+    private static void report(AudioFormat format, OutputMode mode, boolean gate, int seconds, long[] result, long[] plain) {
+        System.out.printf("%s,%s,%s,%d,%d,%.1f,%.0f,%.1f,%.0f,%d%n", PipelineBenchmarks.describe(format), mode, gate, seconds, result[0],
+                100.0 * (plain[0] - result[0]) / plain[0], result[1] / 1e6, 100.0 * (plain[1] - result[1]) / plain[1], result[2] / 1e6, result[3]);
+    }
+}
@@ -0,0 +1,162 @@
+package recording.audio.prototype;
+
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Measures how long a user waits between pressing start and the first
+ * captured sample, over a series of takes. Records from a synthetic source
+ * in real time that takes as long to open as a sound card line does, once
+ * opening a new source every take and once borrowing the source from a line
+ * pool that was warmed up first.
+ *
+ * Usage: StartLatencyBenchmark [takes] [open milliseconds]
+ *
+ * @author Jafeth
+ */
+public class StartLatencyBenchmark {
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of takes and the time opening a source takes.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int takes = args.length > 0 ? Integer.parseInt(args[0]) : 20;
+        long openMillis = args.length > 1 ? Long.parseLong(args[1]) : 200;
+
+        System.out.println("source,takes,open ms,first take ms,median ms,max ms,failed takes");
+        SoundRecorder direct = new SoundRecorder(new RecordingEventCatcher(new RecordingEventBus()), new SlowOpenSource(openMillis));
+        report("direct", takes, openMillis, measure(direct, takes, false));
+
+        LinePool pool = new LinePool(() -> new SlowOpenSource(openMillis));
+        SoundRecorder pooled = new SoundRecorder(new RecordingEventCatcher(new RecordingEventBus()), new PooledCaptureSource(pool));
+        report("pooled", takes, openMillis, measure(pooled, takes, true));
+        pool.close();
+    }
+
+    /**
+     * Records a series of short takes and keeps the time to the first sample
+     * of every take.
+     *
+     * @param recorder The recorder to start and stop.
+     * @param takes The amount of takes.
+     * @param warmUp Tells whether the line is warmed up before the first
+     * take.
+     * @return The time to the first sample of every take in milliseconds, -1
+     * for a take that captured nothing.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    private static double[] measure(SoundRecorder recorder, int takes, boolean warmUp) throws InterruptedException {
+        if (warmUp) {
+            //Stands in for the warm-up at application start, which runs while the user is choosing.
+            recorder.warmUp(48000f, 16, 2);
+            Thread.sleep(1000);
+        }
+
+        double[] millis = new double[takes];
+        for (int take = 0; take < takes; take++) {
+            recorder.startRecording(48000f, 16, 2);
+            long deadline = System.nanoTime() + 5000000000L;
+            while (recorder.getTimeToFirstSample() < 0 && System.nanoTime() < deadline) {
+                Thread.sleep(1);
+            }
+            long nanos = recorder.getTimeToFirstSample();
+            millis[take] = nanos < 0 ? -1 : nanos / 1e6;
+
+            //Records a little more before stopping, like a very short take.
+            Thread.sleep(50);
+            while (recorder.getState() != RecorderState.Idle) {
+                recorder.finish();
+                Thread.sleep(1);
+            }
+        }
+        return millis;
+    }
+
+    /**
+     * Prints one line of results.
+     *
+     * @param name The name of the source.
+     * @param takes The amount of takes.
+     * @param openMillis The time opening a source takes.
+     * @param millis The time to the first sample of every take.
+     */
+    private static void report(String name, int takes, long openMillis, double[] millis) {
+        double[] captured = Arrays.stream(millis).filter(value -> value >= 0).sorted().toArray();
+        double median = captured.length == 0 ? 0 : captured[captured.length / 2];
+        double max = captured.length == 0 ? 0 : captured[captured.length - 1];
+        System.out.printf("%s,%d,%d,%.2f,%.2f,%.2f,%d%n", name, takes, openMillis, millis[0], median, max, takes - captured.length);
+    }
+
+    /**
+     * A synthetic source in real time that waits when it is opened, like a
+     * sound card line does.
+     */
+    private static class SlowOpenSource implements CaptureSource {
+
+        private final CaptureSource source = new SyntheticCaptureSource(Waveform.Sine, 440, 1);//The source that does the capturing.
+        private final long openMillis;//The time opening takes.
+
+        private SlowOpenSource(long openMillis) {
+            this.openMillis = openMillis;
+        }
+
+        @Override
+        public boolean isFormatSupported(AudioFormat format) {
+            return source.isFormatSupported(format);
+        }
+
+        @Override
+        public void open(AudioFormat format) throws LineUnavailableException {
+            try {
+                Thread.sleep(openMillis);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+            }
+            source.open(format);
+        }
+
+        @Override
+        public void start() {
+            source.start();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            return source.read(buffer, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return source.available();
+        }
+
+        @Override
+        public long getLongFramePosition() {
+            return source.getLongFramePosition();
+        }
+
+        @Override
+        public int getBufferSize() {
+            return source.getBufferSize();
+        }
+
+        @Override
+        public AudioFormat getFormat() {
+            return source.getFormat();
+        }
+
+        @Override
+        public void stop() {
+            source.stop();
+        }
+
+        @Override
+        public void close() {
+            source.close();
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package recording.audio.prototype;
+
+import java.util.Random;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Hammers one recorder with starts and stops from many threads at once,
+ * recording from a synthetic source. Some starts wait until the recording
+ * has started and let it record for a moment, so stops hit both a recording
+ * that is still starting and one that is recording. Checks that the line is
+ * never opened twice at the same time, that every opened line is closed
+ * again, that every started recording was stopped, that both kinds of stop
+ * happened often enough and that the recorder ends up idle. Reports the
+ * amount of start/stop cycles per second.
+ *
+ * Usage: StartStopStress [threads] [calls per thread]
+ *
+ * @author Jafeth
+ */
+public class StartStopStress {
+
+    private static final double MIN_PATH_SHARE = 0.1;//The least part of the stops each kind of stop has to make up.
+    private static final long START_WAIT_MILLIS = 50;//The longest wait for a recording to start.
+
+    /**
+     * Runs the stress run.
+     *
+     * @param args The amount of threads and the amount of calls per thread.
+     * @throws InterruptedException If the run is interrupted.
+     */
+    public static void main(String[] args) throws InterruptedException {
+        int threadCount = args.length > 0 ? Integer.parseInt(args[0]) : 8;
+        int calls = args.length > 1 ? Integer.parseInt(args[1]) : 500;
+
+        CountingSource source = new CountingSource(new SyntheticCaptureSource(Waveform.Sine, 440, 0));
+        CountingEventCatcher events = new CountingEventCatcher();
+        SoundRecorder recorder = new SoundRecorder(events, source);
+        AtomicLong errors = new AtomicLong();
+
+        Thread[] threads = new Thread[threadCount];
+        long start = System.nanoTime();
+        for (int t = 0; t < threadCount; t++) {
+            long seed = t;
+            threads[t] = new Thread(() -> {
+                Random random = new Random(seed);
+                for (int i = 0; i < calls; i++) {
+                    try {
+                        if (random.nextBoolean()) {
+                            long before = events.started.get();
+                            recorder.startRecording(48000f, 16, 2);
+                            if (random.nextInt(3) == 0) {
+                                //Lets this start get to recording, so the next stop stops a recording.
+                                long deadline = System.nanoTime() + START_WAIT_MILLIS * 1000000L;
+                                while (events.started.get() == before && System.nanoTime() < deadline) {
+                                    Thread.sleep(1);
+                                }
+                                Thread.sleep(random.nextInt(10));
+                            }
+                        } else {
+                            recorder.finish();
+                        }
+                        if (random.nextInt(2) == 0) {
+                            Thread.sleep(random.nextInt(5));
+                        }
+                    } catch (RuntimeException | InterruptedException ex) {
+                        errors.incrementAndGet();
+                        ex.printStackTrace();
+                    }
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+
+        //Stops whatever is left, waiting out a start that is still opening the line.
+        while (recorder.getState() != RecorderState.Idle) {
+            recorder.finish();
+            Thread.sleep(1);
+        }
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        long stopped = events.stopped.get();
+        long stoppedRecording = events.stoppedRecording.get();
+        long stoppedStarting = stopped - stoppedRecording;
+        boolean linesOk = errors.get() == 0 && source.maxOpen.get() == 1 && source.opened.get() == source.closed.get();
+        boolean eventsOk = events.started.get() == stoppedRecording && events.started.get() <= stopped;
+        boolean pathsOk = stoppedRecording >= MIN_PATH_SHARE * stopped && stoppedStarting >= MIN_PATH_SHARE * stopped;
+
+        System.out.println("threads,calls,seconds,started,stopped,stopped recording,stopped starting,already started,already stopped,not started,opens,closes,max open at once,errors,cycles/s");
+        System.out.printf("%d,%d,%.2f,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%d,%.0f%n", threadCount, calls, elapsed,
+                events.started.get(), stopped, stoppedRecording, stoppedStarting, events.alreadyStarted.get(), events.alreadyStopped.get(), events.notStarted.get(),
+                source.opened.get(), source.closed.get(), source.maxOpen.get(), errors.get(), source.opened.get() / elapsed);
+        if (!eventsOk) {
+            System.out.println("Every started recording has to be stopped once, and only started recordings are stopped while recording");
+        }
+        if (!pathsOk) {
+            System.out.println("Both a recording and a start have to be stopped in at least " + (int) (MIN_PATH_SHARE * 100) + "% of the stops");
+        }
+        boolean ok = linesOk && eventsOk && pathsOk;
+        System.out.println(ok ? "OK" : "FAILED");
+        if (!ok) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * A capture source that counts how often it is opened and closed.
+     */
+    private static class CountingSource implements CaptureSource {
+
+        private final CaptureSource source;//The source that does the capturing.
+        private final AtomicInteger open = new AtomicInteger();//The amount of times the source is open right now.
+        private final AtomicInteger maxOpen = new AtomicInteger();//The highest amount of times the source was open at once.
+        private final AtomicLong opened = new AtomicLong();//The amount of times the source was opened.
+        private final AtomicLong closed = new AtomicLong();//The amount of times the source was closed after opening.
+        private volatile boolean isOpen;//Tells whether the source is open.
+
+        private CountingSource(CaptureSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean isFormatSupported(AudioFormat format) {
+            return source.isFormatSupported(format);
+        }
+
+        @Override
+        public void open(AudioFormat format) throws LineUnavailableException {
+            int now = open.incrementAndGet();
+            maxOpen.accumulateAndGet(now, Math::max);
+            opened.incrementAndGet();
+            isOpen = true;
+            source.open(format);
+        }
+
+        @Override
+        public void start() {
+            source.start();
+        }
+
+        @Override
+        public int read(byte[] buffer, int offset, int length) {
+            return source.read(buffer, offset, length);
+        }
+
+        @Override
+        public int available() {
+            return source.available();
+        }
+
+        @Override
+        public long getLongFramePosition() {
+            return source.getLongFramePosition();
+        }
+
+        @Override
+        public int getBufferSize() {
+            return source.getBufferSize();
+        }
+
+        @Override
+        public AudioFormat getFormat() {
+            return source.getFormat();
+        }
+
+        @Override
+        public void stop() {
+            source.stop();
+        }
+
+        @Override
+        public synchronized void close() {
+            source.close();
+            if (isOpen) {
+                isOpen = false;
+                open.decrementAndGet();
+                closed.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * An event catcher that counts the events instead of showing them.
+     */
+    private static class CountingEventCatcher extends RecordingEventCatcher {
+
+        private final AtomicLong started = new AtomicLong();//The amount of started recordings.
+        private final AtomicLong stopped = new AtomicLong();//The amount of stopped recordings.
+        private final AtomicLong stoppedRecording = new AtomicLong();//The amount of stops of a recording that had started.
+        private final AtomicBoolean recording = new AtomicBoolean();//Tells whether the last recording started and was not stopped yet.
+        private final AtomicLong alreadyStarted = new AtomicLong();//The amount of rejected starts.
+        private final AtomicLong alreadyStopped = new AtomicLong();//The amount of rejected stops.
+        private final AtomicLong notStarted = new AtomicLong();//The amount of failed starts.
+
+        private CountingEventCatcher() {
+            super(new RecordingEventBus());
+        }
+
+        @Override
+        public void formatNotSupportedEvent() {
+            notStarted.incrementAndGet();
+        }
+
+        @Override
+        public void lineNotFoundEvent() {
+            notStarted.incrementAndGet();
+        }
+
+        @Override
+        public void recordingStartedEvent() {
+            started.incrementAndGet();
+            recording.set(true);
+        }
+
+        @Override
+        public void recordingNotStartedEvent() {
+            notStarted.incrementAndGet();
+        }
+
+        @Override
+        public void recordingStoppedEvent(FileSystem fileSystem) {
+            //A recording is always told to have started before it is told to have stopped.
+            if (recording.getAndSet(false)) {
+                stoppedRecording.incrementAndGet();
+            }
+            stopped.incrementAndGet();
+        }
+
+        @Override
+        public void recordingNotStoppedEvent() {
+            notStarted.incrementAndGet();
+        }
+
+        @Override
+        public void osNotSupportedEvent() {
+            //The stress run does not care about the OS.
+        }
+
+        @Override
+        public void levelEvent(float[] peak, float[] rms) {
+            //The stress run does not show levels.
+        }
+
+        @Override
+        public void recordingAlreadyStartedEvent() {
+            alreadyStarted.incrementAndGet();
+        }
+
+        @Override
+        public void recordingAlreadyStoppedEvent() {
+            alreadyStopped.incrementAndGet();
+        }
+    }
+}
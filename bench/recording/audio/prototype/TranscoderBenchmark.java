@@ -0,0 +1,106 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Measures how fast the batch transcoder converts, and how it scales with
+ * the amount of threads, for a batch of files and for a single long file.
+ * The files hold noise and are converted the way recordings usually are:
+ * 5.1 surround at 48 kHz down to stereo CD quality, stereo CD quality up to
+ * 48 kHz and 24 bits, and 192 kHz down to 48 kHz.
+ *
+ * Usage: TranscoderBenchmark [seconds of audio per batch] [directory]
+ *
+ * @author Jafeth
+ */
+public class TranscoderBenchmark {
+
+    private static final int BATCH_FILES = 8;//The amount of files in a batch.
+
+    /**
+     * Runs the measurement.
+     *
+     * @param args The amount of seconds of audio converted in every run and
+     * the directory of the files.
+     * @throws Exception If the run fails.
+     */
+    public static void main(String[] args) throws Exception {
+        int seconds = args.length > 0 ? Integer.parseInt(args[0]) : 240;
+        File directory = new File(args.length > 1 ? args[1] : System.getProperty("java.io.tmpdir"), "benchmark-transcode");
+        File output = new File(directory, "converted");
+        output.mkdirs();
+
+        AudioFormat[][] conversions = {
+            {new AudioFormat(48000, 24, 6, true, false), new AudioFormat(44100, 16, 2, true, false)},
+            {new AudioFormat(44100, 16, 2, true, false), new AudioFormat(48000, 24, 2, true, false)},
+            {new AudioFormat(192000, 24, 2, true, false), new AudioFormat(48000, 16, 2, true, false)}
+        };
+        int cores = Runtime.getRuntime().availableProcessors();
+        int[] threadCounts = cores > 1 ? new int[]{1, cores / 2, cores} : new int[]{1, 2};
+
+        System.out.println("cores: " + cores);
+        System.out.println("from,to,files,audio s,threads,wall ms,x real time,input MB/s,speed-up");
+        for (AudioFormat[] conversion : conversions) {
+            for (int files : new int[]{BATCH_FILES, 1}) {
+                List<File> inputs = write(directory, conversion[0], files, seconds / files);
+                //Warms the code up, so the first measured run is not slower.
+                try (BatchTranscoder warmUp = new BatchTranscoder(conversion[1].getSampleRate(), conversion[1].getSampleSizeInBits(), new Channel(conversion[1].getChannels(), ""), 1)) {
+                    warmUp.transcode(inputs.subList(0, 1), output);
+                }
+
+                long single = 0;
+                for (int threads : threadCounts) {
+                    long wall;
+                    try (BatchTranscoder transcoder = new BatchTranscoder(conversion[1].getSampleRate(), conversion[1].getSampleSizeInBits(), new Channel(conversion[1].getChannels(), ""), threads)) {
+                        long start = System.nanoTime();
+                        for (BatchTranscoder.Result result : transcoder.transcode(inputs, output)) {
+                            if (result.getError() != null) {
+                                throw new IllegalStateException(result.toString());
+                            }
+                        }
+                        wall = System.nanoTime() - start;
+                    }
+                    if (threads == 1) {
+                        single = wall;
+                    }
+                    double audio = files * (seconds / files);
+                    System.out.printf("%s,%s,%d,%.0f,%d,%.0f,%.0f,%.1f,%.2f%n", PipelineBenchmarks.describe(conversion[0]), PipelineBenchmarks.describe(conversion[1]),
+                            files, audio, threads, wall / 1e6, audio / (wall / 1e9), audio * PipelineBenchmarks.byteRate(conversion[0]) / (wall / 1e3), (double) single / wall);
+                }
+                for (File input : inputs) {
+                    input.delete();
+                    new File(output, input.getName()).delete();
+                }
+            }
+        }
+    }
+
+    /**
+     * Writes files of noise.
+     *
+     * @param directory The directory of the files.
+     * @param format The audio format.
+     * @param files The amount of files.
+     * @param seconds The length of every file.
+     * @return The files.
+     * @throws Exception If a file can not be written.
+     */
+    private static List<File> write(File directory, AudioFormat format, int files, int seconds) throws Exception {
+        byte[] block = PipelineBenchmarks.noiseBlock(format);
+        long bytes = (long) (seconds * PipelineBenchmarks.byteRate(format));
+        List<File> written = new ArrayList<>();
+        for (int i = 0; i < files; i++) {
+            File file = new File(directory, "input-" + i + ".wav");
+            WavFileWriter writer = new WavFileWriter(file, format);
+            for (long done = 0; done < bytes; done += block.length) {
+                writer.write(block, 0, (int) Math.min(block.length, bytes - done));
+            }
+            writer.finish();
+            written.add(file);
+        }
+        return written;
+    }
+}
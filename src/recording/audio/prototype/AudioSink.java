@@ -0,0 +1,36 @@
+package recording.audio.prototype;
+
+import java.io.IOException;
+
+/**
+ * A destination for recorded audio data, such as an audio file.
+ *
+ * @author Jafeth
+ */
+public interface AudioSink {
+
+    /**
+     * Writes audio data in the format of the recording.
+     *
+     * @param buffer The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write, a multiple of the frame
+     * size.
+     * @throws IOException If the data can not be written.
+     */
+    void write(byte[] buffer, int offset, int length) throws IOException;
+
+    /**
+     * Gives back the amount of audio bytes written so far.
+     *
+     * @return The amount of bytes written.
+     */
+    long getBytesWritten();
+
+    /**
+     * Writes what is still buffered, completes the output and closes it.
+     *
+     * @throws IOException If the output can not be completed.
+     */
+    void finish() throws IOException;
+}
@@ -0,0 +1,496 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts recorded WAV files to another sample rate, sample size or channel
+ * layout afterwards. The files are converted at the same time on a fork-join
+ * pool, and every file is split into chunks that are converted on their own,
+ * so a single long file also keeps every core busy. A chunk reads the input
+ * it needs around it through memory mapping, so the chunks overlap on the
+ * input but not on the output, and the file is the same as when it is
+ * converted in one go.
+ *
+ * Samples are converted through the range -1 to 1. Output of 16 bits or less
+ * is dithered, with noise that only depends on the position of the sample,
+ * so the output does not depend on the chunks either.
+ *
+ * Usage: BatchTranscoder [options] file-or-directory...
+ *
+ * @author Jafeth
+ */
+public class BatchTranscoder implements AutoCloseable {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: BatchTranscoder [options] file-or-directory...",
+            "  -rate <Hz>            sample rate, default that of the input",
+            "  -size <bits>          sample size, default that of the input",
+            "  -channels <n>         amount of channels, 6 to 2 mixes 5.1 down to stereo, default that of the input",
+            "  -out <directory>      directory of the converted files, default converted",
+            "  -threads <n>          amount of threads, default one for every core");
+    private static final List<String> VALUE_OPTIONS = Arrays.asList("-rate", "-size", "-channels", "-out", "-threads");//The options that take a value.
+    private static final int CHUNK_FRAMES = 1 << 17;//The most input or output frames one chunk converts.
+    private static final int DITHER_BITS = 16;//The largest sample size that is dithered.
+
+    private final float sampleRate;//The sample rate of the output, 0 for that of the input.
+    private final int sampleSize;//The sample size of the output, 0 for that of the input.
+    private final Channel channel;//The channels of the output, null for those of the input.
+    private final ForkJoinPool pool;//The threads that convert the files.
+
+    /**
+     * Constructor for the BatchTranscoder class.
+     *
+     * @param sampleRate The sample rate of the output, 0 to keep that of the
+     * input.
+     * @param sampleSize The sample size of the output, 0 to keep that of the
+     * input.
+     * @param channel The channels of the output, null to keep those of the
+     * input.
+     * @param threads The amount of threads that convert.
+     */
+    public BatchTranscoder(float sampleRate, int sampleSize, Channel channel, int threads) {
+        this.sampleRate = sampleRate;
+        this.sampleSize = sampleSize;
+        this.channel = channel;
+        pool = new ForkJoinPool(threads);
+    }
+
+    /**
+     * Converts the given WAV files or the WAV files in the given directories.
+     *
+     * @param args The options and the files.
+     * @throws IOException If a directory can not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        float rate = 0;
+        int size = 0;
+        Channel channel = null;
+        File directory = new File("converted");
+        int threads = Runtime.getRuntime().availableProcessors();
+        List<File> inputs = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (!option.startsWith("-")) {
+                    inputs.add(new File(option));
+                    continue;
+                }
+                if (!VALUE_OPTIONS.contains(option)) {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + option);
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "-rate":
+                        rate = Float.parseFloat(value);
+                        break;
+                    case "-size":
+                        size = Integer.parseInt(value);
+                        break;
+                    case "-channels":
+                        int count = Integer.parseInt(value);
+                        channel = new Channel(count, count + " channels");
+                        break;
+                    case "-out":
+                        directory = new File(value);
+                        break;
+                    case "-threads":
+                        threads = Integer.parseInt(value);
+                        break;
+                }
+            }
+            if (inputs.isEmpty()) {
+                throw new IllegalArgumentException("No files given");
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        List<File> files = new ArrayList<>();
+        for (File input : inputs) {
+            File[] found = input.isDirectory() ? input.listFiles((dir, name) -> name.toLowerCase().endsWith(".wav")) : new File[]{input};
+            if (found == null) {
+                throw new IOException("Can not read " + input);
+            }
+            Arrays.sort(found);
+            files.addAll(Arrays.asList(found));
+        }
+        Files.createDirectories(directory.toPath());
+
+        long start = System.nanoTime();
+        boolean failed = false;
+        try (BatchTranscoder transcoder = new BatchTranscoder(rate, size, channel, threads)) {
+            for (Result result : transcoder.transcode(files, directory)) {
+                System.out.println(result);
+                failed |= result.getError() != null;
+            }
+        }
+        System.out.printf("%d files in %.1f s%n", files.size(), (System.nanoTime() - start) / 1e9);
+        if (failed) {
+            System.exit(1);
+        }
+    }
+
+    /**
+     * Gives back the format a file is converted to.
+     *
+     * @param input The format of the file.
+     * @return The format of the converted file.
+     */
+    public AudioFormat getTargetFormat(AudioFormat input) {
+        int size = sampleSize > 0 ? sampleSize : input.getSampleSizeInBits();
+        return new AudioFormat(sampleRate > 0 ? sampleRate : input.getSampleRate(), size,
+                channel != null ? channel.getChannels() : input.getChannels(), size > 8, false);
+    }
+
+    /**
+     * Converts WAV files, all at the same time. A file that can not be
+     * converted does not stop the others.
+     *
+     * @param inputs The WAV files.
+     * @param directory The directory the converted files are put in, under
+     * the same names.
+     * @return The result of every file, in the same order.
+     * @throws IllegalArgumentException If two files have the same name, or
+     * a file would replace its input.
+     */
+    public List<Result> transcode(List<File> inputs, File directory) {
+        List<FileTask> tasks = new ArrayList<>();
+        Set<String> names = new HashSet<>();
+        for (File input : inputs) {
+            File output = new File(directory, input.getName());
+            if (!names.add(input.getName())) {
+                throw new IllegalArgumentException("More than one file is called " + input.getName());
+            }
+            if (output.getAbsoluteFile().equals(input.getAbsoluteFile())) {
+                throw new IllegalArgumentException(input + " would be replaced by its converted file");
+            }
+            tasks.add(new FileTask(input, output));
+        }
+        pool.invoke(new RecursiveAction() {
+            @Override
+            protected void compute() {
+                invokeAll(tasks);
+            }
+        });
+
+        List<Result> results = new ArrayList<>();
+        for (FileTask task : tasks) {
+            results.add(task.result);
+        }
+        return results;
+    }
+
+    /**
+     * Stops the threads.
+     */
+    @Override
+    public void close() {
+        pool.shutdown();
+    }
+
+    /**
+     * Writes the whole buffer at the given position.
+     *
+     * @param channel The channel to write to.
+     * @param data The data to write.
+     * @param position The position in the file.
+     * @throws IOException If the data can not be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data, position + data.position());
+        }
+    }
+
+    /**
+     * Converts one file. Writes it under a temporary name and moves it into
+     * place when it is complete.
+     */
+    private class FileTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final File input;//The file that is converted.
+        private final File output;//The converted file.
+        private MappedWavInput wav;//The input while it is converted.
+        private FileChannel channel;//The channel to the output while it is written.
+        private PolyphaseResampler resampler;//Changes the sample rate.
+        private ChannelMixer mixer;//Mixes the channels.
+        private int dataOffset;//The position of the audio data in the output.
+        private int frameSize;//The size of one output frame in bytes.
+        private int bytesPerSample;//The amount of bytes one output sample takes up.
+        private int sampleSize;//The sample size of the output.
+        private boolean dither;//Tells whether the output is dithered.
+        private int chunkFrames;//The most output frames one chunk converts.
+        private Result result;//What became of the file.
+
+        /**
+         * Constructor for the FileTask class.
+         *
+         * @param input The file that is converted.
+         * @param output The converted file.
+         */
+        FileTask(File input, File output) {
+            this.input = input;
+            this.output = output;
+        }
+
+        /**
+         * Converts the file, chunk by chunk.
+         */
+        @Override
+        protected void compute() {
+            File temporary = new File(output.getAbsoluteFile().getParentFile(), output.getName() + ".tmp");
+            try (MappedWavInput opened = new MappedWavInput(input)) {
+                wav = opened;
+                AudioFormat from = wav.getFormat();
+                AudioFormat to = getTargetFormat(from);
+                resampler = new PolyphaseResampler(Math.round(from.getSampleRate()), Math.round(to.getSampleRate()));
+                mixer = new ChannelMixer(from.getChannels(), to.getChannels());
+                frameSize = to.getFrameSize();
+                bytesPerSample = frameSize / to.getChannels();
+                sampleSize = to.getSampleSizeInBits();
+
+                //Samples that come out the same as they went in are not dithered.
+                dither = sampleSize <= DITHER_BITS && (!resampler.isPassThrough() || !mixer.isPassThrough() || sampleSize < from.getSampleSizeInBits());
+                chunkFrames = Math.max(1024, (int) (CHUNK_FRAMES * Math.min(1, to.getSampleRate() / from.getSampleRate())));
+
+                long frames = resampler.getOutputFrames(wav.getFrames());
+                long dataLength = frames * frameSize;
+                WavHeader header = new WavHeader(to);
+                dataOffset = header.size();
+                try (FileChannel opening = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                    channel = opening;
+                    ByteBuffer buffer = ByteBuffer.allocate(dataOffset);
+                    header.put(buffer, dataLength);
+                    buffer.flip();
+                    writeFully(channel, buffer, 0);
+                    if ((dataLength & 1) == 1) {
+                        //Pads the data to an even length, as RIFF requires.
+                        writeFully(channel, ByteBuffer.allocate(1), dataOffset + dataLength);
+                    }
+                    new ChunkTask(this, 0, frames).invoke();
+                }
+                Files.move(temporary.toPath(), output.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+                result = new Result(input, output, frames, null);
+            } catch (IOException | RuntimeException ex) {
+                temporary.delete();
+                result = new Result(input, output, 0, ex instanceof UncheckedIOException ? ex.getCause() : ex);
+            } finally {
+                wav = null;
+                channel = null;
+            }
+        }
+
+        /**
+         * Converts a chunk of the output.
+         *
+         * @param first The number of the first output frame.
+         * @param count The amount of output frames.
+         * @throws IOException If the input can not be read or the output can
+         * not be written.
+         */
+        void convert(long first, int count) throws IOException {
+            long inputStart = resampler.getFirstInput(first);
+            int inputFrames = (int) (resampler.getEndInput(first + count) - inputStart);
+            int channels = mixer.getOutputChannels();
+            double[][] mixed = new double[channels][inputFrames];
+            wav.read(inputStart, inputFrames, mixer, mixed);
+
+            double[] samples = new double[count];
+            ByteBuffer bytes = ByteBuffer.allocate(count * frameSize).order(ByteOrder.LITTLE_ENDIAN);
+            for (int c = 0; c < channels; c++) {
+                resampler.process(mixed[c], inputStart, samples, first, count);
+                quantize(samples, bytes, first, c, channels);
+            }
+            writeFully(channel, bytes, dataOffset + first * frameSize);
+        }
+
+        /**
+         * Rounds the samples of one channel to the output sample size and
+         * puts them in the WAV layout.
+         *
+         * @param samples The samples, between -1 and 1.
+         * @param bytes The buffer of the output frames.
+         * @param first The number of the first output frame.
+         * @param c The channel.
+         * @param channels The amount of channels.
+         */
+        private void quantize(double[] samples, ByteBuffer bytes, long first, int c, int channels) {
+            double fullScale = 1L << (sampleSize - 1);
+            long highest = (1L << (sampleSize - 1)) - 1;
+            long lowest = -(1L << (sampleSize - 1));
+            int shift = bytesPerSample * 8 - sampleSize;
+            int position = c * bytesPerSample;
+            for (int j = 0; j < samples.length; j++, position += frameSize) {
+                double value = samples[j] * fullScale;
+                if (dither) {
+                    value += triangularNoise((first + j) * channels + c);
+                }
+                int stored = (int) Math.max(lowest, Math.min(highest, Math.round(value))) << shift;
+                switch (bytesPerSample) {
+                    case 1:
+                        bytes.put(position, (byte) (stored + 128));
+                        break;
+                    case 2:
+                        bytes.putShort(position, (short) stored);
+                        break;
+                    case 3:
+                        bytes.put(position, (byte) stored);
+                        bytes.put(position + 1, (byte) (stored >> 8));
+                        bytes.put(position + 2, (byte) (stored >> 16));
+                        break;
+                    default:
+                        bytes.putInt(position, stored);
+                        break;
+                }
+            }
+        }
+
+        /**
+         * Gives back dither noise with a triangular distribution between -1
+         * and 1 step of the output, made from the position of the sample
+         * alone.
+         *
+         * @param sample The number of the sample in the output.
+         * @return The noise, in steps of the output.
+         */
+        private double triangularNoise(long sample) {
+            //Mixes the bits of the position like SplitMix64.
+            long z = sample * 0x9E3779B97F4A7C15L;
+            z = (z ^ (z >>> 30)) * 0xBF58476D1CE4E5B9L;
+            z = (z ^ (z >>> 27)) * 0x94D049BB133111EBL;
+            z ^= z >>> 31;
+            return ((z >>> 32) - (z & 0xFFFFFFFFL)) / 4294967296.0;
+        }
+    }
+
+    /**
+     * Converts a range of output frames, split in halves until a half is
+     * small enough to convert as one chunk.
+     */
+    private static class ChunkTask extends RecursiveAction {
+
+        private static final long serialVersionUID = 1L;
+
+        private final FileTask file;//The file the chunk belongs to.
+        private final long start;//The number of the first output frame.
+        private final long end;//The number of the output frame after the range.
+
+        /**
+         * Constructor for the ChunkTask class.
+         *
+         * @param file The file the chunk belongs to.
+         * @param start The number of the first output frame.
+         * @param end The number of the output frame after the range.
+         */
+        ChunkTask(FileTask file, long start, long end) {
+            this.file = file;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Converts the range or splits it.
+         */
+        @Override
+        protected void compute() {
+            if (end - start > file.chunkFrames) {
+                long middle = start + (end - start) / 2;
+                invokeAll(new ChunkTask(file, start, middle), new ChunkTask(file, middle, end));
+                return;
+            }
+            try {
+                file.convert(start, (int) (end - start));
+            } catch (IOException ex) {
+                throw new UncheckedIOException(ex);
+            }
+        }
+    }
+
+    /**
+     * What became of a file that was converted.
+     */
+    public static final class Result {
+
+        private final File input;//The file that was converted.
+        private final File output;//The converted file.
+        private final long frames;//The amount of frames in the converted file.
+        private final Throwable error;//Why the file could not be converted, null if it was.
+
+        private Result(File input, File output, long frames, Throwable error) {
+            this.input = input;
+            this.output = output;
+            this.frames = frames;
+            this.error = error;
+        }
+
+        /**
+         * Gives back the file that was converted.
+         *
+         * @return The input file.
+         */
+        public File getInput() {
+            return input;
+        }
+
+        /**
+         * Gives back the converted file.
+         *
+         * @return The output file.
+         */
+        public File getOutput() {
+            return output;
+        }
+
+        /**
+         * Gives back the amount of frames in the converted file.
+         *
+         * @return The amount of frames.
+         */
+        public long getFrames() {
+            return frames;
+        }
+
+        /**
+         * Gives back why the file could not be converted.
+         *
+         * @return The error, or null if the file was converted.
+         */
+        public Throwable getError() {
+            return error;
+        }
+
+        /**
+         * Gives back a line describing the result.
+         *
+         * @return The description.
+         */
+        @Override
+        public String toString() {
+            return input + (error == null ? " -> " + output + ", " + frames + " frames" : ": " + error.getMessage());
+        }
+    }
+}
@@ -0,0 +1,184 @@
+package recording.audio.prototype;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A lock-free ring buffer of preallocated blocks between exactly one producer
+ * thread and one consumer thread. The producer never waits: when all blocks
+ * are full the block is counted as an overrun instead.
+ *
+ * @author Jafeth
+ */
+public class BlockRingBuffer {
+
+    private static final long WAIT_NANOS = 200000;//How long the consumer parks while the buffer is empty.
+
+    private final byte[][] blocks;//The preallocated blocks.
+    private final int[] lengths;//The amount of bytes filled in each block.
+    private final int mask;//Turns a sequence number into a block index.
+    private final AtomicLong head = new AtomicLong();//The sequence number of the next block to consume.
+    private final AtomicLong tail = new AtomicLong();//The sequence number of the next block to produce.
+    private final AtomicLong overruns = new AtomicLong();//The amount of blocks that did not fit.
+    private volatile int highWaterMark;//The highest amount of filled blocks seen.
+    private volatile boolean closed;//Tells whether the producer has stopped.
+
+    /**
+     * Constructor for the BlockRingBuffer class.
+     *
+     * @param blockCount The amount of blocks, rounded up to a power of two.
+     * @param blockSize The size of one block in bytes.
+     */
+    public BlockRingBuffer(int blockCount, int blockSize) {
+        int capacity = Integer.highestOneBit(Math.max(2, blockCount - 1)) << 1;
+        blocks = new byte[capacity][blockSize];
+        lengths = new int[capacity];
+        mask = capacity - 1;
+    }
+
+    /**
+     * Gives back the next free block for the producer to fill. Counts an
+     * overrun if every block is still in use.
+     *
+     * @return The free block, or null if the buffer is full.
+     */
+    public byte[] claim() {
+        long sequence = tail.get();
+        if (sequence - head.get() >= blocks.length) {
+            overruns.incrementAndGet();
+            return null;
+        }
+        return blocks[(int) sequence & mask];
+    }
+
+    /**
+     * Hands the last claimed block over to the consumer.
+     *
+     * @param length The amount of bytes filled in the block.
+     */
+    public void publish(int length) {
+        long sequence = tail.get();
+        lengths[(int) sequence & mask] = length;
+        tail.lazySet(sequence + 1);
+
+        //Keeps track of the fullest the buffer has been.
+        int filled = (int) (sequence + 1 - head.get());
+        if (filled > highWaterMark) {
+            highWaterMark = filled;
+        }
+    }
+
+    /**
+     * Tells the consumer no more blocks will be published.
+     */
+    public void close() {
+        closed = true;
+    }
+
+    /**
+     * Gives back the oldest filled block, waiting for one if the buffer is
+     * empty.
+     *
+     * @return The filled block, or null if the buffer is empty and closed.
+     */
+    public byte[] take() {
+        long sequence = head.get();
+        while (tail.get() == sequence) {
+            //Checks the tail again after seeing the close, as the last block may have been published in between.
+            if (closed) {
+                if (tail.get() == sequence) {
+                    return null;
+                }
+                break;
+            }
+            LockSupport.parkNanos(WAIT_NANOS);
+        }
+        return blocks[(int) sequence & mask];
+    }
+
+    /**
+     * Gives back the oldest filled block without waiting.
+     *
+     * @return The filled block, or null if the buffer is empty.
+     */
+    public byte[] poll() {
+        long sequence = head.get();
+        if (tail.get() == sequence) {
+            return null;
+        }
+        return blocks[(int) sequence & mask];
+    }
+
+    /**
+     * Tells whether the producer has stopped and every block has been
+     * consumed.
+     *
+     * @return True if nothing is left to consume.
+     */
+    public boolean isDrained() {
+        return closed && tail.get() == head.get();
+    }
+
+    /**
+     * Gives back the amount of bytes filled in the block given back by take()
+     * or poll().
+     *
+     * @return The amount of filled bytes.
+     */
+    public int takenLength() {
+        return lengths[(int) head.get() & mask];
+    }
+
+    /**
+     * Gives the block given back by take() or poll() back to the producer.
+     */
+    public void release() {
+        head.lazySet(head.get() + 1);
+    }
+
+    /**
+     * Gives back the amount of filled blocks.
+     *
+     * @return The amount of filled blocks.
+     */
+    public int size() {
+        return (int) (tail.get() - head.get());
+    }
+
+    /**
+     * Gives back the amount of blocks in the buffer.
+     *
+     * @return The capacity in blocks.
+     */
+    public int capacity() {
+        return blocks.length;
+    }
+
+    /**
+     * Gives back the size of one block in bytes.
+     *
+     * @return The block size.
+     */
+    public int blockSize() {
+        return blocks[0].length;
+    }
+
+    /**
+     * Gives back the amount of blocks that were dropped because the buffer
+     * was full.
+     *
+     * @return The amount of overruns.
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Gives back the highest amount of filled blocks seen.
+     *
+     * @return The high-water mark in blocks.
+     */
+    public int getHighWaterMark() {
+        return highWaterMark;
+    }
+}
@@ -0,0 +1,32 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of the ways the recorder sizes the buffer of its line and the
+ * blocks it reads, trading the delay of the captured audio against the
+ * chance the line overflows.
+ *
+ * @author Jafeth
+ */
+public enum BufferProfile {
+
+    /**
+     * Reads blocks of 5 ms from a line of 20 ms, for monitoring and speech at low sample rates
+     */
+    LowLatency,
+
+    /**
+     * Reads blocks of 20 ms from a line of half a second, which suits most recordings
+     */
+    Balanced,
+
+    /**
+     * Reads blocks of 100 ms from a line of a second, for many channels at high sample rates
+     */
+    MaxThroughput,
+
+    /**
+     * Starts out as LowLatency and doubles the line every time it overflows, up to MaxThroughput
+     */
+    Adaptive;
+
+}
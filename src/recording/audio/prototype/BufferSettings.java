@@ -0,0 +1,167 @@
+package recording.audio.prototype;
+
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The settings of how the line is buffered: the profile and, for the
+ * adaptive profile, how many times the line has been doubled. The sizes are
+ * worked out from the audio format, so they stand for the same time at
+ * every sample rate, sample size and amount of channels.
+ *
+ * @author Jafeth
+ */
+public final class BufferSettings {
+
+    private static final int MIN_BLOCK_FRAMES = 32;//The smallest amount of frames read at once.
+    private static final double HEAVY_BYTE_RATE = 1024 * 1024;//The amount of bytes per second from which the line is made twice as long.
+    private static final int MAX_GROWTH = 6;//The highest amount of times the adaptive line is doubled, by then it is as long as MaxThroughput.
+
+    private final BufferProfile profile;//The way the line is buffered.
+    private final int growth;//The amount of times the adaptive line has been doubled.
+
+    /**
+     * Constructor for the BufferSettings class.
+     *
+     * @param profile The way the line is buffered.
+     * @param growth The amount of times the adaptive line has been doubled,
+     * 0 for the other profiles.
+     */
+    public BufferSettings(BufferProfile profile, int growth) {
+        if (growth < 0 || growth > MAX_GROWTH || (growth > 0 && profile != BufferProfile.Adaptive)) {
+            throw new IllegalArgumentException("Only an adaptive line can grow, up to " + MAX_GROWTH + " times");
+        }
+        this.profile = profile;
+        this.growth = growth;
+    }
+
+    /**
+     * Gives back the settings of a profile before it has grown.
+     *
+     * @param profile The way the line is buffered.
+     * @return The settings.
+     */
+    public static BufferSettings of(BufferProfile profile) {
+        return new BufferSettings(profile, 0);
+    }
+
+    /**
+     * Gives back the way the line is buffered.
+     *
+     * @return The profile.
+     */
+    public BufferProfile getProfile() {
+        return profile;
+    }
+
+    /**
+     * Gives back the amount of times the adaptive line has been doubled.
+     *
+     * @return The growth.
+     */
+    public int getGrowth() {
+        return growth;
+    }
+
+    /**
+     * Tells whether the line can still be made longer.
+     *
+     * @return True if the profile is adaptive and has not reached its
+     * longest line.
+     */
+    public boolean canGrow() {
+        return profile == BufferProfile.Adaptive && growth < MAX_GROWTH;
+    }
+
+    /**
+     * Gives back the settings with a line twice as long, for after the line
+     * has overflowed.
+     *
+     * @return The grown settings, or these if the line can not grow.
+     */
+    public BufferSettings grow() {
+        return canGrow() ? new BufferSettings(profile, growth + 1) : this;
+    }
+
+    /**
+     * Gives back the amount of bytes that is read from the line at once.
+     *
+     * @param format The audio format of the line.
+     * @return The block size, a whole amount of frames.
+     */
+    public int getBlockSize(AudioFormat format) {
+        return frames(format, getBlockMillis()) * format.getFrameSize();
+    }
+
+    /**
+     * Gives back the size the line is opened with. A format of over a
+     * megabyte per second gets a line twice as long, as every hold-up of the
+     * capturing thread costs it more bytes.
+     *
+     * @param format The audio format of the line.
+     * @return The buffer size in bytes, a whole amount of frames.
+     */
+    public int getLineBufferSize(AudioFormat format) {
+        double millis = getLineMillis();
+        if (format.getFrameRate() * format.getFrameSize() > HEAVY_BYTE_RATE) {
+            millis *= 2;
+        }
+
+        //The line always holds a few blocks, so a block can be read while the next one comes in.
+        int frames = Math.max(frames(format, millis), frames(format, getBlockMillis()) * 4);
+        return frames * format.getFrameSize();
+    }
+
+    /**
+     * Gives back the length of one block read from the line.
+     *
+     * @return The time in milliseconds.
+     */
+    private double getBlockMillis() {
+        switch (profile) {
+            case LowLatency:
+                return 5;
+            case MaxThroughput:
+                return 100;
+            case Adaptive:
+                return Math.min(5 << growth, 100);
+            default:
+                return 20;
+        }
+    }
+
+    /**
+     * Gives back the length of the line before it is made longer for heavy
+     * formats.
+     *
+     * @return The time in milliseconds.
+     */
+    private double getLineMillis() {
+        switch (profile) {
+            case LowLatency:
+                return 20;
+            case MaxThroughput:
+                return 1000;
+            case Adaptive:
+                return Math.min(20 << growth, 1000);
+            default:
+                return 500;
+        }
+    }
+
+    /**
+     * Gives back the amount of frames that lasts the given time, at least
+     * the smallest block.
+     *
+     * @param format The audio format.
+     * @param millis The time in milliseconds.
+     * @return The amount of frames.
+     */
+    private static int frames(AudioFormat format, double millis) {
+        return Math.max(MIN_BLOCK_FRAMES, (int) Math.ceil(format.getFrameRate() * millis / 1000));
+    }
+
+    @Override
+    public String toString() {
+        return profile == BufferProfile.Adaptive ? profile + " grown " + growth + " times" : profile.toString();
+    }
+}
@@ -0,0 +1,811 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Records from several input devices at the same time into one file, with
+ * the channels of every device next to each other and lined up to the
+ * sample. Every device is captured like SoundRecorder captures its single
+ * line, on a thread of its own into a ring buffer, and all lines are started
+ * together.
+ *
+ * Two devices never run at exactly the same rate, as every device has a
+ * clock of its own, so their recordings drift apart by a few milliseconds a
+ * minute. After every read the frame position of the line is stamped with
+ * System.nanoTime(), and a DriftEstimator works out from these stamps when
+ * every frame was taken. The first device is the reference: the output runs
+ * on its clock, and every other device is resampled by a DriftResampler to
+ * the moments its frames were taken. The resampling of the devices is spread
+ * over the cores.
+ *
+ * Frames a line loses, or that do not fit in the ring buffer, are replaced
+ * by silence, so the devices stay lined up after a gap. What can not be
+ * measured is the latency of the converters of every device, so devices
+ * are lined up to the moments their lines report the frames, not to the
+ * moments the sound reached the microphones.
+ *
+ * Usage: CaptureGroup [options]
+ *
+ * @author Jafeth
+ */
+public class CaptureGroup {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: CaptureGroup [options]",
+            "  -rate <Hz>            sample rate, default 48000",
+            "  -size <bits>          sample size, default 16",
+            "  -channels <n>         amount of channels of every device, default 1",
+            "  -mode <mode>          Stream, Mapped, Segmented, Flac or Split, default Stream",
+            "  -out <file>           file of the recording, default CaptureGroup.wav",
+            "  -seconds <seconds>    length of the recording, default 10",
+            "  -devices <list>       numbers or names of the mixers to record from, separated by commas, the first is the reference",
+            "  -synthetic <list>     record from sine waves instead, one for every drift in ppm, separated by commas, such as 0,80,-50",
+            "  -list                 show the numbers and names of the mixers that can record");
+    private static final List<String> VALUE_OPTIONS = Arrays.asList("-rate", "-size", "-channels", "-mode", "-out", "-seconds", "-devices", "-synthetic");//The options that take a value.
+    private static final int CHUNK_MILLIS = 50;//The length of the audio that is lined up and written at once.
+    private static final int RING_MILLIS = 2560;//The length of the audio the ring buffer of every device holds.
+    private static final long POLL_MILLIS = 5;//How long the aligner waits for more audio.
+    private static final double WARM_UP_SECONDS = 1;//The time every clock is measured before the first frame is written.
+    private static final long MAX_STAMP_NANOS = 200000;//The longest asking for the position of a line that still gives a usable moment.
+    private static final double MAX_CORRECTION = 0.001;//The most a device is sped up or slowed down to follow its clock, as a part of the rate.
+
+    private final AudioFormat format;//The audio format every device captures in.
+    private final AudioFormat outputFormat;//The audio format of the file, with the channels of all devices.
+    private final File file;//The file of the recording.
+    private final OutputMode outputMode;//The way the file is written.
+    private final Track[] tracks;//The devices, the reference first.
+    private final CountDownLatch go = new CountDownLatch(1);//Lets the capture threads read once every line has been started.
+    private final byte[] silentFrame;//One frame of silence in the capture format.
+    private boolean compensating = true;//Tells whether the drift of the clocks is followed after the start.
+    private AudioSink sink;//Writes the lined up frames.
+    private ExecutorService workers;//The threads that resample the devices.
+    private Thread aligner;//The thread that lines the devices up and writes them.
+    private volatile boolean stopped;//Tells whether the lines have been stopped, so their positions stand still.
+    private volatile long framesWritten;//The amount of frames written to the file.
+    private volatile IOException failure;//The error the file could not be written with.
+
+    /**
+     * Constructor for the CaptureGroup class.
+     *
+     * @param sources The devices to record from, the reference first.
+     * @param format The audio format every device captures in, PCM.
+     * @param file The file of the recording.
+     * @param outputMode The way the file is written.
+     */
+    public CaptureGroup(List<CaptureSource> sources, AudioFormat format, File file, OutputMode outputMode) {
+        if (sources.isEmpty()) {
+            throw new IllegalArgumentException("No devices to record from");
+        }
+        if (!AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) && !AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding())) {
+            throw new IllegalArgumentException("Audio format not supported: " + format);
+        }
+        this.format = format;
+        this.file = file;
+        this.outputMode = outputMode;
+
+        //The file has the samples and containers of the capture format, signed apart from 8 bits, like a WAV file needs.
+        int bytesPerSample = format.getFrameSize() / format.getChannels();
+        tracks = new Track[sources.size()];
+        int channels = 0;
+        for (int i = 0; i < tracks.length; i++) {
+            tracks[i] = new Track(sources.get(i), channels);
+            channels += format.getChannels();
+        }
+        AudioFormat.Encoding encoding = bytesPerSample > 1 ? AudioFormat.Encoding.PCM_SIGNED : AudioFormat.Encoding.PCM_UNSIGNED;
+        outputFormat = new AudioFormat(encoding, format.getSampleRate(), format.getSampleSizeInBits(), channels, bytesPerSample * channels, format.getSampleRate(), false);
+
+        silentFrame = new byte[format.getFrameSize()];
+        if (AudioFormat.Encoding.PCM_UNSIGNED.equals(format.getEncoding())) {
+            //Silence is half way up the sample size, in the low bits of the container.
+            long middle = 1L << (format.getSampleSizeInBits() - 1);
+            for (int position = 0; position < silentFrame.length; position += bytesPerSample) {
+                for (int k = 0; k < bytesPerSample; k++) {
+                    silentFrame[position + (format.isBigEndian() ? bytesPerSample - 1 - k : k)] = (byte) (middle >> (8 * k));
+                }
+            }
+        }
+    }
+
+    /**
+     * Records from several devices, given on the command line.
+     *
+     * @param args The options.
+     * @throws Exception If the recording fails.
+     */
+    public static void main(String[] args) throws Exception {
+        float rate = 48000;
+        int size = 16;
+        int channels = 1;
+        OutputMode mode = OutputMode.Stream;
+        File file = new File("CaptureGroup.wav");
+        double seconds = 10;
+        String devices = null;
+        String synthetic = null;
+        List<CaptureSource> sources = new ArrayList<>();
+        List<String> names = new ArrayList<>();
+        try {
+            for (int i = 0; i < args.length; i++) {
+                String option = args[i];
+                if (option.equals("-list")) {
+                    listMixers();
+                    return;
+                }
+                if (!VALUE_OPTIONS.contains(option)) {
+                    throw new IllegalArgumentException("Unknown option " + option);
+                }
+                if (i + 1 >= args.length) {
+                    throw new IllegalArgumentException("Missing value of " + option);
+                }
+                String value = args[++i];
+                switch (option) {
+                    case "-rate":
+                        rate = Float.parseFloat(value);
+                        break;
+                    case "-size":
+                        size = Integer.parseInt(value);
+                        break;
+                    case "-channels":
+                        channels = Integer.parseInt(value);
+                        break;
+                    case "-mode":
+                        mode = OutputMode.valueOf(value);
+                        break;
+                    case "-out":
+                        file = new File(value);
+                        break;
+                    case "-seconds":
+                        seconds = Double.parseDouble(value);
+                        break;
+                    case "-devices":
+                        devices = value;
+                        break;
+                    case "-synthetic":
+                        synthetic = value;
+                        break;
+                }
+            }
+            if ((devices == null) == (synthetic == null)) {
+                throw new IllegalArgumentException("Give either -devices or -synthetic");
+            }
+            if (synthetic != null) {
+                for (String ppm : synthetic.split(",")) {
+                    double drift = Double.parseDouble(ppm.trim());
+                    //Every device gets a tone of its own, so they can be told apart in the file.
+                    sources.add(new SyntheticCaptureSource(Waveform.Sine, 220 * (sources.size() + 1), 1 + drift * 1e-6));
+                    names.add("sine " + drift + " ppm");
+                }
+            } else {
+                for (String device : devices.split(",")) {
+                    Mixer.Info info = findMixer(device.trim());
+                    sources.add(new MicrophoneCaptureSource(info));
+                    names.add(info.getName());
+                }
+            }
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+
+        CaptureGroup group = new CaptureGroup(sources, new AudioFormat(rate, size, channels, size > 8, false), file, mode);
+        group.start();
+        Thread.sleep((long) (seconds * 1000));
+        group.stop();
+        group.awaitFinished();
+
+        System.out.printf("%s: %d frames of %s%n", file, group.getFramesWritten(), group.getOutputFormat());
+        for (int i = 0; i < names.size(); i++) {
+            System.out.printf("%d %s: %+.1f ppm, starts %+.3f ms, %d frames lost%n", i, names.get(i), group.getDriftPpm(i),
+                    group.getStartOffsetMillis(i), group.getLostFrames(i));
+        }
+    }
+
+    /**
+     * Prints the number and name of every mixer that has a capture line.
+     */
+    private static void listMixers() {
+        Mixer.Info[] infos = AudioSystem.getMixerInfo();
+        for (int i = 0; i < infos.length; i++) {
+            if (AudioSystem.getMixer(infos[i]).getTargetLineInfo(new Line.Info(TargetDataLine.class)).length > 0) {
+                System.out.println(i + ": " + infos[i].getName() + " - " + infos[i].getDescription());
+            }
+        }
+    }
+
+    /**
+     * Finds a mixer by its number in the list of mixers or by its name.
+     *
+     * @param device The number or the name of the mixer.
+     * @return The mixer info.
+     * @throws IllegalArgumentException If there is no such mixer.
+     */
+    private static Mixer.Info findMixer(String device) {
+        Mixer.Info[] infos = AudioSystem.getMixerInfo();
+        for (int i = 0; i < infos.length; i++) {
+            if (device.equals(String.valueOf(i)) || device.equals(infos[i].getName())) {
+                return infos[i];
+            }
+        }
+        throw new IllegalArgumentException("No mixer " + device + ", -list shows the mixers");
+    }
+
+    /**
+     * Creates a factory of daemon threads with numbered names.
+     *
+     * @param prefix The start of the thread names.
+     * @return The thread factory.
+     */
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Sets whether the drift of the clocks is followed during the recording.
+     * Without it, the devices are only lined up at the start and drift apart
+     * from there on. Has to be set before the recording starts.
+     *
+     * @param compensating True to follow the drift, which is the default.
+     */
+    public void setDriftCompensation(boolean compensating) {
+        this.compensating = compensating;
+    }
+
+    /**
+     * Opens every device, creates the file and starts all lines together.
+     *
+     * @throws LineUnavailableException If a device can not be opened.
+     * @throws IOException If the file can not be created.
+     */
+    public void start() throws LineUnavailableException, IOException {
+        BufferSettings buffers = BufferSettings.of(BufferProfile.Balanced);
+        int blockSize = buffers.getBlockSize(format);
+        int opened = 0;
+        try {
+            for (Track track : tracks) {
+                track.open(blockSize, buffers.getLineBufferSize(format));
+                opened++;
+            }
+            sink = createSink();
+        } catch (LineUnavailableException | IOException | RuntimeException ex) {
+            for (int i = 0; i < opened; i++) {
+                tracks[i].source.close();
+            }
+            throw ex;
+        }
+
+        workers = Executors.newFixedThreadPool(Math.min(tracks.length, Runtime.getRuntime().availableProcessors()), namedThreads("capture-group-resampler"));
+        for (int i = 0; i < tracks.length; i++) {
+            Track track = tracks[i];
+            String name = "capture-group-device-" + i;
+            track.thread = new Thread(() -> capture(track), name);
+            track.thread.setPriority(Thread.MAX_PRIORITY);
+            track.thread.start();
+        }
+        aligner = new Thread(this::align, "capture-group-aligner");
+        aligner.start();
+
+        //The lines are started one right after the other, before any of them is read.
+        for (Track track : tracks) {
+            track.source.start();
+        }
+        go.countDown();
+    }
+
+    /**
+     * Creates the file the recording is written to, according to the output
+     * mode.
+     *
+     * @return The created file.
+     * @throws IOException If the file can not be created.
+     */
+    private AudioSink createSink() throws IOException {
+        File directory = file.getAbsoluteFile().getParentFile();
+        String name = file.getName().replaceFirst("\\.wav$", "");
+
+        switch (outputMode) {
+            case Mapped:
+                return new MappedWavFileWriter(file, outputFormat);
+            case Segmented:
+                return new SegmentingWavWriter(directory, name, outputFormat, OutputMode.Stream, SegmentingWavWriter.segmentBytes(outputFormat, 0));
+            case Flac:
+                return new FlacFileWriter(new File(directory, name + ".flac"), outputFormat);
+            case Split:
+                return new ChannelSplitWriter(directory, name, outputFormat, OutputMode.Stream);
+            default:
+                return new WavFileWriter(file, outputFormat);
+        }
+    }
+
+    /**
+     * Stops every line. The audio the lines still hold is written before
+     * the file is finished.
+     */
+    public void stop() {
+        stopped = true;
+        for (Track track : tracks) {
+            track.source.stop();
+        }
+        //A recording stopped before it started has capture threads that are still waiting.
+        go.countDown();
+    }
+
+    /**
+     * Waits until the recording has been stopped and the file is finished.
+     *
+     * @throws IOException If the file could not be written.
+     * @throws InterruptedException If the thread is interrupted while
+     * waiting.
+     */
+    public void awaitFinished() throws IOException, InterruptedException {
+        for (Track track : tracks) {
+            if (track.thread != null) {
+                track.thread.join();
+            }
+        }
+        if (aligner != null) {
+            aligner.join();
+        }
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Captures from one device until its line is stopped, and stamps every
+     * read with the moment it came back.
+     *
+     * @param track The device.
+     */
+    private void capture(Track track) {
+        CaptureSource source = track.source;
+        int frameSize = format.getFrameSize();
+        try {
+            go.await();
+            while (true) {
+                int read = source.read(track.block, 0, track.block.length);
+                if (read < 0) {
+                    break;
+                }
+                track.readFrames += read / frameSize;
+
+                //The position is stamped with the moment halfway the asking, unless the thread was held up while asking.
+                //It is asked before what is available, so frames that come in between are not taken for lost ones.
+                long before = System.nanoTime();
+                long position = source.getLongFramePosition();
+                int available = source.available();
+                long after = System.nanoTime();
+
+                //Frames the line counted but that are neither read nor waiting were lost, silence keeps their place.
+                long lost = position - available / frameSize - track.readFrames;
+                if (lost > 0) {
+                    track.readFrames += lost;
+                    track.pendingSilence += lost;
+                    track.lostFrames += lost;
+                }
+                if (after - before <= MAX_STAMP_NANOS && !stopped) {
+                    track.estimator.add(before + (after - before) / 2, track.readFrames + available / frameSize);
+                }
+
+                queueSilence(track);
+                queue(track, track.block, read);
+            }
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        } finally {
+            track.ring.close();
+            source.close();
+        }
+    }
+
+    /**
+     * Puts the frames of silence a device still owes in its ring buffer, as
+     * far as they fit.
+     *
+     * @param track The device.
+     */
+    private void queueSilence(Track track) {
+        int frameSize = format.getFrameSize();
+        while (track.pendingSilence > 0) {
+            byte[] block = track.ring.claim();
+            if (block == null) {
+                return;
+            }
+            int frames = (int) Math.min(track.pendingSilence, block.length / frameSize);
+            for (int position = 0; position < frames * frameSize; position += frameSize) {
+                System.arraycopy(silentFrame, 0, block, position, frameSize);
+            }
+            track.ring.publish(frames * frameSize);
+            track.pendingSilence -= frames;
+        }
+    }
+
+    /**
+     * Puts captured frames in the ring buffer of a device. Frames that do
+     * not fit are owed as silence, behind any silence that is still owed.
+     *
+     * @param track The device.
+     * @param data The captured frames.
+     * @param length The amount of bytes.
+     */
+    private void queue(Track track, byte[] data, int length) {
+        byte[] block = track.pendingSilence > 0 ? null : track.ring.claim();
+        if (block == null) {
+            track.pendingSilence += length / format.getFrameSize();
+            track.lostFrames += length / format.getFrameSize();
+            return;
+        }
+        System.arraycopy(data, 0, block, 0, length);
+        track.ring.publish(length);
+    }
+
+    /**
+     * Lines the devices up and writes them, until the reference has ended.
+     * Nothing is written until every clock has been measured for a while.
+     */
+    private void align() {
+        int chunkFrames = Math.max(1, (int) (format.getSampleRate() * CHUNK_MILLIS / 1000));
+        byte[] chunk = new byte[chunkFrames * outputFormat.getFrameSize()];
+        for (Track track : tracks) {
+            track.samples = new double[format.getChannels()][chunkFrames];
+        }
+        Track reference = tracks[0];
+        try {
+            while (!collect()) {
+                if (isMeasured()) {
+                    break;
+                }
+                sleep();
+            }
+            for (int i = 1; i < tracks.length; i++) {
+                tracks[i].resampler.setPosition(positionOf(tracks[i], 0));
+            }
+
+            long next = 0;//The next frame of the reference to write.
+            double[] ends = new double[tracks.length];
+            while (true) {
+                boolean ended = collect();
+                long available = reference.resampler.getInputEnd() - next;
+                if (available < chunkFrames && !ended) {
+                    sleep();
+                    continue;
+                }
+                int count = (int) Math.min(chunkFrames, available);
+                if (count <= 0) {
+                    break;
+                }
+
+                //Every other device needs the input around the last frame it is resampled at.
+                ends[0] = next + count;
+                boolean ready = true;
+                for (int i = 1; i < tracks.length; i++) {
+                    Track track = tracks[i];
+                    double position = track.resampler.getPosition();
+                    double step = compensating ? (positionOf(track, next + count) - position) / count : 1;
+                    ends[i] = position + count * Math.max(1 - MAX_CORRECTION, Math.min(1 + MAX_CORRECTION, step));
+                    ready &= track.ended || track.resampler.getInputEnd() > (long) Math.floor(ends[i]) + DriftResampler.getReach();
+                }
+                if (!ready) {
+                    sleep();
+                    continue;
+                }
+
+                List<Future<?>> tasks = new ArrayList<>();
+                for (int i = 0; i < tracks.length; i++) {
+                    Track track = tracks[i];
+                    double end = ends[i];
+                    tasks.add(workers.submit(() -> {
+                        track.resampler.process(end, count, track.samples, 0);
+                        encode(track.samples, count, chunk, track.firstChannel);
+                    }));
+                }
+                for (Future<?> task : tasks) {
+                    await(task);
+                }
+                sink.write(chunk, 0, count * outputFormat.getFrameSize());
+                next += count;
+                framesWritten = next;
+            }
+        } catch (IOException ex) {
+            failure = ex;
+            stop();
+        } finally {
+            try {
+                sink.finish();
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+            workers.shutdown();
+        }
+    }
+
+    /**
+     * Takes the captured blocks of every device out of its ring buffer and
+     * adds them to its resampler.
+     *
+     * @return True if the reference has ended and all its blocks are taken.
+     */
+    private boolean collect() {
+        int frameSize = format.getFrameSize();
+        for (Track track : tracks) {
+            byte[] block;
+            while ((block = track.ring.poll()) != null) {
+                int frames = track.ring.takenLength() / frameSize;
+                decode(block, frames, track.decoded);
+                track.ring.release();
+                track.resampler.append(track.decoded, frames);
+            }
+            track.ended = track.ring.isDrained();
+        }
+        return tracks[0].ended;
+    }
+
+    /**
+     * Tells whether the clock of every device has been measured long enough
+     * to line it up.
+     *
+     * @return True if every clock has been measured.
+     */
+    private boolean isMeasured() {
+        for (Track track : tracks) {
+            if (track.estimator.getSpanSeconds() < WARM_UP_SECONDS) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Gives back the position of the frame of a device that was taken at the
+     * same moment as a frame of the reference.
+     *
+     * @param track The device.
+     * @param frame The frame of the reference.
+     * @return The position in the frames of the device, with a fraction.
+     */
+    private double positionOf(Track track, long frame) {
+        //A recording stopped before every line was read once is not lined up.
+        if (track.estimator.getPairs() == 0 || tracks[0].estimator.getPairs() == 0) {
+            return frame;
+        }
+        return track.estimator.getFrameAt(tracks[0].estimator.getNanosAt(frame));
+    }
+
+    /**
+     * Waits a moment for more audio.
+     */
+    private static void sleep() {
+        try {
+            Thread.sleep(POLL_MILLIS);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Waits until a resampling task is done.
+     *
+     * @param task The task.
+     * @throws IOException If the task failed.
+     */
+    private static void await(Future<?> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    throw new IOException(ex.getCause());
+                }
+            }
+        } finally {
+            //Keeps the interrupt for the code that called this.
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Reads the samples of captured frames, in any PCM layout. Samples
+     * smaller than their container are in its low bits.
+     *
+     * @param data The captured frames.
+     * @param frames The amount of frames.
+     * @param output The samples of every channel, between -1 and 1.
+     */
+    private void decode(byte[] data, int frames, double[][] output) {
+        int channels = format.getChannels();
+        int bytesPerSample = format.getFrameSize() / channels;
+        int bits = format.getSampleSizeInBits();
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        boolean bigEndian = format.isBigEndian();
+        double fullScale = 1L << (bits - 1);
+        int position = 0;
+        for (int j = 0; j < frames; j++) {
+            for (int c = 0; c < channels; c++, position += bytesPerSample) {
+                long value = 0;
+                for (int k = 0; k < bytesPerSample; k++) {
+                    value = value << 8 | (data[position + (bigEndian ? k : bytesPerSample - 1 - k)] & 0xFF);
+                }
+                value = signed ? value << (64 - bits) >> (64 - bits) : value - (1L << (bits - 1));
+                output[c][j] = value / fullScale;
+            }
+        }
+    }
+
+    /**
+     * Rounds the samples of one device to the output sample size and puts
+     * them in its channels of the output frames, in the low bits of the
+     * containers.
+     *
+     * @param samples The samples of every channel of the device, between -1
+     * and 1.
+     * @param frames The amount of frames.
+     * @param chunk The output frames.
+     * @param firstChannel The output channel of the first channel of the
+     * device.
+     */
+    private void encode(double[][] samples, int frames, byte[] chunk, int firstChannel) {
+        int frameSize = outputFormat.getFrameSize();
+        int bytesPerSample = frameSize / outputFormat.getChannels();
+        int bits = outputFormat.getSampleSizeInBits();
+        double fullScale = 1L << (bits - 1);
+        long highest = (1L << (bits - 1)) - 1;
+        long lowest = -(1L << (bits - 1));
+        for (int c = 0; c < samples.length; c++) {
+            double[] channel = samples[c];
+            int position = (firstChannel + c) * bytesPerSample;
+            for (int j = 0; j < frames; j++, position += frameSize) {
+                long value = Math.max(lowest, Math.min(highest, Math.round(channel[j] * fullScale)));
+                if (bytesPerSample == 1) {
+                    value += 1L << (bits - 1);
+                }
+                for (int k = 0; k < bytesPerSample; k++) {
+                    chunk[position + k] = (byte) (value >> (8 * k));
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives back the audio format of the file, with the channels of every
+     * device after those of the one before.
+     *
+     * @return The audio format.
+     */
+    public AudioFormat getOutputFormat() {
+        return outputFormat;
+    }
+
+    /**
+     * Gives back the amount of devices.
+     *
+     * @return The amount of devices.
+     */
+    public int getTrackCount() {
+        return tracks.length;
+    }
+
+    /**
+     * Gives back how much the clock of a device runs off that of the
+     * reference, as measured so far.
+     *
+     * @param track The number of the device, 0 for the reference.
+     * @return The drift in parts per million, positive if the device is
+     * fast.
+     */
+    public double getDriftPpm(int track) {
+        return (tracks[track].estimator.getRate() / tracks[0].estimator.getRate() - 1) * 1e6;
+    }
+
+    /**
+     * Gives back how much earlier a device started capturing than the
+     * reference, as measured so far.
+     *
+     * @param track The number of the device, 0 for the reference.
+     * @return The time in milliseconds, negative if the device started
+     * later.
+     */
+    public double getStartOffsetMillis(int track) {
+        return positionOf(tracks[track], 0) / format.getSampleRate() * 1000;
+    }
+
+    /**
+     * Gives back the amount of frames of a device that were lost, by its line
+     * or because they did not fit in its ring buffer, and replaced by
+     * silence.
+     *
+     * @param track The number of the device, 0 for the reference.
+     * @return The amount of frames.
+     */
+    public long getLostFrames(int track) {
+        return tracks[track].lostFrames;
+    }
+
+    /**
+     * Gives back the amount of frames written to the file.
+     *
+     * @return The amount of frames.
+     */
+    public long getFramesWritten() {
+        return framesWritten;
+    }
+
+    /**
+     * One device of the group, with the state of its capture thread and of
+     * its resampling.
+     */
+    private class Track {
+
+        private final CaptureSource source;//The device.
+        private final int firstChannel;//The channel in the file of the first channel of the device.
+        private final DriftEstimator estimator;//Works out when every frame of the device was taken.
+        private final DriftResampler resampler;//Resamples the device to the clock of the reference.
+        private BlockRingBuffer ring;//The captured blocks between the capture thread and the aligner.
+        private byte[] block;//The block the capture thread reads into.
+        private double[][] decoded;//The samples of one block.
+        private double[][] samples;//The resampled samples of one chunk.
+        private Thread thread;//The capture thread.
+        private long readFrames;//The amount of frames read from the line, lost ones included.
+        private long pendingSilence;//The amount of frames of silence that did not fit in the ring buffer yet.
+        private volatile long lostFrames;//The amount of frames replaced by silence.
+        private boolean ended;//Tells whether the capture thread has stopped and every block is taken.
+
+        /**
+         * Constructor for the Track class.
+         *
+         * @param source The device.
+         * @param firstChannel The channel in the file of the first channel
+         * of the device.
+         */
+        Track(CaptureSource source, int firstChannel) {
+            this.source = source;
+            this.firstChannel = firstChannel;
+            estimator = new DriftEstimator(format.getSampleRate());
+            resampler = new DriftResampler(format.getChannels());
+        }
+
+        /**
+         * Opens the line of the device and the ring buffer behind it.
+         *
+         * @param blockSize The size of one block in bytes.
+         * @param lineBufferSize The size of the buffer of the line in bytes.
+         * @throws LineUnavailableException If the line can not be opened.
+         */
+        void open(int blockSize, int lineBufferSize) throws LineUnavailableException {
+            source.open(format, lineBufferSize);
+            block = new byte[blockSize];
+            decoded = new double[format.getChannels()][blockSize / format.getFrameSize()];
+            int blockMillis = Math.max(1, (int) (blockSize * 1000L / (format.getFrameSize() * (long) format.getSampleRate())));
+            ring = new BlockRingBuffer(RING_MILLIS / blockMillis, blockSize);
+        }
+    }
+}
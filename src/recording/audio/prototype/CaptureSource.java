@@ -0,0 +1,98 @@
+package recording.audio.prototype;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * A source of captured audio data. Hides where the audio comes from, so the
+ * recorder can capture from a microphone as well as from a generated signal.
+ *
+ * @author Jafeth
+ */
+public interface CaptureSource {
+
+    /**
+     * Checks if this source can capture in the given audio format.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    boolean isFormatSupported(AudioFormat format);
+
+    /**
+     * Opens the source with the given audio format.
+     *
+     * @param format The audio format to capture in.
+     * @throws LineUnavailableException If the source can not be opened.
+     */
+    void open(AudioFormat format) throws LineUnavailableException;
+
+    /**
+     * Opens the source with the given audio format and buffer size. A source
+     * that has no buffer of its own to size opens as with open(format).
+     *
+     * @param format The audio format to capture in.
+     * @param bufferSize The size of the internal buffer in bytes, 0 to let
+     * the source choose.
+     * @throws LineUnavailableException If the source can not be opened.
+     */
+    default void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        open(format);
+    }
+
+    /**
+     * Starts the capturing of audio data.
+     */
+    void start();
+
+    /**
+     * Reads captured audio data into the given buffer. Blocks until the
+     * requested amount of data is captured or the source is stopped.
+     *
+     * @param buffer The buffer the audio data is read into.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to read, a multiple of the frame size.
+     * @return The amount of bytes read, or -1 if the source has been stopped
+     * and no data is left.
+     */
+    int read(byte[] buffer, int offset, int length);
+
+    /**
+     * Gives back the amount of bytes that can be read without blocking.
+     *
+     * @return The amount of available bytes.
+     */
+    int available();
+
+    /**
+     * Gives back the amount of frames captured since the source was opened.
+     *
+     * @return The frame position.
+     */
+    long getLongFramePosition();
+
+    /**
+     * Gives back the size of the internal buffer of the source in bytes.
+     *
+     * @return The buffer size.
+     */
+    int getBufferSize();
+
+    /**
+     * Gives back the audio format the source was opened with.
+     *
+     * @return The audio format, or null if the source is not open.
+     */
+    AudioFormat getFormat();
+
+    /**
+     * Stops the capturing of audio data. Data that was already captured can
+     * still be read.
+     */
+    void stop();
+
+    /**
+     * Closes the source and releases its resources.
+     */
+    void close();
+}
@@ -37,4 +37,29 @@ public class Channel {
     public int getChannels() {
         return channels;
     }
+
+    /**
+     * Gives back short names of the speakers of a channel layout, in the
+     * order the channels are recorded in.
+     * @param channels The amount of channels recorded on.
+     * @return The name of every channel.
+     */
+    public static String[] getSpeakerNames(int channels) {
+        switch (channels) {
+            case 1:
+                return new String[]{"C"};
+            case 2:
+                return new String[]{"L", "R"};
+            case 4:
+                return new String[]{"FL", "FR", "BL", "BR"};
+            case 6:
+                return new String[]{"FL", "FR", "FC", "LFE", "BL", "BR"};
+            default:
+                String[] names = new String[channels];
+                for (int i = 0; i < channels; i++) {
+                    names[i] = "CH" + (i + 1);
+                }
+                return names;
+        }
+    }
 }
@@ -0,0 +1,155 @@
+package recording.audio.prototype;
+
+/**
+ * Mixes the channels of one channel layout to those of another, such as 5.1
+ * surround down to stereo. Uses the speaker order of Channel. The centre and
+ * the back speakers are mixed in 3 dB lower, as ITU-R BS.775 does, the LFE
+ * channel is left out, and the mix is scaled down so a full scale input can
+ * not clip. Layouts that are not known are mixed channel by channel.
+ *
+ * @author Jafeth
+ */
+public class ChannelMixer {
+
+    private static final double MINUS_3_DB = Math.sqrt(0.5);//The gain of a speaker that is mixed in 3 dB lower.
+
+    private final int inputChannels;//The amount of channels that are mixed.
+    private final int outputChannels;//The amount of channels that are mixed to.
+    private final double[][] gains;//The gain of every input channel in every output channel.
+    private final boolean passThrough;//Tells whether every channel stays as it is.
+
+    /**
+     * Constructor for the ChannelMixer class.
+     *
+     * @param inputChannels The amount of channels that are mixed.
+     * @param outputChannels The amount of channels that are mixed to.
+     */
+    public ChannelMixer(int inputChannels, int outputChannels) {
+        this.inputChannels = inputChannels;
+        this.outputChannels = outputChannels;
+        gains = new double[outputChannels][inputChannels];
+        String[] inputNames = Channel.getSpeakerNames(inputChannels);
+        String[] outputNames = Channel.getSpeakerNames(outputChannels);
+
+        if (inputChannels == 1) {
+            //Puts a mono recording on every speaker.
+            for (double[] gain : gains) {
+                gain[0] = 1;
+            }
+        } else if (outputChannels == 1) {
+            for (int i = 0; i < inputChannels; i++) {
+                gains[0][i] = inputNames[i].equals("LFE") ? 0 : 1;
+            }
+        } else if (inputChannels == 6 && outputChannels == 2) {
+            set(inputNames, outputNames, "FL", "L", 1);
+            set(inputNames, outputNames, "FR", "R", 1);
+            set(inputNames, outputNames, "FC", "L", MINUS_3_DB);
+            set(inputNames, outputNames, "FC", "R", MINUS_3_DB);
+            set(inputNames, outputNames, "BL", "L", MINUS_3_DB);
+            set(inputNames, outputNames, "BR", "R", MINUS_3_DB);
+        } else if (inputChannels == 4 && outputChannels == 2) {
+            set(inputNames, outputNames, "FL", "L", 1);
+            set(inputNames, outputNames, "FR", "R", 1);
+            set(inputNames, outputNames, "BL", "L", MINUS_3_DB);
+            set(inputNames, outputNames, "BR", "R", MINUS_3_DB);
+        } else if (inputChannels == 6 && outputChannels == 4) {
+            set(inputNames, outputNames, "FL", "FL", 1);
+            set(inputNames, outputNames, "FR", "FR", 1);
+            set(inputNames, outputNames, "FC", "FL", MINUS_3_DB);
+            set(inputNames, outputNames, "FC", "FR", MINUS_3_DB);
+            set(inputNames, outputNames, "BL", "BL", 1);
+            set(inputNames, outputNames, "BR", "BR", 1);
+        } else {
+            for (int i = 0; i < Math.min(inputChannels, outputChannels); i++) {
+                gains[i][i] = 1;
+            }
+        }
+
+        //Scales every output channel down to the loudest it can get without clipping.
+        boolean identity = inputChannels == outputChannels;
+        for (int o = 0; o < outputChannels; o++) {
+            double sum = 0;
+            for (int i = 0; i < inputChannels; i++) {
+                sum += gains[o][i];
+                identity &= gains[o][i] == (o == i ? 1 : 0);
+            }
+            if (sum > 1) {
+                for (int i = 0; i < inputChannels; i++) {
+                    gains[o][i] /= sum;
+                }
+            }
+        }
+        passThrough = identity;
+    }
+
+    /**
+     * Sets the gain of one speaker in another.
+     *
+     * @param inputNames The speakers of the input layout.
+     * @param outputNames The speakers of the output layout.
+     * @param from The speaker that is mixed.
+     * @param to The speaker it is mixed to.
+     * @param gain The gain.
+     */
+    private void set(String[] inputNames, String[] outputNames, String from, String to, double gain) {
+        gains[indexOf(outputNames, to)][indexOf(inputNames, from)] = gain;
+    }
+
+    /**
+     * Gives back where a speaker is in a layout.
+     *
+     * @param names The speakers of the layout.
+     * @param name The speaker.
+     * @return The channel of the speaker.
+     */
+    private static int indexOf(String[] names, String name) {
+        for (int i = 0; i < names.length; i++) {
+            if (names[i].equals(name)) {
+                return i;
+            }
+        }
+        throw new IllegalArgumentException("No speaker " + name);
+    }
+
+    /**
+     * Gives back the amount of channels that are mixed to.
+     *
+     * @return The amount of output channels.
+     */
+    public int getOutputChannels() {
+        return outputChannels;
+    }
+
+    /**
+     * Tells whether every channel stays as it is.
+     *
+     * @return True if the samples are copied as they are.
+     */
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * Mixes one frame.
+     *
+     * @param frame The samples of every input channel.
+     * @param output The samples of every output channel.
+     * @param index The position of the frame in the output.
+     */
+    public void mix(double[] frame, double[][] output, int index) {
+        if (passThrough) {
+            for (int c = 0; c < outputChannels; c++) {
+                output[c][index] = frame[c];
+            }
+            return;
+        }
+        for (int o = 0; o < outputChannels; o++) {
+            double[] gain = gains[o];
+            double sum = 0;
+            for (int i = 0; i < inputChannels; i++) {
+                sum += gain[i] * frame[i];
+            }
+            output[o][index] = sum;
+        }
+    }
+}
@@ -0,0 +1,328 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A writer of one mono WAV file per channel, for editing the channels of a
+ * recording apart. Every block is split over the channels in one pass, and
+ * each channel is written by a thread of its own. The channels of one block
+ * are written while the next block is split, so the writing thread only
+ * waits when the disk falls behind.
+ *
+ * @author Jafeth
+ */
+public class ChannelSplitWriter implements AudioSink {
+
+    private final int channels;//The amount of channels.
+    private final int bytesPerSample;//The amount of bytes one sample takes up.
+    private final AudioSink[] writers;//The writer of every channel.
+    private final File[] files;//The file of every channel.
+    private final ExecutorService[] lanes;//The thread of every channel, so its writes stay in order.
+    private final byte[][][] splitBlocks = new byte[2][][];//Two sets of split blocks, one being written while the other is filled.
+    private final Future<?>[][] writing = new Future<?>[2][];//The writes of each set of split blocks.
+    private int current;//The set of split blocks that is filled next.
+    private long bytesWritten;//The amount of audio bytes handed to the writer.
+    private boolean finished;//Tells whether the files have been finished.
+
+    /**
+     * Constructor for the ChannelSplitWriter class. Creates the file of
+     * every channel.
+     *
+     * @param directory The directory the files are written to.
+     * @param name The name of the files, followed by the name of the channel.
+     * @param format The format of the recorded audio.
+     * @param channelMode The way each file is written, either Stream or
+     * Mapped.
+     * @throws IOException If a file can not be created.
+     */
+    public ChannelSplitWriter(File directory, String name, AudioFormat format, OutputMode channelMode) throws IOException {
+        this(directory, name, format, channelMode, null);
+    }
+
+    /**
+     * Constructor for the ChannelSplitWriter class that keeps every file safe
+     * on disk as the given settings say, each with a journal of its own.
+     * Creates the file of every channel.
+     *
+     * @param directory The directory the files are written to.
+     * @param name The name of the files, followed by the name of the channel.
+     * @param format The format of the recorded audio.
+     * @param channelMode The way each file is written, either Stream or
+     * Mapped. Mapped files keep no journal.
+     * @param durability How every file is kept safe on disk, or null to keep
+     * no journal.
+     * @throws IOException If a file can not be created.
+     */
+    public ChannelSplitWriter(File directory, String name, AudioFormat format, OutputMode channelMode, DurabilitySettings durability) throws IOException {
+        if (channelMode != OutputMode.Stream && channelMode != OutputMode.Mapped) {
+            throw new IllegalArgumentException("Channels are written as single WAV files");
+        }
+        if (channelMode == OutputMode.Mapped && durability != null) {
+            throw new IllegalArgumentException("Mapped channel files keep no journal");
+        }
+        channels = format.getChannels();
+        bytesPerSample = format.getFrameSize() / channels;
+
+        //Every channel keeps the samples as they were captured, only one to a frame.
+        AudioFormat mono = new AudioFormat(format.getEncoding(), format.getSampleRate(), format.getSampleSizeInBits(), 1, bytesPerSample, format.getFrameRate(), format.isBigEndian());
+
+        String[] speakers = Channel.getSpeakerNames(channels);
+        writers = new AudioSink[channels];
+        files = new File[channels];
+        lanes = new ExecutorService[channels];
+        try {
+            for (int channel = 0; channel < channels; channel++) {
+                files[channel] = new File(directory, name + "-" + speakers[channel] + ".wav");
+                writers[channel] = channelMode == OutputMode.Mapped ? new MappedWavFileWriter(files[channel], mono) : new WavFileWriter(files[channel], mono, durability);
+                String threadName = "channel-writer-" + speakers[channel];
+                lanes[channel] = Executors.newSingleThreadExecutor(runnable -> {
+                    Thread thread = new Thread(runnable, threadName);
+                    thread.setDaemon(true);
+                    return thread;
+                });
+            }
+        } catch (IOException ex) {
+            //Completes the files that were created, leaving them empty.
+            for (AudioSink writer : writers) {
+                if (writer != null) {
+                    try {
+                        writer.finish();
+                    } catch (IOException suppressed) {
+                        ex.addSuppressed(suppressed);
+                    }
+                }
+            }
+            close();
+            throw ex;
+        }
+
+        for (int set = 0; set < 2; set++) {
+            splitBlocks[set] = new byte[channels][0];
+            writing[set] = new Future<?>[channels];
+        }
+    }
+
+    /**
+     * Splits the audio data over the channels and hands every channel to its
+     * thread.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write.
+     * @throws IOException If an earlier block could not be written.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        //Waits until the set of split blocks to fill has been written.
+        awaitSet(current);
+
+        byte[][] split = splitBlocks[current];
+        int channelLength = length / channels;
+        if (split[0].length < channelLength) {
+            for (int channel = 0; channel < channels; channel++) {
+                split[channel] = new byte[channelLength];
+            }
+        }
+        split(data, offset, length, split);
+
+        for (int channel = 0; channel < channels; channel++) {
+            AudioSink writer = writers[channel];
+            byte[] samples = split[channel];
+            writing[current][channel] = lanes[channel].submit(() -> {
+                writer.write(samples, 0, channelLength);
+                return null;
+            });
+        }
+        current ^= 1;
+        bytesWritten += length;
+    }
+
+    /**
+     * Copies every sample of the audio data to the block of its channel,
+     * reading the data once from start to end.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to split.
+     * @param split The block of every channel.
+     */
+    private void split(byte[] data, int offset, int length, byte[][] split) {
+        int end = offset + length;
+        int position = 0;
+        switch (bytesPerSample) {
+            case 1:
+                for (int i = offset; i < end; position++) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        split[channel][position] = data[i++];
+                    }
+                }
+                break;
+            case 2:
+                for (int i = offset; i < end; position += 2) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        byte[] target = split[channel];
+                        target[position] = data[i];
+                        target[position + 1] = data[i + 1];
+                        i += 2;
+                    }
+                }
+                break;
+            case 3:
+                for (int i = offset; i < end; position += 3) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        byte[] target = split[channel];
+                        target[position] = data[i];
+                        target[position + 1] = data[i + 1];
+                        target[position + 2] = data[i + 2];
+                        i += 3;
+                    }
+                }
+                break;
+            case 4:
+                for (int i = offset; i < end; position += 4) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        byte[] target = split[channel];
+                        target[position] = data[i];
+                        target[position + 1] = data[i + 1];
+                        target[position + 2] = data[i + 2];
+                        target[position + 3] = data[i + 3];
+                        i += 4;
+                    }
+                }
+                break;
+            default:
+                for (int i = offset; i < end; position += bytesPerSample) {
+                    for (int channel = 0; channel < channels; channel++) {
+                        System.arraycopy(data, i, split[channel], position, bytesPerSample);
+                        i += bytesPerSample;
+                    }
+                }
+        }
+    }
+
+    /**
+     * Waits until every channel of a set of split blocks has been written.
+     *
+     * @param set The set of split blocks.
+     * @throws IOException If a channel could not be written.
+     */
+    private void awaitSet(int set) throws IOException {
+        Future<?>[] tasks = writing[set];
+        for (int channel = 0; channel < channels; channel++) {
+            if (tasks[channel] != null) {
+                await(tasks[channel]);
+                tasks[channel] = null;
+            }
+        }
+    }
+
+    /**
+     * Waits until a task of a channel thread is done.
+     *
+     * @param task The task.
+     * @throws IOException If the task failed.
+     */
+    private static void await(Future<?> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw (IOException) ex.getCause();
+                    }
+                    throw new IOException(ex.getCause());
+                }
+            }
+        } finally {
+            //Keeps the interrupt for the code that called this.
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gives back the file of every channel, in the order the channels are
+     * recorded in.
+     *
+     * @return The files.
+     */
+    public File[] getFiles() {
+        return files.clone();
+    }
+
+    /**
+     * Gives back the amount of audio bytes handed to the writer.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Waits for the last blocks and completes every file at the same time.
+     *
+     * @throws IOException If a file can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        IOException failure = null;
+        Future<?>[] finishing = new Future<?>[channels];
+        for (int channel = 0; channel < channels; channel++) {
+            AudioSink writer = writers[channel];
+            finishing[channel] = lanes[channel].submit(() -> {
+                writer.finish();
+                return null;
+            });
+        }
+
+        //The writes that are still going on come before the finish on every thread.
+        for (int set = 0; set < 2; set++) {
+            try {
+                awaitSet(set);
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+        }
+        for (Future<?> task : finishing) {
+            try {
+                await(task);
+            } catch (IOException ex) {
+                failure = failure == null ? ex : failure;
+            }
+        }
+        close();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Stops the channel threads.
+     */
+    private void close() {
+        for (ExecutorService lane : lanes) {
+            if (lane != null) {
+                lane.shutdown();
+            }
+        }
+    }
+}
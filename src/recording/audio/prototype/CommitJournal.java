@@ -0,0 +1,208 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.zip.CRC32;
+
+/**
+ * A small sidecar file next to a WAV file that is being recorded, holding how
+ * many audio bytes are safely on disk. Every commit appends a record with a
+ * checksum, so a record cut off by a crash is recognised and the one before
+ * it is used. The journal is deleted when the file is complete, so a journal
+ * that is found later means the recording was interrupted.
+ *
+ * @author Jafeth
+ */
+public class CommitJournal {
+
+    private static final int MAGIC = 0x524A4E4C;//Marks a journal file, "RJNL".
+    private static final int VERSION = 1;//The version of the layout of the file.
+    private static final int HEADER_SIZE = 32;//The size of the header of the journal.
+    private static final int RECORD_SIZE = 16;//The size of one commit record.
+
+    private final File file;//The journal file.
+    private final FileChannel channel;//The channel to the journal file.
+    private final boolean sync;//Tells whether every record is synced to disk.
+    private final ByteBuffer record = ByteBuffer.allocateDirect(RECORD_SIZE);//The buffer a record is written from.
+    private long position = HEADER_SIZE;//The position the next record is written at.
+
+    /**
+     * Constructor for the CommitJournal class. Creates the journal and syncs
+     * its header, so an interrupted recording is recognised from the start.
+     *
+     * @param file The journal file, replaced if it exists.
+     * @param policy The policy the recording is written with.
+     * @param dataOffset The position of the audio data in the WAV file.
+     * @param frameSize The size of one frame in bytes.
+     * @throws IOException If the journal can not be created.
+     */
+    public CommitJournal(File file, DurabilityPolicy policy, int dataOffset, int frameSize) throws IOException {
+        this.file = file;
+        this.sync = policy != DurabilityPolicy.None;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            header.putInt(MAGIC).putInt(VERSION).putInt(policy.ordinal()).putInt(dataOffset).putInt(frameSize);
+            header.clear();
+            while (header.hasRemaining()) {
+                channel.write(header, header.position());
+            }
+            channel.force(true);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Gives back the journal that belongs to a WAV file, so RecordAudio.wav
+     * has RecordAudio.journal.
+     *
+     * @param wavFile The WAV file.
+     * @return The journal file.
+     */
+    public static File journalFor(File wavFile) {
+        File absolute = wavFile.getAbsoluteFile();
+        return new File(absolute.getParentFile(), absolute.getName().replaceFirst("\\.wav$", "") + ".journal");
+    }
+
+    /**
+     * Records that the given amount of audio bytes is on disk.
+     *
+     * @param committedBytes The amount of audio bytes that are safely
+     * written.
+     * @throws IOException If the record can not be written.
+     */
+    public void commit(long committedBytes) throws IOException {
+        record.clear();
+        record.putLong(0, committedBytes);
+        record.putLong(8, checksumOf(committedBytes));
+        while (record.hasRemaining()) {
+            channel.write(record, position + record.position());
+        }
+        position += RECORD_SIZE;
+        if (sync) {
+            channel.force(false);
+        }
+    }
+
+    /**
+     * Gives back the checksum of a record.
+     *
+     * @param committedBytes The amount of bytes in the record.
+     * @return The checksum.
+     */
+    private static long checksumOf(long committedBytes) {
+        CRC32 crc = new CRC32();
+        crc.update(ByteBuffer.allocate(8).putLong(0, committedBytes).array());
+        return crc.getValue();
+    }
+
+    /**
+     * Closes the journal and deletes it, after the WAV file is complete.
+     *
+     * @throws IOException If the journal can not be closed.
+     */
+    public void delete() throws IOException {
+        channel.close();
+        file.delete();
+    }
+
+    /**
+     * Reads a journal that was left behind.
+     *
+     * @param file The journal file.
+     * @return What the journal holds, or null if it is not a journal.
+     * @throws IOException If the journal can not be read.
+     */
+    public static Entry read(File file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file.toPath(), StandardOpenOption.READ)) {
+            ByteBuffer header = ByteBuffer.allocate(HEADER_SIZE);
+            while (header.hasRemaining() && channel.read(header) >= 0) {
+                //Reads until the header is complete or the file ends.
+            }
+            header.flip();
+            if (header.remaining() < HEADER_SIZE || header.getInt(0) != MAGIC || header.getInt(4) != VERSION) {
+                return null;
+            }
+            DurabilityPolicy[] policies = DurabilityPolicy.values();
+            int policy = header.getInt(8);
+            if (policy < 0 || policy >= policies.length) {
+                return null;
+            }
+
+            //Takes the last record with a right checksum, a record cut off by the crash is left out.
+            long committed = -1;
+            ByteBuffer record = ByteBuffer.allocate(RECORD_SIZE);
+            for (long position = HEADER_SIZE; position + RECORD_SIZE <= channel.size(); position += RECORD_SIZE) {
+                record.clear();
+                while (record.hasRemaining() && channel.read(record, position + record.position()) >= 0) {
+                    //Reads until the record is complete.
+                }
+                long bytes = record.getLong(0);
+                if (record.getLong(8) != checksumOf(bytes) || bytes < committed) {
+                    break;
+                }
+                committed = bytes;
+            }
+            return new Entry(policies[policy], header.getInt(12), header.getInt(16), committed);
+        }
+    }
+
+    /**
+     * What a journal that was left behind holds.
+     */
+    public static final class Entry {
+
+        private final DurabilityPolicy policy;//The policy the recording was written with.
+        private final int dataOffset;//The position of the audio data in the WAV file.
+        private final int frameSize;//The size of one frame in bytes.
+        private final long committedBytes;//The amount of audio bytes that were safely written, -1 for none.
+
+        private Entry(DurabilityPolicy policy, int dataOffset, int frameSize, long committedBytes) {
+            this.policy = policy;
+            this.dataOffset = dataOffset;
+            this.frameSize = frameSize;
+            this.committedBytes = committedBytes;
+        }
+
+        /**
+         * Gives back the policy the recording was written with.
+         *
+         * @return The policy.
+         */
+        public DurabilityPolicy getPolicy() {
+            return policy;
+        }
+
+        /**
+         * Gives back the position of the audio data in the WAV file.
+         *
+         * @return The position in bytes.
+         */
+        public int getDataOffset() {
+            return dataOffset;
+        }
+
+        /**
+         * Gives back the size of one frame.
+         *
+         * @return The frame size in bytes.
+         */
+        public int getFrameSize() {
+            return frameSize;
+        }
+
+        /**
+         * Gives back the amount of audio bytes that were safely written.
+         *
+         * @return The amount of bytes, or -1 if nothing was committed.
+         */
+        public long getCommittedBytes() {
+            return committedBytes;
+        }
+    }
+}
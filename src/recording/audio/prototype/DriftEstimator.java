@@ -0,0 +1,145 @@
+package recording.audio.prototype;
+
+/**
+ * Works out the real sample rate of a device and when it took every frame,
+ * from pairs of a moment on the clock of System.nanoTime() and the frame
+ * position of the device at that moment. A straight line is fitted through
+ * the pairs, so the jitter of single moments averages out. Older pairs count
+ * less and less, so a clock that drifts slowly, such as with the
+ * temperature of the device, is followed.
+ *
+ * The line is fitted to how far the position is from the nominal rate,
+ * which is a small number, so the sums stay exact over recordings of hours.
+ *
+ * @author Jafeth
+ */
+public class DriftEstimator {
+
+    private static final double MEMORY_SECONDS = 30;//The time after which a pair counts for a part 1/e of a new one.
+
+    private final double nominalRate;//The sample rate the device is supposed to have.
+    private long firstNanos;//The moment of the first pair.
+    private double lastSeconds;//The time of the last pair, since the first.
+    private double weight;//The weight of all pairs together.
+    private double sumT;//The weighted sum of the times.
+    private double sumR;//The weighted sum of the distances from the nominal rate.
+    private double sumTT;//The weighted sum of the squared times.
+    private double sumTR;//The weighted sum of the times multiplied by the distances.
+    private int pairs;//The amount of pairs added.
+
+    /**
+     * Constructor for the DriftEstimator class.
+     *
+     * @param nominalRate The sample rate the device is supposed to have.
+     */
+    public DriftEstimator(double nominalRate) {
+        this.nominalRate = nominalRate;
+    }
+
+    /**
+     * Adds a moment and the frame position the device had then.
+     *
+     * @param nanos The moment on the clock of System.nanoTime().
+     * @param frames The frame position of the device.
+     */
+    public synchronized void add(long nanos, long frames) {
+        if (pairs == 0) {
+            firstNanos = nanos;
+        }
+        double t = (nanos - firstNanos) / 1e9;
+        double r = frames - nominalRate * t;
+
+        //Lets every earlier pair count a bit less.
+        double decay = Math.exp(-Math.max(0, t - lastSeconds) / MEMORY_SECONDS);
+        weight = weight * decay + 1;
+        sumT = sumT * decay + t;
+        sumR = sumR * decay + r;
+        sumTT = sumTT * decay + t * t;
+        sumTR = sumTR * decay + t * r;
+        lastSeconds = t;
+        pairs++;
+    }
+
+    /**
+     * Gives back the time the pairs span, since the first one.
+     *
+     * @return The time in seconds.
+     */
+    public synchronized double getSpanSeconds() {
+        return lastSeconds;
+    }
+
+    /**
+     * Gives back the amount of pairs added.
+     *
+     * @return The amount of pairs.
+     */
+    public synchronized int getPairs() {
+        return pairs;
+    }
+
+    /**
+     * Gives back the real sample rate of the device. Until the pairs span
+     * some time, the nominal rate is the best guess.
+     *
+     * @return The sample rate in frames per second.
+     */
+    public synchronized double getRate() {
+        return nominalRate + getSlope();
+    }
+
+    /**
+     * Gives back how much the device is off its nominal rate.
+     *
+     * @return The drift in parts per million, positive if the device is
+     * fast.
+     */
+    public synchronized double getDriftPpm() {
+        return getSlope() / nominalRate * 1e6;
+    }
+
+    /**
+     * Gives back the frame position the device had at a moment.
+     *
+     * @param nanos The moment on the clock of System.nanoTime().
+     * @return The frame position, with a fraction.
+     */
+    public synchronized double getFrameAt(long nanos) {
+        double t = (nanos - firstNanos) / 1e9;
+        return nominalRate * t + getIntercept() + getSlope() * t;
+    }
+
+    /**
+     * Gives back the moment the device had a frame position.
+     *
+     * @param frame The frame position, with a fraction.
+     * @return The moment on the clock of System.nanoTime().
+     */
+    public synchronized long getNanosAt(double frame) {
+        double t = (frame - getIntercept()) / (nominalRate + getSlope());
+        return firstNanos + Math.round(t * 1e9);
+    }
+
+    /**
+     * Gives back how many frames per second the device is off its nominal
+     * rate, 0 as long as the pairs span less than a second.
+     *
+     * @return The slope of the fitted line.
+     */
+    private double getSlope() {
+        double spread = weight * sumTT - sumT * sumT;
+        if (lastSeconds < 1 || spread <= 0) {
+            return 0;
+        }
+        return (weight * sumTR - sumT * sumR) / spread;
+    }
+
+    /**
+     * Gives back the distance from the nominal rate at the first pair.
+     *
+     * @return The intercept of the fitted line.
+     */
+    private double getIntercept() {
+        return weight == 0 ? 0 : (sumR - getSlope() * sumT) / weight;
+    }
+}
@@ -0,0 +1,233 @@
+package recording.audio.prototype;
+
+import java.util.Arrays;
+
+/**
+ * Resamples a stream of audio by a ratio that may change from one chunk to
+ * the next, to follow a device whose clock runs a bit fast or slow. Unlike
+ * PolyphaseResampler, the ratio does not have to be a fraction of small
+ * numbers: every output sample may fall anywhere between two input samples.
+ * The windowed-sinc filter is kept for 256 positions between two input
+ * samples and interpolated in between. Below about 60% of the Nyquist
+ * frequency, which is 14 kHz at 48 kHz, the output is exact to about 85 dB;
+ * above that the filter rolls off.
+ *
+ * The input is added as it comes in and thrown away once no output needs
+ * it anymore. Input before the first added frame or after the last one is
+ * silence.
+ *
+ * @author Jafeth
+ */
+public class DriftResampler {
+
+    private static final int HALF = 16;//The amount of input samples used on either side of an output sample.
+    private static final int TAPS = 2 * HALF;//The amount of coefficients of one position.
+    private static final int PHASES = 256;//The amount of positions between two input samples the filter is kept for.
+    private static final double CUTOFF = 0.9;//The part of the Nyquist frequency that is kept.
+    private static final double KAISER_BETA = 8;//The shape of the window.
+    private static final double[] FILTER = createFilter();//The coefficients of every position, one position after the other, with one extra at the end.
+
+    private final int channels;//The amount of channels.
+    private double[][] input;//The input samples that are kept, of every channel.
+    private long inputStart;//The number of the first kept input frame.
+    private int inputCount;//The amount of kept input frames.
+    private long whole;//The input frame the next output frame falls on or after.
+    private double fraction;//How far past that input frame the next output frame falls, from 0 up to 1.
+
+    /**
+     * Constructor for the DriftResampler class.
+     *
+     * @param channels The amount of channels.
+     */
+    public DriftResampler(int channels) {
+        this.channels = channels;
+        input = new double[channels][4096];
+    }
+
+    /**
+     * Works out the coefficients of the filter for every position between
+     * two input samples. Every position has a gain of exactly 1.
+     *
+     * @return The coefficients.
+     */
+    private static double[] createFilter() {
+        double[] filter = new double[(PHASES + 1) * TAPS];
+        double window = bessel(KAISER_BETA);
+        for (int phase = 0; phase <= PHASES; phase++) {
+            double sum = 0;
+            for (int k = 0; k < TAPS; k++) {
+                //The distance in input samples from the output sample to the input sample the coefficient is for.
+                double t = k - HALF + 1 - (double) phase / PHASES;
+                double x = t / HALF;
+                double value = x <= -1 || x >= 1 ? 0 : CUTOFF * sinc(CUTOFF * t) * bessel(KAISER_BETA * Math.sqrt(1 - x * x)) / window;
+                filter[phase * TAPS + k] = value;
+                sum += value;
+            }
+            for (int k = 0; k < TAPS; k++) {
+                filter[phase * TAPS + k] /= sum;
+            }
+        }
+        return filter;
+    }
+
+    /**
+     * Gives back the normalised sinc of a number.
+     *
+     * @param x The number.
+     * @return sin(pi x) / (pi x), 1 at 0.
+     */
+    private static double sinc(double x) {
+        if (x == 0) {
+            return 1;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    /**
+     * Gives back the modified Bessel function of the first kind of order 0,
+     * which shapes the Kaiser window.
+     *
+     * @param x The number.
+     * @return I0(x).
+     */
+    private static double bessel(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; k < 50; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Gives back the amount of input frames used on either side of an output
+     * frame.
+     *
+     * @return The amount of frames.
+     */
+    public static int getReach() {
+        return HALF;
+    }
+
+    /**
+     * Sets the input position the next output frame falls on.
+     *
+     * @param position The input position, with a fraction, may be negative.
+     */
+    public void setPosition(double position) {
+        whole = (long) Math.floor(position);
+        fraction = position - whole;
+    }
+
+    /**
+     * Gives back the input position the next output frame falls on.
+     *
+     * @return The input position, with a fraction.
+     */
+    public double getPosition() {
+        return whole + fraction;
+    }
+
+    /**
+     * Gives back the input frame after the last one added.
+     *
+     * @return The number of the frame.
+     */
+    public long getInputEnd() {
+        return inputStart + inputCount;
+    }
+
+    /**
+     * Adds input frames after the ones added before.
+     *
+     * @param samples The samples of every channel.
+     * @param count The amount of frames.
+     */
+    public void append(double[][] samples, int count) {
+        //Throws away the input no output needs anymore, before making room.
+        long keepFrom = Math.min(getInputEnd(), Math.max(inputStart, whole - HALF));
+        int drop = (int) (keepFrom - inputStart);
+        if (drop > 0) {
+            for (int c = 0; c < channels; c++) {
+                System.arraycopy(input[c], drop, input[c], 0, inputCount - drop);
+            }
+            inputStart += drop;
+            inputCount -= drop;
+        }
+        if (inputCount + count > input[0].length) {
+            int size = Math.max(input[0].length * 2, inputCount + count);
+            for (int c = 0; c < channels; c++) {
+                input[c] = Arrays.copyOf(input[c], size);
+            }
+        }
+        for (int c = 0; c < channels; c++) {
+            System.arraycopy(samples[c], 0, input[c], inputCount, count);
+        }
+        inputCount += count;
+    }
+
+    /**
+     * Makes output frames with input positions that go up in even steps
+     * from the current position to the given end.
+     *
+     * @param end The input position after the last output frame, which is
+     * the position of the next output frame.
+     * @param count The amount of output frames.
+     * @param output The output samples of every channel.
+     * @param offset The index in the output arrays of the first frame.
+     */
+    public void process(double end, int count, double[][] output, int offset) {
+        double start = getPosition();
+        double step = (end - start) / count;
+
+        //A track that is on the clock of the output is copied as it is.
+        if (fraction == 0 && step == 1) {
+            for (int c = 0; c < channels; c++) {
+                copy(input[c], whole, output[c], offset, count);
+            }
+            whole += count;
+            return;
+        }
+
+        for (int j = 0; j < count; j++) {
+            double position = start + step * j;
+            long at = (long) Math.floor(position);
+            double phase = (position - at) * PHASES;
+            int index = (int) phase;
+            double blend = phase - index;
+            int coefficient = index * TAPS;
+            int first = (int) (at - HALF + 1 - inputStart);
+            boolean inside = first >= 0 && first + TAPS <= inputCount;
+            for (int c = 0; c < channels; c++) {
+                double[] samples = input[c];
+                double sum = 0;
+                for (int k = 0; k < TAPS; k++) {
+                    int i = first + k;
+                    if (inside || (i >= 0 && i < inputCount)) {
+                        double weight = FILTER[coefficient + k] + blend * (FILTER[coefficient + TAPS + k] - FILTER[coefficient + k]);
+                        sum += weight * samples[i];
+                    }
+                }
+                output[c][offset + j] = sum;
+            }
+        }
+        setPosition(end);
+    }
+
+    /**
+     * Copies input frames, with silence for those that are not kept.
+     *
+     * @param samples The kept input samples of a channel.
+     * @param from The number of the first input frame.
+     * @param output The output samples of the channel.
+     * @param offset The index in the output of the first frame.
+     * @param count The amount of frames.
+     */
+    private void copy(double[] samples, long from, double[] output, int offset, int count) {
+        for (int j = 0; j < count; j++) {
+            long i = from + j - inputStart;
+            output[offset + j] = i >= 0 && i < inputCount ? samples[(int) i] : 0;
+        }
+    }
+}
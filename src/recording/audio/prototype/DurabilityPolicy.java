@@ -0,0 +1,26 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of the ways the recorder makes sure the recording is on disk while
+ * it is written, so a crash loses as little of it as possible.
+ *
+ * @author Jafeth
+ */
+public enum DurabilityPolicy {
+
+    /**
+     * Leaves it to the operating system, a crash of the machine can lose everything it has not written yet
+     */
+    None,
+
+    /**
+     * Syncs the file to disk every so many milliseconds or bytes, whichever comes first
+     */
+    GroupCommit,
+
+    /**
+     * Syncs the file to disk after every block, which loses the least but costs the most
+     */
+    PerBlock;
+
+}
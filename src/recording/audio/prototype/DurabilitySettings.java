@@ -0,0 +1,95 @@
+package recording.audio.prototype;
+
+/**
+ * The settings of how the recording is kept safe on disk: the policy and,
+ * for group commits, how often the file is synced.
+ *
+ * @author Jafeth
+ */
+public final class DurabilitySettings {
+
+    private final DurabilityPolicy policy;//The way the file is synced.
+    private final long intervalMillis;//The longest time between two syncs of a group commit.
+    private final long intervalBytes;//The largest amount of audio bytes between two syncs of a group commit.
+
+    /**
+     * Constructor for the DurabilitySettings class.
+     *
+     * @param policy The way the file is synced.
+     * @param intervalMillis The longest time between two syncs of a group
+     * commit.
+     * @param intervalBytes The largest amount of audio bytes between two
+     * syncs of a group commit.
+     */
+    public DurabilitySettings(DurabilityPolicy policy, long intervalMillis, long intervalBytes) {
+        if (policy == DurabilityPolicy.GroupCommit && (intervalMillis <= 0 || intervalBytes <= 0)) {
+            throw new IllegalArgumentException("A group commit needs a positive interval");
+        }
+        this.policy = policy;
+        this.intervalMillis = intervalMillis;
+        this.intervalBytes = intervalBytes;
+    }
+
+    /**
+     * Gives back settings that leave the syncing to the operating system.
+     *
+     * @return The settings.
+     */
+    public static DurabilitySettings none() {
+        return new DurabilitySettings(DurabilityPolicy.None, 0, 0);
+    }
+
+    /**
+     * Gives back settings that sync the file every so often.
+     *
+     * @param intervalMillis The longest time between two syncs.
+     * @param intervalBytes The largest amount of audio bytes between two
+     * syncs.
+     * @return The settings.
+     */
+    public static DurabilitySettings groupCommit(long intervalMillis, long intervalBytes) {
+        return new DurabilitySettings(DurabilityPolicy.GroupCommit, intervalMillis, intervalBytes);
+    }
+
+    /**
+     * Gives back settings that sync the file after every block.
+     *
+     * @return The settings.
+     */
+    public static DurabilitySettings perBlock() {
+        return new DurabilitySettings(DurabilityPolicy.PerBlock, 0, 0);
+    }
+
+    /**
+     * Gives back the way the file is synced.
+     *
+     * @return The policy.
+     */
+    public DurabilityPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gives back the longest time between two syncs of a group commit.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getIntervalMillis() {
+        return intervalMillis;
+    }
+
+    /**
+     * Gives back the largest amount of audio bytes between two syncs of a
+     * group commit.
+     *
+     * @return The amount of bytes.
+     */
+    public long getIntervalBytes() {
+        return intervalBytes;
+    }
+
+    @Override
+    public String toString() {
+        return policy == DurabilityPolicy.GroupCommit ? policy + " every " + intervalMillis + " ms or " + intervalBytes + " bytes" : policy.toString();
+    }
+}
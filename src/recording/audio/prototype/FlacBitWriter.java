@@ -0,0 +1,172 @@
+package recording.audio.prototype;
+
+import java.util.Arrays;
+
+/**
+ * A growable buffer that FLAC data is written into bit by bit, most
+ * significant bit first, with the checksums FLAC puts in its frames.
+ *
+ * @author Jafeth
+ */
+public class FlacBitWriter {
+
+    private static final int[] CRC8 = new int[256];//The CRC-8 of every byte, polynomial x^8 + x^2 + x + 1.
+    private static final int[] CRC16 = new int[256];//The CRC-16 of every byte, polynomial x^16 + x^15 + x^2 + 1.
+
+    static {
+        for (int i = 0; i < 256; i++) {
+            int crc8 = i;
+            int crc16 = i << 8;
+            for (int bit = 0; bit < 8; bit++) {
+                crc8 = (crc8 & 0x80) != 0 ? (crc8 << 1) ^ 0x07 : crc8 << 1;
+                crc16 = (crc16 & 0x8000) != 0 ? (crc16 << 1) ^ 0x8005 : crc16 << 1;
+            }
+            CRC8[i] = crc8 & 0xFF;
+            CRC16[i] = crc16 & 0xFFFF;
+        }
+    }
+
+    private byte[] bytes;//The written bytes.
+    private int length;//The amount of complete bytes written.
+    private long cache;//The bits that do not make up a complete byte yet, in the lowest bits.
+    private int cacheBits;//The amount of bits in the cache, always below 8 between writes.
+
+    /**
+     * Constructor for the FlacBitWriter class.
+     *
+     * @param capacity The amount of bytes to make room for up front.
+     */
+    public FlacBitWriter(int capacity) {
+        bytes = new byte[Math.max(16, capacity)];
+    }
+
+    /**
+     * Writes the lowest bits of a value.
+     *
+     * @param value The value to write.
+     * @param count The amount of bits to write, at most 32.
+     */
+    public void writeBits(long value, int count) {
+        cache = (cache << count) | (value & ((1L << count) - 1));
+        cacheBits += count;
+        while (cacheBits >= 8) {
+            cacheBits -= 8;
+            if (length == bytes.length) {
+                bytes = Arrays.copyOf(bytes, bytes.length * 2);
+            }
+            bytes[length++] = (byte) (cache >>> cacheBits);
+        }
+    }
+
+    /**
+     * Writes a value in unary: as many zero bits as the value, then a one.
+     *
+     * @param value The value to write.
+     */
+    public void writeUnary(long value) {
+        while (value >= 32) {
+            writeBits(0, 32);
+            value -= 32;
+        }
+        writeBits(1, (int) value + 1);
+    }
+
+    /**
+     * Writes a value with Rice coding: the high bits in unary and the given
+     * amount of low bits as they are.
+     *
+     * @param value The value to write, not negative.
+     * @param parameter The amount of low bits.
+     */
+    public void writeRice(long value, int parameter) {
+        writeUnary(value >>> parameter);
+        writeBits(value, parameter);
+    }
+
+    /**
+     * Writes a value in the variable length coding FLAC uses for frame
+     * numbers, which works like UTF-8 but goes up to 36 bits.
+     *
+     * @param value The value to write.
+     */
+    public void writeUtf8(long value) {
+        if (value < 0x80) {
+            writeBits(value, 8);
+            return;
+        }
+        int count = 2;
+        while (count < 7 && value >= 1L << (5 * count + 1)) {
+            count++;
+        }
+        writeBits((0xFF00 >> count) & 0xFF | (value >>> (6 * (count - 1))), 8);
+        for (int i = count - 2; i >= 0; i--) {
+            writeBits(0x80 | ((value >>> (6 * i)) & 0x3F), 8);
+        }
+    }
+
+    /**
+     * Fills the last byte up with zero bits.
+     */
+    public void alignToByte() {
+        if (cacheBits > 0) {
+            writeBits(0, 8 - cacheBits);
+        }
+    }
+
+    /**
+     * Gives back the CRC-8 of written bytes, as used in frame headers.
+     *
+     * @param from The first byte.
+     * @param to The byte after the last.
+     * @return The checksum.
+     */
+    public int crc8(int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = CRC8[crc ^ (bytes[i] & 0xFF)];
+        }
+        return crc;
+    }
+
+    /**
+     * Gives back the CRC-16 of written bytes, as used at the end of frames.
+     *
+     * @param from The first byte.
+     * @param to The byte after the last.
+     * @return The checksum.
+     */
+    public int crc16(int from, int to) {
+        int crc = 0;
+        for (int i = from; i < to; i++) {
+            crc = ((crc << 8) ^ CRC16[(crc >>> 8) ^ (bytes[i] & 0xFF)]) & 0xFFFF;
+        }
+        return crc;
+    }
+
+    /**
+     * Gives back the amount of complete bytes written.
+     *
+     * @return The length in bytes.
+     */
+    public int length() {
+        return length;
+    }
+
+    /**
+     * Gives back the written bytes, of which only the first length() count.
+     *
+     * @return The buffer.
+     */
+    public byte[] array() {
+        return bytes;
+    }
+
+    /**
+     * Forgets everything that was written, keeping the buffer.
+     */
+    public void reset() {
+        length = 0;
+        cache = 0;
+        cacheBits = 0;
+    }
+}
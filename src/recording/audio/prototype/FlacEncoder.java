@@ -0,0 +1,552 @@
+package recording.audio.prototype;
+
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * An encoder of FLAC frames. Each block of captured audio is encoded on its
+ * own, so blocks can be encoded on many threads at once, with one encoder per
+ * thread. Every channel is predicted with the fixed polynomial predictor that
+ * fits it best and the remainder is Rice coded in partitions, falling back to
+ * the raw samples where that is smaller. Stereo recordings also try the
+ * left/side, right/side and mid/side pairs.
+ *
+ * @author Jafeth
+ */
+public class FlacEncoder {
+
+    private static final int MAX_FIXED_ORDER = 4;//The highest order of the fixed predictors.
+    private static final int MAX_PARTITION_ORDER = 8;//The highest amount of times the residual is split in two.
+    private static final int MAX_RICE_PARAMETER = 30;//The highest Rice parameter, as 31 is the escape code.
+    private static final int CHANNELS_INDEPENDENT = -1;//Marks that no stereo pair is used.
+    private static final int CHANNELS_LEFT_SIDE = 8;//The channel assignment of left and side.
+    private static final int CHANNELS_SIDE_RIGHT = 9;//The channel assignment of side and right.
+    private static final int CHANNELS_MID_SIDE = 10;//The channel assignment of mid and side.
+
+    private final int channels;//The amount of channels.
+    private final int sampleSize;//The amount of significant bits in a sample.
+    private final int bytesPerSample;//The amount of bytes one captured sample takes up.
+    private final boolean bigEndian;//Tells whether the captured samples are big-endian.
+    private final boolean signed;//Tells whether the captured samples are signed.
+    private final int sampleRateCode;//The code of the sample rate in a frame header.
+    private final int sampleSizeCode;//The code of the sample size in a frame header.
+    private final int[][] samples;//The samples of the block, per channel.
+    private final int[] mid;//The mid channel of a stereo block.
+    private final int[] side;//The side channel of a stereo block.
+    private final long[] residual;//The residual of the channel being encoded.
+    private final long[] orderSums = new long[MAX_FIXED_ORDER + 1];//The size of the residual of every predictor.
+    private final long[] partitionSums;//The sums of the residual in the smallest partitions.
+    private final int[] parameters;//The Rice parameters of the chosen partitions.
+    private final FlacBitWriter out;//The frame being written.
+    private int partitionOrder;//The partition order found by the last estimate.
+
+    /**
+     * Constructor for the FlacEncoder class.
+     *
+     * @param format The format of the captured samples.
+     * @param blockSize The highest amount of frames in one block.
+     */
+    public FlacEncoder(AudioFormat format, int blockSize) {
+        channels = format.getChannels();
+        sampleSize = format.getSampleSizeInBits();
+        bytesPerSample = format.getFrameSize() / channels;
+        bigEndian = format.isBigEndian();
+        signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        sampleRateCode = getSampleRateCode(Math.round(format.getSampleRate()));
+        sampleSizeCode = getSampleSizeCode(sampleSize);
+
+        samples = new int[channels][blockSize];
+        mid = new int[blockSize];
+        side = new int[blockSize];
+        residual = new long[blockSize];
+        partitionSums = new long[1 << MAX_PARTITION_ORDER];
+        parameters = new int[1 << MAX_PARTITION_ORDER];
+        out = new FlacBitWriter(blockSize * format.getFrameSize() + 64);
+    }
+
+    /**
+     * Encodes one block of captured audio into a FLAC frame.
+     *
+     * @param block The captured audio data, in the format of the recording.
+     * @param frames The amount of frames in the block.
+     * @param frameNumber The number of the frame in the stream.
+     * @return The encoded frame.
+     */
+    public byte[] encode(byte[] block, int frames, long frameNumber) {
+        deinterleave(block, frames);
+
+        //Side needs a bit more than the samples, which does not fit in an int at 32 bits.
+        int assignment = CHANNELS_INDEPENDENT;
+        if (channels == 2 && sampleSize < 32) {
+            assignment = chooseStereo(frames);
+        }
+
+        out.reset();
+        writeFrameHeader(assignment < 0 ? channels - 1 : assignment, frames, frameNumber);
+        switch (assignment) {
+            case CHANNELS_LEFT_SIDE:
+                writeSubframe(samples[0], frames, sampleSize);
+                writeSubframe(side, frames, sampleSize + 1);
+                break;
+            case CHANNELS_SIDE_RIGHT:
+                writeSubframe(side, frames, sampleSize + 1);
+                writeSubframe(samples[1], frames, sampleSize);
+                break;
+            case CHANNELS_MID_SIDE:
+                writeSubframe(mid, frames, sampleSize);
+                writeSubframe(side, frames, sampleSize + 1);
+                break;
+            default:
+                for (int channel = 0; channel < channels; channel++) {
+                    writeSubframe(samples[channel], frames, sampleSize);
+                }
+        }
+        out.alignToByte();
+        out.writeBits(out.crc16(0, out.length()), 16);
+        return Arrays.copyOf(out.array(), out.length());
+    }
+
+    /**
+     * Splits a block of captured audio into one array of signed samples per
+     * channel.
+     *
+     * @param block The captured audio data.
+     * @param frames The amount of frames in the block.
+     */
+    private void deinterleave(byte[] block, int frames) {
+        int shift = 32 - sampleSize;
+        int flip = signed ? 0 : 0x80000000;
+        int index = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            for (int channel = 0; channel < channels; channel++) {
+                int value = 0;
+                if (bigEndian) {
+                    for (int i = 0; i < bytesPerSample; i++) {
+                        value = (value << 8) | (block[index + i] & 0xFF);
+                    }
+                } else {
+                    for (int i = bytesPerSample - 1; i >= 0; i--) {
+                        value = (value << 8) | (block[index + i] & 0xFF);
+                    }
+                }
+                index += bytesPerSample;
+
+                //Moves the sample to the top to sign it, and back down with its sign extended.
+                samples[channel][frame] = ((value << shift) ^ flip) >> shift;
+            }
+        }
+    }
+
+    /**
+     * Finds the way of coding a stereo block that takes the fewest bits.
+     *
+     * @param frames The amount of frames in the block.
+     * @return The channel assignment to use.
+     */
+    private int chooseStereo(int frames) {
+        int[] left = samples[0];
+        int[] right = samples[1];
+        for (int i = 0; i < frames; i++) {
+            mid[i] = (left[i] + right[i]) >> 1;
+            side[i] = left[i] - right[i];
+        }
+
+        long leftBits = estimateSubframe(left, frames, sampleSize);
+        long rightBits = estimateSubframe(right, frames, sampleSize);
+        long midBits = estimateSubframe(mid, frames, sampleSize);
+        long sideBits = estimateSubframe(side, frames, sampleSize + 1);
+
+        long best = leftBits + rightBits;
+        int assignment = CHANNELS_INDEPENDENT;
+        if (leftBits + sideBits < best) {
+            best = leftBits + sideBits;
+            assignment = CHANNELS_LEFT_SIDE;
+        }
+        if (sideBits + rightBits < best) {
+            best = sideBits + rightBits;
+            assignment = CHANNELS_SIDE_RIGHT;
+        }
+        if (midBits + sideBits < best) {
+            assignment = CHANNELS_MID_SIDE;
+        }
+        return assignment;
+    }
+
+    /**
+     * Gives back about how many bits a channel takes up when it is encoded.
+     *
+     * @param channel The samples of the channel.
+     * @param frames The amount of samples.
+     * @param bits The amount of bits in a sample of the channel.
+     * @return The estimated amount of bits.
+     */
+    private long estimateSubframe(int[] channel, int frames, int bits) {
+        if (isConstant(channel, frames)) {
+            return 8 + bits;
+        }
+        int order = chooseOrder(channel, frames);
+        long verbatim = 8 + (long) frames * bits;
+        if (order < 0) {
+            return verbatim;
+        }
+        return Math.min(verbatim, 8 + (long) order * bits + estimateResidual(frames, order));
+    }
+
+    /**
+     * Writes one channel of the block as a subframe, in the smallest of the
+     * constant, fixed and verbatim codings.
+     *
+     * @param channel The samples of the channel.
+     * @param frames The amount of samples.
+     * @param bits The amount of bits in a sample of the channel.
+     */
+    private void writeSubframe(int[] channel, int frames, int bits) {
+        if (isConstant(channel, frames)) {
+            out.writeBits(0, 8);
+            out.writeBits(channel[0], bits);
+            return;
+        }
+
+        int order = chooseOrder(channel, frames);
+        if (order >= 0) {
+            long fixedBits = (long) order * bits + estimateResidual(frames, order);
+            if (fixedBits < (long) frames * bits) {
+                out.writeBits(0x10 | order << 1, 8);
+                for (int i = 0; i < order; i++) {
+                    out.writeBits(channel[i], bits);
+                }
+                writeResidual(frames, order);
+                return;
+            }
+        }
+
+        out.writeBits(0x02, 8);
+        for (int i = 0; i < frames; i++) {
+            out.writeBits(channel[i], bits);
+        }
+    }
+
+    /**
+     * Tells whether every sample of a channel is the same.
+     *
+     * @param channel The samples of the channel.
+     * @param frames The amount of samples.
+     * @return True if the channel is constant.
+     */
+    private static boolean isConstant(int[] channel, int frames) {
+        int first = channel[0];
+        for (int i = 1; i < frames; i++) {
+            if (channel[i] != first) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Picks the fixed predictor with the smallest residual and puts its
+     * residual in the residual array.
+     *
+     * @param channel The samples of the channel.
+     * @param frames The amount of samples.
+     * @return The order of the predictor, or -1 if the residual does not fit
+     * in the 32 bits FLAC allows.
+     */
+    private int chooseOrder(int[] channel, int frames) {
+        //Blocks too short for every predictor, such as the end of a recording, are not worth the search.
+        int order = 0;
+        if (frames > MAX_FIXED_ORDER) {
+            //Sums the residual of every order in one pass, each order being the difference of the one below.
+            Arrays.fill(orderSums, 0);
+            long last0 = channel[3];
+            long last1 = last0 - channel[2];
+            long last2 = last1 - ((long) channel[2] - channel[1]);
+            long last3 = last2 - ((long) channel[2] - 2L * channel[1] + channel[0]);
+            for (int i = MAX_FIXED_ORDER; i < frames; i++) {
+                long error0 = channel[i];
+                long error1 = error0 - last0;
+                long error2 = error1 - last1;
+                long error3 = error2 - last2;
+                long error4 = error3 - last3;
+                orderSums[0] += Math.abs(error0);
+                orderSums[1] += Math.abs(error1);
+                orderSums[2] += Math.abs(error2);
+                orderSums[3] += Math.abs(error3);
+                orderSums[4] += Math.abs(error4);
+                last0 = error0;
+                last1 = error1;
+                last2 = error2;
+                last3 = error3;
+            }
+
+            for (int i = 1; i <= MAX_FIXED_ORDER; i++) {
+                if (orderSums[i] < orderSums[order]) {
+                    order = i;
+                }
+            }
+        }
+
+        //Falls back to lower orders while the residual does not fit, which at 32 bits it may not.
+        for (; order >= 0; order--) {
+            if (computeResidual(channel, frames, order)) {
+                return order;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Puts the residual of a fixed predictor in the residual array.
+     *
+     * @param channel The samples of the channel.
+     * @param frames The amount of samples.
+     * @param order The order of the predictor.
+     * @return False if the residual does not fit in 32 bits.
+     */
+    private boolean computeResidual(int[] channel, int frames, int order) {
+        boolean fits = true;
+        for (int i = order; i < frames; i++) {
+            long value;
+            switch (order) {
+                case 0:
+                    value = channel[i];
+                    break;
+                case 1:
+                    value = (long) channel[i] - channel[i - 1];
+                    break;
+                case 2:
+                    value = (long) channel[i] - 2L * channel[i - 1] + channel[i - 2];
+                    break;
+                case 3:
+                    value = (long) channel[i] - 3L * channel[i - 1] + 3L * channel[i - 2] - channel[i - 3];
+                    break;
+                default:
+                    value = (long) channel[i] - 4L * channel[i - 1] + 6L * channel[i - 2] - 4L * channel[i - 3] + channel[i - 4];
+            }
+            residual[i] = value;
+            fits &= value == (int) value;
+        }
+        return fits;
+    }
+
+    /**
+     * Gives back about how many bits the residual in the residual array takes
+     * up with the best partitioning, and remembers that partitioning.
+     *
+     * @param frames The amount of samples.
+     * @param order The order of the predictor.
+     * @return The estimated amount of bits, including the coding header.
+     */
+    private long estimateResidual(int frames, int order) {
+        //Finds the highest partition order the block allows.
+        int maxOrder = 0;
+        while (maxOrder < MAX_PARTITION_ORDER && (frames & (1 << (maxOrder + 1)) - 1) == 0 && (frames >> (maxOrder + 1)) > order) {
+            maxOrder++;
+        }
+
+        //Sums the folded residual of the smallest partitions.
+        int partitions = 1 << maxOrder;
+        int partitionSize = frames >> maxOrder;
+        int index = order;
+        for (int partition = 0; partition < partitions; partition++) {
+            long sum = 0;
+            int end = (partition + 1) * partitionSize;
+            for (; index < end; index++) {
+                sum += fold(residual[index]);
+            }
+            partitionSums[partition] = sum;
+        }
+
+        //Tries every partition order, merging neighbouring sums on the way up.
+        long best = Long.MAX_VALUE;
+        for (int partitionOrder = maxOrder; partitionOrder >= 0; partitionOrder--) {
+            int count = 1 << partitionOrder;
+            int size = frames >> partitionOrder;
+            long bits = 6;
+            boolean wideParameters = false;
+            for (int partition = 0; partition < count; partition++) {
+                int samplesInPartition = partition == 0 ? size - order : size;
+                int parameter = chooseParameter(partitionSums[partition], samplesInPartition);
+                wideParameters |= parameter > 14;
+                bits += riceBits(partitionSums[partition], samplesInPartition, parameter);
+            }
+            bits += (long) count * (wideParameters ? 5 : 4);
+            if (bits < best) {
+                best = bits;
+                this.partitionOrder = partitionOrder;
+            }
+            for (int partition = 0; partition < count / 2; partition++) {
+                partitionSums[partition] = partitionSums[2 * partition] + partitionSums[2 * partition + 1];
+            }
+        }
+        return best;
+    }
+
+    /**
+     * Writes the residual in the residual array with the partitioning found
+     * by the last estimate.
+     *
+     * @param frames The amount of samples.
+     * @param order The order of the predictor.
+     */
+    private void writeResidual(int frames, int order) {
+        int count = 1 << partitionOrder;
+        int size = frames >> partitionOrder;
+
+        boolean wideParameters = false;
+        int index = order;
+        for (int partition = 0; partition < count; partition++) {
+            long sum = 0;
+            int end = (partition + 1) * size;
+            for (int i = index; i < end; i++) {
+                sum += fold(residual[i]);
+            }
+            parameters[partition] = chooseParameter(sum, end - index);
+            wideParameters |= parameters[partition] > 14;
+            index = end;
+        }
+
+        out.writeBits(wideParameters ? 1 : 0, 2);
+        out.writeBits(partitionOrder, 4);
+        index = order;
+        for (int partition = 0; partition < count; partition++) {
+            int parameter = parameters[partition];
+            out.writeBits(parameter, wideParameters ? 5 : 4);
+            int end = (partition + 1) * size;
+            for (; index < end; index++) {
+                out.writeRice(fold(residual[index]), parameter);
+            }
+        }
+    }
+
+    /**
+     * Folds a signed residual into an unsigned value: 0, -1, 1, -2 and on
+     * become 0, 1, 2, 3 and on.
+     *
+     * @param value The residual.
+     * @return The folded value.
+     */
+    private static long fold(long value) {
+        return (value << 1) ^ (value >> 63);
+    }
+
+    /**
+     * Picks the Rice parameter that codes a partition in the fewest bits.
+     *
+     * @param sum The sum of the folded residual of the partition.
+     * @param count The amount of samples in the partition.
+     * @return The Rice parameter.
+     */
+    private static int chooseParameter(long sum, int count) {
+        if (count == 0) {
+            return 0;
+        }
+        //Starts at the parameter that fits the mean, and checks its neighbours.
+        long mean = sum / count;
+        int parameter = mean > 0 ? Math.min(MAX_RICE_PARAMETER, 63 - Long.numberOfLeadingZeros(mean)) : 0;
+        long bits = riceBits(sum, count, parameter);
+        while (parameter > 0 && riceBits(sum, count, parameter - 1) < bits) {
+            parameter--;
+            bits = riceBits(sum, count, parameter);
+        }
+        while (parameter < MAX_RICE_PARAMETER && riceBits(sum, count, parameter + 1) < bits) {
+            parameter++;
+            bits = riceBits(sum, count, parameter);
+        }
+        return parameter;
+    }
+
+    /**
+     * Gives back about how many bits a partition takes up with a Rice
+     * parameter.
+     *
+     * @param sum The sum of the folded residual of the partition.
+     * @param count The amount of samples in the partition.
+     * @param parameter The Rice parameter.
+     * @return The estimated amount of bits.
+     */
+    private static long riceBits(long sum, int count, int parameter) {
+        return (long) count * (parameter + 1) + (sum >> parameter);
+    }
+
+    /**
+     * Writes the header of a frame, ending with its checksum.
+     *
+     * @param assignment The channel assignment.
+     * @param frames The amount of frames in the block.
+     * @param frameNumber The number of the frame in the stream.
+     */
+    private void writeFrameHeader(int assignment, int frames, long frameNumber) {
+        out.writeBits(0xFFF8, 16);
+
+        //The block size follows the frame number in 16 bits, so the last block can be shorter.
+        out.writeBits(7, 4);
+        out.writeBits(sampleRateCode, 4);
+        out.writeBits(assignment, 4);
+        out.writeBits(sampleSizeCode, 3);
+        out.writeBits(0, 1);
+        out.writeUtf8(frameNumber);
+        out.writeBits(frames - 1, 16);
+        out.writeBits(out.crc8(0, out.length()), 8);
+    }
+
+    /**
+     * Gives back the code of a sample rate in a frame header.
+     *
+     * @param sampleRate The sample rate.
+     * @return The code, 0 to use the rate in the stream header.
+     */
+    private static int getSampleRateCode(int sampleRate) {
+        switch (sampleRate) {
+            case 88200:
+                return 1;
+            case 176400:
+                return 2;
+            case 192000:
+                return 3;
+            case 8000:
+                return 4;
+            case 16000:
+                return 5;
+            case 22050:
+                return 6;
+            case 24000:
+                return 7;
+            case 32000:
+                return 8;
+            case 44100:
+                return 9;
+            case 48000:
+                return 10;
+            case 96000:
+                return 11;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Gives back the code of a sample size in a frame header.
+     *
+     * @param sampleSize The amount of bits in a sample.
+     * @return The code, 0 to use the size in the stream header.
+     */
+    private static int getSampleSizeCode(int sampleSize) {
+        switch (sampleSize) {
+            case 8:
+                return 1;
+            case 12:
+                return 2;
+            case 16:
+                return 4;
+            case 20:
+                return 5;
+            case 24:
+                return 6;
+            case 32:
+                return 7;
+            default:
+                return 0;
+        }
+    }
+}
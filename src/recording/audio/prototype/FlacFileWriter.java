@@ -0,0 +1,303 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A writer of FLAC files, which store the recording losslessly in about half
+ * the space of a WAV file. The audio data is cut into blocks that are encoded
+ * on a pool of threads, so encoding uses every core and keeps up with high
+ * formats. The frames are written in the order they were recorded, as soon as
+ * they are encoded.
+ *
+ * @author Jafeth
+ */
+public class FlacFileWriter implements AudioSink {
+
+    private static final int BLOCK_SIZE = 4096;//The amount of frames in one FLAC frame.
+    private static final int STREAM_HEADER_SIZE = 42;//The size of the stream marker and the stream info block.
+
+    private final FileChannel channel;//The channel to the file.
+    private final AudioFormat format;//The format of the recorded audio.
+    private final ExecutorService pool;//The threads that encode the blocks.
+    private final boolean ownsPool;//Tells whether the pool is shut down with the writer.
+    private final ThreadLocal<FlacEncoder> encoders;//The encoder of every thread of the pool.
+    private final ArrayDeque<Future<byte[]>> encoding = new ArrayDeque<>();//The blocks being encoded, in order.
+    private final BlockingQueue<byte[]> freeBlocks;//The blocks that can be filled again.
+    private final int maxEncoding;//The highest amount of blocks being encoded at once.
+    private final int blockBytes;//The size of a full block in bytes.
+    private byte[] block;//The block that is being filled.
+    private int blockFill;//The amount of bytes in the block.
+    private long frameNumber;//The number of the next FLAC frame.
+    private long bytesWritten;//The amount of audio bytes handed to the writer.
+    private long encodedBytes;//The size of the file so far.
+    private int minFrameSize = Integer.MAX_VALUE;//The size of the smallest FLAC frame.
+    private int maxFrameSize;//The size of the largest FLAC frame.
+
+    /**
+     * Constructor for the FlacFileWriter class. Encodes on a pool of its own
+     * with a thread for every core.
+     *
+     * @param file The file to write to, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @throws IOException If the file can not be created.
+     */
+    public FlacFileWriter(File file, AudioFormat format) throws IOException {
+        this(file, format, Executors.newFixedThreadPool(Runtime.getRuntime().availableProcessors(), runnable -> {
+            Thread thread = new Thread(runnable, "flac-encoder");
+            thread.setDaemon(true);
+            return thread;
+        }), true);
+    }
+
+    /**
+     * Constructor for the FlacFileWriter class that encodes on the given
+     * pool, so many recordings can share one.
+     *
+     * @param file The file to write to, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @param pool The threads that encode the blocks.
+     * @throws IOException If the file can not be created.
+     */
+    public FlacFileWriter(File file, AudioFormat format, ExecutorService pool) throws IOException {
+        this(file, format, pool, false);
+    }
+
+    /**
+     * Constructor for the FlacFileWriter class. Creates the file and writes
+     * the stream header.
+     *
+     * @param file The file to write to, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @param pool The threads that encode the blocks.
+     * @param ownsPool Tells whether the pool is shut down with the writer.
+     * @throws IOException If the file can not be created.
+     */
+    private FlacFileWriter(File file, AudioFormat format, ExecutorService pool, boolean ownsPool) throws IOException {
+        this.format = format;
+        this.pool = pool;
+        this.ownsPool = ownsPool;
+        encoders = ThreadLocal.withInitial(() -> new FlacEncoder(format, BLOCK_SIZE));
+        blockBytes = BLOCK_SIZE * format.getFrameSize();
+
+        //Keeps every core busy with a block to spare, without letting the encoding fall behind unnoticed.
+        maxEncoding = 2 * Runtime.getRuntime().availableProcessors();
+        freeBlocks = new ArrayBlockingQueue<>(maxEncoding + 1);
+        block = new byte[blockBytes];
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            //The stream header says the length is unknown until the end.
+            writeFully(streamHeader(), 0);
+        } catch (IOException ex) {
+            channel.close();
+            if (ownsPool) {
+                pool.shutdown();
+            }
+            throw ex;
+        }
+        encodedBytes = STREAM_HEADER_SIZE;
+    }
+
+    /**
+     * Buffers the audio data, handing every full block to the pool.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write.
+     * @throws IOException If the data can not be encoded or written.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int chunk = Math.min(remaining, blockBytes - blockFill);
+            System.arraycopy(data, offset + length - remaining, block, blockFill, chunk);
+            blockFill += chunk;
+            remaining -= chunk;
+            if (blockFill == blockBytes) {
+                submitBlock();
+            }
+        }
+        bytesWritten += length;
+
+        //Writes the frames that are done, without waiting for the others.
+        while (!encoding.isEmpty() && encoding.peek().isDone()) {
+            writeFrame(encoding.poll());
+        }
+    }
+
+    /**
+     * Hands the filled block to the pool, first writing the oldest frame if
+     * too many blocks are being encoded.
+     *
+     * @throws IOException If an earlier frame can not be encoded or written.
+     */
+    private void submitBlock() throws IOException {
+        if (encoding.size() >= maxEncoding) {
+            writeFrame(encoding.poll());
+        }
+
+        byte[] filled = block;
+        int frames = blockFill / format.getFrameSize();
+        long number = frameNumber++;
+        encoding.add(pool.submit(() -> {
+            try {
+                return encoders.get().encode(filled, frames, number);
+            } finally {
+                freeBlocks.offer(filled);
+            }
+        }));
+
+        //Reuses a block that has been encoded, so a long recording does not keep allocating.
+        block = freeBlocks.poll();
+        if (block == null) {
+            block = new byte[blockBytes];
+        }
+        blockFill = 0;
+    }
+
+    /**
+     * Waits until a frame is encoded and writes it to the file.
+     *
+     * @param task The task encoding the frame.
+     * @throws IOException If the frame can not be encoded or written.
+     */
+    private void writeFrame(Future<byte[]> task) throws IOException {
+        byte[] frame = awaitFrame(task);
+        writeFully(ByteBuffer.wrap(frame), encodedBytes);
+        encodedBytes += frame.length;
+        minFrameSize = Math.min(minFrameSize, frame.length);
+        maxFrameSize = Math.max(maxFrameSize, frame.length);
+    }
+
+    /**
+     * Waits until a frame is encoded.
+     *
+     * @param task The task encoding the frame.
+     * @return The encoded frame.
+     * @throws IOException If the frame can not be encoded.
+     */
+    private static byte[] awaitFrame(Future<byte[]> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    return task.get();
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    throw new IOException("A block could not be encoded", ex.getCause());
+                }
+            }
+        } finally {
+            //Keeps the interrupt for the code that called this.
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gives back the stream marker and the stream info block, with what is
+     * known about the stream so far.
+     *
+     * @return The stream header.
+     */
+    private ByteBuffer streamHeader() {
+        FlacBitWriter header = new FlacBitWriter(STREAM_HEADER_SIZE);
+        header.writeBits(0x664C6143L, 32);
+
+        //The stream info is the last and only metadata block.
+        header.writeBits(1, 1);
+        header.writeBits(0, 7);
+        header.writeBits(34, 24);
+
+        long totalFrames = bytesWritten / format.getFrameSize();
+        header.writeBits(BLOCK_SIZE, 16);
+        header.writeBits(BLOCK_SIZE, 16);
+        header.writeBits(maxFrameSize > 0 ? minFrameSize : 0, 24);
+        header.writeBits(maxFrameSize, 24);
+        header.writeBits(Math.round(format.getSampleRate()), 20);
+        header.writeBits(format.getChannels() - 1, 3);
+        header.writeBits(format.getSampleSizeInBits() - 1, 5);
+        header.writeBits(totalFrames >>> 32, 4);
+        header.writeBits(totalFrames, 32);
+
+        //No checksum of the audio data is kept, which the format allows.
+        for (int i = 0; i < 4; i++) {
+            header.writeBits(0, 32);
+        }
+        return ByteBuffer.wrap(header.array(), 0, header.length());
+    }
+
+    /**
+     * Writes a complete buffer to the file at the given position.
+     *
+     * @param data The buffer to write.
+     * @param position The position in the file.
+     * @throws IOException If the data can not be written.
+     */
+    private void writeFully(ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /**
+     * Gives back the amount of audio bytes handed to the writer.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gives back the size of the file so far, which lags behind by the
+     * blocks that are still being encoded.
+     *
+     * @return The size of the encoded stream in bytes.
+     */
+    public long getEncodedBytes() {
+        return encodedBytes;
+    }
+
+    /**
+     * Encodes the rest of the audio data, writes every frame and the final
+     * stream header and closes the file.
+     *
+     * @throws IOException If the file can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        try {
+            if (blockFill > 0) {
+                submitBlock();
+            }
+            while (!encoding.isEmpty()) {
+                writeFrame(encoding.poll());
+            }
+            writeFully(streamHeader(), 0);
+        } finally {
+            //Lets blocks that were still being encoded after an error finish on their own.
+            encoding.clear();
+            channel.close();
+            if (ownsPool) {
+                pool.shutdown();
+            }
+        }
+    }
+}
@@ -0,0 +1,245 @@
+package recording.audio.prototype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.Line;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * Knows which capture formats the sound devices of the system support, so
+ * a format can be checked without opening a line. Every mixer is asked for
+ * the formats of its capture lines once, and asked again in the background
+ * to notice devices being plugged in or out. Whether a format is supported
+ * is asked of the source the recorder captures from, so the answer is the
+ * one opening it gives, and forgotten whenever the devices change.
+ *
+ * @author Jafeth
+ */
+public class FormatCapabilities {
+
+    private final CaptureSource source;//The source the recorder captures from, asked which formats it supports.
+    private final List<Runnable> listeners = new CopyOnWriteArrayList<>();//Are told when the supported formats change.
+    private volatile Probe probe;//The formats found the last time the devices were asked, null before that.
+    private ScheduledExecutorService refresher;//Asks the devices again at a fixed rate, if started.
+
+    /**
+     * The formats found when the devices were asked once.
+     */
+    private static class Probe {
+
+        private final Map<String, List<AudioFormat>> formats;//The capture formats of every mixer, by name.
+        private final String signature;//Describes the whole probe, to see if anything changed.
+        private final Map<String, Boolean> supported = new ConcurrentHashMap<>();//The formats and combinations checked so far.
+
+        private Probe(Map<String, List<AudioFormat>> formats) {
+            this.formats = formats;
+            signature = formats.toString();
+        }
+    }
+
+    /**
+     * Constructor for the FormatCapabilities class, for a recorder that
+     * captures from the default line of the system.
+     */
+    public FormatCapabilities() {
+        this(new MicrophoneCaptureSource());
+    }
+
+    /**
+     * Constructor for the FormatCapabilities class.
+     *
+     * @param source The source the recorder captures from. It is only asked
+     * which formats it supports, never opened.
+     */
+    public FormatCapabilities(CaptureSource source) {
+        this.source = source;
+    }
+
+    /**
+     * Asks every mixer for the formats of its capture lines and keeps them.
+     * The listeners are told if anything changed since the last time.
+     *
+     * @return True if the supported formats changed.
+     */
+    public boolean refresh() {
+        Map<String, List<AudioFormat>> found = new LinkedHashMap<>();
+        Line.Info capture = new Line.Info(TargetDataLine.class);
+        for (Mixer.Info info : AudioSystem.getMixerInfo()) {
+            List<AudioFormat> formats = new ArrayList<>();
+            try {
+                Mixer mixer = AudioSystem.getMixer(info);
+                for (Line.Info lineInfo : mixer.getTargetLineInfo(capture)) {
+                    if (lineInfo instanceof DataLine.Info) {
+                        Collections.addAll(formats, ((DataLine.Info) lineInfo).getFormats());
+                    }
+                }
+            } catch (RuntimeException ex) {
+                //A device that was just unplugged can fail to answer, it is left out until it answers again.
+                continue;
+            }
+            if (!formats.isEmpty()) {
+                found.put(info.getName(), Collections.unmodifiableList(formats));
+            }
+        }
+
+        Probe latest = new Probe(Collections.unmodifiableMap(found));
+        Probe previous = probe;
+        if (previous != null && previous.signature.equals(latest.signature)) {
+            return false;
+        }
+        probe = latest;
+        for (Runnable listener : listeners) {
+            listener.run();
+        }
+        return true;
+    }
+
+    /**
+     * Tells whether the devices have been asked for their formats yet.
+     *
+     * @return True once the first refresh is done.
+     */
+    public boolean isProbed() {
+        return probe != null;
+    }
+
+    /**
+     * Tells whether any device can capture at all.
+     *
+     * @return True if a capture line was found.
+     */
+    public boolean hasDevices() {
+        Probe current = probe;
+        return current != null && !current.formats.isEmpty();
+    }
+
+    /**
+     * Gives back the capture formats of every mixer that can capture. A
+     * format can leave its sample rate or amount of channels unspecified,
+     * meaning any value.
+     *
+     * @return The formats by mixer name, empty before the first refresh.
+     */
+    public Map<String, List<AudioFormat>> getFormats() {
+        Probe current = probe;
+        return current == null ? Collections.emptyMap() : current.formats;
+    }
+
+    /**
+     * Checks if the recorder can capture the given combination, in any of
+     * the formats the recorder would negotiate for it.
+     *
+     * @param sampleRate The sample rate.
+     * @param sampleSize The sample size in bits.
+     * @param channels The amount of channels.
+     * @return True if the combination is supported, false otherwise.
+     */
+    public boolean isSupported(float sampleRate, int sampleSize, int channels) {
+        Probe current = current();
+        String key = sampleRate + "/" + sampleSize + "/" + channels;
+        Boolean known = current.supported.get(key);
+        if (known == null) {
+            known = FormatNegotiator.negotiate(this::isSupported, sampleRate, sampleSize, channels) != null;
+            current.supported.put(key, known);
+        }
+        return known;
+    }
+
+    /**
+     * Checks if the recorder can capture in exactly the given format. Every
+     * format is only asked once until the devices change.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    public boolean isSupported(AudioFormat format) {
+        Probe current = current();
+        String key = format.toString();
+        Boolean known = current.supported.get(key);
+        if (known == null) {
+            known = source.isFormatSupported(format);
+            current.supported.put(key, known);
+        }
+        return known;
+    }
+
+    /**
+     * Gives back the latest probe, asking the devices first if they have not
+     * been asked yet.
+     *
+     * @return The probe.
+     */
+    private Probe current() {
+        Probe current = probe;
+        if (current == null) {
+            refresh();
+            current = probe;
+        }
+        return current;
+    }
+
+    /**
+     * Adds a listener that is told when the supported formats change. It is
+     * called on the thread that refreshes.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(Runnable listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(Runnable listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Asks the devices for their formats on a thread of its own, right away
+     * and then at a fixed rate, until stopped.
+     *
+     * @param periodMillis The time between two refreshes in milliseconds.
+     */
+    public synchronized void startRefreshing(long periodMillis) {
+        if (refresher != null) {
+            return;
+        }
+        refresher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "format-probe");
+            thread.setDaemon(true);
+            return thread;
+        });
+        refresher.scheduleWithFixedDelay(() -> {
+            try {
+                refresh();
+            } catch (RuntimeException ex) {
+                //Tries again next time, a failed refresh must not end the refreshing.
+            }
+        }, 0, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops asking the devices for their formats.
+     */
+    public synchronized void stopRefreshing() {
+        if (refresher != null) {
+            refresher.shutdownNow();
+            refresher = null;
+        }
+    }
+}
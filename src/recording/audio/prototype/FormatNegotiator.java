@@ -0,0 +1,66 @@
+package recording.audio.prototype;
+
+import java.nio.ByteOrder;
+import java.util.function.Predicate;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Picks the capture format a source supports that needs the least work to be
+ * written as a WAV file. Little-endian signed samples, or unsigned samples at
+ * 8 bits, are written as they are captured.
+ *
+ * @author Jafeth
+ */
+public class FormatNegotiator {
+
+    /**
+     * Gives back the cheapest supported format with the given rate, sample
+     * size and amount of channels. The byte order of the machine is tried
+     * first, as sound hardware usually delivers samples in that order.
+     *
+     * @param source The source that is going to capture.
+     * @param sampleRate The sample rate the user has chosen.
+     * @param sampleSize The sample size the user has chosen.
+     * @param channels The amount of channels the user has chosen.
+     * @return The format to capture in, or null if the source supports none.
+     */
+    public static AudioFormat negotiate(CaptureSource source, float sampleRate, int sampleSize, int channels) {
+        return negotiate(source::isFormatSupported, sampleRate, sampleSize, channels);
+    }
+
+    /**
+     * Gives back the cheapest format with the given rate, sample size and
+     * amount of channels that passes the given check.
+     *
+     * @param supported Tells whether a format can be captured in.
+     * @param sampleRate The sample rate the user has chosen.
+     * @param sampleSize The sample size the user has chosen.
+     * @param channels The amount of channels the user has chosen.
+     * @return The format to capture in, or null if none is supported.
+     */
+    public static AudioFormat negotiate(Predicate<AudioFormat> supported, float sampleRate, int sampleSize, int channels) {
+        boolean nativeBigEndian = ByteOrder.nativeOrder() == ByteOrder.BIG_ENDIAN;
+
+        //WAV stores 8 bit samples unsigned and every other size signed.
+        boolean wavSigned = sampleSize > 8;
+
+        AudioFormat[] candidates = {
+            new AudioFormat(sampleRate, sampleSize, channels, wavSigned, nativeBigEndian),
+            new AudioFormat(sampleRate, sampleSize, channels, wavSigned, !nativeBigEndian),
+            new AudioFormat(sampleRate, sampleSize, channels, !wavSigned, nativeBigEndian),
+            new AudioFormat(sampleRate, sampleSize, channels, !wavSigned, !nativeBigEndian)
+        };
+
+        //Prefers the order that needs no byte swapping if the source supports both.
+        if (nativeBigEndian && supported.test(candidates[1])) {
+            return candidates[1];
+        }
+
+        for (AudioFormat candidate : candidates) {
+            if (supported.test(candidate)) {
+                return candidate;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,401 @@
+package recording.audio.prototype;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import java.io.File;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs the recorder without a display, for recording servers. Takes the
+ * options the GUI offers on the command line and can be controlled through
+ * a small HTTP endpoint that only listens on the loopback address. Loads no
+ * Swing classes, so it starts fast.
+ *
+ * Usage: HeadlessRecorder [options]
+ *
+ * @author Jafeth
+ */
+public class HeadlessRecorder {
+
+    private static final String USAGE = String.join(System.lineSeparator(),
+            "Usage: HeadlessRecorder [options]",
+            "  -rate <Hz>            sample rate, default 44100",
+            "  -size <bits>          sample size, default 16",
+            "  -channels <n>         amount of channels, default 2",
+            "  -mode <mode>          Stream, Mapped, Segmented, Flac or Split, default Stream",
+            "  -segment <seconds>    length of one file in Segmented mode, default as long as fits",
+            "  -source <source>      mic, sine, noise or speech, default mic",
+            "  -port <port>          loopback HTTP control port, 0 for any free port, -1 for none, default 0",
+            "  -start                start recording right away",
+            "  -seconds <seconds>    stop and exit after this long, default run until stopped",
+            "  -metrics <seconds>    print the metrics as JSON at this rate",
+            "  -silence <dBFS>       leave silence below this level out of the file, such as -40",
+            "  -live <file>          publish the recording in a live stream file for LiveStreamReader",
+            "  -live-wait <ms>       longest wait for a subscriber that uses backpressure, per block, default 10",
+            "  -no-peaks             build no peak index next to the file",
+            "  -buffers <profile>    LowLatency, Balanced, MaxThroughput or Adaptive, default Balanced",
+            "",
+            "Control: POST /start[?rate=&size=&channels=], POST /stop, GET /status, GET /metrics, POST /quit");
+    private static final List<String> VALUE_OPTIONS = Arrays.asList("-rate", "-size", "-channels", "-mode", "-segment", "-source", "-port", "-seconds", "-metrics", "-silence", "-live", "-live-wait", "-buffers");//The options that take a value.
+
+    private float sampleRate = 44100;//The sample rate of the recordings.
+    private int sampleSize = 16;//The sample size of the recordings.
+    private int channels = 2;//The amount of channels of the recordings.
+    private OutputMode outputMode = OutputMode.Stream;//The way the recordings are written.
+    private long segmentSeconds;//The length of one file in Segmented mode.
+    private String sourceName = "mic";//The source that is recorded.
+    private int port;//The port of the control endpoint, -1 for none.
+    private boolean startNow;//Tells whether to start recording right away.
+    private double seconds;//The time after which the recorder stops and exits, 0 for never.
+    private long metricsSeconds;//The time between two printed metrics, 0 for none.
+    private SilenceSettings silenceSettings;//Tells what silence to leave out of the file, if any.
+    private File liveStreamFile;//The file the recording is published in while it is made, if any.
+    private long liveStreamWaitMillis = 10;//The longest wait for a subscriber of the live stream.
+    private boolean peakIndex = true;//Tells whether the recordings get a peak index.
+    private BufferProfile bufferProfile = BufferProfile.Balanced;//How the lines of the recordings are buffered.
+    private final CountDownLatch quit = new CountDownLatch(1);//Is released when the recorder has to exit.
+    private volatile String lastEvent = "None";//The last event that was published.
+    private SoundRecorder recorder;//The recorder.
+
+    /**
+     * Constructor for the HeadlessRecorder class.
+     *
+     * @param args The command line options.
+     * @throws IllegalArgumentException If an option is not valid.
+     */
+    public HeadlessRecorder(String[] args) {
+        for (int i = 0; i < args.length; i++) {
+            String option = args[i];
+            if (option.equals("-start")) {
+                startNow = true;
+                continue;
+            }
+            if (option.equals("-no-peaks")) {
+                peakIndex = false;
+                continue;
+            }
+            if (!VALUE_OPTIONS.contains(option)) {
+                throw new IllegalArgumentException("Unknown option " + option);
+            }
+            if (i + 1 >= args.length) {
+                throw new IllegalArgumentException("Missing value of " + option);
+            }
+            String value = args[++i];
+            switch (option) {
+                case "-rate":
+                    sampleRate = Float.parseFloat(value);
+                    break;
+                case "-size":
+                    sampleSize = Integer.parseInt(value);
+                    break;
+                case "-channels":
+                    channels = Integer.parseInt(value);
+                    break;
+                case "-mode":
+                    outputMode = OutputMode.valueOf(value);
+                    break;
+                case "-segment":
+                    segmentSeconds = Long.parseLong(value);
+                    break;
+                case "-source":
+                    if (!value.equals("mic") && !value.equals("sine") && !value.equals("noise") && !value.equals("speech")) {
+                        throw new IllegalArgumentException("Unknown source " + value);
+                    }
+                    sourceName = value;
+                    break;
+                case "-port":
+                    port = Integer.parseInt(value);
+                    break;
+                case "-seconds":
+                    seconds = Double.parseDouble(value);
+                    break;
+                case "-metrics":
+                    metricsSeconds = Long.parseLong(value);
+                    break;
+                case "-silence":
+                    double openDb = Double.parseDouble(value);
+                    SilenceSettings speech = SilenceSettings.speech();
+                    silenceSettings = new SilenceSettings(openDb, openDb - (speech.getOpenDb() - speech.getCloseDb()),
+                            speech.getHoldMillis(), speech.getPreMillis(), speech.getPostMillis());
+                    break;
+                case "-live":
+                    liveStreamFile = new File(value);
+                    break;
+                case "-live-wait":
+                    liveStreamWaitMillis = Long.parseLong(value);
+                    break;
+                case "-buffers":
+                    bufferProfile = BufferProfile.valueOf(value);
+                    break;
+            }
+        }
+    }
+
+    /**
+     * Starts the headless recorder.
+     *
+     * @param args The command line options.
+     * @throws IOException If the control endpoint can not be started.
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public static void main(String[] args) throws IOException, InterruptedException {
+        HeadlessRecorder headless;
+        try {
+            headless = new HeadlessRecorder(args);
+        } catch (IllegalArgumentException ex) {
+            System.err.println(ex.getMessage());
+            System.err.println(USAGE);
+            System.exit(2);
+            return;
+        }
+        headless.run();
+    }
+
+    /**
+     * Runs the recorder until it is told to quit, the time is up or the
+     * program is ended.
+     *
+     * @throws IOException If the control endpoint can not be started.
+     * @throws InterruptedException If the main thread is interrupted.
+     */
+    public void run() throws IOException, InterruptedException {
+        //Shows the events on the console instead of a GUI.
+        RecordingEventBus bus = new RecordingEventBus();
+        bus.subscribe(this::eventsPublished);
+        recorder = new SoundRecorder(new RecordingEventCatcher(bus), createSource());
+        recorder.setOutputMode(outputMode);
+        recorder.setSegmentSeconds(segmentSeconds);
+        recorder.setSilenceSettings(silenceSettings);
+        recorder.setPeakIndex(peakIndex);
+        recorder.setBufferProfile(bufferProfile);
+        recorder.setLiveStream(liveStreamFile, liveStreamWaitMillis);
+        recorder.warmUp(sampleRate, sampleSize, channels);
+
+        if (metricsSeconds > 0) {
+            recorder.getMetrics().startSnapshots(metricsSeconds * 1000, true, System.out::println);
+        }
+
+        HttpServer server = null;
+        ExecutorService handlers = null;
+        if (port >= 0) {
+            server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), port), 0);
+            handlers = Executors.newFixedThreadPool(2, runnable -> {
+                Thread thread = new Thread(runnable, "control-http");
+                thread.setDaemon(true);
+                return thread;
+            });
+            server.setExecutor(handlers);
+            server.createContext("/", this::handle);
+            server.start();
+            System.out.println("Control endpoint: http://127.0.0.1:" + server.getAddress().getPort() + "/");
+        }
+
+        //Completes the file when the program is ended, so the recording is not lost.
+        Thread stopOnExit = new Thread(this::stopQuietly, "headless-exit");
+        Runtime.getRuntime().addShutdownHook(stopOnExit);
+
+        if (startNow) {
+            recorder.startRecording(sampleRate, sampleSize, channels);
+        }
+        if (seconds > 0) {
+            quit.await((long) (seconds * 1e9), TimeUnit.NANOSECONDS);
+        } else {
+            quit.await();
+        }
+
+        stopQuietly();
+        if (server != null) {
+            server.stop(0);
+            handlers.shutdown();
+        }
+        bus.close();
+        Runtime.getRuntime().removeShutdownHook(stopOnExit);
+    }
+
+    /**
+     * Creates the source that is recorded.
+     *
+     * @return The capture source.
+     */
+    private CaptureSource createSource() {
+        switch (sourceName) {
+            case "sine":
+                return new SyntheticCaptureSource(Waveform.Sine, 440, 1);
+            case "noise":
+                return new SyntheticCaptureSource(Waveform.Noise, 0, 1);
+            case "speech":
+                return new SyntheticCaptureSource(Waveform.Speech, 140, 1);
+            default:
+                return new PooledCaptureSource(new LinePool(MicrophoneCaptureSource::new));
+        }
+    }
+
+    /**
+     * Stops the recording if one is going on and waits until its file is
+     * complete.
+     */
+    private void stopQuietly() {
+        //A start that is still opening the line is stopped once it is open.
+        while (recorder.getState() != RecorderState.Idle) {
+            if (recorder.getState() == RecorderState.Recording) {
+                recorder.finish();
+            }
+            try {
+                Thread.sleep(1);
+            } catch (InterruptedException ex) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Prints the events on the console and keeps the last one for the
+     * status.
+     *
+     * @param events The events.
+     */
+    private void eventsPublished(List<RecordingEvent> events) {
+        for (RecordingEvent event : events) {
+            if (!event.getType().isCoalesced()) {
+                lastEvent = event.toString();
+                System.out.println("Event: " + lastEvent);
+            }
+        }
+    }
+
+    /**
+     * Answers a request to the control endpoint.
+     *
+     * @param exchange The request and its response.
+     * @throws IOException If the response can not be sent.
+     */
+    private void handle(HttpExchange exchange) throws IOException {
+        String path = exchange.getRequestURI().getPath();
+        boolean post = exchange.getRequestMethod().equals("POST");
+        try {
+            switch (path) {
+                case "/start":
+                    if (!post) {
+                        respond(exchange, 405, "{\"error\":\"Use POST\"}");
+                        return;
+                    }
+                    Map<String, String> query = parseQuery(exchange.getRequestURI());
+                    float rate = query.containsKey("rate") ? Float.parseFloat(query.get("rate")) : sampleRate;
+                    int size = query.containsKey("size") ? Integer.parseInt(query.get("size")) : sampleSize;
+                    int count = query.containsKey("channels") ? Integer.parseInt(query.get("channels")) : channels;
+                    recorder.startRecording(rate, size, count);
+                    respond(exchange, 202, status());
+                    return;
+                case "/stop":
+                    if (!post) {
+                        respond(exchange, 405, "{\"error\":\"Use POST\"}");
+                        return;
+                    }
+                    stopQuietly();
+                    respond(exchange, 200, status());
+                    return;
+                case "/status":
+                    respond(exchange, 200, status());
+                    return;
+                case "/metrics":
+                    respond(exchange, 200, recorder.getMetrics().toJson());
+                    return;
+                case "/quit":
+                    if (!post) {
+                        respond(exchange, 405, "{\"error\":\"Use POST\"}");
+                        return;
+                    }
+                    respond(exchange, 200, status());
+                    quit.countDown();
+                    return;
+                default:
+                    respond(exchange, 404, "{\"error\":\"Unknown command\"}");
+            }
+        } catch (IllegalArgumentException ex) {
+            respond(exchange, 400, "{\"error\":\"" + escape(ex.getMessage()) + "\"}");
+        }
+    }
+
+    /**
+     * Gives back the status of the recorder as JSON.
+     *
+     * @return The status.
+     */
+    private String status() {
+        long firstSample = recorder.getTimeToFirstSample();
+        return String.format(Locale.ROOT, "{\"state\":\"%s\",\"lastEvent\":\"%s\",\"overruns\":%d,\"lineOverruns\":%d,\"reopenGapFrames\":%d,\"timeToFirstSampleMillis\":%.2f,\"metrics\":%s}",
+                recorder.getState(), escape(lastEvent), recorder.getOverruns(), recorder.getLineOverruns(), recorder.getReopenGapFrames(), firstSample < 0 ? -1 : firstSample / 1e6, recorder.getMetrics().toJson());
+    }
+
+    /**
+     * Reads the parameters of a request.
+     *
+     * @param uri The address of the request.
+     * @return The parameters by name.
+     */
+    private static Map<String, String> parseQuery(URI uri) {
+        Map<String, String> parameters = new HashMap<>();
+        String query = uri.getQuery();
+        if (query != null) {
+            for (String pair : query.split("&")) {
+                int equals = pair.indexOf('=');
+                if (equals > 0) {
+                    parameters.put(pair.substring(0, equals), pair.substring(equals + 1));
+                }
+            }
+        }
+        return parameters;
+    }
+
+    /**
+     * Makes a text safe to put between quotes in JSON.
+     *
+     * @param text The text.
+     * @return The escaped text.
+     */
+    private static String escape(String text) {
+        StringBuilder escaped = new StringBuilder();
+        for (char c : String.valueOf(text).toCharArray()) {
+            if (c == '"' || c == '\\') {
+                escaped.append('\\').append(c);
+            } else if (c < 0x20) {
+                escaped.append(String.format("\\u%04x", (int) c));
+            } else {
+                escaped.append(c);
+            }
+        }
+        return escaped.toString();
+    }
+
+    /**
+     * Sends a JSON response.
+     *
+     * @param exchange The request and its response.
+     * @param code The HTTP status code.
+     * @param body The JSON to send.
+     * @throws IOException If the response can not be sent.
+     */
+    private static void respond(HttpExchange exchange, int code, String body) throws IOException {
+        byte[] bytes = (body + "\n").getBytes(StandardCharsets.UTF_8);
+        exchange.getResponseHeaders().set("Content-Type", "application/json");
+        exchange.sendResponseHeaders(code, bytes.length);
+        try (OutputStream out = exchange.getResponseBody()) {
+            out.write(bytes);
+        }
+    }
+}
@@ -0,0 +1,18 @@
+package recording.audio.prototype;
+
+/**
+ * A listener for the levels of a running recording.
+ *
+ * @author Jafeth
+ */
+public interface LevelListener {
+
+    /**
+     * Is fired at a fixed rate with the latest levels. The arrays are reused
+     * for the next call and must be copied to be kept.
+     *
+     * @param peak The peak level of every channel, from 0 to 1.
+     * @param rms The RMS level of every channel, from 0 to 1.
+     */
+    void levelsChanged(float[] peak, float[] rms);
+}
@@ -0,0 +1,272 @@
+package recording.audio.prototype;
+
+import java.util.concurrent.atomic.AtomicReference;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Measures the peak and RMS level of every channel of captured audio. Runs on
+ * the capturing thread without allocating anything: the samples are read in
+ * primitive loops and the results are handed to the reading thread through
+ * three preallocated snapshots that are swapped around.
+ *
+ * @author Jafeth
+ */
+public class LevelMeter {
+
+    private static final int WINDOWS_PER_SECOND = 20;//The amount of times per second the levels are completed.
+
+    private final int channels;//The amount of channels.
+    private final int bytesPerSample;//The amount of bytes one sample takes up.
+    private final boolean bigEndian;//Tells whether the samples are big-endian.
+    private final int signShift;//The shift that sign-extends a signed sample to 32 bits.
+    private final int offset;//The value that is subtracted from unsigned samples.
+    private final double fullScale;//The highest possible sample value.
+    private final int windowFrames;//The amount of frames one window of levels covers.
+    private final long[] peaks;//The highest absolute sample value of every channel in the current window.
+    private final double[] sums;//The sum of the squared samples of every channel in the current window.
+    private int frames;//The amount of frames in the current window.
+    private Snapshot back;//The snapshot the capturing thread fills.
+    private final AtomicReference<Snapshot> middle;//The snapshot that is handed over.
+    private Snapshot front;//The snapshot the reading thread reads.
+
+    /**
+     * Constructor for the LevelMeter class.
+     *
+     * @param format The format of the captured audio.
+     */
+    public LevelMeter(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        channels = format.getChannels();
+        bytesPerSample = format.getFrameSize() / channels;
+        bigEndian = format.isBigEndian();
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        signShift = signed ? 32 - bits : 0;
+        offset = signed ? 0 : 1 << (bits - 1);
+        fullScale = (double) (1L << (bits - 1));
+        windowFrames = Math.max(1, (int) (format.getFrameRate() / WINDOWS_PER_SECOND));
+        peaks = new long[channels];
+        sums = new double[channels];
+
+        back = new Snapshot(channels);
+        middle = new AtomicReference<>(new Snapshot(channels));
+        front = new Snapshot(channels);
+    }
+
+    /**
+     * Measures a block of captured audio. Is only called by the capturing
+     * thread.
+     *
+     * @param buffer The buffer holding the captured audio.
+     * @param start The offset in the buffer to start at.
+     * @param length The amount of bytes, a multiple of the frame size.
+     */
+    public void process(byte[] buffer, int start, int length) {
+        int frameSize = bytesPerSample * channels;
+        int end = start + length;
+        int position = start;
+        while (position < end) {
+            //Measures up to the end of the current window.
+            int count = Math.min(windowFrames - frames, (end - position) / frameSize);
+            switch (bytesPerSample) {
+                case 1:
+                    process8(buffer, position, count);
+                    break;
+                case 2:
+                    process16(buffer, position, count);
+                    break;
+                case 3:
+                    process24(buffer, position, count);
+                    break;
+                default:
+                    process32(buffer, position, count);
+                    break;
+            }
+            position += count * frameSize;
+            frames += count;
+            if (frames == windowFrames) {
+                publish();
+            }
+        }
+    }
+
+    /**
+     * Measures frames of 8 bit samples.
+     *
+     * @param buffer The buffer holding the captured audio.
+     * @param position The position of the first frame.
+     * @param count The amount of frames.
+     */
+    private void process8(byte[] buffer, int position, int count) {
+        for (int channel = 0; channel < channels; channel++) {
+            long peak = peaks[channel];
+            double sum = sums[channel];
+            for (int i = position + channel, n = 0; n < count; i += channels, n++) {
+                int raw = buffer[i] & 0xFF;
+                int value = ((raw << signShift) >> signShift) - offset;
+                long magnitude = Math.abs((long) value);
+                peak = Math.max(peak, magnitude);
+                sum += (double) value * value;
+            }
+            peaks[channel] = peak;
+            sums[channel] = sum;
+        }
+    }
+
+    /**
+     * Measures frames of 16 bit samples.
+     *
+     * @param buffer The buffer holding the captured audio.
+     * @param position The position of the first frame.
+     * @param count The amount of frames.
+     */
+    private void process16(byte[] buffer, int position, int count) {
+        int high = bigEndian ? 0 : 1;
+        int low = 1 - high;
+        int stride = channels * 2;
+        for (int channel = 0; channel < channels; channel++) {
+            long peak = peaks[channel];
+            double sum = sums[channel];
+            for (int i = position + channel * 2, n = 0; n < count; i += stride, n++) {
+                int raw = ((buffer[i + high] & 0xFF) << 8) | (buffer[i + low] & 0xFF);
+                int value = ((raw << signShift) >> signShift) - offset;
+                long magnitude = Math.abs((long) value);
+                peak = Math.max(peak, magnitude);
+                sum += (double) value * value;
+            }
+            peaks[channel] = peak;
+            sums[channel] = sum;
+        }
+    }
+
+    /**
+     * Measures frames of 20 or 24 bit samples in three bytes.
+     *
+     * @param buffer The buffer holding the captured audio.
+     * @param position The position of the first frame.
+     * @param count The amount of frames.
+     */
+    private void process24(byte[] buffer, int position, int count) {
+        int high = bigEndian ? 0 : 2;
+        int low = 2 - high;
+        int stride = channels * 3;
+        for (int channel = 0; channel < channels; channel++) {
+            long peak = peaks[channel];
+            double sum = sums[channel];
+            for (int i = position + channel * 3, n = 0; n < count; i += stride, n++) {
+                int raw = ((buffer[i + high] & 0xFF) << 16) | ((buffer[i + 1] & 0xFF) << 8) | (buffer[i + low] & 0xFF);
+                int value = ((raw << signShift) >> signShift) - offset;
+                long magnitude = Math.abs((long) value);
+                peak = Math.max(peak, magnitude);
+                sum += (double) value * value;
+            }
+            peaks[channel] = peak;
+            sums[channel] = sum;
+        }
+    }
+
+    /**
+     * Measures frames of 32 bit samples.
+     *
+     * @param buffer The buffer holding the captured audio.
+     * @param position The position of the first frame.
+     * @param count The amount of frames.
+     */
+    private void process32(byte[] buffer, int position, int count) {
+        int b0 = bigEndian ? 0 : 3;
+        int b1 = bigEndian ? 1 : 2;
+        int b2 = bigEndian ? 2 : 1;
+        int b3 = bigEndian ? 3 : 0;
+        int stride = channels * 4;
+        for (int channel = 0; channel < channels; channel++) {
+            long peak = peaks[channel];
+            double sum = sums[channel];
+            for (int i = position + channel * 4, n = 0; n < count; i += stride, n++) {
+                int raw = (buffer[i + b0] << 24) | ((buffer[i + b1] & 0xFF) << 16) | ((buffer[i + b2] & 0xFF) << 8) | (buffer[i + b3] & 0xFF);
+                //Wraps around to the signed value for unsigned samples as well.
+                int value = raw - offset;
+                long magnitude = Math.abs((long) value);
+                peak = Math.max(peak, magnitude);
+                sum += (double) value * value;
+            }
+            peaks[channel] = peak;
+            sums[channel] = sum;
+        }
+    }
+
+    /**
+     * Completes the current window and hands its levels to the reading
+     * thread.
+     */
+    private void publish() {
+        for (int channel = 0; channel < channels; channel++) {
+            back.peak[channel] = (float) Math.min(1, peaks[channel] / fullScale);
+            back.rms[channel] = (float) Math.min(1, Math.sqrt(sums[channel] / frames) / fullScale);
+            peaks[channel] = 0;
+            sums[channel] = 0;
+        }
+        frames = 0;
+
+        back.fresh = true;
+        back = middle.getAndSet(back);
+    }
+
+    /**
+     * Gives back the levels of the last completed window. Is only called by
+     * one reading thread. The arrays are reused by the next call.
+     *
+     * @return The peak levels of every channel, from 0 to 1.
+     */
+    public float[] readPeaks() {
+        takeLatest();
+        return front.peak;
+    }
+
+    /**
+     * Gives back the RMS levels belonging to the last readPeaks() call.
+     *
+     * @return The RMS levels of every channel, from 0 to 1.
+     */
+    public float[] readRms() {
+        return front.rms;
+    }
+
+    /**
+     * Swaps the latest completed snapshot in for the reading thread, if there
+     * is a new one.
+     */
+    private void takeLatest() {
+        if (middle.get().fresh) {
+            front.fresh = false;
+            front = middle.getAndSet(front);
+        }
+    }
+
+    /**
+     * Gives back the amount of channels that are measured.
+     *
+     * @return The amount of channels.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * The levels of one window.
+     */
+    private static final class Snapshot {
+
+        private final float[] peak;//The peak level of every channel.
+        private final float[] rms;//The RMS level of every channel.
+        private volatile boolean fresh;//Tells whether the snapshot has not been read yet.
+
+        /**
+         * Constructor for the Snapshot class.
+         *
+         * @param channels The amount of channels.
+         */
+        private Snapshot(int channels) {
+            peak = new float[channels];
+            rms = new float[channels];
+        }
+    }
+}
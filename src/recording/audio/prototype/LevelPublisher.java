@@ -0,0 +1,83 @@
+package recording.audio.prototype;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes the levels of a level meter to its listeners at a fixed rate, on
+ * its own thread, so the capturing thread never waits for a listener.
+ *
+ * @author Jafeth
+ */
+public class LevelPublisher {
+
+    private static final long INTERVAL_MILLIS = 50;//The time between two publications.
+
+    private final List<LevelListener> listeners = new CopyOnWriteArrayList<>();//The listeners of the levels.
+    private final ScheduledExecutorService timer;//The thread that publishes the levels.
+    private ScheduledFuture<?> publication;//The repeating publication of the current meter.
+
+    /**
+     * Constructor for the LevelPublisher class.
+     */
+    public LevelPublisher() {
+        timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "level-publisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Adds a listener of the levels.
+     *
+     * @param listener The listener to add.
+     */
+    public void addListener(LevelListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a listener of the levels.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeListener(LevelListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Starts publishing the levels of the given meter, instead of those of
+     * the meter before it.
+     *
+     * @param meter The level meter to publish.
+     */
+    public synchronized void start(LevelMeter meter) {
+        stop();
+        publication = timer.scheduleAtFixedRate(() -> {
+            float[] peak = meter.readPeaks();
+            float[] rms = meter.readRms();
+            for (LevelListener listener : listeners) {
+                try {
+                    listener.levelsChanged(peak, rms);
+                } catch (RuntimeException ex) {
+                    //A broken listener must not stop the levels of the others.
+                }
+            }
+        }, INTERVAL_MILLIS, INTERVAL_MILLIS, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops publishing levels.
+     */
+    public synchronized void stop() {
+        if (publication != null) {
+            publication.cancel(false);
+            publication = null;
+        }
+    }
+}
@@ -0,0 +1,307 @@
+package recording.audio.prototype;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.Supplier;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * A pool of capture sources that are kept open between recordings, so a
+ * recording does not wait for the sound system to find and open a line. The
+ * sources are kept per audio format. Which formats are supported is asked
+ * of the format capabilities, the same ones the user chooses from, so the
+ * pool and the choices agree when devices are plugged in or out.
+ *
+ * @author Jafeth
+ */
+public class LinePool {
+
+    private static final int MAX_IDLE = 2;//The highest amount of open sources kept per format.
+
+    private final Supplier<CaptureSource> factory;//Creates a new source when none is kept open.
+    private final Map<String, ArrayDeque<CaptureSource>> idle = new HashMap<>();//The open sources nobody is using, per format.
+    private final FormatCapabilities capabilities;//Knows which formats the sources support.
+    private boolean closed;//Tells whether the pool has been closed.
+
+    /**
+     * Constructor for the LinePool class. A source of the factory is asked
+     * which formats are supported.
+     *
+     * @param factory Creates a new, closed capture source.
+     */
+    public LinePool(Supplier<CaptureSource> factory) {
+        this(factory, new FormatCapabilities(factory.get()));
+    }
+
+    /**
+     * Constructor for the LinePool class.
+     *
+     * @param factory Creates a new, closed capture source.
+     * @param capabilities Knows which formats the sources of the factory
+     * support.
+     */
+    public LinePool(Supplier<CaptureSource> factory, FormatCapabilities capabilities) {
+        this.factory = factory;
+        this.capabilities = capabilities;
+    }
+
+    /**
+     * Gives back the key the sources of an audio format are kept under. The
+     * AudioFormat class does not compare by value itself.
+     *
+     * @param format The audio format.
+     * @return The key of the format.
+     */
+    private static String keyOf(AudioFormat format) {
+        return format.toString();
+    }
+
+    /**
+     * Checks if the sources can capture in the given audio format. Every
+     * format is only checked once until the devices change.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    public boolean isFormatSupported(AudioFormat format) {
+        return capabilities.isSupported(format);
+    }
+
+    /**
+     * Gives back the format capabilities the pool asks.
+     *
+     * @return The format capabilities.
+     */
+    public FormatCapabilities getCapabilities() {
+        return capabilities;
+    }
+
+    /**
+     * Gives back an open source for the given audio format. A source that is
+     * kept open is handed out first, otherwise a new one is opened.
+     *
+     * @param format The audio format to capture in.
+     * @return The open source, not started yet.
+     * @throws LineUnavailableException If a new source can not be opened.
+     */
+    public CaptureSource acquire(AudioFormat format) throws LineUnavailableException {
+        return acquire(format, 0);
+    }
+
+    /**
+     * Gives back an open source for the given audio format and buffer size.
+     * A source that is kept open is handed out first if its buffer is at
+     * least the given size and not more than twice as large, otherwise a new
+     * one is opened. A kept source of another size is closed, as a device may
+     * only have one line open at a time.
+     *
+     * @param format The audio format to capture in.
+     * @param bufferSize The size of the buffer of the source in bytes, 0 for
+     * any size.
+     * @return The open source, not started yet.
+     * @throws LineUnavailableException If a new source can not be opened.
+     */
+    public CaptureSource acquire(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        CaptureSource resized = null;
+        synchronized (this) {
+            ArrayDeque<CaptureSource> sources = idle.get(keyOf(format));
+            CaptureSource kept = sources == null ? null : sources.poll();
+            if (kept != null) {
+                int keptSize = kept.getBufferSize();
+                if (bufferSize <= 0 || (keptSize >= bufferSize && keptSize / 2 <= bufferSize)) {
+                    return kept;
+                }
+                resized = kept;
+            }
+        }
+        if (resized != null) {
+            resized.close();
+        }
+
+        //Opens outside the lock, as opening can take a long time.
+        CaptureSource source = factory.get();
+        try {
+            source.open(format, bufferSize);
+        } catch (LineUnavailableException ex) {
+            //A device may only have one line open at a time, so the lines kept for other formats are given up first.
+            if (closeIdle() == 0) {
+                throw ex;
+            }
+            source.open(format, bufferSize);
+        }
+        return source;
+    }
+
+    /**
+     * Closes every source that is kept open, without closing the pool.
+     *
+     * @return The amount of sources that were closed.
+     */
+    private int closeIdle() {
+        return closeIdleExcept(Collections.emptySet());
+    }
+
+    /**
+     * Closes the sources that are kept open for other formats than the given
+     * ones, without closing the pool.
+     *
+     * @param keys The keys of the formats whose sources are kept.
+     * @return The amount of sources that were closed.
+     */
+    private int closeIdleExcept(Set<String> keys) {
+        ArrayDeque<CaptureSource> closing = new ArrayDeque<>();
+        synchronized (this) {
+            Iterator<Map.Entry<String, ArrayDeque<CaptureSource>>> entries = idle.entrySet().iterator();
+            while (entries.hasNext()) {
+                Map.Entry<String, ArrayDeque<CaptureSource>> entry = entries.next();
+                if (!keys.contains(entry.getKey())) {
+                    closing.addAll(entry.getValue());
+                    entries.remove();
+                }
+            }
+        }
+        for (CaptureSource source : closing) {
+            source.close();
+        }
+        return closing.size();
+    }
+
+    /**
+     * Takes back a source that is no longer used. The source is stopped and
+     * whatever it still holds is thrown away, so the next recording starts
+     * with fresh audio. It is kept open unless enough sources of its format
+     * are kept already.
+     *
+     * @param source The source to take back.
+     */
+    public void release(CaptureSource source) {
+        source.stop();
+        AudioFormat format = source.getFormat();
+        if (format == null) {
+            source.close();
+            return;
+        }
+
+        //Throws away the audio that was captured before the source stopped.
+        byte[] drain = new byte[Math.max(format.getFrameSize(), 4096 - 4096 % format.getFrameSize())];
+        int available = source.available();
+        while (available > 0) {
+            if (source.read(drain, 0, Math.min(drain.length, available - available % format.getFrameSize())) <= 0) {
+                break;
+            }
+            available = source.available();
+        }
+
+        synchronized (this) {
+            ArrayDeque<CaptureSource> sources = idle.computeIfAbsent(keyOf(format), key -> new ArrayDeque<>());
+            if (!closed && sources.size() < MAX_IDLE) {
+                sources.add(source);
+                return;
+            }
+        }
+        source.close();
+    }
+
+    /**
+     * Opens a source for each of the given formats ahead of the first
+     * recording, so the sound system has loaded its drivers by then. Every
+     * source captures a few milliseconds once and is then kept open. Formats
+     * that are not supported are skipped. The sources kept for any other
+     * format are closed, so choosing format after format does not leave a
+     * line open for each.
+     *
+     * @param formats The audio formats that will probably be recorded in.
+     * @return The amount of sources that were kept open.
+     */
+    public int warmUp(AudioFormat... formats) {
+        Set<String> keys = new HashSet<>();
+        for (AudioFormat format : formats) {
+            keys.add(keyOf(format));
+        }
+        closeIdleExcept(keys);
+        int warmed = 0;
+        for (AudioFormat format : formats) {
+            if (warm(format, 0)) {
+                warmed++;
+            }
+        }
+        return warmed;
+    }
+
+    /**
+     * Opens a source with the given buffer size ahead of the first
+     * recording, captures a few milliseconds once and keeps it open. Nothing
+     * is opened if a source of the format is kept already or the format is
+     * not supported. The sources kept for any other format are closed.
+     *
+     * @param format The audio format that will probably be recorded in.
+     * @param bufferSize The size of the buffer of the source in bytes, 0 for
+     * any size.
+     * @return True if a source was opened and kept.
+     */
+    public boolean warmUp(AudioFormat format, int bufferSize) {
+        closeIdleExcept(Collections.singleton(keyOf(format)));
+        return warm(format, bufferSize);
+    }
+
+    /**
+     * Opens a source ahead of the first recording and keeps it open, unless
+     * a source of the format is kept already or the format is not supported.
+     *
+     * @param format The audio format that will probably be recorded in.
+     * @param bufferSize The size of the buffer of the source in bytes, 0 for
+     * any size.
+     * @return True if a source was opened and kept.
+     */
+    private boolean warm(AudioFormat format, int bufferSize) {
+        synchronized (this) {
+            ArrayDeque<CaptureSource> sources = idle.get(keyOf(format));
+            if (closed || (sources != null && !sources.isEmpty())) {
+                return false;
+            }
+        }
+        if (!isFormatSupported(format)) {
+            return false;
+        }
+        try {
+            CaptureSource source = acquire(format, bufferSize);
+            //Reads one short block, so the whole path up to the first sample has been taken once.
+            byte[] block = new byte[Math.max(1, (int) (format.getFrameRate() / 100)) * format.getFrameSize()];
+            source.start();
+            source.read(block, 0, block.length);
+            release(source);
+            return true;
+        } catch (LineUnavailableException ex) {
+            //The format is not available right now, the recording will try again when it starts.
+            return false;
+        }
+    }
+
+    /**
+     * Gives back the amount of open sources that are kept for a format.
+     *
+     * @param format The audio format.
+     * @return The amount of idle sources.
+     */
+    public synchronized int getIdleCount(AudioFormat format) {
+        ArrayDeque<CaptureSource> sources = idle.get(keyOf(format));
+        return sources == null ? 0 : sources.size();
+    }
+
+    /**
+     * Closes every source that is kept open. Sources that are taken back
+     * afterwards are closed right away.
+     */
+    public void close() {
+        synchronized (this) {
+            closed = true;
+        }
+        closeIdle();
+    }
+}
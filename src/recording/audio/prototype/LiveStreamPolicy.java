@@ -0,0 +1,21 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of the ways a live stream treats a subscriber that reads slower
+ * than the recording is captured.
+ *
+ * @author Jafeth
+ */
+public enum LiveStreamPolicy {
+
+    /**
+     * Overwrites what the subscriber has not read yet, the subscriber skips ahead and counts what it missed
+     */
+    Drop,
+
+    /**
+     * Makes the writing side wait for the subscriber for a limited time, after which it is treated as Drop
+     */
+    Backpressure;
+
+}
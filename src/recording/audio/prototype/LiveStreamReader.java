@@ -0,0 +1,290 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A subscriber of a live stream, in this process or in another one. Maps the
+ * file of the stream and gives the audio data back as read-only views of the
+ * mapped ring, so reading copies nothing. Starts at the newest audio data.
+ *
+ * A subscriber claims a slot in the header of the file by locking it, so
+ * processes never share a slot and the slot of a process that died is free
+ * again. Its cursor is kept in the slot, so the writing side can wait for it
+ * if it uses backpressure.
+ *
+ * Usage: LiveStreamReader file [Drop|Backpressure], writes the raw audio
+ * data to the standard output until the recording ends.
+ *
+ * @author Jafeth
+ */
+public class LiveStreamReader implements AutoCloseable {
+
+    private final FileChannel channel;//The channel to the file.
+    private final MappedByteBuffer map;//The whole file, mapped.
+    private final ByteBuffer data;//A read-only view of the mapped file to hand out views of the ring from.
+    private final AudioFormat format;//The format of the audio data.
+    private final LiveStreamPolicy policy;//What happens when the subscriber is too slow.
+    private final int capacity;//The size of the ring in bytes.
+    private final int maxWrite;//The largest amount of bytes the writing side copies into the ring at once.
+    private final int slotBase;//The position of the slot of the subscriber in the header.
+    private final FileLock slotLock;//Holds the slot of the subscriber.
+    private long cursor;//The position of the next byte to read.
+    private int held;//The amount of bytes of the view that has been handed out, 0 for none.
+    private long droppedBytes;//The amount of bytes that were overwritten before they were read.
+    private boolean ended;//Tells whether the recording has ended and everything has been read.
+    private volatile long fence;//Is written to keep the mapped memory in order.
+
+    /**
+     * Constructor for the LiveStreamReader class. Subscribes to the stream
+     * published in the given file.
+     *
+     * @param file The file of the stream.
+     * @param policy What happens when the subscriber reads slower than the
+     * recording is captured.
+     * @throws IOException If the file can not be mapped, is not a live
+     * stream or has no free slot.
+     */
+    public LiveStreamReader(File file, LiveStreamPolicy policy) throws IOException {
+        this.policy = policy;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE);
+        try {
+            if (channel.size() < LiveStreamWriter.HEADER_SIZE) {
+                throw new IOException("Not a live stream: " + file);
+            }
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, channel.size());
+            if (map.getInt(0) != LiveStreamWriter.MAGIC || map.getInt(4) != LiveStreamWriter.VERSION) {
+                throw new IOException("Not a live stream: " + file);
+            }
+            int flags = map.getInt(LiveStreamWriter.FLAGS);
+            format = new AudioFormat(map.getFloat(LiveStreamWriter.SAMPLE_RATE), map.getInt(LiveStreamWriter.SAMPLE_SIZE),
+                    map.getInt(LiveStreamWriter.CHANNELS), (flags & 1) != 0, (flags & 2) != 0);
+            capacity = map.getInt(LiveStreamWriter.CAPACITY);
+            maxWrite = map.getInt(LiveStreamWriter.MAX_WRITE);
+
+            //Claims the first slot no other subscriber holds.
+            int claimed = -1;
+            FileLock lock = null;
+            for (int slot = 0; slot < LiveStreamWriter.MAX_SUBSCRIBERS && lock == null; slot++) {
+                try {
+                    lock = channel.tryLock(LiveStreamWriter.SLOTS + slot * LiveStreamWriter.SLOT_SIZE, LiveStreamWriter.SLOT_SIZE, false);
+                } catch (OverlappingFileLockException ex) {
+                    //The slot is held by another subscriber in this process.
+                }
+                if (lock != null) {
+                    claimed = slot;
+                }
+            }
+            if (lock == null) {
+                throw new IOException("No free subscriber slot in " + file);
+            }
+            slotLock = lock;
+            slotBase = LiveStreamWriter.SLOTS + claimed * LiveStreamWriter.SLOT_SIZE;
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+
+        cursor = map.getLong(LiveStreamWriter.WRITTEN);
+        map.putLong(slotBase + LiveStreamWriter.SLOT_CURSOR, cursor);
+        map.putInt(slotBase + LiveStreamWriter.SLOT_POLICY, policy.ordinal());
+        fence();
+        map.putInt(slotBase + LiveStreamWriter.SLOT_ACTIVE, 1);
+        data = map.asReadOnlyBuffer();
+    }
+
+    /**
+     * Writes the live stream in the given file to the standard output, for
+     * piping it into another program.
+     *
+     * @param args The file of the stream and, optionally, the policy.
+     * @throws IOException If the stream can not be read or written.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length < 1) {
+            System.err.println("Usage: LiveStreamReader file [Drop|Backpressure]");
+            System.exit(2);
+        }
+        LiveStreamPolicy policy = args.length > 1 ? LiveStreamPolicy.valueOf(args[1]) : LiveStreamPolicy.Drop;
+        WritableByteChannel out = Channels.newChannel(System.out);
+        try (LiveStreamReader reader = new LiveStreamReader(new File(args[0]), policy)) {
+            System.err.println("Reading " + reader.getFormat());
+            while (!reader.isEnded()) {
+                ByteBuffer view = reader.next(Integer.MAX_VALUE, 1000);
+                if (view != null) {
+                    while (view.hasRemaining()) {
+                        out.write(view);
+                    }
+                    reader.release();
+                }
+            }
+            System.err.println("Dropped " + reader.getDroppedBytes() + " bytes");
+        }
+        System.out.flush();
+    }
+
+    /**
+     * Keeps the reads and writes of the mapped memory before this call from
+     * being reordered with those after it, as the virtual machine follows
+     * every volatile write with a full fence.
+     */
+    private void fence() {
+        fence = cursor;
+    }
+
+    /**
+     * Gives back the next audio data as a read-only view of the ring, without
+     * copying it. Waits for audio data if there is none. The view is valid
+     * until release() is called, which has to be done before the next call.
+     * A subscriber that has fallen too far behind first skips ahead to the
+     * newest half of the ring.
+     *
+     * @param maxBytes The largest amount of bytes to give back, at least one
+     * frame.
+     * @param timeoutMillis The longest time to wait for audio data.
+     * @return The view of the audio data, in whole frames, or null if there
+     * was none in time or the recording has ended.
+     */
+    public ByteBuffer next(int maxBytes, long timeoutMillis) {
+        if (held > 0) {
+            throw new IllegalStateException("The last view has not been released");
+        }
+        int frameSize = format.getFrameSize();
+        if (maxBytes < frameSize) {
+            throw new IllegalArgumentException("Less than one frame asked for");
+        }
+        long deadline = System.nanoTime() + timeoutMillis * 1000000L;
+        while (true) {
+            boolean closed = map.getInt(LiveStreamWriter.CLOSED) == 1;
+            long written = map.getLong(LiveStreamWriter.WRITTEN);
+            fence();
+
+            //The part of the ring the writing side may be overwriting can not be read anymore.
+            if (written - cursor > capacity - maxWrite) {
+                long skipTo = written - capacity / 2 / frameSize * frameSize;
+                droppedBytes += skipTo - cursor;
+                cursor = skipTo;
+                publishCursor();
+            }
+
+            long available = written - cursor;
+            if (available > 0) {
+                int position = (int) (cursor % capacity);
+                int length = (int) Math.min(Math.min(available, capacity - position), maxBytes - maxBytes % frameSize);
+                ByteBuffer view = data.duplicate();
+                view.limit(LiveStreamWriter.HEADER_SIZE + position + length);
+                view.position(LiveStreamWriter.HEADER_SIZE + position);
+                held = length;
+                return view.slice();
+            }
+            if (closed) {
+                ended = true;
+                return null;
+            }
+            if (System.nanoTime() >= deadline) {
+                return null;
+            }
+            LockSupport.parkNanos(LiveStreamWriter.WAIT_NANOS);
+        }
+    }
+
+    /**
+     * Moves past the view that was handed out last, so the writing side may
+     * reuse its part of the ring.
+     *
+     * @return False if the view was overwritten while it was used, which
+     * can only happen when the subscriber uses the Drop policy or was too
+     * slow, so what was read from it has to be thrown away.
+     */
+    public boolean release() {
+        if (held == 0) {
+            return true;
+        }
+        fence();
+        long written = map.getLong(LiveStreamWriter.WRITTEN);
+        boolean intact = written - cursor <= capacity - maxWrite;
+        if (!intact) {
+            droppedBytes += held;
+        }
+        cursor += held;
+        held = 0;
+        publishCursor();
+        return intact;
+    }
+
+    /**
+     * Tells the writing side how far the subscriber has read.
+     */
+    private void publishCursor() {
+        fence();
+        map.putLong(slotBase + LiveStreamWriter.SLOT_CURSOR, cursor);
+    }
+
+    /**
+     * Gives back the format of the audio data.
+     *
+     * @return The audio format.
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gives back what happens when the subscriber is too slow.
+     *
+     * @return The policy.
+     */
+    public LiveStreamPolicy getPolicy() {
+        return policy;
+    }
+
+    /**
+     * Gives back the position in the stream of the next byte to read.
+     *
+     * @return The position in bytes since the start of the recording.
+     */
+    public long getPosition() {
+        return cursor;
+    }
+
+    /**
+     * Gives back the amount of bytes that were overwritten before the
+     * subscriber read them.
+     *
+     * @return The amount of dropped bytes.
+     */
+    public long getDroppedBytes() {
+        return droppedBytes;
+    }
+
+    /**
+     * Tells whether the recording has ended and everything has been read.
+     *
+     * @return True if nothing more will come.
+     */
+    public boolean isEnded() {
+        return ended;
+    }
+
+    /**
+     * Unsubscribes from the stream and frees the slot.
+     *
+     * @throws IOException If the file can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        map.putInt(slotBase + LiveStreamWriter.SLOT_ACTIVE, 0);
+        slotLock.release();
+        channel.close();
+    }
+}
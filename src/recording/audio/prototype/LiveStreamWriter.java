@@ -0,0 +1,240 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Publishes the recording while it is made, for other processes such as
+ * transcribers and monitors. The audio data is copied once into a ring in a
+ * memory-mapped file. Every subscriber maps the same file and reads the data
+ * where it lies, keeping a cursor of its own, so there are no copies per
+ * subscriber. Is used as a sink on the writing side of a recording, so the
+ * capturing thread never waits for a subscriber.
+ *
+ * The file starts with a header page holding the format, the capacity of the
+ * ring, the amount of bytes written so far and a slot for the cursor of
+ * every subscriber. The ring follows the header.
+ *
+ * @author Jafeth
+ */
+public class LiveStreamWriter implements AudioSink {
+
+    static final int MAGIC = 0x4C50434D;//Marks a live stream file, "LPCM".
+    static final int VERSION = 1;//The version of the layout of the file.
+    static final int HEADER_SIZE = 4096;//The size of the header, one page.
+    static final int MAX_SUBSCRIBERS = 16;//The amount of subscriber slots.
+    static final int SLOT_SIZE = 32;//The size of one subscriber slot.
+    static final int SAMPLE_RATE = 8;//The position of the sample rate in the header.
+    static final int SAMPLE_SIZE = 12;//The position of the sample size in the header.
+    static final int CHANNELS = 16;//The position of the amount of channels in the header.
+    static final int FLAGS = 20;//The position of the flags in the header, 1 for signed and 2 for big-endian.
+    static final int CAPACITY = 24;//The position of the capacity of the ring in the header.
+    static final int MAX_WRITE = 28;//The position of the largest amount written at once in the header.
+    static final int CLOSED = 32;//The position of the flag that tells the recording has ended.
+    static final int WRITTEN = 40;//The position of the amount of bytes written so far in the header.
+    static final int SLOTS = 64;//The position of the first subscriber slot in the header.
+    static final int SLOT_CURSOR = 0;//The position of the cursor in a slot.
+    static final int SLOT_ACTIVE = 8;//The position of the flag that tells the slot is in use.
+    static final int SLOT_POLICY = 12;//The position of the policy of the subscriber in a slot.
+    static final long WAIT_NANOS = 100000L;//The time to sleep while waiting for the other side.
+
+    private final FileChannel channel;//The channel to the file.
+    private final MappedByteBuffer map;//The whole file, mapped.
+    private final ByteBuffer data;//A view of the mapped file to copy the audio data into the ring with.
+    private final int capacity;//The size of the ring in bytes, in whole frames.
+    private final int maxWrite;//The largest amount of bytes copied into the ring at once.
+    private final long maxWaitNanos;//The longest time to wait for a subscriber that uses backpressure.
+    private final long[] givenUpAt = new long[MAX_SUBSCRIBERS];//The cursor of every subscriber that was not waited for anymore, -1 for none.
+    private long written;//The amount of bytes written so far.
+    private long stalls;//The amount of times a subscriber was not waited for anymore.
+    private boolean closed;//Tells whether the stream has ended.
+    private volatile long fence;//Is written to keep the mapped memory in order.
+
+    /**
+     * Constructor for the LiveStreamWriter class. Creates the file under a
+     * temporary name and moves it into place, so a subscriber never finds a
+     * file that is half set up. Subscribers of an earlier file keep reading
+     * that file up to its end.
+     *
+     * @param file The file to publish in, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @param seconds The amount of audio the ring holds.
+     * @param maxWaitMillis The longest time to wait for a subscriber that
+     * uses backpressure, for every write.
+     * @throws IOException If the file can not be created or mapped.
+     */
+    public LiveStreamWriter(File file, AudioFormat format, double seconds, long maxWaitMillis) throws IOException {
+        int frameSize = format.getFrameSize();
+        capacity = Math.max(8, (int) (seconds * format.getFrameRate())) * frameSize;
+        maxWrite = Math.max(1, capacity / 8 / frameSize) * frameSize;
+        maxWaitNanos = maxWaitMillis * 1000000L;
+        Arrays.fill(givenUpAt, -1);
+
+        File temporary = new File(file.getAbsoluteFile().getParentFile(), file.getName() + ".tmp");
+        channel = FileChannel.open(temporary.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            map = channel.map(FileChannel.MapMode.READ_WRITE, 0, HEADER_SIZE + (long) capacity);
+            map.putFloat(SAMPLE_RATE, format.getSampleRate());
+            map.putInt(SAMPLE_SIZE, format.getSampleSizeInBits());
+            map.putInt(CHANNELS, format.getChannels());
+            map.putInt(FLAGS, (format.getEncoding() == AudioFormat.Encoding.PCM_SIGNED ? 1 : 0) | (format.isBigEndian() ? 2 : 0));
+            map.putInt(CAPACITY, capacity);
+            map.putInt(MAX_WRITE, maxWrite);
+            map.putInt(4, VERSION);
+            map.putInt(0, MAGIC);
+            Files.move(temporary.toPath(), file.toPath(), StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            temporary.delete();
+            throw ex;
+        }
+        data = map.duplicate();
+    }
+
+    /**
+     * Keeps the reads and writes of the mapped memory before this call from
+     * being reordered with those after it, as the virtual machine follows
+     * every volatile write with a full fence.
+     */
+    private void fence() {
+        fence = written;
+    }
+
+    /**
+     * Copies audio data into the ring and makes it visible to the
+     * subscribers. Waits for subscribers that use backpressure, each for a
+     * limited time.
+     *
+     * @param buffer The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write, a multiple of the frame
+     * size.
+     */
+    @Override
+    public void write(byte[] buffer, int offset, int length) {
+        if (closed) {
+            throw new IllegalStateException("Stream has ended");
+        }
+        while (length > 0) {
+            //Writes in pieces, so a subscriber knows how much of the ring can change during one write.
+            int piece = Math.min(length, maxWrite);
+            long end = written + piece;
+            awaitSubscribers(end);
+
+            int position = (int) (written % capacity);
+            int first = Math.min(piece, capacity - position);
+            data.position(HEADER_SIZE + position);
+            data.put(buffer, offset, first);
+            if (first < piece) {
+                data.position(HEADER_SIZE);
+                data.put(buffer, offset + first, piece - first);
+            }
+
+            //The audio data has to be visible before the new amount is.
+            fence();
+            map.putLong(WRITTEN, end);
+            written = end;
+            offset += piece;
+            length -= piece;
+        }
+    }
+
+    /**
+     * Waits until every subscriber that uses backpressure has read far enough
+     * to write up to the given position. A subscriber that does not read
+     * within the time limit is not waited for anymore until it reads again.
+     *
+     * @param end The position the next write ends at.
+     */
+    private void awaitSubscribers(long end) {
+        //Every subscriber keeps its reads within the ring minus one write, so that much is kept free.
+        long needed = end + maxWrite - capacity;
+        if (needed <= 0) {
+            return;
+        }
+        long deadline = 0;
+        for (int slot = 0; slot < MAX_SUBSCRIBERS; slot++) {
+            int base = SLOTS + slot * SLOT_SIZE;
+            while (map.getInt(base + SLOT_ACTIVE) == 1 && map.getInt(base + SLOT_POLICY) == LiveStreamPolicy.Backpressure.ordinal()) {
+                long cursor = map.getLong(base + SLOT_CURSOR);
+                if (cursor >= needed || cursor == givenUpAt[slot]) {
+                    break;
+                }
+                long now = System.nanoTime();
+                if (deadline == 0) {
+                    deadline = now + maxWaitNanos;
+                } else if (now >= deadline) {
+                    givenUpAt[slot] = cursor;
+                    stalls++;
+                    break;
+                }
+                LockSupport.parkNanos(WAIT_NANOS);
+            }
+        }
+        fence();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return written;
+    }
+
+    /**
+     * Gives back the amount of subscribers that are reading the stream.
+     *
+     * @return The amount of subscribers.
+     */
+    public int getSubscriberCount() {
+        int count = 0;
+        for (int slot = 0; slot < MAX_SUBSCRIBERS; slot++) {
+            if (map.getInt(SLOTS + slot * SLOT_SIZE + SLOT_ACTIVE) == 1) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Gives back the amount of times a subscriber that uses backpressure was
+     * too slow and was not waited for anymore.
+     *
+     * @return The amount of stalls.
+     */
+    public long getStalls() {
+        return stalls;
+    }
+
+    /**
+     * Gives back the size of the ring.
+     *
+     * @return The capacity in bytes.
+     */
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     * Tells the subscribers the recording has ended and closes the file. The
+     * subscribers can still read what is in the ring.
+     *
+     * @throws IOException If the file can not be closed.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (!closed) {
+            closed = true;
+            fence();
+            map.putInt(CLOSED, 1);
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,127 @@
+package recording.audio.prototype;
+
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A histogram of non-negative values, such as latencies in nanoseconds, in
+ * the style of an HDR histogram. Every power of two is split into sixteen
+ * buckets, so any value from 0 up to the largest long is counted to within
+ * about six percent, in a fixed amount of memory. Recording needs no locks,
+ * so it can be done on the recording threads.
+ *
+ * @author Jafeth
+ */
+public class LogHistogram {
+
+    private static final int SUB_BITS = 4;//The amount of bits of a value that pick the bucket within its power of two.
+    private static final int SUB_BUCKETS = 1 << SUB_BITS;//The amount of buckets per power of two.
+    private static final int BUCKETS = (64 - SUB_BITS) * SUB_BUCKETS;//The amount of buckets up to the largest long.
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKETS);//The amount of values in every bucket.
+    private final LongAdder count = new LongAdder();//The amount of recorded values.
+    private final LongAdder sum = new LongAdder();//The sum of the recorded values.
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);//The highest recorded value.
+
+    /**
+     * Gives back the bucket a value is counted in. Values below sixteen have
+     * a bucket each.
+     *
+     * @param value The value, not negative.
+     * @return The index of the bucket.
+     */
+    private static int bucketOf(long value) {
+        if (value < SUB_BUCKETS) {
+            return (int) value;
+        }
+        int exponent = 63 - Long.numberOfLeadingZeros(value);
+        int sub = (int) (value >>> (exponent - SUB_BITS)) & (SUB_BUCKETS - 1);
+        return (exponent - SUB_BITS + 1) * SUB_BUCKETS + sub;
+    }
+
+    /**
+     * Gives back the highest value that is counted in a bucket.
+     *
+     * @param bucket The index of the bucket.
+     * @return The highest value of the bucket.
+     */
+    private static long highestOf(int bucket) {
+        if (bucket < SUB_BUCKETS) {
+            return bucket;
+        }
+        int exponent = bucket / SUB_BUCKETS + SUB_BITS - 1;
+        long lowest = (long) (SUB_BUCKETS + bucket % SUB_BUCKETS) << (exponent - SUB_BITS);
+        return lowest + (1L << (exponent - SUB_BITS)) - 1;
+    }
+
+    /**
+     * Counts a value.
+     *
+     * @param value The value, counted as 0 if negative.
+     */
+    public void record(long value) {
+        long counted = Math.max(0, value);
+        counts.incrementAndGet(bucketOf(counted));
+        count.increment();
+        sum.add(counted);
+        max.accumulate(counted);
+    }
+
+    /**
+     * Gives back the amount of recorded values.
+     *
+     * @return The count.
+     */
+    public long getCount() {
+        return count.sum();
+    }
+
+    /**
+     * Gives back the average of the recorded values.
+     *
+     * @return The mean, or 0 if nothing was recorded.
+     */
+    public double getMean() {
+        long values = count.sum();
+        return values == 0 ? 0 : (double) sum.sum() / values;
+    }
+
+    /**
+     * Gives back the highest recorded value.
+     *
+     * @return The maximum, or 0 if nothing was recorded.
+     */
+    public long getMax() {
+        return max.get();
+    }
+
+    /**
+     * Gives back the value below which the given percentage of the recorded
+     * values lies, as the highest value of its bucket.
+     *
+     * @param percentile The percentage, from 0 to 100.
+     * @return The value, or 0 if nothing was recorded.
+     */
+    public long getValueAtPercentile(double percentile) {
+        long total = 0;
+        long[] snapshot = new long[BUCKETS];
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            snapshot[bucket] = counts.get(bucket);
+            total += snapshot[bucket];
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long wanted = Math.max(1, (long) Math.ceil(Math.min(100, percentile) / 100 * total));
+        long seen = 0;
+        for (int bucket = 0; bucket < BUCKETS; bucket++) {
+            seen += snapshot[bucket];
+            if (seen >= wanted) {
+                return Math.min(highestOf(bucket), max.get());
+            }
+        }
+        return max.get();
+    }
+}
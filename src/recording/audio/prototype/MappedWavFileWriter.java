@@ -0,0 +1,155 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A writer of WAV files through memory mapping. The file is grown in large
+ * segments that are mapped into memory, so writing audio data is only a copy
+ * and never a system call. The operating system writes the pages to disk in
+ * the background. The sizes in the header are kept up to date just like the
+ * streaming writer does.
+ *
+ * @author Jafeth
+ */
+public class MappedWavFileWriter implements AudioSink {
+
+    private static final long SEGMENT_SIZE = 64L * 1024 * 1024;//The amount the file grows by at a time.
+    private static final long PATCH_INTERVAL_NANOS = 500000000L;//The time between two patches of the header.
+
+    private final FileChannel channel;//The channel to the file.
+    private final WavHeader header;//The header of the file.
+    private final SampleConverter converter;//Converts the samples to the layout of a WAV file.
+    private final MappedByteBuffer headerMap;//The mapped header, to patch the sizes.
+    private MappedByteBuffer segment;//The mapped segment that is being written.
+    private long segmentStart;//The position of the mapped segment in the file.
+    private final long segmentSize;//The amount the file grows by at a time, in whole frames.
+    private long bytesWritten;//The amount of audio bytes handed to the writer.
+    private long lastPatch;//The moment the header was patched last.
+
+    /**
+     * Constructor for the MappedWavFileWriter class. Creates the file, maps
+     * the first segment and writes the header.
+     *
+     * @param file The file to write to, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @throws IOException If the file can not be created or mapped.
+     */
+    public MappedWavFileWriter(File file, AudioFormat format) throws IOException {
+        header = new WavHeader(format);
+        converter = new SampleConverter(format);
+
+        //Holds whole frames only, so samples are never split between two segments.
+        segmentSize = SEGMENT_SIZE - SEGMENT_SIZE % format.getFrameSize();
+
+        //Mapping for writing needs the file to be readable as well.
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            headerMap = channel.map(FileChannel.MapMode.READ_WRITE, 0, header.size());
+            headerMap.order(ByteOrder.LITTLE_ENDIAN);
+            header.put(headerMap, 0);
+
+            segmentStart = header.size();
+            segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        lastPatch = System.nanoTime();
+    }
+
+    /**
+     * Copies the audio data into the mapped file and converts it there,
+     * mapping the next segment when the current one is full.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write.
+     * @throws IOException If the next segment can not be mapped.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            if (!segment.hasRemaining()) {
+                nextSegment();
+            }
+            int position = segment.position();
+            int chunk = Math.min(remaining, segment.remaining());
+            segment.put(data, offset + length - remaining, chunk);
+            converter.convert(segment, position, chunk);
+            remaining -= chunk;
+        }
+        bytesWritten += length;
+
+        long now = System.nanoTime();
+        if (now - lastPatch >= PATCH_INTERVAL_NANOS) {
+            patchHeader(bytesWritten);
+            lastPatch = now;
+        }
+    }
+
+    /**
+     * Grows the file by one segment and maps it.
+     *
+     * @throws IOException If the segment can not be mapped.
+     */
+    private void nextSegment() throws IOException {
+        segmentStart += segment.capacity();
+        segment = channel.map(FileChannel.MapMode.READ_WRITE, segmentStart, segmentSize);
+    }
+
+    /**
+     * Writes the sizes of the given amount of audio data into the header.
+     *
+     * @param dataLength The amount of audio bytes.
+     */
+    private void patchHeader(long dataLength) {
+        headerMap.putInt(header.getRiffSizeOffset(), WavHeader.clamp(header.getRiffSize(dataLength)));
+        headerMap.putInt(header.getDataSizeOffset(), WavHeader.clamp(dataLength));
+    }
+
+    /**
+     * Gives back the amount of audio bytes handed to the writer.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Pads the audio data to an even length, writes the final sizes and cuts
+     * off the part of the last segment that was not used.
+     *
+     * @throws IOException If the file can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        try {
+            long padding = bytesWritten & 1;
+            if (padding == 1) {
+                if (!segment.hasRemaining()) {
+                    nextSegment();
+                }
+                segment.put((byte) 0);
+            }
+            patchHeader(bytesWritten);
+
+            //Some systems can not cut off a file that is still mapped. The header holds the right sizes, so the unused tail is ignored then.
+            try {
+                channel.truncate(header.size() + bytesWritten + padding);
+            } catch (IOException ex) {
+                //The file keeps its preallocated length.
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
@@ -0,0 +1,224 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A WAV file that is read through memory mapping, for converting recordings
+ * afterwards. Reads the plain and the extensible PCM format the program
+ * writes. Every read maps only the frames it needs, so any part of a file of
+ * any size can be read, from many threads at once.
+ *
+ * @author Jafeth
+ */
+public class MappedWavInput implements AutoCloseable {
+
+    private static final short FORMAT_PCM = 1;//The format tag of plain PCM data.
+    private static final short FORMAT_EXTENSIBLE = (short) 0xFFFE;//The format tag of extensible PCM data.
+    private static final int RIFF = 0x46464952;//"RIFF" read as a little-endian number.
+    private static final int WAVE = 0x45564157;//"WAVE" read as a little-endian number.
+    private static final int FORMAT_CHUNK = 0x20746D66;//"fmt " read as a little-endian number.
+    private static final int DATA_CHUNK = 0x61746164;//"data" read as a little-endian number.
+
+    private final File file;//The WAV file.
+    private final FileChannel channel;//The channel to the file.
+    private final AudioFormat format;//The format of the audio in the file.
+    private final long dataOffset;//The position of the audio data in the file.
+    private final long frames;//The amount of frames in the file.
+    private final int channels;//The amount of channels.
+    private final int bytesPerSample;//The amount of bytes one sample takes up.
+    private final int frameSize;//The size of one frame in bytes.
+
+    /**
+     * Constructor for the MappedWavInput class. Opens the file and reads its
+     * header.
+     *
+     * @param file The WAV file.
+     * @throws IOException If the file can not be read or is not a PCM WAV
+     * file.
+     */
+    public MappedWavInput(File file) throws IOException {
+        this.file = file;
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            long size = channel.size();
+            ByteBuffer chunk = read(0, 12);
+            if (chunk.getInt(0) != RIFF || chunk.getInt(8) != WAVE) {
+                throw new IOException(file + " is not a WAV file");
+            }
+
+            //Walks the chunks until the data, the format comes before it.
+            AudioFormat found = null;
+            long position = 12;
+            while (true) {
+                if (position + 8 > size) {
+                    throw new IOException(file + " has no audio data");
+                }
+                chunk = read(position, 8);
+                int id = chunk.getInt(0);
+                long length = chunk.getInt(4) & 0xFFFFFFFFL;
+                if (id == FORMAT_CHUNK) {
+                    found = readFormat(read(position + 8, (int) Math.min(length, 40)));
+                } else if (id == DATA_CHUNK) {
+                    break;
+                }
+                position += 8 + length + (length & 1);
+            }
+            if (found == null) {
+                throw new IOException(file + " has no format before its audio data");
+            }
+
+            format = found;
+            channels = format.getChannels();
+            frameSize = format.getFrameSize();
+            bytesPerSample = frameSize / channels;
+            dataOffset = position + 8;
+
+            //A file that is still being recorded or is larger than the header can hold says 0 or the most it can.
+            long length = chunk.getInt(4) & 0xFFFFFFFFL;
+            long inFile = size - dataOffset;
+            frames = (length == 0 || length == 0xFFFFFFFFL || length > inFile ? inFile : length) / frameSize;
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads part of the file into a little-endian buffer.
+     *
+     * @param position The position in the file.
+     * @param length The amount of bytes.
+     * @return The buffer holding the bytes.
+     * @throws IOException If the bytes can not be read.
+     */
+    private ByteBuffer read(long position, int length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(length).order(ByteOrder.LITTLE_ENDIAN);
+        while (buffer.hasRemaining()) {
+            if (channel.read(buffer, position + buffer.position()) < 0) {
+                throw new IOException(file + " ends in its header");
+            }
+        }
+        return buffer;
+    }
+
+    /**
+     * Reads the format chunk.
+     *
+     * @param chunk The contents of the format chunk.
+     * @return The format of the audio.
+     * @throws IOException If the format is not PCM.
+     */
+    private AudioFormat readFormat(ByteBuffer chunk) throws IOException {
+        if (chunk.capacity() < 16) {
+            throw new IOException(file + " has a format chunk that is too short");
+        }
+        short tag = chunk.getShort(0);
+        int channelCount = chunk.getShort(2);
+        int sampleRate = chunk.getInt(4);
+        int blockAlign = chunk.getShort(12);
+        int containerBits = chunk.getShort(14);
+        int sampleSize = containerBits;
+        if (tag == FORMAT_EXTENSIBLE && chunk.capacity() >= 26) {
+            sampleSize = chunk.getShort(18);
+            tag = chunk.getShort(24);
+        }
+        if (tag != FORMAT_PCM) {
+            throw new IOException(file + " does not hold PCM audio");
+        }
+        if (channelCount < 1 || containerBits % 8 != 0 || containerBits < 8 || containerBits > 32 || blockAlign != channelCount * containerBits / 8
+                || sampleSize < 1 || sampleSize > containerBits) {
+            throw new IOException(file + " has a format that is not supported");
+        }
+        return new AudioFormat(sampleRate, sampleSize, channelCount, containerBits > 8, false);
+    }
+
+    /**
+     * Gives back the format of the audio in the file.
+     *
+     * @return The audio format.
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gives back the amount of frames in the file.
+     *
+     * @return The amount of frames.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Reads frames as samples between -1 and 1, mixed to the channels of the
+     * output. Frames before the start or after the end of the file are
+     * silence, so a converter can read past the edges.
+     *
+     * @param first The number of the first frame, may be negative.
+     * @param count The amount of frames.
+     * @param mixer Mixes the channels of the file to those of the output.
+     * @param output The samples of every output channel, at least count
+     * long.
+     * @throws IOException If the frames can not be read.
+     */
+    public void read(long first, int count, ChannelMixer mixer, double[][] output) throws IOException {
+        long start = Math.max(0, first);
+        long end = Math.min(frames, first + count);
+        for (double[] samples : output) {
+            Arrays.fill(samples, 0, count, 0);
+        }
+        if (start >= end) {
+            return;
+        }
+
+        MappedByteBuffer map = channel.map(FileChannel.MapMode.READ_ONLY, dataOffset + start * frameSize, (end - start) * frameSize);
+        map.order(ByteOrder.LITTLE_ENDIAN);
+        double[] frame = new double[channels];
+        int index = (int) (start - first);
+        for (int i = 0; i < map.capacity(); i += frameSize, index++) {
+            for (int c = 0; c < channels; c++) {
+                frame[c] = sample(map, i + c * bytesPerSample);
+            }
+            mixer.mix(frame, output, index);
+        }
+    }
+
+    /**
+     * Reads one sample.
+     *
+     * @param map The mapped frames.
+     * @param position The position of the sample.
+     * @return The sample, between -1 and 1.
+     */
+    private double sample(ByteBuffer map, int position) {
+        switch (bytesPerSample) {
+            case 1:
+                return ((map.get(position) & 0xFF) - 128) / 128.0;
+            case 2:
+                return map.getShort(position) / 32768.0;
+            case 3:
+                return ((map.get(position) & 0xFF) | (map.get(position + 1) & 0xFF) << 8 | map.get(position + 2) << 16) / 8388608.0;
+            default:
+                return map.getInt(position) / 2147483648.0;
+        }
+    }
+
+    /**
+     * Closes the file.
+     *
+     * @throws IOException If the file can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
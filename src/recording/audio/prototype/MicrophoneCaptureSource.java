@@ -0,0 +1,192 @@
+package recording.audio.prototype;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.DataLine;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.Mixer;
+import javax.sound.sampled.TargetDataLine;
+
+/**
+ * A capture source that records from the microphone through a TargetDataLine.
+ * The line comes from the default mixer of the system, or from a chosen one
+ * when more than one input device records at the same time.
+ *
+ * @author Jafeth
+ */
+public class MicrophoneCaptureSource implements CaptureSource {
+
+    private final Mixer.Info mixerInfo;//The mixer the line comes from, null for the default one of the system.
+    private TargetDataLine line;//The line from which audio data is captured
+
+    /**
+     * Constructor for a source that records from the default mixer.
+     */
+    public MicrophoneCaptureSource() {
+        this(null);
+    }
+
+    /**
+     * Constructor for a source that records from the given mixer.
+     *
+     * @param mixerInfo The mixer the line comes from, null for the default
+     * one of the system.
+     */
+    public MicrophoneCaptureSource(Mixer.Info mixerInfo) {
+        this.mixerInfo = mixerInfo;
+    }
+
+    /**
+     * Checks if the system has a microphone that supports the given format.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    @Override
+    public boolean isFormatSupported(AudioFormat format) {
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+        if (mixerInfo != null) {
+            return AudioSystem.getMixer(mixerInfo).isLineSupported(info);
+        }
+        return AudioSystem.isLineSupported(info);
+    }
+
+    /**
+     * Gets a microphone line for the given format and opens it.
+     *
+     * @param format The audio format to capture in.
+     * @throws LineUnavailableException If the line can not be opened.
+     */
+    @Override
+    public void open(AudioFormat format) throws LineUnavailableException {
+        open(format, 0);
+    }
+
+    /**
+     * Gets a microphone line for the given format and opens it with the
+     * given buffer size. The line may round the size to what the device
+     * supports.
+     *
+     * @param format The audio format to capture in.
+     * @param bufferSize The size of the buffer of the line in bytes, 0 for
+     * the default of the line.
+     * @throws LineUnavailableException If the line can not be opened.
+     */
+    @Override
+    public void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        //Gets the data line info, such as supported formats.
+        DataLine.Info info = new DataLine.Info(TargetDataLine.class, format);
+
+        //Sets the input line.
+        line = (TargetDataLine) (mixerInfo != null ? AudioSystem.getMixer(mixerInfo).getLine(info) : AudioSystem.getLine(info));
+
+        //Checks if the input line is set correctly.
+        if (line == null) {
+            throw new LineUnavailableException("Microphone not found");
+        }
+
+        if (bufferSize > 0) {
+            line.open(format, bufferSize);
+        } else {
+            line.open(format);
+        }
+    }
+
+    /**
+     * Starts capturing from the microphone.
+     */
+    @Override
+    public void start() {
+        line.start();
+    }
+
+    /**
+     * Reads captured audio data from the microphone.
+     *
+     * @param buffer The buffer the audio data is read into.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to read.
+     * @return The amount of bytes read, or -1 if the line has been stopped.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        TargetDataLine current = line;
+        if (current == null || !current.isOpen()) {
+            return -1;
+        }
+
+        int read = current.read(buffer, offset, length);
+
+        //A stopped line gives back nothing once its buffer has been drained.
+        if (read == 0 && !current.isActive()) {
+            return -1;
+        }
+        return read;
+    }
+
+    /**
+     * Gives back the amount of bytes that can be read without blocking.
+     *
+     * @return The amount of available bytes.
+     */
+    @Override
+    public int available() {
+        TargetDataLine current = line;
+        return current == null ? 0 : current.available();
+    }
+
+    /**
+     * Gives back the amount of frames captured since the line was opened.
+     *
+     * @return The frame position.
+     */
+    @Override
+    public long getLongFramePosition() {
+        TargetDataLine current = line;
+        return current == null ? 0 : current.getLongFramePosition();
+    }
+
+    /**
+     * Gives back the size of the internal buffer of the line in bytes.
+     *
+     * @return The buffer size.
+     */
+    @Override
+    public int getBufferSize() {
+        TargetDataLine current = line;
+        return current == null ? 0 : current.getBufferSize();
+    }
+
+    /**
+     * Gives back the audio format the line was opened with.
+     *
+     * @return The audio format, or null if the line is not open.
+     */
+    @Override
+    public AudioFormat getFormat() {
+        TargetDataLine current = line;
+        return current == null ? null : current.getFormat();
+    }
+
+    /**
+     * Stops the line monitoring.
+     */
+    @Override
+    public void stop() {
+        TargetDataLine current = line;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Closes the line.
+     */
+    @Override
+    public void close() {
+        TargetDataLine current = line;
+        if (current != null) {
+            current.close();
+        }
+    }
+}
@@ -0,0 +1,35 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of the ways the recorder can write its output file.
+ *
+ * @author Jafeth
+ */
+public enum OutputMode {
+
+    /**
+     * Writes through a file channel in large blocks
+     */
+    Stream,
+
+    /**
+     * Writes into a memory-mapped file that is grown in large segments
+     */
+    Mapped,
+
+    /**
+     * Writes a numbered series of files, starting a new one after a set length
+     */
+    Segmented,
+
+    /**
+     * Compresses the recording losslessly into a FLAC file, encoding on every core
+     */
+    Flac,
+
+    /**
+     * Writes every channel to a mono file of its own, all at the same time
+     */
+    Split;
+
+}
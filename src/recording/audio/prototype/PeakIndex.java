@@ -0,0 +1,225 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * The peak index of a recording, made by PeakIndexWriter, for drawing its
+ * waveform at any zoom without reading the audio. The sidecar file is mapped
+ * into memory, and a query picks for every column of the drawing the
+ * coarsest level that still has an entry per column, so a query costs about
+ * the same at every zoom.
+ *
+ * The sidecar is a header followed by the entries of every level. An entry
+ * holds the lowest and the highest sample of every channel as 16 bit
+ * little-endian numbers. Zoomed in further than 256 frames per column, the
+ * finest entries are shown, which are wider than a column.
+ *
+ * Usage: PeakIndex file.peaks [first frame] [end frame] [columns]
+ *
+ * @author Jafeth
+ */
+public class PeakIndex implements AutoCloseable {
+
+    static final int MAGIC = 0x534B5052;//Marks a complete peak index, "RPKS".
+    static final int VERSION = 1;//The version of the layout of the file.
+    static final int[] LEVELS = {256, 4096, 65536};//The amount of frames one entry of every level covers.
+    static final int HEADER_SIZE = 128;//The size of the header.
+    static final int VERSION_OFFSET = 4;//The position of the version.
+    static final int CHANNELS_OFFSET = 8;//The position of the amount of channels.
+    static final int SAMPLE_RATE_OFFSET = 12;//The position of the sample rate.
+    static final int FRAMES_OFFSET = 16;//The position of the amount of frames indexed.
+    static final int LEVEL_COUNT_OFFSET = 24;//The position of the amount of levels.
+    static final int LEVELS_OFFSET = 32;//The position of the description of the first level: where it is, how many entries it has and how many frames one covers.
+    static final int LEVEL_SIZE = 24;//The size of the description of a level.
+
+    private final FileChannel channel;//The channel to the sidecar file.
+    private final int channels;//The amount of channels.
+    private final float sampleRate;//The sample rate of the recording.
+    private final long frames;//The amount of frames indexed.
+    private final int[] framesPerEntry;//The amount of frames one entry covers, of every level.
+    private final long[] entries;//The amount of entries of every level.
+    private final MappedByteBuffer[] maps;//The mapped entries of every level.
+
+    /**
+     * Constructor for the PeakIndex class. Opens the sidecar file and maps
+     * its levels.
+     *
+     * @param file The sidecar file.
+     * @throws IOException If the file can not be read, or is not a complete
+     * peak index.
+     */
+    public PeakIndex(File file) throws IOException {
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.READ);
+        try {
+            if (channel.size() < HEADER_SIZE) {
+                throw new IOException(file + " is not a peak index");
+            }
+            MappedByteBuffer header = channel.map(FileChannel.MapMode.READ_ONLY, 0, HEADER_SIZE);
+            header.order(ByteOrder.LITTLE_ENDIAN);
+            if (header.getInt(0) != MAGIC || header.getInt(VERSION_OFFSET) != VERSION) {
+                throw new IOException(file + " is not a complete peak index");
+            }
+            channels = header.getInt(CHANNELS_OFFSET);
+            sampleRate = header.getFloat(SAMPLE_RATE_OFFSET);
+            frames = header.getLong(FRAMES_OFFSET);
+            int levelCount = header.getInt(LEVEL_COUNT_OFFSET);
+            if (channels < 1 || levelCount < 1 || LEVELS_OFFSET + levelCount * LEVEL_SIZE > HEADER_SIZE) {
+                throw new IOException(file + " is not a peak index");
+            }
+
+            framesPerEntry = new int[levelCount];
+            entries = new long[levelCount];
+            maps = new MappedByteBuffer[levelCount];
+            for (int level = 0; level < levelCount; level++) {
+                int at = LEVELS_OFFSET + level * LEVEL_SIZE;
+                long offset = header.getLong(at);
+                entries[level] = header.getLong(at + 8);
+                framesPerEntry[level] = header.getInt(at + 16);
+                long size = entries[level] * channels * 4;
+                if (framesPerEntry[level] < 1 || offset + size > channel.size()) {
+                    throw new IOException(file + " is cut off");
+                }
+                maps[level] = channel.map(FileChannel.MapMode.READ_ONLY, offset, size);
+                maps[level].order(ByteOrder.LITTLE_ENDIAN);
+            }
+        } catch (IOException | RuntimeException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Prints the waveform of a recording as lines of the lowest and the
+     * highest sample of every channel.
+     *
+     * @param args The sidecar file, and optionally the first and the end
+     * frame and the amount of columns.
+     * @throws IOException If the file can not be read.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: PeakIndex file.peaks [first frame] [end frame] [columns]");
+            System.exit(2);
+        }
+        try (PeakIndex index = new PeakIndex(new File(args[0]))) {
+            long first = args.length > 1 ? Long.parseLong(args[1]) : 0;
+            long end = args.length > 2 ? Long.parseLong(args[2]) : index.getFrames();
+            int columns = args.length > 3 ? Integer.parseInt(args[3]) : 80;
+            System.out.println(index.getChannels() + " channels, " + index.getSampleRate() + " Hz, " + index.getFrames() + " frames");
+            float[][] peaks = index.query(first, end, columns);
+            for (int column = 0; column < columns; column++) {
+                StringBuilder line = new StringBuilder();
+                line.append(first + (end - first) * column / columns);
+                for (float[] channelPeaks : peaks) {
+                    line.append(String.format(",%.4f,%.4f", channelPeaks[column * 2], channelPeaks[column * 2 + 1]));
+                }
+                System.out.println(line);
+            }
+        }
+    }
+
+    /**
+     * Gives back the sidecar file that belongs to a recording, so
+     * RecordAudio.wav has RecordAudio.peaks.
+     *
+     * @param wavFile The file of the recording.
+     * @return The sidecar file.
+     */
+    public static File indexFor(File wavFile) {
+        File absolute = wavFile.getAbsoluteFile();
+        return new File(absolute.getParentFile(), absolute.getName().replaceFirst("\\.wav$", "") + ".peaks");
+    }
+
+    /**
+     * Gives back the amount of channels.
+     *
+     * @return The amount of channels.
+     */
+    public int getChannels() {
+        return channels;
+    }
+
+    /**
+     * Gives back the sample rate of the recording.
+     *
+     * @return The sample rate in Hz.
+     */
+    public float getSampleRate() {
+        return sampleRate;
+    }
+
+    /**
+     * Gives back the amount of frames indexed.
+     *
+     * @return The amount of frames.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Gives back the waveform of a stretch of the recording, split in
+     * columns of the same width.
+     *
+     * @param first The first frame of the stretch.
+     * @param end The frame after the stretch.
+     * @param columns The amount of columns.
+     * @return The lowest and the highest sample of every channel in every
+     * column, between -1 and 1: the lowest of column i at 2i and the highest
+     * at 2i + 1. A column past the end of the recording is 0.
+     * @throws IllegalArgumentException If the stretch is empty or the
+     * amount of columns is not positive.
+     */
+    public float[][] query(long first, long end, int columns) {
+        if (end <= first || columns < 1) {
+            throw new IllegalArgumentException("Nothing to query");
+        }
+
+        //Uses the coarsest level that still has at least one entry per column.
+        double width = (double) (end - first) / columns;
+        int level = 0;
+        while (level + 1 < framesPerEntry.length && framesPerEntry[level + 1] <= width) {
+            level++;
+        }
+        MappedByteBuffer map = maps[level];
+        int size = framesPerEntry[level];
+        long count = entries[level];
+
+        float[][] peaks = new float[channels][columns * 2];
+        for (int column = 0; column < columns; column++) {
+            long from = first + (end - first) * column / columns;
+            long to = first + (end - first) * (column + 1) / columns;
+            long firstEntry = Math.max(0, Math.floorDiv(from, size));
+            long endEntry = Math.min(count, Math.max(firstEntry + 1, (to + size - 1) / size));
+            for (int c = 0; c < channels; c++) {
+                int lowest = Short.MAX_VALUE;
+                int highest = Short.MIN_VALUE;
+                for (long entry = firstEntry; entry < endEntry; entry++) {
+                    int at = (int) ((entry * channels + c) * 4);
+                    lowest = Math.min(lowest, map.getShort(at));
+                    highest = Math.max(highest, map.getShort(at + 2));
+                }
+                if (firstEntry < endEntry) {
+                    peaks[c][column * 2] = lowest / 32768f;
+                    peaks[c][column * 2 + 1] = highest / 32768f;
+                }
+            }
+        }
+        return peaks;
+    }
+
+    /**
+     * Closes the sidecar file.
+     *
+     * @throws IOException If the file can not be closed.
+     */
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+}
@@ -0,0 +1,310 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Builds the peak index of a recording while it is written, so a waveform
+ * of a file of hours can be drawn right away. Sits in front of the file and
+ * keeps the lowest and the highest sample of every channel for every 256
+ * frames, and from those for every 4096 and every 65536 frames. The finest
+ * level is written to the sidecar file as it is made, the coarser ones are
+ * small enough to keep in memory until the file is complete. Samples are
+ * kept as 16 bit values, which is more than a screen can show.
+ *
+ * The work is done on the writing side and is a comparison per sample, so
+ * capturing is not held up. The sidecar is read with PeakIndex, and only
+ * counts as complete once the file is.
+ *
+ * @author Jafeth
+ */
+public class PeakIndexWriter implements AudioSink {
+
+    private static final int BUFFER_SIZE = 64 * 1024;//The size of the buffer the finest level is written from.
+
+    private final AudioSink target;//The file the audio data is written to.
+    private final FileChannel channel;//The channel to the sidecar file.
+    private final int channels;//The amount of channels.
+    private final float sampleRate;//The sample rate of the recording.
+    private final int frameSize;//The size of one frame in bytes.
+    private final int bytesPerSample;//The amount of bytes one sample takes up.
+    private final int high;//The position of the most significant byte in a sample.
+    private final int step;//The distance from one byte of a sample to the next less significant one.
+    private final int alignShift;//The shift that moves a sample of 20 bits up to the top bits.
+    private final int signFlip;//The bit that is flipped to make unsigned samples signed, 0 if none.
+    private final int[] lowest;//The lowest sample of every level and channel in the entry being built.
+    private final int[] highest;//The highest sample of every level and channel in the entry being built.
+    private final int[] parts;//The amount of frames or entries of the level below in the entry being built of every level.
+    private final short[][] levels;//The entries of the coarser levels, lowest and highest of every channel after another.
+    private final long[] entries;//The amount of entries of every level.
+    private final ByteBuffer buffer = ByteBuffer.allocateDirect(BUFFER_SIZE).order(ByteOrder.LITTLE_ENDIAN);//The entries of the finest level that are not written yet.
+    private long position = PeakIndex.HEADER_SIZE;//The position in the sidecar file the buffer is written at.
+    private long frames;//The amount of frames indexed.
+    private boolean finished;//Tells whether the index has been finished.
+
+    /**
+     * Constructor for the PeakIndexWriter class.
+     *
+     * @param target The file the audio data is written to.
+     * @param format The format of the recorded audio.
+     * @param indexFile The sidecar file, replaced if it exists.
+     * @throws IOException If the sidecar file can not be created.
+     */
+    public PeakIndexWriter(AudioSink target, AudioFormat format, File indexFile) throws IOException {
+        this.target = target;
+        channels = format.getChannels();
+        sampleRate = format.getSampleRate();
+        frameSize = format.getFrameSize();
+        bytesPerSample = frameSize / channels;
+        boolean bigEndian = format.isBigEndian();
+        high = bigEndian ? 0 : bytesPerSample - 1;
+        step = bigEndian ? 1 : -1;
+
+        //Samples of 20 bits sit in the low bits of their three bytes.
+        alignShift = bytesPerSample * 8 - format.getSampleSizeInBits();
+        signFlip = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding()) ? 0 : Integer.MIN_VALUE;
+
+        int levelCount = PeakIndex.LEVELS.length;
+        lowest = new int[levelCount * channels];
+        highest = new int[levelCount * channels];
+        parts = new int[levelCount];
+        levels = new short[levelCount][];
+        entries = new long[levelCount];
+        for (int level = 1; level < levelCount; level++) {
+            levels[level] = new short[1024 * channels];
+        }
+        for (int level = 0; level < levelCount; level++) {
+            reset(level);
+        }
+
+        //Leaves the header empty until the index is complete, so an index cut off by a crash is not read.
+        channel = FileChannel.open(indexFile.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            writeFully(ByteBuffer.allocate(PeakIndex.HEADER_SIZE), 0);
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+    }
+
+    /**
+     * Adds the audio data to the index and writes it to the file.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes, a multiple of the frame size.
+     * @throws IOException If the data or the index can not be written.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        index(data, offset, length);
+        target.write(data, offset, length);
+    }
+
+    /**
+     * Adds frames to the finest level.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes.
+     * @throws IOException If the index can not be written.
+     */
+    private void index(byte[] data, int offset, int length) throws IOException {
+        int bucket = PeakIndex.LEVELS[0];
+        int end = offset + length - length % frameSize;
+        for (int frame = offset; frame < end; frame += frameSize) {
+            for (int c = 0, i = frame; c < channels; c++, i += bytesPerSample) {
+                //Puts the sample in the top bits of an int, so every sample size compares the same.
+                int value;
+                switch (bytesPerSample) {
+                    case 1:
+                        value = data[i] << 24;
+                        break;
+                    case 2:
+                        value = data[i + high] << 24 | (data[i + high + step] & 0xFF) << 16;
+                        break;
+                    case 3:
+                        value = data[i + high] << 24 | (data[i + 1] & 0xFF) << 16 | (data[i + high + 2 * step] & 0xFF) << 8;
+                        break;
+                    default:
+                        value = data[i + high] << 24 | (data[i + high + step] & 0xFF) << 16 | (data[i + high + 2 * step] & 0xFF) << 8 | (data[i + high + 3 * step] & 0xFF);
+                        break;
+                }
+                value = (value << alignShift) ^ signFlip;
+                if (value < lowest[c]) {
+                    lowest[c] = value;
+                }
+                if (value > highest[c]) {
+                    highest[c] = value;
+                }
+            }
+            frames++;
+            if (++parts[0] == bucket) {
+                close(0);
+            }
+        }
+    }
+
+    /**
+     * Ends the entry being built of a level, hands it to the next level and
+     * starts a new one.
+     *
+     * @param level The level.
+     * @throws IOException If the finest level can not be written.
+     */
+    private void close(int level) throws IOException {
+        int base = level * channels;
+        if (level == 0) {
+            if (buffer.remaining() < channels * 4) {
+                flush();
+            }
+            for (int c = 0; c < channels; c++) {
+                buffer.putShort((short) (lowest[c] >> 16));
+                buffer.putShort((short) (highest[c] >> 16));
+            }
+        } else {
+            short[] stored = levels[level];
+            int at = (int) (entries[level] * channels * 2);
+            if (at + channels * 2 > stored.length) {
+                stored = Arrays.copyOf(stored, stored.length * 2);
+                levels[level] = stored;
+            }
+            for (int c = 0; c < channels; c++) {
+                stored[at + c * 2] = (short) (lowest[base + c] >> 16);
+                stored[at + c * 2 + 1] = (short) (highest[base + c] >> 16);
+            }
+        }
+        entries[level]++;
+
+        int next = level + 1;
+        if (next < PeakIndex.LEVELS.length) {
+            int nextBase = next * channels;
+            for (int c = 0; c < channels; c++) {
+                lowest[nextBase + c] = Math.min(lowest[nextBase + c], lowest[base + c]);
+                highest[nextBase + c] = Math.max(highest[nextBase + c], highest[base + c]);
+            }
+            if (++parts[next] == PeakIndex.LEVELS[next] / PeakIndex.LEVELS[level]) {
+                close(next);
+            }
+        }
+        reset(level);
+    }
+
+    /**
+     * Starts a new entry of a level.
+     *
+     * @param level The level.
+     */
+    private void reset(int level) {
+        Arrays.fill(lowest, level * channels, (level + 1) * channels, Integer.MAX_VALUE);
+        Arrays.fill(highest, level * channels, (level + 1) * channels, Integer.MIN_VALUE);
+        parts[level] = 0;
+    }
+
+    /**
+     * Writes the entries of the finest level that are in the buffer.
+     *
+     * @throws IOException If they can not be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        int length = buffer.remaining();
+        writeFully(buffer, position);
+        position += length;
+        buffer.clear();
+    }
+
+    /**
+     * Writes the whole buffer at the given position.
+     *
+     * @param data The data to write.
+     * @param at The position in the sidecar file.
+     * @throws IOException If the data can not be written.
+     */
+    private void writeFully(ByteBuffer data, long at) throws IOException {
+        int start = data.position();
+        while (data.hasRemaining()) {
+            channel.write(data, at + data.position() - start);
+        }
+    }
+
+    /**
+     * Gives back the amount of bytes written to the file.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return target.getBytesWritten();
+    }
+
+    /**
+     * Gives back the amount of frames indexed so far.
+     *
+     * @return The amount of frames.
+     */
+    public long getFrames() {
+        return frames;
+    }
+
+    /**
+     * Ends the entries that are not full yet, writes the coarser levels and
+     * the header, and completes the file.
+     *
+     * @throws IOException If the index or the file can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            //Ends every level that has something in it, so the last frames are in every level.
+            for (int level = 0; level < PeakIndex.LEVELS.length; level++) {
+                if (parts[level] > 0) {
+                    close(level);
+                }
+            }
+            flush();
+
+            ByteBuffer header = ByteBuffer.allocate(PeakIndex.HEADER_SIZE).order(ByteOrder.LITTLE_ENDIAN);
+            header.putInt(PeakIndex.VERSION_OFFSET, PeakIndex.VERSION);
+            header.putInt(PeakIndex.CHANNELS_OFFSET, channels);
+            header.putFloat(PeakIndex.SAMPLE_RATE_OFFSET, sampleRate);
+            header.putLong(PeakIndex.FRAMES_OFFSET, frames);
+            header.putInt(PeakIndex.LEVEL_COUNT_OFFSET, PeakIndex.LEVELS.length);
+            long levelOffset = PeakIndex.HEADER_SIZE;
+            for (int level = 0; level < PeakIndex.LEVELS.length; level++) {
+                int at = PeakIndex.LEVELS_OFFSET + level * PeakIndex.LEVEL_SIZE;
+                header.putLong(at, levelOffset);
+                header.putLong(at + 8, entries[level]);
+                header.putInt(at + 16, PeakIndex.LEVELS[level]);
+                if (level > 0) {
+                    ByteBuffer stored = ByteBuffer.allocate((int) (entries[level] * channels * 4)).order(ByteOrder.LITTLE_ENDIAN);
+                    stored.asShortBuffer().put(levels[level], 0, stored.capacity() / 2);
+                    writeFully(stored, levelOffset);
+                }
+                levelOffset += entries[level] * channels * 4;
+            }
+            writeFully(header, 0);
+
+            //The magic number goes in last, it marks the index as complete.
+            ByteBuffer magic = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            magic.putInt(0, PeakIndex.MAGIC);
+            writeFully(magic, 0);
+        } finally {
+            try {
+                channel.close();
+            } finally {
+                target.finish();
+            }
+        }
+    }
+}
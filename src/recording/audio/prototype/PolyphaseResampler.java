@@ -0,0 +1,210 @@
+package recording.audio.prototype;
+
+/**
+ * Changes the sample rate of audio with a polyphase windowed-sinc filter.
+ * The rates are reduced to a ratio of whole numbers, up over down, and the
+ * filter is worked out once for every phase between two input samples that
+ * an output sample can fall on. The filter keeps 95 percent of the lower of
+ * the two Nyquist frequencies and damps everything above it by about 90 dB.
+ *
+ * Every output sample is worked out from the input around it alone, so the
+ * output can be made in chunks in any order, on any thread, and is the same
+ * as when it is made at once. A chunk needs the input from getFirstInput to
+ * getEndInput, which reaches past the chunk on both sides.
+ *
+ * @author Jafeth
+ */
+public class PolyphaseResampler {
+
+    private static final int ZERO_CROSSINGS = 64;//The amount of zero crossings of the sinc on either side of a filter.
+    private static final double PASSBAND = 0.95;//The part of the lower Nyquist frequency that is kept.
+    private static final double KAISER_BETA = 9;//The shape of the window, 9 damps the stopband by about 90 dB.
+    private static final int MAX_FILTER_SIZE = 1 << 22;//The most coefficients a filter may have.
+
+    private final int up;//The amount the input rate is multiplied by.
+    private final int down;//The amount the multiplied rate is divided by.
+    private final int half;//The amount of input samples used on either side of an output sample.
+    private final int taps;//The amount of coefficients of one phase.
+    private final double[] filter;//The coefficients of every phase, one phase after the other.
+
+    /**
+     * Constructor for the PolyphaseResampler class.
+     *
+     * @param inputRate The sample rate of the input.
+     * @param outputRate The sample rate of the output.
+     * @throws IllegalArgumentException If a rate is not positive, or the
+     * ratio of the rates needs a filter that is too large.
+     */
+    public PolyphaseResampler(int inputRate, int outputRate) {
+        if (inputRate <= 0 || outputRate <= 0) {
+            throw new IllegalArgumentException("The sample rates must be positive");
+        }
+        int divisor = gcd(inputRate, outputRate);
+        up = outputRate / divisor;
+        down = inputRate / divisor;
+        if (up == down) {
+            half = 0;
+            taps = 0;
+            filter = null;
+            return;
+        }
+
+        //The cutoff as a part of the input Nyquist frequency, lower when the rate goes down.
+        double cutoff = PASSBAND * Math.min(1, (double) up / down);
+        half = (int) Math.ceil(ZERO_CROSSINGS / cutoff);
+        taps = 2 * half;
+        if ((long) up * taps > MAX_FILTER_SIZE) {
+            throw new IllegalArgumentException("Going from " + inputRate + " to " + outputRate + " Hz needs too large a filter");
+        }
+
+        filter = new double[up * taps];
+        double window = bessel(KAISER_BETA);
+        for (int phase = 0; phase < up; phase++) {
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                //The distance in input samples from the output sample to the input sample the coefficient is for.
+                double t = k - half + 1 - (double) phase / up;
+                double x = t / half;
+                double value = x <= -1 || x >= 1 ? 0 : cutoff * sinc(cutoff * t) * bessel(KAISER_BETA * Math.sqrt(1 - x * x)) / window;
+                filter[phase * taps + k] = value;
+                sum += value;
+            }
+
+            //Gives every phase a gain of exactly 1, so a constant level stays constant.
+            for (int k = 0; k < taps; k++) {
+                filter[phase * taps + k] /= sum;
+            }
+        }
+    }
+
+    /**
+     * Gives back the greatest common divisor.
+     *
+     * @param a The first number.
+     * @param b The second number.
+     * @return The greatest common divisor.
+     */
+    private static int gcd(int a, int b) {
+        while (b != 0) {
+            int rest = a % b;
+            a = b;
+            b = rest;
+        }
+        return a;
+    }
+
+    /**
+     * Gives back the normalised sinc.
+     *
+     * @param x The argument.
+     * @return sin(pi x) / (pi x).
+     */
+    private static double sinc(double x) {
+        if (Math.abs(x) < 1e-12) {
+            return 1;
+        }
+        return Math.sin(Math.PI * x) / (Math.PI * x);
+    }
+
+    /**
+     * Gives back the modified Bessel function of the first kind of order 0,
+     * which shapes the Kaiser window.
+     *
+     * @param x The argument.
+     * @return I0(x).
+     */
+    private static double bessel(double x) {
+        double sum = 1;
+        double term = 1;
+        for (int k = 1; term > sum * 1e-17; k++) {
+            term *= (x / (2 * k)) * (x / (2 * k));
+            sum += term;
+        }
+        return sum;
+    }
+
+    /**
+     * Tells whether the rates are the same, so the samples are copied as
+     * they are.
+     *
+     * @return True if nothing is resampled.
+     */
+    public boolean isPassThrough() {
+        return filter == null;
+    }
+
+    /**
+     * Gives back the amount of output frames the given amount of input
+     * frames becomes.
+     *
+     * @param inputFrames The amount of input frames.
+     * @return The amount of output frames.
+     */
+    public long getOutputFrames(long inputFrames) {
+        return (inputFrames * up + down - 1) / down;
+    }
+
+    /**
+     * Gives back the first input frame an output frame needs.
+     *
+     * @param outputFrame The number of the output frame.
+     * @return The number of the input frame, may be negative.
+     */
+    public long getFirstInput(long outputFrame) {
+        if (isPassThrough()) {
+            return outputFrame;
+        }
+        return outputFrame * down / up - half + 1;
+    }
+
+    /**
+     * Gives back the input frame after the last one a range of output frames
+     * needs.
+     *
+     * @param outputEnd The number of the output frame after the range.
+     * @return The number of the input frame after the last needed.
+     */
+    public long getEndInput(long outputEnd) {
+        if (isPassThrough()) {
+            return outputEnd;
+        }
+        return (outputEnd - 1) * down / up + half + 1;
+    }
+
+    /**
+     * Resamples one channel.
+     *
+     * @param input The input samples, starting at getFirstInput of the first
+     * output frame and reaching up to getEndInput of the last.
+     * @param inputStart The number of the first input frame.
+     * @param output The array the output samples are put in.
+     * @param outputStart The number of the first output frame.
+     * @param count The amount of output frames.
+     */
+    public void process(double[] input, long inputStart, double[] output, long outputStart, int count) {
+        if (isPassThrough()) {
+            System.arraycopy(input, (int) (outputStart - inputStart), output, 0, count);
+            return;
+        }
+        long position = outputStart * down;
+        int phase = (int) (position % up);
+        int first = (int) (position / up - half + 1 - inputStart);
+        int step = down / up;
+        int phaseStep = down % up;
+        for (int j = 0; j < count; j++) {
+            int coefficient = phase * taps;
+            double sum = 0;
+            for (int k = 0; k < taps; k++) {
+                sum += filter[coefficient + k] * input[first + k];
+            }
+            output[j] = sum;
+
+            first += step;
+            phase += phaseStep;
+            if (phase >= up) {
+                phase -= up;
+                first++;
+            }
+        }
+    }
+}
@@ -0,0 +1,180 @@
+package recording.audio.prototype;
+
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * A capture source that borrows its line from a pool. Opening takes a line
+ * that is kept open for the format, and closing hands the line back instead
+ * of closing it, so only the first recording in a format pays for opening a
+ * line.
+ *
+ * @author Jafeth
+ */
+public class PooledCaptureSource implements CaptureSource {
+
+    private final LinePool pool;//The pool the lines are borrowed from.
+    private volatile CaptureSource line;//The borrowed line, null while the source is closed.
+    private long basePosition;//The frame position of the line when it was borrowed.
+
+    /**
+     * Constructor for the PooledCaptureSource class.
+     *
+     * @param pool The pool the lines are borrowed from.
+     */
+    public PooledCaptureSource(LinePool pool) {
+        this.pool = pool;
+    }
+
+    /**
+     * Gives back the pool the lines are borrowed from.
+     *
+     * @return The line pool.
+     */
+    public LinePool getPool() {
+        return pool;
+    }
+
+    /**
+     * Checks if the lines of the pool can capture in the given audio format,
+     * which is only asked of the sound system once per format.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    @Override
+    public boolean isFormatSupported(AudioFormat format) {
+        return pool.isFormatSupported(format);
+    }
+
+    /**
+     * Borrows an open line for the given audio format from the pool.
+     *
+     * @param format The audio format to capture in.
+     * @throws LineUnavailableException If no line can be opened.
+     */
+    @Override
+    public void open(AudioFormat format) throws LineUnavailableException {
+        open(format, 0);
+    }
+
+    /**
+     * Borrows an open line for the given audio format and buffer size from
+     * the pool.
+     *
+     * @param format The audio format to capture in.
+     * @param bufferSize The size of the buffer of the line in bytes, 0 for
+     * any size.
+     * @throws LineUnavailableException If no line can be opened.
+     */
+    @Override
+    public synchronized void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        if (line != null) {
+            throw new IllegalStateException("Source is already open");
+        }
+        CaptureSource borrowed = pool.acquire(format, bufferSize);
+        basePosition = borrowed.getLongFramePosition();
+        line = borrowed;
+    }
+
+    /**
+     * Starts capturing from the borrowed line.
+     */
+    @Override
+    public void start() {
+        CaptureSource current = line;
+        if (current != null) {
+            current.start();
+        }
+    }
+
+    /**
+     * Reads captured audio data from the borrowed line. Holds the source, so
+     * the line is not handed back while it is being read.
+     *
+     * @param buffer The buffer the audio data is read into.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to read.
+     * @return The amount of bytes read, or -1 if the source has been stopped
+     * or closed.
+     */
+    @Override
+    public synchronized int read(byte[] buffer, int offset, int length) {
+        CaptureSource current = line;
+        return current == null ? -1 : current.read(buffer, offset, length);
+    }
+
+    /**
+     * Gives back the amount of bytes that can be read without blocking.
+     *
+     * @return The amount of available bytes.
+     */
+    @Override
+    public int available() {
+        CaptureSource current = line;
+        return current == null ? 0 : current.available();
+    }
+
+    /**
+     * Gives back the amount of frames captured since the line was borrowed.
+     *
+     * @return The frame position.
+     */
+    @Override
+    public long getLongFramePosition() {
+        CaptureSource current = line;
+        return current == null ? 0 : current.getLongFramePosition() - basePosition;
+    }
+
+    /**
+     * Gives back the size of the internal buffer of the borrowed line.
+     *
+     * @return The buffer size.
+     */
+    @Override
+    public int getBufferSize() {
+        CaptureSource current = line;
+        return current == null ? 0 : current.getBufferSize();
+    }
+
+    /**
+     * Gives back the audio format the borrowed line was opened with.
+     *
+     * @return The audio format, or null if the source is closed.
+     */
+    @Override
+    public AudioFormat getFormat() {
+        CaptureSource current = line;
+        return current == null ? null : current.getFormat();
+    }
+
+    /**
+     * Stops the borrowed line. Is not held up by a read, as stopping is what
+     * ends a read that is waiting for audio.
+     */
+    @Override
+    public void stop() {
+        CaptureSource current = line;
+        if (current != null) {
+            current.stop();
+        }
+    }
+
+    /**
+     * Hands the borrowed line back to the pool, which keeps it open for the
+     * next recording.
+     */
+    @Override
+    public void close() {
+        //Stops first, so a read that is waiting lets go of the source.
+        stop();
+        CaptureSource returned;
+        synchronized (this) {
+            returned = line;
+            line = null;
+        }
+        if (returned != null) {
+            pool.release(returned);
+        }
+    }
+}
@@ -0,0 +1,344 @@
+package recording.audio.prototype;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * A capture source that keeps capturing while nothing is being recorded, so a
+ * recording can start in the past. Once armed, the source it wraps stays open
+ * and a thread of its own captures into a circular buffer outside the Java
+ * heap that holds the last few seconds. Opening this source starts reading
+ * that many seconds back, and goes on with live audio without a gap. Closing
+ * it only ends the reading; the wrapped source keeps capturing until the
+ * source is disarmed.
+ *
+ * @author Jafeth
+ */
+public class PreRollCaptureSource implements CaptureSource {
+
+    private static final int BLOCKS_PER_SECOND = 50;//The amount of blocks the capturing thread splits one second in.
+    private static final long WAIT_NANOS = 200000;//How long the reader parks while nothing new is captured.
+    private static final double MARGIN_SECONDS = 2;//The room the reader has to fall behind before audio is lost.
+
+    private final CaptureSource line;//The source that is kept capturing.
+    private final double preRollSeconds;//The amount of seconds a recording starts in the past.
+    private final AtomicLong written = new AtomicLong();//The amount of bytes captured into the buffer since it was armed.
+    private final AtomicLong overruns = new AtomicLong();//The amount of times the reader fell too far behind.
+    private volatile AudioFormat format;//The format the source is armed with.
+    private volatile ByteBuffer buffer;//The circular buffer outside the heap.
+    private volatile Thread captureThread;//The thread that keeps capturing.
+    private volatile boolean armed;//Tells whether the wrapped source is kept capturing.
+    private volatile boolean reading;//Tells whether a recording is reading from the source.
+    private volatile long stopAt = Long.MAX_VALUE;//The amount of captured bytes after which reading ends.
+    private ByteBuffer readView;//The view of the buffer the reader copies from.
+    private int blockSize;//The amount of bytes the capturing thread writes at a time.
+    private long preRollBytes;//The amount of bytes a recording starts in the past.
+    private long cursor;//The amount of captured bytes the reader is at.
+
+    /**
+     * Constructor for the PreRollCaptureSource class.
+     *
+     * @param line The source that is kept capturing.
+     * @param preRollSeconds The amount of seconds a recording starts in the
+     * past.
+     */
+    public PreRollCaptureSource(CaptureSource line, double preRollSeconds) {
+        this.line = line;
+        this.preRollSeconds = preRollSeconds;
+    }
+
+    /**
+     * Opens and starts the wrapped source and keeps it capturing into the
+     * circular buffer. Arming again with another format starts over.
+     *
+     * @param format The audio format to capture in.
+     * @throws LineUnavailableException If the wrapped source can not be
+     * opened.
+     */
+    public synchronized void arm(AudioFormat format) throws LineUnavailableException {
+        if (armed) {
+            if (format.matches(this.format)) {
+                return;
+            }
+            disarm();
+        }
+
+        //Sizes the buffer in whole frames, with room for the reader to catch up with the pre-roll.
+        int frameSize = format.getFrameSize();
+        double byteRate = format.getFrameRate() * frameSize;
+        preRollBytes = (long) (preRollSeconds * byteRate) / frameSize * frameSize;
+        int capacity = (int) Math.min(Integer.MAX_VALUE - frameSize, (long) ((preRollSeconds + MARGIN_SECONDS) * byteRate));
+        buffer = ByteBuffer.allocateDirect(capacity - capacity % frameSize);
+        readView = buffer.duplicate();
+        written.set(0);
+
+        line.open(format);
+        line.start();
+        this.format = format;
+        armed = true;
+
+        blockSize = Math.max(1, (int) (format.getFrameRate() / BLOCKS_PER_SECOND)) * frameSize;
+        int captureBlock = blockSize;
+        captureThread = new Thread(() -> {
+            PreRollCaptureSource.this.capture(captureBlock);
+        }, "pre-roll");
+        captureThread.setDaemon(true);
+        captureThread.start();
+    }
+
+    /**
+     * Keeps reading the wrapped source into the circular buffer, overwriting
+     * the oldest audio, until the source is disarmed.
+     *
+     * @param blockSize The amount of bytes read at a time.
+     */
+    private void capture(int blockSize) {
+        ByteBuffer target = buffer.duplicate();
+        byte[] block = new byte[blockSize];
+        int capacity = target.capacity();
+        while (armed) {
+            int read = line.read(block, 0, block.length);
+            if (read < 0) {
+                break;
+            }
+
+            //Puts the block at the end of the buffer, going on at the start where it wraps.
+            long end = written.get();
+            int position = (int) (end % capacity);
+            int first = Math.min(read, capacity - position);
+            target.clear();
+            target.position(position);
+            target.put(block, 0, first);
+            if (first < read) {
+                target.clear();
+                target.put(block, first, read - first);
+            }
+            written.lazySet(end + read);
+        }
+    }
+
+    /**
+     * Stops the capturing thread and closes the wrapped source.
+     */
+    public synchronized void disarm() {
+        if (!armed) {
+            return;
+        }
+        armed = false;
+        reading = false;
+        line.stop();
+        line.close();
+
+        boolean interrupted = false;
+        while (captureThread.isAlive()) {
+            try {
+                captureThread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        //Keeps the interrupt for the code that called this.
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+        captureThread = null;
+    }
+
+    /**
+     * Tells whether the wrapped source is kept capturing.
+     *
+     * @return True if the source is armed.
+     */
+    public boolean isArmed() {
+        return armed;
+    }
+
+    /**
+     * Gives back the amount of seconds a recording starts in the past.
+     *
+     * @return The pre-roll length in seconds.
+     */
+    public double getPreRollSeconds() {
+        return preRollSeconds;
+    }
+
+    /**
+     * Gives back the amount of times a recording fell so far behind that
+     * audio was overwritten before it was read.
+     *
+     * @return The amount of overruns.
+     */
+    public long getOverruns() {
+        return overruns.get();
+    }
+
+    /**
+     * Checks if the wrapped source can capture in the given audio format.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    @Override
+    public boolean isFormatSupported(AudioFormat format) {
+        return (armed && format.matches(this.format)) || line.isFormatSupported(format);
+    }
+
+    /**
+     * Starts reading a recording, as far in the past as has been captured up
+     * to the pre-roll length. Arms the source first if it is not armed with
+     * the given format, in which case the recording starts now.
+     *
+     * @param format The audio format to capture in.
+     * @throws LineUnavailableException If the wrapped source can not be
+     * opened.
+     */
+    @Override
+    public synchronized void open(AudioFormat format) throws LineUnavailableException {
+        arm(format);
+        long end = written.get();
+        cursor = end - Math.min(end, preRollBytes);
+        stopAt = Long.MAX_VALUE;
+        reading = true;
+    }
+
+    /**
+     * Does nothing, as the wrapped source is capturing already.
+     */
+    @Override
+    public void start() {
+        //The recording reads from the moment it was opened.
+    }
+
+    /**
+     * Reads the captured audio data that follows what was read before.
+     *
+     * @param target The buffer the audio data is read into.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to read.
+     * @return The amount of bytes read, or -1 if the recording has been
+     * stopped and everything up to the stop has been read.
+     */
+    @Override
+    public int read(byte[] target, int offset, int length) {
+        int done = 0;
+        while (done < length) {
+            long end = Math.min(written.get(), stopAt);
+            if (!reading || cursor >= end) {
+                if (!reading || cursor >= stopAt) {
+                    return done > 0 ? done : -1;
+                }
+                LockSupport.parkNanos(WAIT_NANOS);
+                continue;
+            }
+
+            //Keeps a block away from the end, as the capturing thread writes a block before it counts it as written.
+            int capacity = readView.capacity();
+            int room = capacity - blockSize;
+            if (end - cursor > room) {
+                skipAhead(end, room);
+                continue;
+            }
+
+            int count = (int) Math.min(length - done, end - cursor);
+            int position = (int) (cursor % capacity);
+            int first = Math.min(count, capacity - position);
+            readView.clear();
+            readView.position(position);
+            readView.get(target, offset + done, first);
+            if (first < count) {
+                readView.clear();
+                readView.get(target, offset + done + first, count - first);
+            }
+
+            //Copies again if the capturing thread overwrote the audio while it was being copied.
+            if (written.get() - cursor > room) {
+                skipAhead(written.get(), room);
+                continue;
+            }
+            cursor += count;
+            done += count;
+        }
+        return done;
+    }
+
+    /**
+     * Moves the reader ahead after it has fallen so far behind that the audio
+     * it was at has been overwritten.
+     *
+     * @param end The amount of captured bytes.
+     * @param room The size of the circular buffer less the block being
+     * captured.
+     */
+    private void skipAhead(long end, int room) {
+        overruns.incrementAndGet();
+        int frameSize = format.getFrameSize();
+        long behind = room / 2 / frameSize * frameSize;
+        cursor = end - behind;
+    }
+
+    /**
+     * Gives back the amount of captured bytes the recording has not read yet.
+     *
+     * @return The amount of available bytes.
+     */
+    @Override
+    public int available() {
+        if (!reading) {
+            return 0;
+        }
+        return (int) Math.min(Integer.MAX_VALUE, Math.min(written.get(), stopAt) - cursor);
+    }
+
+    /**
+     * Gives back the amount of frames the recording has read.
+     *
+     * @return The frame position.
+     */
+    @Override
+    public long getLongFramePosition() {
+        AudioFormat current = format;
+        return current == null ? 0 : cursor / current.getFrameSize();
+    }
+
+    /**
+     * Gives back the size of the circular buffer in bytes.
+     *
+     * @return The buffer size.
+     */
+    @Override
+    public int getBufferSize() {
+        ByteBuffer current = buffer;
+        return current == null ? 0 : current.capacity();
+    }
+
+    /**
+     * Gives back the audio format the source is armed with.
+     *
+     * @return The audio format, or null if the source is not armed.
+     */
+    @Override
+    public AudioFormat getFormat() {
+        return armed ? format : null;
+    }
+
+    /**
+     * Ends the recording at what has been captured so far, which can still
+     * be read. The wrapped source keeps capturing.
+     */
+    @Override
+    public void stop() {
+        stopAt = Math.min(stopAt, written.get());
+    }
+
+    /**
+     * Ends the recording like stop() does. The wrapped source stays open for
+     * the next recording, until the source is disarmed.
+     */
+    @Override
+    public void close() {
+        stop();
+    }
+}
@@ -1,6 +1,12 @@
 package recording.audio.prototype;
 
 import java.awt.Color;
+import java.awt.Component;
+import java.io.File;
+import java.util.function.Predicate;
+import javax.swing.DefaultListCellRenderer;
+import javax.swing.JList;
+import javax.swing.SwingUtilities;
 import javax.swing.JFrame;
 import javax.swing.JPanel;
 import javax.swing.JButton;
@@ -15,17 +21,30 @@ import javax.swing.JTextPane;
  */
 public class RecorderGUI extends javax.swing.JFrame {
 
+    private static final long PROBE_PERIOD_MILLIS = 5000;//The time between two checks for plugged in or out devices.
+
     private final SoundRecorder recorder;//An instance of the recorder class to do the actual recording.
+    private final FormatCapabilities capabilities;//Knows which formats the microphones support.
 
     /**
      * Creates new form RecorderGUI
      */
     public RecorderGUI() {
-        recorder = new SoundRecorder(this);
+        //The recorder and the choices ask the same capabilities, so they agree when a microphone is plugged in or out.
+        capabilities = new FormatCapabilities();
+        recorder = new SoundRecorder(this, new PooledCaptureSource(new LinePool(MicrophoneCaptureSource::new, capabilities)));
+        recorder.addEventListener(new RecordingEventLogger());
+        try {
+            //Lets the recorder be watched with JConsole or any other JMX client.
+            recorder.getMetrics().register("RecorderGUI");
+        } catch (javax.management.JMException ex) {
+            //The recorder works the same without being watched.
+        }
         backgroundPanel = new JPanel();
         startButton = new JButton();
         stopButton = new JButton();
         messageTextPane = new JTextPane();
+        levelLabel = new JLabel();
         titleLabel = new JLabel();
         sampleRateLabel = new JLabel();
         sampleRateComboBox = new JComboBox<>();
@@ -34,6 +53,92 @@ public class RecorderGUI extends javax.swing.JFrame {
         channelsLabel = new JLabel();
         channelsComboBox = new JComboBox<>();
         initComponents();
+
+        //Greys out every choice the microphones do not support together with the other choices.
+        sampleRateComboBox.setRenderer(new SupportedItemRenderer(item -> capabilities.isSupported(Float.valueOf(item.toString()), chosenSampleSize(), chosenChannels())));
+        sampleSizeComboBox.setRenderer(new SupportedItemRenderer(item -> capabilities.isSupported(chosenSampleRate(), Integer.decode(item.toString()), chosenChannels())));
+        channelsComboBox.setRenderer(new SupportedItemRenderer(item -> capabilities.isSupported(chosenSampleRate(), chosenSampleSize(), ((Channel) item).getChannels())));
+        capabilities.addListener(() -> SwingUtilities.invokeLater(this::showSupportedFormats));
+        capabilities.startRefreshing(PROBE_PERIOD_MILLIS);
+
+        //Opens the line for the chosen format ahead of time, so pressing start records right away.
+        java.awt.event.ActionListener formatChosen = evt -> formatChosen();
+        sampleRateComboBox.addActionListener(formatChosen);
+        sampleSizeComboBox.addActionListener(formatChosen);
+        channelsComboBox.addActionListener(formatChosen);
+        formatChosen();
+    }
+
+    /**
+     * Is called when the user has chosen another format. Opens a line for it
+     * in the background and shows whether it is supported.
+     */
+    private void formatChosen() {
+        this.recorder.warmUp(chosenSampleRate(), chosenSampleSize(), chosenChannels());
+        showSupportedFormats();
+    }
+
+    /**
+     * Only lets the user start recording in a format the microphones support.
+     * Until the microphones have been asked, or if none was found, starting
+     * is left to report what went wrong.
+     */
+    private void showSupportedFormats() {
+        boolean known = capabilities.hasDevices();
+        this.startButton.setEnabled(!known || capabilities.isSupported(chosenSampleRate(), chosenSampleSize(), chosenChannels()));
+        this.sampleRateComboBox.repaint();
+        this.sampleSizeComboBox.repaint();
+        this.channelsComboBox.repaint();
+    }
+
+    /**
+     * Gives back the sample rate the user has chosen.
+     *
+     * @return The sample rate.
+     */
+    private float chosenSampleRate() {
+        return Float.valueOf(this.sampleRateComboBox.getSelectedItem().toString());
+    }
+
+    /**
+     * Gives back the sample size the user has chosen.
+     *
+     * @return The sample size in bits.
+     */
+    private int chosenSampleSize() {
+        return Integer.decode(this.sampleSizeComboBox.getSelectedItem().toString());
+    }
+
+    /**
+     * Gives back the amount of channels the user has chosen.
+     *
+     * @return The amount of channels.
+     */
+    private int chosenChannels() {
+        Channel chosenChannel = (Channel) this.channelsComboBox.getSelectedItem();
+        return chosenChannel.getChannels();
+    }
+
+    /**
+     * Shows the items of a combo box greyed out if the microphones do not
+     * support them.
+     */
+    private class SupportedItemRenderer extends DefaultListCellRenderer {
+
+        private static final long serialVersionUID = 1L;
+
+        private final Predicate<Object> supported;//Tells whether an item is supported.
+
+        private SupportedItemRenderer(Predicate<Object> supported) {
+            this.supported = supported;
+        }
+
+        @Override
+        public Component getListCellRendererComponent(JList<?> list, Object value, int index, boolean isSelected, boolean cellHasFocus) {
+            Component component = super.getListCellRendererComponent(list, value, index, isSelected, cellHasFocus);
+            component.setEnabled(value == null || !capabilities.hasDevices() || supported.test(value));
+            return component;
+        }
     }
 
     /**
@@ -61,6 +166,8 @@ public class RecorderGUI extends javax.swing.JFrame {
         messageTextPane.setForeground(Color.BLACK);
         messageTextPane.setText("");
 
+        levelLabel.setText(" ");
+
         Channel[] channels = new Channel[4];
         channels[0] = new Channel(1, "Mono");
         channels[1] = new Channel(2, "Stereo");
@@ -95,6 +202,7 @@ public class RecorderGUI extends javax.swing.JFrame {
                         .addContainerGap()
                         .addGroup(backgroundPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                                 .addComponent(messageTextPane)
+                                .addComponent(levelLabel, javax.swing.GroupLayout.DEFAULT_SIZE, javax.swing.GroupLayout.DEFAULT_SIZE, Short.MAX_VALUE)
                                 .addComponent(titleLabel, javax.swing.GroupLayout.DEFAULT_SIZE, 308, Short.MAX_VALUE)
                                 .addGroup(javax.swing.GroupLayout.Alignment.TRAILING, backgroundPanelLayout.createSequentialGroup()
                                         .addComponent(startButton)
@@ -130,6 +238,8 @@ public class RecorderGUI extends javax.swing.JFrame {
                                 .addComponent(stopButton, javax.swing.GroupLayout.Alignment.TRAILING))
                         .addGap(18, 18, 18)
                         .addComponent(messageTextPane, javax.swing.GroupLayout.PREFERRED_SIZE, 82, javax.swing.GroupLayout.PREFERRED_SIZE)
+                        .addPreferredGap(javax.swing.LayoutStyle.ComponentPlacement.RELATED)
+                        .addComponent(levelLabel)
                         .addContainerGap())
                 .addGroup(backgroundPanelLayout.createParallelGroup(javax.swing.GroupLayout.Alignment.LEADING)
                         .addGroup(backgroundPanelLayout.createSequentialGroup()
@@ -174,11 +284,7 @@ public class RecorderGUI extends javax.swing.JFrame {
      * @param evt The event of the button being pressed.
      */
     private void startButtonActionPerformed(java.awt.event.ActionEvent evt) {
-        float sampleRate = Float.valueOf(this.sampleRateComboBox.getSelectedItem().toString());
-        int sampleSize = Integer.decode(this.sampleSizeComboBox.getSelectedItem().toString());
-        Channel chosenChannel = (Channel) this.channelsComboBox.getSelectedItem();
-        int channels = chosenChannel.getChannels();
-        this.recorder.startRecording(sampleRate, sampleSize, channels);
+        this.recorder.startRecording(chosenSampleRate(), chosenSampleSize(), chosenChannels());
     }
 
     /**
@@ -284,6 +390,63 @@ public class RecorderGUI extends javax.swing.JFrame {
         this.messageTextPane.setText("ERROR: Recording already stopped");
     }
 
+    /**
+     * Is triggered when a recording that was interrupted by a crash has been
+     * repaired.
+     * @param file The file the repaired recording was kept in.
+     */
+    public void recordingRecoveredActionPerformed(File file) {
+        //Tells the user where the repaired recording can be found.
+        //Colour is black to imply being just a notification.
+        this.messageTextPane.setForeground(Color.BLACK);
+        this.messageTextPane.setText("An interrupted recording was recovered\nFile can be found under: " + file.getPath());
+    }
+
+    /**
+     * Is triggered when a recording that was interrupted by a crash could not
+     * be repaired.
+     * @param file The file the recording was left in as it was.
+     */
+    public void recordingNotRecoveredActionPerformed(File file) {
+        //Tells the user the recording could not be repaired and where it was left.
+        //Colour is red to imply an error.
+        this.messageTextPane.setForeground(Color.RED);
+        this.messageTextPane.setText("ERROR: An interrupted recording could not be recovered\nIt was left under: " + file.getPath());
+    }
+
+    /**
+     * Is triggered at a fixed rate while recording, with the latest levels.
+     *
+     * @param peak The peak level of every channel, from 0 to 1.
+     * @param rms The RMS level of every channel, from 0 to 1.
+     */
+    public void levelActionPerformed(float[] peak, float[] rms) {
+        //Shows the levels of every channel in decibels relative to full scale.
+        StringBuilder text = new StringBuilder("Peak:");
+        for (float level : peak) {
+            text.append(' ').append(toDecibels(level));
+        }
+        text.append("  RMS:");
+        for (float level : rms) {
+            text.append(' ').append(toDecibels(level));
+        }
+        text.append(" dBFS");
+        this.levelLabel.setText(text.toString());
+    }
+
+    /**
+     * Turns a level into decibels relative to full scale.
+     *
+     * @param level The level, from 0 to 1.
+     * @return The level in decibels, with one decimal.
+     */
+    private static String toDecibels(float level) {
+        if (level <= 0) {
+            return "-inf";
+        }
+        return String.format("%.1f", 20 * Math.log10(level));
+    }
+
     /**
      * The start of the program. Creates the GUI.
      *
@@ -296,6 +459,12 @@ public class RecorderGUI extends javax.swing.JFrame {
         //Sets the default operation of the close button of the GUI to exit.
         gui.setDefaultCloseOperation(JFrame.EXIT_ON_CLOSE);
 
+        //Writes the metrics as JSON at a fixed rate if asked for, e.g. -Drecorder.metrics.seconds=10.
+        Long snapshotSeconds = Long.getLong("recorder.metrics.seconds");
+        if (snapshotSeconds != null && snapshotSeconds > 0) {
+            gui.recorder.getMetrics().startSnapshots(snapshotSeconds * 1000, true, System.out::println);
+        }
+
         //Makes the GUI visible.
         gui.setVisible(true);
     }
@@ -304,6 +473,7 @@ public class RecorderGUI extends javax.swing.JFrame {
     private final JPanel backgroundPanel;
     private final JComboBox<String> channelsComboBox;
     private final JLabel channelsLabel;
+    private final JLabel levelLabel;
     private final JTextPane messageTextPane;
     private final JComboBox<String> sampleRateComboBox;
     private final JLabel sampleRateLabel;
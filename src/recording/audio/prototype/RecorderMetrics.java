@@ -0,0 +1,287 @@
+package recording.audio.prototype;
+
+import java.lang.management.ManagementFactory;
+import java.util.Locale;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Consumer;
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+
+/**
+ * Counts what the recordings do, for watching a recorder in production. The
+ * recording threads update the metrics without locks. The metrics can be
+ * read through JMX and written out as a text or JSON snapshot at a fixed
+ * rate.
+ *
+ * @author Jafeth
+ */
+public class RecorderMetrics implements RecorderMetricsMBean {
+
+    private final LongAdder sessions = new LongAdder();//The amount of recordings started.
+    private final LongAdder bytesCaptured = new LongAdder();//The amount of bytes read from the sources.
+    private final LongAdder bytesWritten = new LongAdder();//The amount of bytes written to the files.
+    private final LongAdder overruns = new LongAdder();//The amount of blocks thrown away.
+    private final LongAdder cpuNanos = new LongAdder();//The processor time of the finished recordings.
+    private final LogHistogram writeLatency = new LogHistogram();//The time every block took to write, in nanoseconds.
+    private final LogHistogram readSize = new LogHistogram();//The amount of bytes of every read.
+    private final LogHistogram lineBufferFill = new LogHistogram();//The fill of the line buffer after every read, in percent.
+    private final LogHistogram timeToFirstSample = new LogHistogram();//The time to the first sample of every recording, in nanoseconds.
+    private volatile long lastTimeToFirstSample = -1;//The time to the first sample of the last recording.
+    private volatile long lastSessionCpu = -1;//The processor time of the last finished recording.
+    private ObjectName registeredName;//The name the metrics are registered under, if any.
+    private ScheduledExecutorService snapshots;//Writes the snapshots, if started.
+
+    /**
+     * Counts a recording that has started.
+     */
+    public void sessionStarted() {
+        sessions.increment();
+    }
+
+    /**
+     * Counts a read from a capture source.
+     *
+     * @param bytes The amount of bytes read.
+     * @param fillPercent The fill of the line buffer after the read.
+     */
+    public void blockCaptured(int bytes, int fillPercent) {
+        bytesCaptured.add(bytes);
+        readSize.record(bytes);
+        lineBufferFill.record(fillPercent);
+    }
+
+    /**
+     * Counts a block that was thrown away because the writing fell behind.
+     */
+    public void blockDropped() {
+        overruns.increment();
+    }
+
+    /**
+     * Counts a block written to a file.
+     *
+     * @param bytes The amount of bytes written.
+     * @param nanos The time the write took.
+     */
+    public void blockWritten(int bytes, long nanos) {
+        bytesWritten.add(bytes);
+        writeLatency.record(nanos);
+    }
+
+    /**
+     * Counts the time a recording took to capture its first sample.
+     *
+     * @param nanos The time from opening to the first sample.
+     */
+    public void firstSampleCaptured(long nanos) {
+        timeToFirstSample.record(nanos);
+        lastTimeToFirstSample = nanos;
+    }
+
+    /**
+     * Counts a recording that has finished.
+     *
+     * @param cpu The processor time the recording took, in nanoseconds.
+     */
+    public void sessionFinished(long cpu) {
+        cpuNanos.add(cpu);
+        lastSessionCpu = cpu;
+    }
+
+    @Override
+    public long getSessions() {
+        return sessions.sum();
+    }
+
+    @Override
+    public long getBytesCaptured() {
+        return bytesCaptured.sum();
+    }
+
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten.sum();
+    }
+
+    @Override
+    public long getOverruns() {
+        return overruns.sum();
+    }
+
+    @Override
+    public double getWriteLatencyP50Micros() {
+        return writeLatency.getValueAtPercentile(50) / 1e3;
+    }
+
+    @Override
+    public double getWriteLatencyP99Micros() {
+        return writeLatency.getValueAtPercentile(99) / 1e3;
+    }
+
+    @Override
+    public double getWriteLatencyP999Micros() {
+        return writeLatency.getValueAtPercentile(99.9) / 1e3;
+    }
+
+    @Override
+    public double getWriteLatencyMaxMicros() {
+        return writeLatency.getMax() / 1e3;
+    }
+
+    @Override
+    public double getReadSizeMean() {
+        return readSize.getMean();
+    }
+
+    @Override
+    public long getReadSizeP1() {
+        return readSize.getValueAtPercentile(1);
+    }
+
+    @Override
+    public long getLineBufferFillP50Percent() {
+        return lineBufferFill.getValueAtPercentile(50);
+    }
+
+    @Override
+    public long getLineBufferFillP99Percent() {
+        return lineBufferFill.getValueAtPercentile(99);
+    }
+
+    @Override
+    public double getLastTimeToFirstSampleMillis() {
+        long last = lastTimeToFirstSample;
+        return last < 0 ? -1 : last / 1e6;
+    }
+
+    @Override
+    public double getTimeToFirstSampleP50Millis() {
+        return timeToFirstSample.getValueAtPercentile(50) / 1e6;
+    }
+
+    @Override
+    public double getLastSessionCpuMillis() {
+        long last = lastSessionCpu;
+        return last < 0 ? -1 : last / 1e6;
+    }
+
+    @Override
+    public double getTotalCpuMillis() {
+        return cpuNanos.sum() / 1e6;
+    }
+
+    /**
+     * Gives back the histogram of the time every block took to write.
+     *
+     * @return The write latencies in nanoseconds.
+     */
+    public LogHistogram getWriteLatency() {
+        return writeLatency;
+    }
+
+    /**
+     * Gives back the histogram of the amount of bytes of every read.
+     *
+     * @return The read sizes.
+     */
+    public LogHistogram getReadSize() {
+        return readSize;
+    }
+
+    @Override
+    public String toJson() {
+        return String.format(Locale.ROOT, "{\"sessions\":%d,\"bytesCaptured\":%d,\"bytesWritten\":%d,\"overruns\":%d,"
+                + "\"writeLatencyMicros\":{\"p50\":%.1f,\"p99\":%.1f,\"p999\":%.1f,\"max\":%.1f,\"count\":%d},"
+                + "\"readSizeBytes\":{\"mean\":%.1f,\"p1\":%d,\"max\":%d,\"count\":%d},"
+                + "\"lineBufferFillPercent\":{\"p50\":%d,\"p99\":%d,\"max\":%d},"
+                + "\"timeToFirstSampleMillis\":{\"last\":%.2f,\"p50\":%.2f,\"max\":%.2f},"
+                + "\"cpuMillis\":{\"lastSession\":%.1f,\"total\":%.1f}}",
+                getSessions(), getBytesCaptured(), getBytesWritten(), getOverruns(),
+                getWriteLatencyP50Micros(), getWriteLatencyP99Micros(), getWriteLatencyP999Micros(), getWriteLatencyMaxMicros(), writeLatency.getCount(),
+                getReadSizeMean(), getReadSizeP1(), readSize.getMax(), readSize.getCount(),
+                getLineBufferFillP50Percent(), getLineBufferFillP99Percent(), lineBufferFill.getMax(),
+                getLastTimeToFirstSampleMillis(), getTimeToFirstSampleP50Millis(), timeToFirstSample.getMax() / 1e6,
+                getLastSessionCpuMillis(), getTotalCpuMillis());
+    }
+
+    /**
+     * Gives back every metric as one line of text.
+     *
+     * @return The metrics as text.
+     */
+    @Override
+    public String toString() {
+        return String.format(Locale.ROOT, "sessions=%d captured=%dB written=%dB overruns=%d write=p50 %.1fus p99 %.1fus max %.1fus"
+                + " reads=mean %.0fB p1 %dB fill=p50 %d%% p99 %d%% first sample=%.2fms cpu=%.1fms total %.1fms",
+                getSessions(), getBytesCaptured(), getBytesWritten(), getOverruns(),
+                getWriteLatencyP50Micros(), getWriteLatencyP99Micros(), getWriteLatencyMaxMicros(),
+                getReadSizeMean(), getReadSizeP1(), getLineBufferFillP50Percent(), getLineBufferFillP99Percent(),
+                getLastTimeToFirstSampleMillis(), getLastSessionCpuMillis(), getTotalCpuMillis());
+    }
+
+    /**
+     * Shows the metrics through JMX on the platform MBean server.
+     *
+     * @param name The name of the recorder, to tell recorders apart.
+     * @throws JMException If the metrics can not be registered.
+     */
+    public synchronized void register(String name) throws JMException {
+        if (registeredName != null) {
+            return;
+        }
+        ObjectName objectName = new ObjectName(getClass().getPackage().getName() + ":type=RecorderMetrics,name=" + ObjectName.quote(name));
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, objectName);
+        registeredName = objectName;
+    }
+
+    /**
+     * Stops showing the metrics through JMX.
+     *
+     * @throws JMException If the metrics can not be unregistered.
+     */
+    public synchronized void unregister() throws JMException {
+        if (registeredName != null) {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            server.unregisterMBean(registeredName);
+            registeredName = null;
+        }
+    }
+
+    /**
+     * Writes a snapshot of the metrics at a fixed rate, on a thread of its
+     * own, until stopped.
+     *
+     * @param periodMillis The time between two snapshots in milliseconds.
+     * @param json True to write JSON, false to write a line of text.
+     * @param output Is given every snapshot.
+     */
+    public synchronized void startSnapshots(long periodMillis, boolean json, Consumer<String> output) {
+        stopSnapshots();
+        snapshots = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "metrics-snapshot");
+            thread.setDaemon(true);
+            return thread;
+        });
+        snapshots.scheduleAtFixedRate(() -> {
+            try {
+                output.accept(json ? toJson() : toString());
+            } catch (RuntimeException ex) {
+                //A failing output must not end the snapshots.
+            }
+        }, periodMillis, periodMillis, TimeUnit.MILLISECONDS);
+    }
+
+    /**
+     * Stops writing snapshots.
+     */
+    public synchronized void stopSnapshots() {
+        if (snapshots != null) {
+            snapshots.shutdownNow();
+            snapshots = null;
+        }
+    }
+}
@@ -0,0 +1,131 @@
+package recording.audio.prototype;
+
+/**
+ * The management interface of the recorder metrics, as shown through JMX.
+ *
+ * @author Jafeth
+ */
+public interface RecorderMetricsMBean {
+
+    /**
+     * Gives back the amount of recordings started.
+     *
+     * @return The amount of sessions.
+     */
+    long getSessions();
+
+    /**
+     * Gives back the amount of bytes read from the capture sources.
+     *
+     * @return The amount of bytes captured.
+     */
+    long getBytesCaptured();
+
+    /**
+     * Gives back the amount of bytes written to the files.
+     *
+     * @return The amount of bytes written.
+     */
+    long getBytesWritten();
+
+    /**
+     * Gives back the amount of blocks thrown away because the writing fell
+     * behind.
+     *
+     * @return The amount of overruns.
+     */
+    long getOverruns();
+
+    /**
+     * Gives back the median time one block took to write.
+     *
+     * @return The time in microseconds.
+     */
+    double getWriteLatencyP50Micros();
+
+    /**
+     * Gives back the time 99 percent of the blocks were written within.
+     *
+     * @return The time in microseconds.
+     */
+    double getWriteLatencyP99Micros();
+
+    /**
+     * Gives back the time 99.9 percent of the blocks were written within.
+     *
+     * @return The time in microseconds.
+     */
+    double getWriteLatencyP999Micros();
+
+    /**
+     * Gives back the longest time one block took to write.
+     *
+     * @return The time in microseconds.
+     */
+    double getWriteLatencyMaxMicros();
+
+    /**
+     * Gives back the average amount of bytes one read from a source gave.
+     *
+     * @return The mean read size in bytes.
+     */
+    double getReadSizeMean();
+
+    /**
+     * Gives back the read size that only one percent of the reads stayed
+     * below, which shows short reads.
+     *
+     * @return The read size in bytes.
+     */
+    long getReadSizeP1();
+
+    /**
+     * Gives back the median fill of the line buffer after a read.
+     *
+     * @return The fill in percent.
+     */
+    long getLineBufferFillP50Percent();
+
+    /**
+     * Gives back the fill of the line buffer after a read that 99 percent
+     * of the reads stayed below.
+     *
+     * @return The fill in percent.
+     */
+    long getLineBufferFillP99Percent();
+
+    /**
+     * Gives back the time to the first sample of the last recording.
+     *
+     * @return The time in milliseconds, or -1 if nothing was captured yet.
+     */
+    double getLastTimeToFirstSampleMillis();
+
+    /**
+     * Gives back the median time to the first sample of the recordings.
+     *
+     * @return The time in milliseconds.
+     */
+    double getTimeToFirstSampleP50Millis();
+
+    /**
+     * Gives back the processor time the last finished recording took.
+     *
+     * @return The time in milliseconds, or -1 if no recording finished yet.
+     */
+    double getLastSessionCpuMillis();
+
+    /**
+     * Gives back the processor time all recordings took together.
+     *
+     * @return The time in milliseconds.
+     */
+    double getTotalCpuMillis();
+
+    /**
+     * Gives back every metric at once.
+     *
+     * @return The metrics as a JSON object.
+     */
+    String toJson();
+}
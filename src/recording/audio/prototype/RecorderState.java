@@ -0,0 +1,33 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of the states of a recording. A recording always goes through them
+ * in order, from Idle to Starting to Recording to Stopping and back to Idle.
+ * A start that is stopped before it completes goes from Starting straight to
+ * Stopping.
+ *
+ * @author Jafeth
+ */
+public enum RecorderState {
+
+    /**
+     * Nothing is being recorded
+     */
+    Idle,
+
+    /**
+     * The line and the file are being opened
+     */
+    Starting,
+
+    /**
+     * Audio is being captured and written
+     */
+    Recording,
+
+    /**
+     * The line is closed and the rest of the audio is being written
+     */
+    Stopping;
+
+}
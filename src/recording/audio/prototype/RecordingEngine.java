@@ -0,0 +1,276 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * Runs many recordings at the same time, each with its own source, format and
+ * file. Instead of two threads per recording, a small pool of capture threads
+ * polls every source for available blocks and a bounded pool of writer
+ * threads writes them, so hundreds of sessions fit in one program.
+ *
+ * @author Jafeth
+ */
+public class RecordingEngine {
+
+    private static final long CAPTURE_INTERVAL_MICROS = 5000;//The time between two polls of a source.
+    private static final int MAX_BLOCKS_PER_POLL = 8;//The maximum amount of blocks one poll captures.
+
+    private final ScheduledExecutorService captureScheduler;//The threads that poll the sources.
+    private final ExecutorService writerPool;//The threads that write the files.
+    private final Map<RecordingSession, SessionTasks> sessions = new ConcurrentHashMap<>();//The running sessions.
+    private volatile RecorderMetrics metrics;//Counts what the sessions do, if set.
+
+    /**
+     * A constructor for the RecordingEngine class with a thread per processor
+     * for both capturing and writing.
+     */
+    public RecordingEngine() {
+        this(Runtime.getRuntime().availableProcessors(), Runtime.getRuntime().availableProcessors());
+    }
+
+    /**
+     * A constructor for the RecordingEngine class.
+     *
+     * @param captureThreads The amount of threads that poll the sources.
+     * @param writerThreads The amount of threads that write the files.
+     */
+    public RecordingEngine(int captureThreads, int writerThreads) {
+        captureScheduler = Executors.newScheduledThreadPool(captureThreads, namedThreads("recording-capture"));
+        writerPool = Executors.newFixedThreadPool(writerThreads, namedThreads("recording-writer"));
+    }
+
+    /**
+     * Creates a factory of daemon threads with numbered names.
+     *
+     * @param prefix The start of the thread names.
+     * @return The thread factory.
+     */
+    private static ThreadFactory namedThreads(String prefix) {
+        AtomicInteger counter = new AtomicInteger();
+        return runnable -> {
+            Thread thread = new Thread(runnable, prefix + "-" + counter.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        };
+    }
+
+    /**
+     * Sets the metrics every session started from now on counts in.
+     *
+     * @param metrics The metrics to update, or null to count nothing.
+     */
+    public void setMetrics(RecorderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Starts a new recording.
+     *
+     * @param source The source from which audio data is captured.
+     * @param format The format of the recording.
+     * @param file The file the recording is written to.
+     * @param outputMode The way the recording is written to the file.
+     * @return The started session.
+     * @throws LineUnavailableException If the source can not be opened.
+     * @throws IOException If the file can not be created.
+     */
+    public RecordingSession startSession(CaptureSource source, AudioFormat format, File file, OutputMode outputMode) throws LineUnavailableException, IOException {
+        RecordingSession session = new RecordingSession(source, format, file, outputMode);
+        session.setMetrics(metrics);
+        session.open();
+
+        SessionTasks tasks = new SessionTasks(session);
+        sessions.put(session, tasks);
+        tasks.captureFuture = captureScheduler.scheduleAtFixedRate(tasks::capture, 0, CAPTURE_INTERVAL_MICROS, TimeUnit.MICROSECONDS);
+        return session;
+    }
+
+    /**
+     * Stops a recording and waits until its file is complete.
+     *
+     * @param session The session to stop.
+     * @throws IOException If the file could not be written.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void stopSession(RecordingSession session) throws IOException, InterruptedException {
+        session.stop();
+        session.awaitFinished();
+    }
+
+    /**
+     * Stops every recording, waits until their files are complete and stops
+     * the threads.
+     *
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void shutdown() throws InterruptedException {
+        List<RecordingSession> running = getSessions();
+        for (RecordingSession session : running) {
+            session.stop();
+        }
+        for (RecordingSession session : running) {
+            try {
+                session.awaitFinished();
+            } catch (IOException ex) {
+                //The failure belongs to the session, the others are still completed.
+            }
+        }
+        captureScheduler.shutdown();
+        writerPool.shutdown();
+        captureScheduler.awaitTermination(1, TimeUnit.MINUTES);
+        writerPool.awaitTermination(1, TimeUnit.MINUTES);
+    }
+
+    /**
+     * Gives back the sessions that have not finished yet.
+     *
+     * @return A copy of the list of running sessions.
+     */
+    public List<RecordingSession> getSessions() {
+        return new ArrayList<>(sessions.keySet());
+    }
+
+    /**
+     * Gives back the amount of bytes captured by all running sessions.
+     *
+     * @return The total amount of bytes captured.
+     */
+    public long getTotalBytesCaptured() {
+        long total = 0;
+        for (RecordingSession session : sessions.keySet()) {
+            total += session.getBytesCaptured();
+        }
+        return total;
+    }
+
+    /**
+     * Gives back the amount of bytes written by all running sessions.
+     *
+     * @return The total amount of bytes written.
+     */
+    public long getTotalBytesWritten() {
+        long total = 0;
+        for (RecordingSession session : sessions.keySet()) {
+            total += session.getBytesWritten();
+        }
+        return total;
+    }
+
+    /**
+     * Gives back the amount of blocks all running sessions threw away.
+     *
+     * @return The total amount of overruns.
+     */
+    public long getTotalOverruns() {
+        long total = 0;
+        for (RecordingSession session : sessions.keySet()) {
+            total += session.getOverruns();
+        }
+        return total;
+    }
+
+    /**
+     * Gives back the combined throughput of all running sessions.
+     *
+     * @return The total throughput in bytes per second.
+     */
+    public double getTotalThroughput() {
+        double total = 0;
+        for (RecordingSession session : sessions.keySet()) {
+            total += session.getThroughput();
+        }
+        return total;
+    }
+
+    /**
+     * The tasks that capture and write one session on the pools.
+     */
+    private final class SessionTasks {
+
+        private final RecordingSession session;//The session the tasks belong to.
+        private final AtomicBoolean drainScheduled = new AtomicBoolean();//Tells whether a write task is waiting or running.
+        private volatile ScheduledFuture<?> captureFuture;//The repeating capture task.
+
+        /**
+         * Constructor for the SessionTasks class.
+         *
+         * @param session The session the tasks belong to.
+         */
+        private SessionTasks(RecordingSession session) {
+            this.session = session;
+        }
+
+        /**
+         * Captures what the source has available, and has it written.
+         */
+        private void capture() {
+            int blocks;
+            try {
+                blocks = session.captureAvailable(MAX_BLOCKS_PER_POLL);
+            } catch (RuntimeException ex) {
+                //A broken source ends the session, the file is still completed.
+                session.stop();
+                session.endCapture();
+                blocks = -1;
+            }
+
+            if (blocks != 0) {
+                scheduleDrain();
+            }
+            ScheduledFuture<?> future = captureFuture;
+            if (blocks < 0 && future != null) {
+                future.cancel(false);
+            }
+        }
+
+        /**
+         * Hands the session to a writer thread, unless it already has one.
+         */
+        private void scheduleDrain() {
+            if (drainScheduled.compareAndSet(false, true)) {
+                writerPool.execute(this::drain);
+            }
+        }
+
+        /**
+         * Writes the waiting blocks of the session.
+         */
+        private void drain() {
+            boolean done;
+            try {
+                done = session.drain();
+            } catch (RuntimeException ex) {
+                //A broken sink or encoder ends the session, so those waiting for it are released.
+                session.abort(ex);
+                done = true;
+            } finally {
+                drainScheduled.set(false);
+            }
+            if (done) {
+                sessions.remove(session);
+                ScheduledFuture<?> future = captureFuture;
+                if (future != null) {
+                    future.cancel(false);
+                }
+            } else if (session.needsDrain()) {
+                //A block was published after the ring buffer was emptied.
+                scheduleDrain();
+            }
+        }
+    }
+}
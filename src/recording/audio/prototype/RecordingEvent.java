@@ -0,0 +1,215 @@
+package recording.audio.prototype;
+
+import java.io.File;
+
+/**
+ * Something that happened to a recording, as published on the event bus.
+ * Events can not be changed once created, so they can be handed to any
+ * thread.
+ *
+ * @author Jafeth
+ */
+public class RecordingEvent {
+
+    private final RecordingEventType type;//The kind of event.
+    private final long nanos;//The moment the event happened, on the clock of System.nanoTime().
+    private final long value;//The count of an overrun or bytes written event.
+    private final float[] peak;//The peak level of every channel of a level event.
+    private final float[] rms;//The RMS level of every channel of a level event.
+    private final FileSystem fileSystem;//The file system of a stopped event, to find the file.
+    private final File file;//The file a recovered recording was kept in.
+    private final Throwable error;//The cause of an error event.
+
+    /**
+     * Constructor for the RecordingEvent class.
+     *
+     * @param type The kind of event.
+     * @param value The count of an overrun or bytes written event.
+     * @param peak The peak levels of a level event.
+     * @param rms The RMS levels of a level event.
+     * @param fileSystem The file system of a stopped event.
+     * @param file The file of a recovered or not recovered event.
+     * @param error The cause of an error event.
+     */
+    private RecordingEvent(RecordingEventType type, long value, float[] peak, float[] rms, FileSystem fileSystem, File file, Throwable error) {
+        this.type = type;
+        this.nanos = System.nanoTime();
+        this.value = value;
+        this.peak = peak;
+        this.rms = rms;
+        this.fileSystem = fileSystem;
+        this.file = file;
+        this.error = error;
+    }
+
+    /**
+     * Creates an event that carries nothing but its kind.
+     *
+     * @param type The kind of event.
+     * @return The event.
+     */
+    public static RecordingEvent of(RecordingEventType type) {
+        return new RecordingEvent(type, 0, null, null, null, null, null);
+    }
+
+    /**
+     * Creates the event of a recording that has stopped.
+     *
+     * @param fileSystem The file system, to find the recorded file.
+     * @return The event.
+     */
+    public static RecordingEvent stopped(FileSystem fileSystem) {
+        return new RecordingEvent(RecordingEventType.Stopped, 0, null, null, fileSystem, null, null);
+    }
+
+    /**
+     * Creates an event with the latest levels. The levels are copied, as the
+     * arrays of the level meter are reused.
+     *
+     * @param peak The peak level of every channel, from 0 to 1.
+     * @param rms The RMS level of every channel, from 0 to 1.
+     * @return The event.
+     */
+    public static RecordingEvent level(float[] peak, float[] rms) {
+        return new RecordingEvent(RecordingEventType.Level, 0, peak.clone(), rms.clone(), null, null, null);
+    }
+
+    /**
+     * Creates an event that carries a count, such as the amount of overruns
+     * or bytes written.
+     *
+     * @param type The kind of event.
+     * @param value The count.
+     * @return The event.
+     */
+    public static RecordingEvent count(RecordingEventType type, long value) {
+        return new RecordingEvent(type, value, null, null, null, null, null);
+    }
+
+    /**
+     * Creates the event of a recording that was interrupted by a crash and
+     * has been repaired.
+     *
+     * @param file The file the repaired recording was kept in.
+     * @param keptBytes The amount of audio bytes in the repaired file.
+     * @return The event.
+     */
+    public static RecordingEvent recovered(File file, long keptBytes) {
+        return new RecordingEvent(RecordingEventType.Recovered, keptBytes, null, null, null, file, null);
+    }
+
+    /**
+     * Creates the event of a recording that was interrupted by a crash and
+     * could not be repaired.
+     *
+     * @param file The file the recording was left in as it was.
+     * @return The event.
+     */
+    public static RecordingEvent notRecovered(File file) {
+        return new RecordingEvent(RecordingEventType.NotRecovered, 0, null, null, null, file, null);
+    }
+
+    /**
+     * Creates the event of something that went wrong.
+     *
+     * @param error The cause.
+     * @return The event.
+     */
+    public static RecordingEvent error(Throwable error) {
+        return new RecordingEvent(RecordingEventType.Error, 0, null, null, null, null, error);
+    }
+
+    /**
+     * Gives back the kind of event.
+     *
+     * @return The event type.
+     */
+    public RecordingEventType getType() {
+        return type;
+    }
+
+    /**
+     * Gives back the moment the event happened.
+     *
+     * @return The moment in nanoseconds, on the clock of System.nanoTime().
+     */
+    public long getNanos() {
+        return nanos;
+    }
+
+    /**
+     * Gives back the count of an overrun or bytes written event.
+     *
+     * @return The count, 0 for other events.
+     */
+    public long getValue() {
+        return value;
+    }
+
+    /**
+     * Gives back the peak levels of a level event.
+     *
+     * @return The peak level of every channel, or null for other events.
+     */
+    public float[] getPeak() {
+        return peak;
+    }
+
+    /**
+     * Gives back the RMS levels of a level event.
+     *
+     * @return The RMS level of every channel, or null for other events.
+     */
+    public float[] getRms() {
+        return rms;
+    }
+
+    /**
+     * Gives back the file system of a stopped event.
+     *
+     * @return The file system, or null for other events.
+     */
+    public FileSystem getFileSystem() {
+        return fileSystem;
+    }
+
+    /**
+     * Gives back the file of a recovered or not recovered event.
+     *
+     * @return The file, or null for other events.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gives back the cause of an error event.
+     *
+     * @return The cause, or null for other events.
+     */
+    public Throwable getError() {
+        return error;
+    }
+
+    /**
+     * Gives back a short description of the event, for logging.
+     *
+     * @return The description.
+     */
+    @Override
+    public String toString() {
+        switch (type) {
+            case Overrun:
+            case BytesWritten:
+                return type + " " + value;
+            case Recovered:
+                return type + " " + value + " " + file;
+            case NotRecovered:
+                return type + " " + file;
+            case Error:
+                return type + " " + error;
+            default:
+                return type.toString();
+        }
+    }
+}
@@ -0,0 +1,193 @@
+package recording.audio.prototype;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * Hands the events of a recorder to any amount of subscribers without ever
+ * making the publishing thread wait. Events are put in a bounded queue that
+ * needs no locks, and a thread of the bus delivers them in batches. Events
+ * that are published often, like levels, are not queued: only the latest one
+ * is kept and added to the next batch.
+ *
+ * @author Jafeth
+ */
+public class RecordingEventBus {
+
+    private static final int CAPACITY = 1024;//The amount of events the queue can hold, a power of two.
+    private static final long BATCH_NANOS = 50000000;//The longest time events wait to be delivered.
+
+    private final AtomicReferenceArray<RecordingEvent> slots = new AtomicReferenceArray<>(CAPACITY);//The queued events.
+    private final AtomicLongArray sequences = new AtomicLongArray(CAPACITY);//Tells for every slot which turn it is on.
+    private final AtomicLong tail = new AtomicLong();//The amount of events ever claimed by publishers.
+    private final AtomicReferenceArray<RecordingEvent> latest = new AtomicReferenceArray<>(RecordingEventType.values().length);//The latest event of every coalesced type.
+    private final AtomicLong dropped = new AtomicLong();//The amount of events that did not fit in the queue.
+    private final List<RecordingEventListener> listeners = new CopyOnWriteArrayList<>();//The subscribers.
+    private final Thread dispatcher;//The thread that delivers the events.
+    private long head;//The amount of events taken from the queue, only used by the dispatcher.
+    private volatile boolean running = true;//Tells whether the bus is still delivering.
+
+    /**
+     * Constructor for the RecordingEventBus class. Starts the thread that
+     * delivers the events.
+     */
+    public RecordingEventBus() {
+        for (int i = 0; i < CAPACITY; i++) {
+            sequences.set(i, i);
+        }
+        dispatcher = new Thread(() -> {
+            RecordingEventBus.this.dispatch();
+        }, "event-dispatch");
+        dispatcher.setDaemon(true);
+        dispatcher.start();
+    }
+
+    /**
+     * Adds a subscriber that is given every batch of events.
+     *
+     * @param listener The subscriber to add.
+     */
+    public void subscribe(RecordingEventListener listener) {
+        listeners.add(listener);
+    }
+
+    /**
+     * Removes a subscriber.
+     *
+     * @param listener The subscriber to remove.
+     */
+    public void unsubscribe(RecordingEventListener listener) {
+        listeners.remove(listener);
+    }
+
+    /**
+     * Publishes an event. Never waits: an event that is coalesced replaces
+     * the one before it, and an event that does not fit in the queue is
+     * dropped and counted.
+     *
+     * @param event The event to publish.
+     * @return False if the event was dropped.
+     */
+    public boolean publish(RecordingEvent event) {
+        if (event.getType().isCoalesced()) {
+            //Delivered with the next batch, there is no need to wake the dispatcher for it.
+            latest.set(event.getType().ordinal(), event);
+            return true;
+        }
+
+        while (true) {
+            long claim = tail.get();
+            int index = (int) (claim & (CAPACITY - 1));
+            long turn = sequences.get(index) - claim;
+            if (turn == 0) {
+                if (tail.compareAndSet(claim, claim + 1)) {
+                    slots.set(index, event);
+                    //Hands the slot to the dispatcher.
+                    sequences.set(index, claim + 1);
+                    LockSupport.unpark(dispatcher);
+                    return true;
+                }
+            } else if (turn < 0) {
+                //The dispatcher has not taken the event from a lap ago yet, so the queue is full.
+                dropped.incrementAndGet();
+                return false;
+            }
+            //Another publisher took the slot, tries the next one.
+        }
+    }
+
+    /**
+     * Takes the oldest event from the queue.
+     *
+     * @return The event, or null if the queue is empty.
+     */
+    private RecordingEvent poll() {
+        int index = (int) (head & (CAPACITY - 1));
+        if (sequences.get(index) != head + 1) {
+            return null;
+        }
+        RecordingEvent event = slots.get(index);
+        slots.set(index, null);
+        //Frees the slot for the publishers of the next lap.
+        sequences.set(index, head + CAPACITY);
+        head++;
+        return event;
+    }
+
+    /**
+     * Delivers batches of events until the bus is closed.
+     */
+    private void dispatch() {
+        List<RecordingEvent> batch = new ArrayList<>();
+        boolean more = true;
+        while (running || more) {
+            if (running) {
+                //Lets the events of a moment gather into one batch.
+                LockSupport.parkNanos(this, BATCH_NANOS);
+            }
+
+            RecordingEvent event;
+            while ((event = poll()) != null) {
+                batch.add(event);
+            }
+            for (int type = 0; type < latest.length(); type++) {
+                RecordingEvent coalesced = latest.getAndSet(type, null);
+                if (coalesced != null) {
+                    batch.add(coalesced);
+                }
+            }
+            more = !batch.isEmpty();
+            if (!more) {
+                continue;
+            }
+
+            //The subscribers share a copy that can not be changed, so they may keep it.
+            List<RecordingEvent> delivered = Collections.unmodifiableList(new ArrayList<>(batch));
+            batch.clear();
+            for (RecordingEventListener listener : listeners) {
+                try {
+                    listener.eventsPublished(delivered);
+                } catch (RuntimeException ex) {
+                    //A broken subscriber must not stop the events of the others.
+                }
+            }
+        }
+    }
+
+    /**
+     * Gives back the amount of events that were dropped because the queue
+     * was full.
+     *
+     * @return The amount of dropped events.
+     */
+    public long getDropped() {
+        return dropped.get();
+    }
+
+    /**
+     * Delivers the events that were published so far and stops the thread
+     * of the bus.
+     */
+    public void close() {
+        running = false;
+        LockSupport.unpark(dispatcher);
+        boolean interrupted = false;
+        while (dispatcher.isAlive() && Thread.currentThread() != dispatcher) {
+            try {
+                dispatcher.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
+        //Keeps the interrupt for the code that called this.
+        if (interrupted) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -1,21 +1,117 @@
 package recording.audio.prototype;
 
+import java.io.File;
+import java.util.List;
+import javax.swing.SwingUtilities;
+
 /**
- * An event catcher for recording events.
+ * An event catcher for recording events. Publishes every event on an event
+ * bus, so the recording threads never wait for the GUI or any other
+ * subscriber. The GUI is a subscriber that shows the events on the Swing
+ * event thread.
  *
  * @author Jafeth
  */
 public class RecordingEventCatcher {
 
-    private final RecorderGUI gui;//The GUI object of the running program
+    private final RecordingEventBus bus;//The bus the events are published on.
 
     /**
      * Constructor method for the RecordingEventCatcher class
      *
-     * @param gui The GUI object of the running program.
+     * @param gui The GUI object of the running program, or null to show the
+     * events nowhere but on the bus.
      */
     public RecordingEventCatcher(RecorderGUI gui) {
-        this.gui = gui;
+        this(new RecordingEventBus());
+        if (gui != null) {
+            //Hands every batch to the Swing event thread in one go.
+            bus.subscribe(events -> SwingUtilities.invokeLater(() -> show(gui, events)));
+        }
+    }
+
+    /**
+     * Constructor method for the RecordingEventCatcher class that publishes
+     * on the given bus.
+     *
+     * @param bus The bus the events are published on.
+     */
+    public RecordingEventCatcher(RecordingEventBus bus) {
+        this.bus = bus;
+    }
+
+    /**
+     * Gives back the bus the events are published on, to subscribe to it.
+     *
+     * @return The event bus.
+     */
+    public RecordingEventBus getBus() {
+        return bus;
+    }
+
+    /**
+     * Shows a batch of events on the GUI. Is called on the Swing event
+     * thread.
+     *
+     * @param gui The GUI object of the running program.
+     * @param events The events.
+     */
+    private static void show(RecorderGUI gui, List<RecordingEvent> events) {
+        for (RecordingEvent event : events) {
+            switch (event.getType()) {
+                case FormatNotSupported:
+                    //Tells the GUI to notify the user that the audio format they have chosen is not supported.
+                    gui.formatNotSupportedActionPerformed();
+                    break;
+                case LineNotFound:
+                    //Tells the GUI to notify the user that a suitable microphone could not be found.
+                    gui.lineNotFoundActionPerformed();
+                    break;
+                case Started:
+                    //Tells the GUI to notify the user that the recording start attempt was successful.
+                    gui.recordingStartedActionPerformed();
+                    break;
+                case NotStarted:
+                    //Tells the GUI to notify the user that the recording start attempt was unsuccessful.
+                    gui.recordingNotStartedActionPerformed();
+                    break;
+                case Stopped:
+                    //Tells the GUI to notify the user that the recording stop attempt was successful.
+                    gui.recordingStoppedActionPerformed(event.getFileSystem());
+                    break;
+                case NotStopped:
+                    //Tells the GUI to notify the user that the recording stop attempt was unsuccessful.
+                    gui.recordingNotStoppedActionPerformed();
+                    break;
+                case OsNotSupported:
+                    //Tells the GUI to notify the user that the OS is not supported and recording might not work.
+                    gui.osNotSupportedActionperformed();
+                    break;
+                case AlreadyStarted:
+                    //Tells the GUI to notify the user that the recording has already started.
+                    gui.recordingAlreadyStartedActionPerformed();
+                    break;
+                case AlreadyStopped:
+                    //Tells the GUI to notify the user that the recording has already stopped.
+                    gui.recordingAlreadyStoppedActionPerformed();
+                    break;
+                case Recovered:
+                    //Tells the GUI to notify the user that an interrupted recording was repaired and where it is.
+                    gui.recordingRecoveredActionPerformed(event.getFile());
+                    break;
+                case NotRecovered:
+                    //Tells the GUI to notify the user that an interrupted recording could not be repaired.
+                    gui.recordingNotRecoveredActionPerformed(event.getFile());
+                    break;
+                case Level:
+                    //Tells the GUI to show the levels to the user.
+                    gui.levelActionPerformed(event.getPeak(), event.getRms());
+                    break;
+                default:
+                    //Errors are followed by an event the user is shown, counts are for the other subscribers.
+                    break;
+            }
+        }
     }
 
     /**
@@ -23,32 +119,28 @@ public class RecordingEventCatcher {
      * microphone.
      */
     public void formatNotSupportedEvent() {
-        //Tells the GUI to notify the user that the audio format they have chosen is not supported.
-        gui.formatNotSupportedActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.FormatNotSupported));
     }
 
     /**
      * Is fired when an attempt to find a microphone is unsuccessful.
      */
     public void lineNotFoundEvent() {
-        //Tells the GUI to notify the user that a suitable microphone could not be found.
-        gui.lineNotFoundActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.LineNotFound));
     }
 
     /**
      * Is fired when a recording start attempt is successful.
      */
     public void recordingStartedEvent() {
-        //Tells the GUI to notify the user that the recording start attempt was successful.
-        gui.recordingStartedActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.Started));
     }
 
     /**
      * Is fired when a recording start attempt is unsuccessful.
      */
     public void recordingNotStartedEvent() {
-        //Tells the GUI to notify the user that the recording start attempt was unsuccessful.
-        gui.recordingNotStartedActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.NotStarted));
     }
 
     /**
@@ -56,24 +148,21 @@ public class RecordingEventCatcher {
      * @param fileSystem The fileSystem object to get the filepath to the recorded file.
      */
     public void recordingStoppedEvent(FileSystem fileSystem) {
-        //Tells the GUI to notify the user that the recording stop attempt was successful.
-        gui.recordingStoppedActionPerformed(fileSystem);
+        bus.publish(RecordingEvent.stopped(fileSystem));
     }
 
     /**
      * Is fired when a recording stop attempt is unsuccessful.
      */
     public void recordingNotStoppedEvent() {
-        //Tells the GUI to notify the user that the recording stop attempt was unsuccessful.
-        gui.recordingNotStoppedActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.NotStopped));
     }
 
     /**
      * Is fired when the OS is not supported.
      */
     public void osNotSupportedEvent() {
-        //Tells the GUI to notify the user that the OS is not supported and recording might not work.
-        gui.osNotSupportedActionperformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.OsNotSupported));
     }
 
     /**
@@ -81,8 +170,7 @@ public class RecordingEventCatcher {
      * still going on.
      */
     public void recordingAlreadyStartedEvent() {
-        //Tells the GUI to notify the user that the recording has already started.
-        gui.recordingAlreadyStartedActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.AlreadyStarted));
     }
 
     /**
@@ -90,7 +178,61 @@ public class RecordingEventCatcher {
      * going on.
      */
     public void recordingAlreadyStoppedEvent() {
-        //Tells the GUI to notify the user that the recording has already stopped.
-        gui.recordingAlreadyStoppedActionPerformed();
+        bus.publish(RecordingEvent.of(RecordingEventType.AlreadyStopped));
+    }
+
+    /**
+     * Is fired when something goes wrong while recording, before the event
+     * that tells the user.
+     *
+     * @param error The cause.
+     */
+    public void errorEvent(Throwable error) {
+        bus.publish(RecordingEvent.error(error));
+    }
+
+    /**
+     * Is fired when a recording that was interrupted by a crash has been
+     * repaired.
+     *
+     * @param file The file the repaired recording was kept in.
+     * @param keptBytes The amount of audio bytes in the repaired file.
+     */
+    public void recordingRecoveredEvent(File file, long keptBytes) {
+        bus.publish(RecordingEvent.recovered(file, keptBytes));
+    }
+
+    /**
+     * Is fired when a recording that was interrupted by a crash could not be
+     * repaired.
+     *
+     * @param file The file the recording was left in as it was.
+     */
+    public void recordingNotRecoveredEvent(File file) {
+        bus.publish(RecordingEvent.notRecovered(file));
+    }
+
+    /**
+     * Is fired at a fixed rate while recording with the latest levels.
+     *
+     * @param peak The peak level of every channel, from 0 to 1.
+     * @param rms The RMS level of every channel, from 0 to 1.
+     */
+    public void levelEvent(float[] peak, float[] rms) {
+        bus.publish(RecordingEvent.level(peak, rms));
+    }
+
+    /**
+     * Is fired at a fixed rate while recording with how far the recording
+     * has come.
+     *
+     * @param bytesWritten The amount of bytes written to the file so far.
+     * @param overruns The amount of blocks thrown away so far.
+     */
+    public void progressEvent(long bytesWritten, long overruns) {
+        bus.publish(RecordingEvent.count(RecordingEventType.BytesWritten, bytesWritten));
+        if (overruns > 0) {
+            bus.publish(RecordingEvent.count(RecordingEventType.Overrun, overruns));
+        }
     }
 }
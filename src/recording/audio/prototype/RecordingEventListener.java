@@ -0,0 +1,21 @@
+package recording.audio.prototype;
+
+import java.util.List;
+
+/**
+ * A subscriber of the events of a recorder.
+ *
+ * @author Jafeth
+ */
+public interface RecordingEventListener {
+
+    /**
+     * Is fired on the thread of the event bus with the events that happened
+     * since the last batch, in order. Of the events that are coalesced only
+     * the latest one is in the batch. Taking long here delays the next batch,
+     * but never the recording.
+     *
+     * @param events The events, which must not be changed.
+     */
+    void eventsPublished(List<RecordingEvent> events);
+}
@@ -0,0 +1,45 @@
+package recording.audio.prototype;
+
+import java.util.List;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * A subscriber that writes the events of a recorder to the log. Errors are
+ * logged as warnings, the counts that are published many times a second
+ * only in detail.
+ *
+ * @author Jafeth
+ */
+public class RecordingEventLogger implements RecordingEventListener {
+
+    private static final Logger LOGGER = Logger.getLogger(RecordingEventLogger.class.getName());//The log written to.
+
+    /**
+     * Logs a batch of events.
+     *
+     * @param events The events.
+     */
+    @Override
+    public void eventsPublished(List<RecordingEvent> events) {
+        for (RecordingEvent event : events) {
+            switch (event.getType()) {
+                case Error:
+                    LOGGER.log(Level.WARNING, "Recording error", event.getError());
+                    break;
+                case NotRecovered:
+                    LOGGER.log(Level.WARNING, "{0}", event);
+                    break;
+                case Level:
+                    //The levels are shown, not logged.
+                    break;
+                case Overrun:
+                case BytesWritten:
+                    LOGGER.log(Level.FINE, "{0}", event);
+                    break;
+                default:
+                    LOGGER.log(Level.INFO, "{0}", event);
+            }
+        }
+    }
+}
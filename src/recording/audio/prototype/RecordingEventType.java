@@ -0,0 +1,96 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of the kinds of events a recorder publishes. The last three are
+ * published often and are coalesced, so only the latest one of a batch is
+ * delivered.
+ *
+ * @author Jafeth
+ */
+public enum RecordingEventType {
+
+    /**
+     * A recording has started
+     */
+    Started,
+
+    /**
+     * A recording has stopped and its file is complete
+     */
+    Stopped,
+
+    /**
+     * A recording could not be started
+     */
+    NotStarted,
+
+    /**
+     * A recording could not be stopped
+     */
+    NotStopped,
+
+    /**
+     * A start was asked for while a recording was going on
+     */
+    AlreadyStarted,
+
+    /**
+     * A stop was asked for while no recording was going on
+     */
+    AlreadyStopped,
+
+    /**
+     * The chosen audio format can not be captured
+     */
+    FormatNotSupported,
+
+    /**
+     * No microphone could be found
+     */
+    LineNotFound,
+
+    /**
+     * The operating system is not officially supported
+     */
+    OsNotSupported,
+
+    /**
+     * Something went wrong while recording
+     */
+    Error,
+
+    /**
+     * A recording that was interrupted by a crash has been repaired, its value is the amount of audio bytes kept
+     */
+    Recovered,
+
+    /**
+     * A recording that was interrupted by a crash could not be repaired, it is kept as it was
+     */
+    NotRecovered,
+
+    /**
+     * The latest levels of every channel
+     */
+    Level,
+
+    /**
+     * The amount of blocks thrown away so far
+     */
+    Overrun,
+
+    /**
+     * The amount of bytes written to the file so far
+     */
+    BytesWritten;
+
+    /**
+     * Tells whether only the latest event of this kind matters, so older ones
+     * can be dropped.
+     *
+     * @return True if events of this kind are coalesced.
+     */
+    public boolean isCoalesced() {
+        return this == Level || this == Overrun || this == BytesWritten;
+    }
+}
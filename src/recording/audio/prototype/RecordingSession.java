@@ -0,0 +1,838 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import java.nio.file.Files;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.LineUnavailableException;
+
+/**
+ * One recording: a capture source, the ring buffer it is captured into and
+ * the file it is written to. The session does not own any threads. One thread
+ * captures and one thread writes at a time, either dedicated threads or
+ * tasks of a pool.
+ *
+ * @author Jafeth
+ */
+public class RecordingSession {
+
+    private static final int RING_MILLIS = 2560;//The amount of audio the ring buffer can hold, a bit over 2.5 seconds.
+    private static final int MIN_BUFFERED_BLOCKS = 16;//The smallest amount of blocks the ring buffer can hold.
+    private static final ThreadMXBean THREADS = ManagementFactory.getThreadMXBean();//Tells the processor time of the current thread.
+    private static final boolean CPU_TIME = THREADS.isCurrentThreadCpuTimeSupported() && THREADS.isThreadCpuTimeEnabled();//Tells whether processor time can be measured.
+    private static final Logger LOGGER = Logger.getLogger(RecordingSession.class.getName());//The log written to.
+
+    private final CaptureSource source;//The source from which audio data is captured.
+    private final AudioFormat format;//The format of the recording.
+    private final File file;//The file the recording is written to.
+    private final OutputMode outputMode;//The way the recording is written to the file.
+    private long segmentSeconds;//The length of one file when writing a series of files, 0 for as long as fits.
+    private final CountDownLatch finished = new CountDownLatch(1);//Is released when the file is complete.
+    private final AtomicReference<RecorderState> state = new AtomicReference<>(RecorderState.Idle);//Tells what the session is doing.
+    private BlockRingBuffer ring;//The buffer between the capturing and the writing thread.
+    private AudioSink sink;//The file the audio data is written to.
+    private boolean sinkClosed;//Tells whether the file has been completed.
+    private byte[] discard;//The block that is read into when the ring buffer is full.
+    private LevelMeter levelMeter;//Measures the levels of the captured audio.
+    private volatile long bytesCaptured;//The amount of bytes read from the source.
+    private volatile IOException failure;//The error that ended the writing, if any.
+    private volatile long openNanos;//The moment the session was asked to open.
+    private long startNanos;//The moment the recording started.
+    private volatile long firstSampleNanos;//The moment the first audio data was captured, 0 until then.
+    private RecorderMetrics metrics;//Counts what the session does, if set.
+    private final LongAdder cpuNanos = new LongAdder();//The processor time spent capturing and writing, if counted.
+    private volatile int lineBufferSize;//The size of the buffer of the source in bytes.
+    private volatile BufferSettings bufferSettings = BufferSettings.of(BufferProfile.Balanced);//How the line is buffered, grown when an adaptive line overflows.
+    private volatile long lineOverruns;//The amount of times the line was found full.
+    private volatile long reopenGapFrames;//The amount of frames that came in while an adaptive line was opened again, which are lost.
+    private final Object sourceLock = new Object();//Keeps the source from being stopped while an adaptive line is opened again.
+    private volatile long endNanos;//The moment the file was completed.
+    private LiveStreamWriter liveStream;//Publishes the recording to other processes while it is made, if set.
+    private DurabilitySettings durability;//How the file is kept safe on disk, if set.
+    private SilenceSettings silenceSettings;//Tells the gate what silence to leave out of the file, if set.
+    private boolean peakIndex;//Tells whether a peak index of the file is built.
+
+    /**
+     * Constructor for the RecordingSession class.
+     *
+     * @param source The source from which audio data is captured.
+     * @param format The format of the recording.
+     * @param file The file the recording is written to.
+     * @param outputMode The way the recording is written to the file.
+     */
+    public RecordingSession(CaptureSource source, AudioFormat format, File file, OutputMode outputMode) {
+        this.source = source;
+        this.format = format;
+        this.file = file;
+        this.outputMode = outputMode;
+    }
+
+    /**
+     * Sets the length of one file when the recording is written as a series
+     * of files. Has to be called before the session is opened.
+     *
+     * @param segmentSeconds The length of one file in seconds, 0 to fill
+     * every file up to what a WAV file can hold.
+     */
+    public void setSegmentSeconds(long segmentSeconds) {
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    /**
+     * Sets the metrics the session counts what it does in, including the
+     * processor time of its threads. Has to be called before the session is
+     * opened.
+     *
+     * @param metrics The metrics to update, or null to count nothing.
+     */
+    public void setMetrics(RecorderMetrics metrics) {
+        this.metrics = metrics;
+    }
+
+    /**
+     * Sets how the file is kept safe on disk while it is written, with a
+     * journal next to it to repair it after a crash. Only applies to files
+     * written through a file channel, which is the Stream output mode. Has
+     * to be called before the session is opened.
+     *
+     * @param durability How the file is synced, or null to keep no journal.
+     */
+    public void setDurability(DurabilitySettings durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * Sets the gate that leaves long silences out of the file. The kept
+     * segments are listed in a sidecar file named after the file, so
+     * RecordAudio.wav gets RecordAudio.segments.csv. The live stream is
+     * published before the gate, so it keeps the silence. Has to be called
+     * before the session is opened.
+     *
+     * @param silenceSettings When audio counts as silence, or null to write
+     * everything.
+     */
+    public void setSilenceSettings(SilenceSettings silenceSettings) {
+        this.silenceSettings = silenceSettings;
+    }
+
+    /**
+     * Sets whether a peak index of the file is built while it is written,
+     * in a sidecar file named after the file, so RecordAudio.wav gets
+     * RecordAudio.peaks. The index is built behind the silence gate, so it
+     * matches what is in the file. A series of files gets one index for the
+     * whole recording. Has to be called before the session is opened.
+     *
+     * @param peakIndex True to build the peak index.
+     */
+    public void setPeakIndex(boolean peakIndex) {
+        this.peakIndex = peakIndex;
+    }
+
+    /**
+     * Sets how the line is buffered and how much is read from it at once.
+     * An adaptive line that overflows is opened again twice as long, which
+     * loses the audio of the moment it is opened. The block size stays the
+     * same during the session, the grown settings give the next session
+     * larger blocks as well. Has to be called before the session is opened.
+     *
+     * @param bufferSettings How the line is buffered.
+     */
+    public void setBufferSettings(BufferSettings bufferSettings) {
+        this.bufferSettings = bufferSettings;
+    }
+
+    /**
+     * Sets the live stream the recording is published in while it is made.
+     * Every block is published before it is written to the file, on the
+     * writing side, so a subscriber can only hold up the writing and never
+     * the capturing. The stream is ended when the file is complete. Has to
+     * be called before the session is opened.
+     *
+     * @param liveStream The live stream, or null to publish nothing.
+     */
+    public void setLiveStream(LiveStreamWriter liveStream) {
+        this.liveStream = liveStream;
+    }
+
+    /**
+     * Opens the source and the file and starts capturing. A session can only
+     * be opened once.
+     *
+     * @throws LineUnavailableException If the source can not be opened.
+     * @throws IOException If the file can not be created.
+     */
+    public void open() throws LineUnavailableException, IOException {
+        if (!state.compareAndSet(RecorderState.Idle, RecorderState.Starting)) {
+            throw new IllegalStateException("Session has already been opened");
+        }
+        openNanos = System.nanoTime();
+
+        try {
+            source.open(format, bufferSettings.getLineBufferSize(format));
+            try {
+                //The file is created before the recording starts, so a disk error is reported right away.
+                sink = createGatedSink();
+            } catch (IOException ex) {
+                source.close();
+                throw ex;
+            }
+        } catch (LineUnavailableException | IOException | RuntimeException ex) {
+            //Tells the subscribers nothing will come.
+            if (liveStream != null) {
+                try {
+                    liveStream.finish();
+                } catch (IOException finishEx) {
+                    ex.addSuppressed(finishEx);
+                }
+            }
+            state.set(RecorderState.Idle);
+            finished.countDown();
+            throw ex;
+        }
+
+        //The ring buffer holds the same time of audio whatever the size of a block.
+        int blockSize = bufferSettings.getBlockSize(format);
+        double bytesPerSecond = format.getFrameRate() * format.getFrameSize();
+        int blocks = Math.max(MIN_BUFFERED_BLOCKS, (int) Math.ceil(bytesPerSecond * RING_MILLIS / 1000 / blockSize));
+        ring = new BlockRingBuffer(blocks, blockSize);
+        discard = new byte[blockSize];
+        levelMeter = new LevelMeter(format);
+        lineBufferSize = Math.max(1, source.getBufferSize());
+        if (metrics != null) {
+            metrics.sessionStarted();
+        }
+
+        startNanos = System.nanoTime();
+        source.start();
+
+        //A stop that came in while opening closes the source now, which ends the capturing right away.
+        if (!state.compareAndSet(RecorderState.Starting, RecorderState.Recording)) {
+            source.stop();
+            source.close();
+        }
+    }
+
+    /**
+     * Creates the file the recording is written to, according to the output
+     * mode.
+     *
+     * @return The created file.
+     * @throws IOException If the file can not be created.
+     */
+    private AudioSink createSink() throws IOException {
+        //Other formats are named after the file of the recording, so RecordAudio.wav becomes RecordAudio-0001.wav, RecordAudio.flac or RecordAudio-FL.wav.
+        File directory = file.getAbsoluteFile().getParentFile();
+        String name = file.getName().replaceFirst("\\.wav$", "");
+
+        if (durability != null && (outputMode == OutputMode.Mapped || outputMode == OutputMode.Flac)) {
+            LOGGER.log(Level.WARNING, "{0} files keep no journal, the recording is written without its durability settings", outputMode);
+        }
+        switch (outputMode) {
+            case Mapped:
+                return new MappedWavFileWriter(file, format);
+            case Segmented:
+                return new SegmentingWavWriter(directory, name, format, OutputMode.Stream, SegmentingWavWriter.segmentBytes(format, segmentSeconds), durability);
+            case Flac:
+                return new FlacFileWriter(new File(directory, name + ".flac"), format);
+            case Split:
+                return new ChannelSplitWriter(directory, name, format, OutputMode.Stream, durability);
+            default:
+                return new WavFileWriter(file, format, durability);
+        }
+    }
+
+    /**
+     * Creates the file the recording is written to, behind the peak index
+     * and the silence gate if they are set.
+     *
+     * @return The created file.
+     * @throws IOException If the file can not be created.
+     */
+    private AudioSink createGatedSink() throws IOException {
+        String name = file.getName().replaceFirst("\\.wav$", "");
+        File peaks = PeakIndex.indexFor(file);
+        File segments = new File(file.getAbsoluteFile().getParentFile(), name + ".segments.csv");
+
+        //A file left by an earlier recording would not belong to this one, so it goes when this one has none.
+        if (!peakIndex) {
+            Files.deleteIfExists(peaks.toPath());
+        }
+        if (silenceSettings == null) {
+            Files.deleteIfExists(segments.toPath());
+        }
+
+        AudioSink created = createSink();
+        try {
+            if (peakIndex) {
+                created = new PeakIndexWriter(created, format, peaks);
+            }
+            if (silenceSettings != null) {
+                created = new SilenceGate(created, format, silenceSettings, segments);
+            }
+            return created;
+        } catch (IOException ex) {
+            try {
+                created.finish();
+            } catch (IOException finishEx) {
+                ex.addSuppressed(finishEx);
+            }
+            throw ex;
+        }
+    }
+
+    /**
+     * Reads one block from the source into the ring buffer, waiting for the
+     * source if needed. A block that does not fit in the ring buffer is still
+     * read from the source, but thrown away.
+     *
+     * @return False if the source has stopped and nothing more will be
+     * captured.
+     */
+    public boolean captureBlock() {
+        RecorderMetrics counted = metrics;
+        long cpu = counted != null ? threadCpuNanos() : 0;
+        byte[] block = ring.claim();
+        byte[] target = block != null ? block : discard;
+        int read = source.read(target, 0, discard.length);
+        if (read < 0) {
+            //Lets the writing side finish the file.
+            ring.close();
+            return false;
+        }
+        if (read > 0) {
+            if (firstSampleNanos == 0) {
+                firstSampleNanos = System.nanoTime();
+                if (counted != null) {
+                    counted.firstSampleCaptured(firstSampleNanos - openNanos);
+                }
+            }
+
+            //Thrown away audio is still measured, so the levels always show what comes in.
+            levelMeter.process(target, 0, read);
+            bytesCaptured += read;
+            if (block != null) {
+                ring.publish(read);
+            }
+        }
+        //What is left in the line after the read shows how close it came to overflowing, a line that was full has thrown audio away.
+        int left = source.available();
+        if (read > 0 && left + read >= lineBufferSize) {
+            lineOverflowed();
+        }
+        if (counted != null) {
+            if (block == null && read > 0) {
+                counted.blockDropped();
+            }
+            counted.blockCaptured(read, (int) Math.min(100, left * 100L / lineBufferSize));
+            cpuNanos.add(threadCpuNanos() - cpu);
+        }
+        return true;
+    }
+
+    /**
+     * Counts an overflow of the line and opens an adaptive line again twice
+     * as long. What the line still holds is read first, the time the line
+     * is closed is counted as lost frames. A line that can not be opened
+     * again ends the capturing.
+     */
+    private void lineOverflowed() {
+        lineOverruns++;
+        BufferSettings current = bufferSettings;
+        if (!current.canGrow()) {
+            return;
+        }
+        BufferSettings grown = current.grow();
+        int grownSize = grown.getLineBufferSize(format);
+        synchronized (sourceLock) {
+            if (state.get() != RecorderState.Recording) {
+                return;
+            }
+            bufferSettings = grown;
+
+            //A source that keeps a longer buffer of its own is left alone.
+            if (grownSize <= lineBufferSize) {
+                return;
+            }
+            source.stop();
+            long stoppedNanos = System.nanoTime();
+            drainStoppedLine();
+            source.close();
+            try {
+                source.open(format, grownSize);
+            } catch (LineUnavailableException ex) {
+                //The device may not take the longer line, the old one is the next best.
+                try {
+                    source.open(format, lineBufferSize);
+                } catch (LineUnavailableException again) {
+                    //The closed source ends the capturing at the next read.
+                    return;
+                }
+            }
+            lineBufferSize = Math.max(1, source.getBufferSize());
+            source.start();
+            reopenGapFrames += (long) ((System.nanoTime() - stoppedNanos) * format.getFrameRate() / 1e9);
+        }
+    }
+
+    /**
+     * Reads what a stopped line still holds into the ring buffer, like the
+     * end of a stopped recording, so it is not thrown away when the line is
+     * closed.
+     */
+    private void drainStoppedLine() {
+        RecorderMetrics counted = metrics;
+        int frameSize = format.getFrameSize();
+        int left;
+        while ((left = source.available()) >= frameSize) {
+            byte[] block = ring.claim();
+            byte[] target = block != null ? block : discard;
+            int read = source.read(target, 0, Math.min(target.length, left - left % frameSize));
+            if (read <= 0) {
+                return;
+            }
+            levelMeter.process(target, 0, read);
+            bytesCaptured += read;
+            if (block != null) {
+                ring.publish(read);
+            } else if (counted != null) {
+                counted.blockDropped();
+            }
+        }
+    }
+
+    /**
+     * Gives back the processor time the current thread has used.
+     *
+     * @return The processor time in nanoseconds, or 0 if it can not be
+     * measured.
+     */
+    private static long threadCpuNanos() {
+        return CPU_TIME ? THREADS.getCurrentThreadCpuTime() : 0;
+    }
+
+    /**
+     * Writes one block from the ring buffer to the file, counting how long it
+     * took if metrics are set. Publishes it in the live stream first, if
+     * set.
+     *
+     * @param block The block.
+     * @param length The amount of bytes in the block.
+     * @throws IOException If the block can not be written.
+     */
+    private void writeBlock(byte[] block, int length) throws IOException {
+        if (liveStream != null) {
+            liveStream.write(block, 0, length);
+        }
+        RecorderMetrics counted = metrics;
+        if (counted == null) {
+            sink.write(block, 0, length);
+            return;
+        }
+        long cpu = threadCpuNanos();
+        long start = System.nanoTime();
+        sink.write(block, 0, length);
+        counted.blockWritten(length, System.nanoTime() - start);
+        cpuNanos.add(threadCpuNanos() - cpu);
+    }
+
+    /**
+     * Reads the blocks the source has available into the ring buffer, without
+     * waiting for the source.
+     *
+     * @param maxBlocks The maximum amount of blocks to read.
+     * @return The amount of blocks read, or -1 if the source has stopped and
+     * nothing more will be captured.
+     */
+    public int captureAvailable(int maxBlocks) {
+        int blocks = 0;
+        while (blocks < maxBlocks && source.available() >= discard.length) {
+            if (!captureBlock()) {
+                return -1;
+            }
+            blocks++;
+        }
+
+        //Reads the rest of a stopped source, which ends with the end of the stream.
+        if (state.get() == RecorderState.Stopping) {
+            while (captureBlock()) {
+                blocks++;
+            }
+            return -1;
+        }
+        return blocks;
+    }
+
+    /**
+     * Tells the writing side nothing more will be captured, for when the
+     * capturing ends without the source reaching its end.
+     */
+    public void endCapture() {
+        ring.close();
+    }
+
+    /**
+     * Writes blocks from the ring buffer to the file, waiting for new blocks,
+     * until capturing has stopped. Completes the file at the end.
+     *
+     * @throws IOException If the file can not be written.
+     */
+    public void writeAll() throws IOException {
+        try {
+            byte[] block;
+            while ((block = ring.take()) != null) {
+                writeBlock(block, ring.takenLength());
+                ring.release();
+            }
+            complete();
+        } catch (IOException ex) {
+            fail(ex);
+            throw ex;
+        }
+    }
+
+    /**
+     * Writes the blocks that are in the ring buffer to the file, without
+     * waiting for new blocks. Completes the file once capturing has stopped
+     * and every block has been written.
+     *
+     * @return True if the file is complete.
+     */
+    public boolean drain() {
+        if (isFinished()) {
+            return true;
+        }
+        try {
+            byte[] block;
+            while ((block = ring.poll()) != null) {
+                writeBlock(block, ring.takenLength());
+                ring.release();
+            }
+            if (ring.isDrained()) {
+                complete();
+                return true;
+            }
+            return false;
+        } catch (IOException ex) {
+            fail(ex);
+            return true;
+        }
+    }
+
+    /**
+     * Tells whether there is something left for the writing side to do.
+     *
+     * @return True if blocks are waiting or the file still has to be
+     * completed.
+     */
+    public boolean needsDrain() {
+        return !isFinished() && (ring.size() > 0 || ring.isDrained());
+    }
+
+    /**
+     * Completes the file and releases those waiting for it.
+     *
+     * @throws IOException If the file can not be completed.
+     */
+    private void complete() throws IOException {
+        long cpu = metrics != null ? threadCpuNanos() : 0;
+        closeSink();
+        if (metrics != null) {
+            cpuNanos.add(threadCpuNanos() - cpu);
+        }
+        endNanos = System.nanoTime();
+        countFinished();
+        state.set(RecorderState.Idle);
+        finished.countDown();
+    }
+
+    /**
+     * Completes the file and ends the live stream, unless that has been
+     * done already.
+     *
+     * @throws IOException If the file can not be completed.
+     */
+    private void closeSink() throws IOException {
+        if (!sinkClosed) {
+            sinkClosed = true;
+            try {
+                sink.finish();
+            } finally {
+                if (liveStream != null) {
+                    liveStream.finish();
+                }
+            }
+        }
+    }
+
+    /**
+     * Counts the processor time of the finished session, if metrics are set.
+     */
+    private void countFinished() {
+        if (metrics != null) {
+            metrics.sessionFinished(cpuNanos.sum());
+        }
+    }
+
+    /**
+     * Ends the session after the file could not be written.
+     *
+     * @param ex The error that occurred.
+     */
+    private void fail(IOException ex) {
+        failure = ex;
+
+        //Stops capturing, as nothing can be recorded anymore.
+        stop();
+        try {
+            closeSink();
+        } catch (IOException | RuntimeException finishEx) {
+            ex.addSuppressed(finishEx);
+        }
+        endNanos = System.nanoTime();
+        countFinished();
+        state.set(RecorderState.Idle);
+        finished.countDown();
+    }
+
+    /**
+     * Ends the session after the writing side broke down in another way than
+     * the file not being written, such as a failing encoder. Those waiting
+     * for the session are released with the error.
+     *
+     * @param ex The error that occurred.
+     */
+    public void abort(RuntimeException ex) {
+        if (!isFinished()) {
+            fail(new IOException("Writing the recording failed", ex));
+        }
+    }
+
+    /**
+     * Stops the source. What was captured is still written to the file.
+     * Stopping a session more than once has no effect.
+     */
+    public void stop() {
+        while (true) {
+            RecorderState current = state.get();
+            if (current == RecorderState.Recording) {
+                if (state.compareAndSet(RecorderState.Recording, RecorderState.Stopping)) {
+                    synchronized (sourceLock) {
+                        source.stop();
+                        source.close();
+                    }
+                    return;
+                }
+            } else if (current == RecorderState.Starting) {
+                //The opening thread closes the source once it is open.
+                if (state.compareAndSet(RecorderState.Starting, RecorderState.Stopping)) {
+                    return;
+                }
+            } else {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Gives back what the session is doing right now. A finished session is
+     * Idle again.
+     *
+     * @return The state of the session.
+     */
+    public RecorderState getState() {
+        return state.get();
+    }
+
+    /**
+     * Waits until the file is complete.
+     *
+     * @throws IOException If the file could not be written.
+     * @throws InterruptedException If the thread is interrupted while waiting.
+     */
+    public void awaitFinished() throws IOException, InterruptedException {
+        finished.await();
+        if (failure != null) {
+            throw failure;
+        }
+    }
+
+    /**
+     * Tells whether the file is complete or the writing has failed.
+     *
+     * @return True if the session is over.
+     */
+    public boolean isFinished() {
+        return finished.getCount() == 0;
+    }
+
+    /**
+     * Gives back the format of the recording.
+     *
+     * @return The audio format.
+     */
+    public AudioFormat getFormat() {
+        return format;
+    }
+
+    /**
+     * Gives back the file the recording is written to.
+     *
+     * @return The file.
+     */
+    public File getFile() {
+        return file;
+    }
+
+    /**
+     * Gives back the meter that measures the levels of the captured audio.
+     *
+     * @return The level meter, or null if the session has not been opened.
+     */
+    public LevelMeter getLevelMeter() {
+        return levelMeter;
+    }
+
+    /**
+     * Gives back the amount of bytes read from the source.
+     *
+     * @return The amount of bytes captured.
+     */
+    public long getBytesCaptured() {
+        return bytesCaptured;
+    }
+
+    /**
+     * Gives back the amount of bytes written to the file.
+     *
+     * @return The amount of bytes written.
+     */
+    public long getBytesWritten() {
+        AudioSink current = sink;
+        return current == null ? 0 : current.getBytesWritten();
+    }
+
+    /**
+     * Gives back the amount of blocks that were thrown away because the ring
+     * buffer was full.
+     *
+     * @return The amount of overruns.
+     */
+    public long getOverruns() {
+        BlockRingBuffer current = ring;
+        return current == null ? 0 : current.getOverruns();
+    }
+
+    /**
+     * Gives back the amount of times the line was found full, which means
+     * it had thrown audio away before it was read.
+     *
+     * @return The amount of line overruns.
+     */
+    public long getLineOverruns() {
+        return lineOverruns;
+    }
+
+    /**
+     * Gives back the amount of frames that came in while an adaptive line
+     * was closed to be opened again longer, and are missing from the
+     * recording.
+     *
+     * @return The amount of frames.
+     */
+    public long getReopenGapFrames() {
+        return reopenGapFrames;
+    }
+
+    /**
+     * Gives back how the line is buffered, grown if an adaptive line has
+     * overflowed.
+     *
+     * @return The buffer settings.
+     */
+    public BufferSettings getBufferSettings() {
+        return bufferSettings;
+    }
+
+    /**
+     * Gives back the size of the buffer of the line as it was opened.
+     *
+     * @return The buffer size in bytes, 0 if the session has not been opened.
+     */
+    public int getLineBufferSize() {
+        return lineBufferSize;
+    }
+
+    /**
+     * Gives back the amount of bytes read from the line at once.
+     *
+     * @return The block size in bytes, 0 if the session has not been opened.
+     */
+    public int getBlockSize() {
+        byte[] current = discard;
+        return current == null ? 0 : current.length;
+    }
+
+    /**
+     * Gives back the highest amount of blocks waiting to be written.
+     *
+     * @return The high-water mark in blocks.
+     */
+    public int getHighWaterMark() {
+        BlockRingBuffer current = ring;
+        return current == null ? 0 : current.getHighWaterMark();
+    }
+
+    /**
+     * Gives back the processor time the session spent capturing and writing.
+     * Is only counted if metrics are set.
+     *
+     * @return The processor time in nanoseconds.
+     */
+    public long getCpuNanos() {
+        return cpuNanos.sum();
+    }
+
+    /**
+     * Gives back the moment the first audio data was captured, on the clock
+     * of System.nanoTime().
+     *
+     * @return The moment in nanoseconds, or 0 if nothing has been captured.
+     */
+    public long getFirstSampleNanos() {
+        return firstSampleNanos;
+    }
+
+    /**
+     * Gives back the time from asking the session to open up to capturing
+     * the first audio data. This is the wait a user has before anything is
+     * recorded, opening the source included.
+     *
+     * @return The time to the first sample in nanoseconds, or -1 if nothing
+     * has been captured.
+     */
+    public long getTimeToFirstSample() {
+        long first = firstSampleNanos;
+        return first == 0 ? -1 : first - openNanos;
+    }
+
+    /**
+     * Gives back the average amount of bytes written per second since the
+     * recording started.
+     *
+     * @return The throughput in bytes per second.
+     */
+    public double getThroughput() {
+        if (startNanos == 0) {
+            return 0;
+        }
+        long end = isFinished() ? endNanos : System.nanoTime();
+        return getBytesWritten() * 1e9 / Math.max(1, end - startNanos);
+    }
+}
@@ -0,0 +1,151 @@
+package recording.audio.prototype;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Converts captured samples to the layout of a WAV file: little-endian,
+ * unsigned for 8 bits and signed otherwise, with 20 bit samples moved up to
+ * the most significant bits of their 24 bit container. The conversion is
+ * done in place, in the output buffer of a file writer, with whole-sample
+ * reads and writes through byte buffer views, and allocates nothing once the
+ * views of a buffer have been made.
+ *
+ * @author Jafeth
+ */
+public class SampleConverter {
+
+    private final int bytesPerSample;//The amount of bytes one sample takes up.
+    private final boolean bigEndian;//Tells whether the captured samples are big-endian.
+    private final int signFlip;//The bits that are flipped to change the signedness, 0 if none.
+    private final int shift;//The amount of bits a sample is shifted to the left.
+    private final boolean passThrough;//Tells whether the captured samples already have the right layout.
+    private ByteBuffer buffer;//The buffer the views belong to.
+    private ByteBuffer source;//A view of the buffer in the byte order of the captured samples.
+    private ByteBuffer target;//A little-endian view of the buffer.
+
+    /**
+     * Constructor for the SampleConverter class.
+     *
+     * @param format The format of the captured samples.
+     */
+    public SampleConverter(AudioFormat format) {
+        int bits = format.getSampleSizeInBits();
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+
+        bytesPerSample = format.getFrameSize() / format.getChannels();
+        bigEndian = format.isBigEndian() && bytesPerSample > 1;
+        shift = bytesPerSample * 8 - bits;
+
+        //WAV files store 8 bit samples unsigned and everything else signed.
+        boolean flip = bits == 8 ? signed : !signed;
+        signFlip = flip ? 1 << (bits - 1) : 0;
+
+        passThrough = !bigEndian && signFlip == 0 && shift == 0;
+    }
+
+    /**
+     * Tells whether the captured samples already have the layout of a WAV
+     * file and can be copied as they are.
+     *
+     * @return True if no conversion is needed.
+     */
+    public boolean isPassThrough() {
+        return passThrough;
+    }
+
+    /**
+     * Converts samples in place to the layout of a WAV file.
+     *
+     * @param data The buffer holding the captured samples.
+     * @param offset The position of the first sample in the buffer.
+     * @param length The amount of bytes to convert, a multiple of the sample
+     * size.
+     */
+    public void convert(ByteBuffer data, int offset, int length) {
+        if (passThrough) {
+            return;
+        }
+        if (data != buffer) {
+            //Views are only made when a new buffer comes in, which is rare.
+            buffer = data;
+            source = data.duplicate().order(bigEndian ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+            target = data.duplicate().order(ByteOrder.LITTLE_ENDIAN);
+        }
+
+        int end = offset + length;
+        switch (bytesPerSample) {
+            case 1:
+                flip8(offset, end);
+                break;
+            case 2:
+                convert16(offset, end);
+                break;
+            case 3:
+                convert24(offset, end);
+                break;
+            default:
+                convert32(offset, end);
+                break;
+        }
+    }
+
+    /**
+     * Flips the sign bit of 8 bit samples, eight samples at a time.
+     *
+     * @param start The position of the first sample.
+     * @param end The position after the last sample.
+     */
+    private void flip8(int start, int end) {
+        int i = start;
+        for (; i + 8 <= end; i += 8) {
+            target.putLong(i, target.getLong(i) ^ 0x8080808080808080L);
+        }
+        for (; i < end; i++) {
+            target.put(i, (byte) (target.get(i) ^ 0x80));
+        }
+    }
+
+    /**
+     * Converts 16 bit samples.
+     *
+     * @param start The position of the first sample.
+     * @param end The position after the last sample.
+     */
+    private void convert16(int start, int end) {
+        for (int i = start; i < end; i += 2) {
+            target.putShort(i, (short) (source.getShort(i) ^ signFlip));
+        }
+    }
+
+    /**
+     * Converts 20 and 24 bit samples in three bytes.
+     *
+     * @param start The position of the first sample.
+     * @param end The position after the last sample.
+     */
+    private void convert24(int start, int end) {
+        int high = bigEndian ? 0 : 2;
+        int low = 2 - high;
+        for (int i = start; i < end; i += 3) {
+            int value = ((source.get(i + high) & 0xFF) << 16) | ((source.get(i + 1) & 0xFF) << 8) | (source.get(i + low) & 0xFF);
+            value = (value ^ signFlip) << shift;
+            target.put(i, (byte) value);
+            target.put(i + 1, (byte) (value >> 8));
+            target.put(i + 2, (byte) (value >> 16));
+        }
+    }
+
+    /**
+     * Converts 32 bit samples.
+     *
+     * @param start The position of the first sample.
+     * @param end The position after the last sample.
+     */
+    private void convert32(int start, int end) {
+        for (int i = start; i < end; i += 4) {
+            target.putInt(i, source.getInt(i) ^ signFlip);
+        }
+    }
+}
@@ -0,0 +1,272 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A writer of a series of WAV files, for recordings that do not fit in one.
+ * A new file is started once the current one holds a set amount of audio, or
+ * as much as a WAV file can hold. Every frame ends up in exactly one file, so
+ * playing the files one after the other gives back the whole recording. A full
+ * file is completed on a thread of its own, so the writing thread goes on with
+ * the next file right away.
+ *
+ * @author Jafeth
+ */
+public class SegmentingWavWriter implements AudioSink {
+
+    private static final long RIFF_LIMIT = 0xFFFFFFFFL;//The largest chunk size a RIFF header can hold.
+
+    private final File directory;//The directory the files are written to.
+    private final String name;//The name of the files, without the number and extension.
+    private final AudioFormat format;//The format of the recorded audio.
+    private final OutputMode segmentMode;//The way each file is written.
+    private final DurabilitySettings durability;//How every file is kept safe on disk, null for no journal.
+    private final long segmentBytes;//The amount of audio bytes in one file, in whole frames.
+    private final ExecutorService finisher;//Completes the full files.
+    private final List<Future<?>> finishing = new ArrayList<>();//The files that are being completed.
+    private final List<File> files = new ArrayList<>();//The files written so far.
+    private AudioSink segment;//The file that is being written.
+    private long segmentWritten;//The amount of audio bytes in the current file.
+    private long bytesWritten;//The amount of audio bytes handed to the writer.
+
+    /**
+     * Constructor for the SegmentingWavWriter class. Creates the first file.
+     *
+     * @param directory The directory the files are written to.
+     * @param name The name of the files, without the number and extension.
+     * @param format The format of the recorded audio.
+     * @param segmentMode The way each file is written, either Stream or
+     * Mapped.
+     * @param segmentBytes The amount of audio bytes after which a new file is
+     * started, 0 to fill every file up to what a WAV file can hold.
+     * @throws IOException If the first file can not be created.
+     */
+    public SegmentingWavWriter(File directory, String name, AudioFormat format, OutputMode segmentMode, long segmentBytes) throws IOException {
+        this(directory, name, format, segmentMode, segmentBytes, null);
+    }
+
+    /**
+     * Constructor for the SegmentingWavWriter class that keeps every file
+     * safe on disk as the given settings say, each with a journal of its own.
+     * Creates the first file.
+     *
+     * @param directory The directory the files are written to.
+     * @param name The name of the files, without the number and extension.
+     * @param format The format of the recorded audio.
+     * @param segmentMode The way each file is written, either Stream or
+     * Mapped. Mapped files keep no journal.
+     * @param segmentBytes The amount of audio bytes after which a new file is
+     * started, 0 to fill every file up to what a WAV file can hold.
+     * @param durability How every file is kept safe on disk, or null to keep
+     * no journal.
+     * @throws IOException If the first file can not be created.
+     */
+    public SegmentingWavWriter(File directory, String name, AudioFormat format, OutputMode segmentMode, long segmentBytes, DurabilitySettings durability) throws IOException {
+        if (segmentMode == OutputMode.Segmented) {
+            throw new IllegalArgumentException("Segments are written as single files");
+        }
+        if (segmentMode == OutputMode.Mapped && durability != null) {
+            throw new IllegalArgumentException("Mapped segments keep no journal");
+        }
+        this.directory = directory;
+        this.name = name;
+        this.format = format;
+        this.segmentMode = segmentMode;
+        this.durability = durability;
+
+        //Keeps every file within the limit of the header, and ends them on a frame.
+        int frameSize = format.getFrameSize();
+        long limit = RIFF_LIMIT - new WavHeader(format).size();
+        long bytes = segmentBytes > 0 ? Math.min(segmentBytes, limit) : limit;
+        this.segmentBytes = Math.max(frameSize, bytes - bytes % frameSize);
+
+        finisher = Executors.newSingleThreadExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "segment-finisher");
+            thread.setDaemon(true);
+            return thread;
+        });
+        segment = openSegment();
+    }
+
+    /**
+     * Gives back the amount of audio bytes that lasts the given time.
+     *
+     * @param format The format of the recorded audio.
+     * @param seconds The length of one file in seconds.
+     * @return The amount of bytes, in whole frames.
+     */
+    public static long segmentBytes(AudioFormat format, long seconds) {
+        return (long) format.getFrameRate() * format.getFrameSize() * seconds;
+    }
+
+    /**
+     * Gives back the file with the given number. The numbers start at 1, so
+     * the files sort in the order they were recorded.
+     *
+     * @param directory The directory the files are written to.
+     * @param name The name of the files, without the number and extension.
+     * @param number The number of the file.
+     * @return The file.
+     */
+    public static File segmentFile(File directory, String name, int number) {
+        return new File(directory, String.format("%s-%04d.wav", name, number));
+    }
+
+    /**
+     * Creates the next file.
+     *
+     * @return The writer of the file.
+     * @throws IOException If the file can not be created.
+     */
+    private AudioSink openSegment() throws IOException {
+        File file = segmentFile(directory, name, files.size() + 1);
+        AudioSink sink = segmentMode == OutputMode.Mapped ? new MappedWavFileWriter(file, format) : new WavFileWriter(file, format, durability);
+        files.add(file);
+        segmentWritten = 0;
+        return sink;
+    }
+
+    /**
+     * Writes the audio data, splitting it between two files where the current
+     * one is full.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write.
+     * @throws IOException If the data can not be written.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            if (segmentWritten == segmentBytes) {
+                rollSegment();
+            }
+            int chunk = (int) Math.min(remaining, segmentBytes - segmentWritten);
+            segment.write(data, offset + length - remaining, chunk);
+            segmentWritten += chunk;
+            remaining -= chunk;
+        }
+        bytesWritten += length;
+    }
+
+    /**
+     * Hands the full file over to be completed and starts the next one.
+     *
+     * @throws IOException If the next file can not be created, or completing
+     * an earlier file failed.
+     */
+    private void rollSegment() throws IOException {
+        AudioSink full = segment;
+        segment = null;
+        finishing.add(finisher.submit(() -> {
+            full.finish();
+            return null;
+        }));
+        checkFinished();
+        segment = openSegment();
+    }
+
+    /**
+     * Forgets the files that have been completed, and throws the error of
+     * one that could not be.
+     *
+     * @throws IOException If completing a file failed.
+     */
+    private void checkFinished() throws IOException {
+        while (!finishing.isEmpty() && finishing.get(0).isDone()) {
+            awaitFinished(finishing.remove(0));
+        }
+    }
+
+    /**
+     * Waits until a file has been completed.
+     *
+     * @param task The task completing the file.
+     * @throws IOException If completing the file failed.
+     */
+    private static void awaitFinished(Future<?> task) throws IOException {
+        boolean interrupted = false;
+        try {
+            while (true) {
+                try {
+                    task.get();
+                    return;
+                } catch (InterruptedException ex) {
+                    interrupted = true;
+                } catch (ExecutionException ex) {
+                    if (ex.getCause() instanceof IOException) {
+                        throw (IOException) ex.getCause();
+                    }
+                    throw new IOException(ex.getCause());
+                }
+            }
+        } finally {
+            //Keeps the interrupt for the code that called this.
+            if (interrupted) {
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Gives back the files written so far, in the order they were recorded.
+     *
+     * @return The files.
+     */
+    public List<File> getFiles() {
+        return new ArrayList<>(files);
+    }
+
+    /**
+     * Gives back the amount of audio bytes handed to the writer.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Completes the last file and waits until every file is complete.
+     *
+     * @throws IOException If a file can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        IOException failure = null;
+        try {
+            if (segment != null) {
+                segment.finish();
+            }
+        } catch (IOException ex) {
+            failure = ex;
+        }
+
+        //Waits for every file, even when one of them failed.
+        for (Future<?> task : finishing) {
+            try {
+                awaitFinished(task);
+            } catch (IOException ex) {
+                if (failure == null) {
+                    failure = ex;
+                }
+            }
+        }
+        finishing.clear();
+        finisher.shutdown();
+
+        if (failure != null) {
+            throw failure;
+        }
+    }
+}
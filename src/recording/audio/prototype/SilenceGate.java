@@ -0,0 +1,320 @@
+package recording.audio.prototype;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * Leaves the silence out of a recording, so long sessions that are mostly
+ * quiet take up little disk. Sits in front of the file and measures the
+ * energy of every window of 10 milliseconds. The gate opens at one level and
+ * only closes below a lower one, and only after the silence has lasted a
+ * while, so it does not flap. Some silence is kept before and after every
+ * stretch of sound.
+ *
+ * What is kept is listed in a sidecar file with a line per segment: the
+ * first and the end frame of the segment in the recording as it was
+ * captured, and the frame it starts at in the file. So the file can be put
+ * back on the timeline it was recorded on.
+ *
+ * @author Jafeth
+ */
+public class SilenceGate implements AudioSink {
+
+    private static final int WINDOWS_PER_SECOND = 100;//The amount of windows one second of audio is measured in.
+    private static final int MEASURED_FRAMES_PER_SECOND = 8000;//The amount of frames per second the energy is measured on.
+
+    private final AudioSink target;//The file the sound is written to.
+    private final BufferedWriter segments;//The sidecar file listing the segments.
+    private final int frameSize;//The size of one frame in bytes.
+    private final int stride;//The distance in bytes between two measured frames.
+    private final int channels;//The amount of channels.
+    private final int bytesPerSample;//The amount of bytes one sample takes up.
+    private final boolean bigEndian;//Tells whether the samples are big-endian.
+    private final int signShift;//The shift that sign-extends a signed sample to 32 bits.
+    private final int offset;//The value that is subtracted from unsigned samples.
+    private final double openPower;//The mean square sample value at or above which the gate opens.
+    private final double closePower;//The mean square sample value below which the open gate counts audio as silence.
+    private final int holdBytes;//The amount of silence that closes the gate, in bytes.
+    private final int preBytes;//The amount of silence kept before the sound, in bytes.
+    private final int postBytes;//The amount of silence kept after the sound, in bytes.
+    private final byte[] window;//The window that is being filled.
+    private int windowLength;//The amount of bytes in the window.
+    private final byte[] held;//The silence that is not written or left out yet, as a ring.
+    private int heldStart;//The position of the first held byte.
+    private int heldLength;//The amount of held bytes.
+    private boolean open;//Tells whether the gate is letting the audio through.
+    private long bytesIn;//The amount of bytes handed to the gate.
+    private long silentBytes;//The amount of bytes left out.
+    private long segmentStart;//The position in the recording of the first byte of the current segment.
+    private long segmentOutput;//The position in the file of the first byte of the current segment.
+    private int segmentCount;//The amount of segments written.
+    private boolean finished;//Tells whether the gate has been finished.
+
+    /**
+     * Constructor for the SilenceGate class.
+     *
+     * @param target The file the sound is written to.
+     * @param format The format of the recorded audio.
+     * @param settings When audio counts as silence and how much of it is
+     * kept.
+     * @param segmentFile The sidecar file to list the segments in, replaced
+     * if it exists.
+     * @throws IOException If the sidecar file can not be created.
+     */
+    public SilenceGate(AudioSink target, AudioFormat format, SilenceSettings settings, File segmentFile) throws IOException {
+        this.target = target;
+        frameSize = format.getFrameSize();
+        stride = Math.max(1, (int) (format.getFrameRate() / MEASURED_FRAMES_PER_SECOND)) * frameSize;
+        channels = format.getChannels();
+        bytesPerSample = frameSize / channels;
+        bigEndian = format.isBigEndian();
+        int bits = format.getSampleSizeInBits();
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        signShift = signed ? 32 - bits : 0;
+        offset = signed ? 0 : 1 << (bits - 1);
+
+        //Compares mean squares, so the measuring needs no logarithm.
+        double fullScale = (double) (1L << (bits - 1));
+        openPower = Math.pow(Math.pow(10, settings.getOpenDb() / 20) * fullScale, 2);
+        closePower = Math.pow(Math.pow(10, settings.getCloseDb() / 20) * fullScale, 2);
+
+        double framesPerMilli = format.getFrameRate() / 1000;
+        holdBytes = (int) (settings.getHoldMillis() * framesPerMilli) * frameSize;
+        preBytes = (int) (settings.getPreMillis() * framesPerMilli) * frameSize;
+        postBytes = (int) (settings.getPostMillis() * framesPerMilli) * frameSize;
+        window = new byte[Math.max(1, (int) (format.getFrameRate() / WINDOWS_PER_SECOND)) * frameSize];
+        held = new byte[holdBytes + window.length];
+
+        segments = Files.newBufferedWriter(segmentFile.toPath(), StandardCharsets.US_ASCII);
+        segments.write("start frame,end frame,file frame");
+        segments.newLine();
+        segments.flush();
+    }
+
+    /**
+     * Measures the audio data window by window and writes what is not left
+     * out.
+     *
+     * @param buffer The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes, a multiple of the frame size.
+     * @throws IOException If the data can not be written.
+     */
+    @Override
+    public void write(byte[] buffer, int offset, int length) throws IOException {
+        int end = offset + length;
+        while (offset < end) {
+            int count = Math.min(window.length - windowLength, end - offset);
+            System.arraycopy(buffer, offset, window, windowLength, count);
+            windowLength += count;
+            offset += count;
+            if (windowLength == window.length) {
+                gate(windowLength);
+                windowLength = 0;
+            }
+        }
+    }
+
+    /**
+     * Decides what happens to the window.
+     *
+     * @param length The amount of bytes in the window.
+     * @throws IOException If the data can not be written.
+     */
+    private void gate(int length) throws IOException {
+        double power = loudestPower(length);
+        bytesIn += length;
+        if (open) {
+            if (power >= closePower) {
+                //A pause shorter than the hold time is kept whole.
+                writeHeld(heldLength);
+                target.write(window, 0, length);
+            } else {
+                hold(length);
+                if (heldLength >= holdBytes) {
+                    close();
+                }
+            }
+        } else if (power >= openPower) {
+            //Starts the segment with the silence kept before the sound.
+            open = true;
+            segmentStart = bytesIn - length - heldLength;
+            segmentOutput = target.getBytesWritten();
+            writeHeld(heldLength);
+            target.write(window, 0, length);
+        } else {
+            hold(length);
+            dropHeld(Math.max(0, heldLength - preBytes));
+        }
+    }
+
+    /**
+     * Ends the segment, keeping some silence after the sound and some for
+     * before the next sound.
+     *
+     * @throws IOException If the data can not be written.
+     */
+    private void close() throws IOException {
+        int kept = Math.min(postBytes, heldLength);
+        writeHeld(kept);
+        writeSegment(bytesIn - heldLength);
+        dropHeld(Math.max(0, heldLength - preBytes));
+        open = false;
+    }
+
+    /**
+     * Gives back the mean square sample value of the loudest channel of the
+     * window. At high sample rates only some of the frames are measured,
+     * which estimates the energy of a window just as well.
+     *
+     * @param length The amount of bytes in the window.
+     * @return The mean square, in squared sample values.
+     */
+    private double loudestPower(int length) {
+        int frames = (length + stride - frameSize) / stride;
+        if (frames == 0) {
+            return 0;
+        }
+        double loudest = 0;
+        for (int channel = 0; channel < channels; channel++) {
+            double sum = 0;
+            for (int i = channel * bytesPerSample; i < length; i += stride) {
+                int raw = 0;
+                for (int b = 0; b < bytesPerSample; b++) {
+                    raw = (raw << 8) | (window[bigEndian ? i + b : i + bytesPerSample - 1 - b] & 0xFF);
+                }
+                //Wraps around to the signed value for unsigned 32 bit samples, like the level meter.
+                int value = bytesPerSample == 4 ? raw - offset : ((raw << signShift) >> signShift) - offset;
+                sum += (double) value * value;
+            }
+            loudest = Math.max(loudest, sum / frames);
+        }
+        return loudest;
+    }
+
+    /**
+     * Adds the window to the held silence.
+     *
+     * @param length The amount of bytes in the window.
+     */
+    private void hold(int length) {
+        int position = (heldStart + heldLength) % held.length;
+        int first = Math.min(length, held.length - position);
+        System.arraycopy(window, 0, held, position, first);
+        System.arraycopy(window, first, held, 0, length - first);
+        heldLength += length;
+    }
+
+    /**
+     * Writes the first of the held silence to the file.
+     *
+     * @param length The amount of bytes to write.
+     * @throws IOException If the data can not be written.
+     */
+    private void writeHeld(int length) throws IOException {
+        int first = Math.min(length, held.length - heldStart);
+        if (first > 0) {
+            target.write(held, heldStart, first);
+        }
+        if (length > first) {
+            target.write(held, 0, length - first);
+        }
+        heldStart = (heldStart + length) % held.length;
+        heldLength -= length;
+    }
+
+    /**
+     * Leaves out the first of the held silence.
+     *
+     * @param length The amount of bytes to leave out.
+     */
+    private void dropHeld(int length) {
+        heldStart = (heldStart + length) % held.length;
+        heldLength -= length;
+        silentBytes += length;
+    }
+
+    /**
+     * Lists the segment that has ended in the sidecar file.
+     *
+     * @param end The position in the recording of the end of the segment.
+     * @throws IOException If the sidecar file can not be written.
+     */
+    private void writeSegment(long end) throws IOException {
+        segmentCount++;
+        segments.write(segmentStart / frameSize + "," + end / frameSize + "," + segmentOutput / frameSize);
+        segments.newLine();
+        segments.flush();
+    }
+
+    /**
+     * Gives back the amount of bytes written to the file.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return target.getBytesWritten();
+    }
+
+    /**
+     * Gives back the amount of bytes handed to the gate, silence included.
+     *
+     * @return The amount of bytes recorded.
+     */
+    public long getBytesIn() {
+        return bytesIn + windowLength;
+    }
+
+    /**
+     * Gives back the amount of bytes left out as silence.
+     *
+     * @return The amount of silent bytes.
+     */
+    public long getSilentBytes() {
+        return silentBytes;
+    }
+
+    /**
+     * Gives back the amount of segments written so far.
+     *
+     * @return The amount of segments.
+     */
+    public int getSegmentCount() {
+        return segmentCount;
+    }
+
+    /**
+     * Decides on the last window, keeps some silence after a sound that is
+     * still going on and completes the file and the sidecar file.
+     *
+     * @throws IOException If the files can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        if (finished) {
+            return;
+        }
+        finished = true;
+        try {
+            if (windowLength > 0) {
+                gate(windowLength);
+                windowLength = 0;
+            }
+            if (open) {
+                close();
+            }
+            dropHeld(heldLength);
+        } finally {
+            try {
+                segments.close();
+            } finally {
+                target.finish();
+            }
+        }
+    }
+}
@@ -0,0 +1,109 @@
+package recording.audio.prototype;
+
+/**
+ * The settings of the silence gate: when audio counts as silence, how long
+ * silence has to last before it is left out and how much of it is kept
+ * around the sound on either side.
+ *
+ * @author Jafeth
+ */
+public final class SilenceSettings {
+
+    private final double openDb;//The level in dBFS at or above which the gate opens.
+    private final double closeDb;//The level in dBFS below which the open gate counts audio as silence.
+    private final long holdMillis;//The time silence has to last before it is left out.
+    private final long preMillis;//The time of silence kept before the sound starts.
+    private final long postMillis;//The time of silence kept after the sound ends.
+
+    /**
+     * Constructor for the SilenceSettings class.
+     *
+     * @param openDb The level in dBFS at or above which silence ends, such
+     * as -40.
+     * @param closeDb The level in dBFS below which sound ends, at most the
+     * opening level. The gap between the two keeps the gate from flapping
+     * on a level near the threshold.
+     * @param holdMillis The time silence has to last before it is left out,
+     * so the pauses in speech are kept.
+     * @param preMillis The time of silence kept before the sound starts, so
+     * soft onsets are not cut.
+     * @param postMillis The time of silence kept after the sound ends, so
+     * decays are not cut.
+     */
+    public SilenceSettings(double openDb, double closeDb, long holdMillis, long preMillis, long postMillis) {
+        if (closeDb > openDb) {
+            throw new IllegalArgumentException("The closing level is above the opening level");
+        }
+        if (holdMillis < 0 || preMillis < 0 || postMillis < 0) {
+            throw new IllegalArgumentException("Negative time");
+        }
+        this.openDb = openDb;
+        this.closeDb = closeDb;
+        //Silence shorter than the padding on both sides would be kept whole anyway.
+        this.holdMillis = Math.max(holdMillis, preMillis + postMillis);
+        this.preMillis = preMillis;
+        this.postMillis = postMillis;
+    }
+
+    /**
+     * Gives back settings that suit speech: the gate opens at -40 dBFS,
+     * closes below -46 dBFS, keeps pauses up to a second and keeps 200 ms of
+     * silence before and 300 ms after the sound.
+     *
+     * @return The settings.
+     */
+    public static SilenceSettings speech() {
+        return new SilenceSettings(-40, -46, 1000, 200, 300);
+    }
+
+    /**
+     * Gives back the level at or above which the gate opens.
+     *
+     * @return The level in dBFS.
+     */
+    public double getOpenDb() {
+        return openDb;
+    }
+
+    /**
+     * Gives back the level below which the open gate counts audio as
+     * silence.
+     *
+     * @return The level in dBFS.
+     */
+    public double getCloseDb() {
+        return closeDb;
+    }
+
+    /**
+     * Gives back the time silence has to last before it is left out.
+     *
+     * @return The time in milliseconds, at least the padding on both sides.
+     */
+    public long getHoldMillis() {
+        return holdMillis;
+    }
+
+    /**
+     * Gives back the time of silence kept before the sound starts.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getPreMillis() {
+        return preMillis;
+    }
+
+    /**
+     * Gives back the time of silence kept after the sound ends.
+     *
+     * @return The time in milliseconds.
+     */
+    public long getPostMillis() {
+        return postMillis;
+    }
+
+    @Override
+    public String toString() {
+        return "open " + openDb + " dBFS, close " + closeDb + " dBFS, hold " + holdMillis + " ms, pre " + preMillis + " ms, post " + postMillis + " ms";
+    }
+}
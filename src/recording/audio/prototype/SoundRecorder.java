@@ -2,14 +2,13 @@ package recording.audio.prototype;
 
 import java.io.File;
 import java.io.IOException;
-import javax.sound.sampled.AudioFileFormat;
-import javax.sound.sampled.TargetDataLine;
+import java.nio.file.Files;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import javax.sound.sampled.AudioFormat;
-import javax.sound.sampled.AudioSystem;
-import javax.sound.sampled.DataLine;
-import javax.sound.sampled.AudioInputStream;
 import javax.sound.sampled.LineUnavailableException;
-import javax.sound.sampled.DataLine.Info;
 
 /**
  * A recorder of sounds.
@@ -18,27 +17,87 @@ import javax.sound.sampled.DataLine.Info;
  */
 public class SoundRecorder {
 
+    private static final double LIVE_STREAM_SECONDS = 2;//The amount of audio the live stream holds for its subscribers.
+
     private final File wavFile;//Path of the wav file
-    private final AudioFileFormat.Type fileType;//Format of audio file
-    private TargetDataLine line;//The line from which audio data is captured
-    private Thread recorderThread;//The seperate thread for the recording of the audio file.
-    private boolean recording;//Tells wether the system is recording or not.
+    private final CaptureSource source;//The source from which audio data is captured
+    private volatile PreRollCaptureSource preRoll;//Keeps the source capturing between recordings, if turned on.
+    private final Object preRollLock = new Object();//Is held while the pre-roll is turned on or off, and while a recording takes it.
+    private volatile Thread recorderThread;//The seperate thread for the capturing of the audio data.
+    private volatile Thread writerThread;//The seperate thread for the writing of the audio file.
+    private volatile RecordingSession session;//The current or last recording.
+    private volatile Thread warmUpThread;//The thread opening a line ahead of the next recording, if any.
+    private volatile long requestNanos;//The moment the current or last recording was asked to start.
+    private final AtomicReference<RecorderState> state;//Tells what the recorder is doing.
     private final RecordingEventCatcher eventCatcher;//An event catcher for Recording Events.
+    private final LevelPublisher levelPublisher;//Publishes the levels of the running recording.
+    private final RecorderMetrics metrics = new RecorderMetrics();//Counts what the recordings do.
     private AudioFormat format;//An audio format.
-    private Info info;//DataLine info for the capturing of the microphone.
+    private float sampleRate;//The sample rate the user has chosen.
+    private int sampleSize;//The sample size the user has chosen.
+    private int channels;//The amount of channels the user has chosen.
+    private OutputMode outputMode;//The way the recording is written to the file.
+    private long segmentSeconds;//The length of one file when writing a series of files.
+    private volatile DurabilitySettings durability = DurabilitySettings.groupCommit(1000, 16L * 1024 * 1024);//How the next recordings are kept safe on disk.
+    private volatile SilenceSettings silenceSettings;//Tells what silence to leave out of the next recordings, if any.
+    private volatile boolean peakIndex = true;//Tells whether the next recordings get a peak index.
+    private volatile BufferProfile bufferProfile = BufferProfile.Balanced;//How the lines of the next recordings are buffered.
+    private final Map<String, BufferSettings> grownBuffers = new ConcurrentHashMap<>();//The adaptive buffer settings every format has grown to.
+    private volatile File liveStreamFile;//The file the recordings are published in while they are made, if any.
+    private volatile long liveStreamWaitMillis;//The longest time to wait for a slow subscriber of the live stream, for every block.
     private final FileSystem fileSystem;
 
     /**
-     * A default constructor for the SoundRecorder class.
+     * A default constructor for the SoundRecorder class. Records from the
+     * microphone, keeping its lines open between recordings.
      *
      * @param gui The GUI of the running program.
      */
     public SoundRecorder(RecorderGUI gui) {
+        this(gui, new PooledCaptureSource(new LinePool(MicrophoneCaptureSource::new)));
+    }
+
+    /**
+     * A constructor for the SoundRecorder class that records from the given
+     * capture source.
+     *
+     * @param gui The GUI of the running program.
+     * @param source The source from which audio data is captured.
+     */
+    public SoundRecorder(RecorderGUI gui, CaptureSource source) {
+        //Creates an event catcher to notify the user of errors.
+        this(new RecordingEventCatcher(gui), source);
+    }
+
+    /**
+     * A constructor for the SoundRecorder class that records from the given
+     * capture source and reports to the given event catcher.
+     *
+     * @param eventCatcher The event catcher that is notified of recording
+     * events.
+     * @param source The source from which audio data is captured.
+     */
+    public SoundRecorder(RecordingEventCatcher eventCatcher, CaptureSource source) {
+        //Sets the source to record from.
+        this.source = source;
+
         //Creates a file system to check the OS.
         fileSystem = new FileSystem();
 
-        //Creates an event catcher to notify the user of errors.
-        eventCatcher = new RecordingEventCatcher(gui);
+        //Sets the event catcher to notify the user of errors.
+        this.eventCatcher = eventCatcher;
+
+        //Shows the levels of the running recording to the user.
+        levelPublisher = new LevelPublisher();
+        levelPublisher.addListener((peak, rms) -> {
+            eventCatcher.levelEvent(peak, rms);
+
+            //Tells the subscribers how far the recording has come, at the same rate as the levels.
+            RecordingSession current = session;
+            if (current != null) {
+                eventCatcher.progressEvent(current.getBytesWritten(), current.getOverruns());
+            }
+        });
 
         //Checks if the OS is supported. This does not neccaserily mean the program will not work.
         if (fileSystem.getOs() == Os.Different) {
@@ -52,26 +111,298 @@ public class SoundRecorder {
         //The file we'll be recording to.
         wavFile = new File(fileSystem.getFilePath() + "RecordAudio.wav");
 
-        //Sets the filetype of the recording to .wav.
-        fileType = AudioFileFormat.Type.WAVE;
+        //Repairs a recording that a crash interrupted and keeps it apart, as the next recording replaces the file.
+        recoverInterrupted();
+
+        //Writes through a file channel unless told otherwise.
+        outputMode = OutputMode.Stream;
 
         //We're not recording yet,
-        recording = false;
+        state = new AtomicReference<>(RecorderState.Idle);
+
+    }
+
+    /**
+     * Repairs the files of a recording that was interrupted by a crash, if
+     * there are any. These are the recording file, its segments and the
+     * files of its channels, every one of which has a journal of its own.
+     */
+    private void recoverInterrupted() {
+        File directory = wavFile.getAbsoluteFile().getParentFile();
+        //Only the files the recorder writes, the kept apart ones have a lower case name after the dash.
+        File[] journals = directory.listFiles((dir, name) -> name.matches("RecordAudio(-[A-Z0-9]+)?\\.journal"));
+        if (journals == null) {
+            return;
+        }
+        Arrays.sort(journals);
+        for (File journal : journals) {
+            recoverInterrupted(new File(directory, journal.getName().replaceFirst("\\.journal$", ".wav")));
+        }
+    }
+
+    /**
+     * Repairs one file of a recording that was interrupted by a crash and
+     * moves it to a -recovered file that does not exist yet, so
+     * RecordAudio.wav becomes RecordAudio-recovered.wav. A file that can not
+     * be repaired is moved as it is, with its journal, to an -interrupted
+     * file, so WavRecovery can be tried on it later.
+     *
+     * @param file The file of the recording.
+     */
+    private void recoverInterrupted(File file) {
+        String name = file.getName().replaceFirst("\\.wav$", "");
+        try {
+            long kept = WavRecovery.recover(file);
+            if (kept >= 0) {
+                File recovered = unusedFile(name + "-recovered");
+                Files.move(file.toPath(), recovered.toPath());
+                eventCatcher.recordingRecoveredEvent(recovered, kept);
+            }
+        } catch (IOException ex) {
+            eventCatcher.errorEvent(ex);
+            eventCatcher.recordingNotRecoveredEvent(keepInterrupted(file, name + "-interrupted"));
+        }
+    }
+
+    /**
+     * Moves the file of a recording that could not be repaired and its
+     * journal out of the way of the next recording.
+     *
+     * @param file The file of the recording.
+     * @param name The name to keep it under, without extension.
+     * @return The file the recording is left in.
+     */
+    private File keepInterrupted(File file, String name) {
+        File interrupted = unusedFile(name);
+        try {
+            Files.move(file.toPath(), interrupted.toPath());
+            Files.move(CommitJournal.journalFor(file).toPath(), CommitJournal.journalFor(interrupted).toPath());
+            return interrupted;
+        } catch (IOException ex) {
+            //Left where it is, the next recording will replace it.
+            eventCatcher.errorEvent(ex);
+            return interrupted.isFile() ? interrupted : file;
+        }
+    }
+
+    /**
+     * Gives back a wav file next to the recording file that does not exist
+     * yet, numbering the name if it has to.
+     *
+     * @param name The name of the file, without extension.
+     * @return The file.
+     */
+    private File unusedFile(String name) {
+        File directory = wavFile.getAbsoluteFile().getParentFile();
+        File file = new File(directory, name + ".wav");
+        for (int number = 2; file.exists(); number++) {
+            file = new File(directory, name + "-" + number + ".wav");
+        }
+        return file;
+    }
+
+    /**
+     * Sets the way the next recording is written to the file. Memory mapping
+     * suits very long recordings in high formats.
+     *
+     * @param outputMode The output mode to use.
+     */
+    public void setOutputMode(OutputMode outputMode) {
+        this.outputMode = outputMode;
+    }
+
+    /**
+     * Sets the length of one file for recordings written as a series of
+     * files, so a recording of any length can be made.
+     *
+     * @param segmentSeconds The length of one file in seconds, 0 to fill
+     * every file up to what a WAV file can hold.
+     */
+    public void setSegmentSeconds(long segmentSeconds) {
+        this.segmentSeconds = segmentSeconds;
+    }
+
+    /**
+     * Sets how the next recordings are kept safe on disk. By default the
+     * file is synced every second or 16 MB, so a crash loses at most about
+     * a second.
+     *
+     * @param durability How the file is synced, or null to keep no journal.
+     */
+    public void setDurability(DurabilitySettings durability) {
+        this.durability = durability;
+    }
+
+    /**
+     * Leaves long silences out of the next recordings, listing the kept
+     * segments in a sidecar file next to the recording.
+     *
+     * @param silenceSettings When audio counts as silence and how much of it
+     * is kept, or null to write everything.
+     */
+    public void setSilenceSettings(SilenceSettings silenceSettings) {
+        this.silenceSettings = silenceSettings;
+    }
+
+    /**
+     * Sets whether the next recordings get a peak index, a sidecar file next
+     * to the recording from which its waveform can be drawn right away. On
+     * by default.
+     *
+     * @param peakIndex True to build the peak index.
+     */
+    public void setPeakIndex(boolean peakIndex) {
+        this.peakIndex = peakIndex;
+    }
+
+    /**
+     * Sets how the lines of the next recordings are buffered and how much is
+     * read from them at once. Balanced by default. An adaptive line starts
+     * out short, and every format keeps the size its line has grown to for
+     * the next recordings.
+     *
+     * @param bufferProfile The way the lines are buffered.
+     */
+    public void setBufferProfile(BufferProfile bufferProfile) {
+        this.bufferProfile = bufferProfile;
+    }
 
+    /**
+     * Gives back the buffer settings the next recording in a format starts
+     * with.
+     *
+     * @param format The audio format of the recording.
+     * @return The buffer settings.
+     */
+    private BufferSettings bufferSettingsFor(AudioFormat format) {
+        BufferProfile profile = bufferProfile;
+        BufferSettings grown = profile == BufferProfile.Adaptive ? grownBuffers.get(format.toString()) : null;
+        return grown != null ? grown : BufferSettings.of(profile);
     }
 
     /**
-     * Sets an audio format according to the given parameters.
+     * Publishes the next recordings in a live stream while they are made, so
+     * other processes can subscribe to them with a LiveStreamReader. Every
+     * recording starts a new stream in the same file.
      *
+     * @param file The file to publish in, or null to publish nothing.
+     * @param maxWaitMillis The longest time the writing side waits for a
+     * subscriber that uses backpressure, for every block.
+     */
+    public void setLiveStream(File file, long maxWaitMillis) {
+        this.liveStreamWaitMillis = maxWaitMillis;
+        this.liveStreamFile = file;
+    }
+
+    /**
+     * Opens a line for the given format in the background, so the next
+     * recording in that format starts without waiting for the sound system.
+     * Only does something if the source keeps its lines open, and never
+     * while recording.
+     *
+     * @param sampleRate The sample rate the user will probably choose.
+     * @param sampleSize The sample size the user will probably choose.
+     * @param channels The amount of channels the user will probably choose.
+     */
+    public void warmUp(float sampleRate, int sampleSize, int channels) {
+        if (!(source instanceof PooledCaptureSource)) {
+            return;
+        }
+        LinePool pool = ((PooledCaptureSource) source).getPool();
+        Thread previous = warmUpThread;
+        Thread warming = new Thread(() -> {
+            if (previous != null) {
+                joinQuietly(previous);
+            }
+
+            //A recording that is going on has its line already, as does a pre-roll.
+            synchronized (preRollLock) {
+                if (state.get() == RecorderState.Idle && preRoll == null) {
+                    AudioFormat warmFormat = FormatNegotiator.negotiate(source, sampleRate, sampleSize, channels);
+                    if (warmFormat != null) {
+                        pool.warmUp(warmFormat, bufferSettingsFor(warmFormat).getLineBufferSize(warmFormat));
+                    }
+                }
+            }
+        }, "line-warm-up");
+        warming.setDaemon(true);
+        warmUpThread = warming;
+        warming.start();
+    }
+
+    /**
+     * Waits until the line that is being opened ahead of time is open, so a
+     * recording takes that line instead of opening a second one.
+     */
+    private void awaitWarmUp() {
+        Thread warming = warmUpThread;
+        if (warming != null) {
+            joinQuietly(warming);
+        }
+    }
+
+    /**
+     * Keeps the source capturing between recordings, so every recording
+     * starts the given amount of seconds before it was started, and without
+     * the time it takes to open the source. Can only be turned on while not
+     * recording.
+     *
+     * @param seconds The amount of seconds a recording starts in the past.
      * @param sampleRate The sample rate the user has chosen.
      * @param sampleSize The sample size the user has chosen.
      * @param channels The amount of channels the user has chosen.
-     * @param signed Indicates whether the data is signed or unsigned
-     * @param bigEndian Indicates whether the audio data is stored in big-endian
-     * or little-endian order.
      */
-    private void setAudioFormat(float sampleRate, int sampleSizeInBits, int channels, boolean signed, boolean bigEndian) {
-        format = new AudioFormat(sampleRate, sampleSizeInBits, channels, signed, bigEndian);
+    public void startPreRoll(double seconds, float sampleRate, int sampleSize, int channels) {
+        awaitWarmUp();
+
+        //A recording that starts meanwhile waits for the source to be opened, and then takes it.
+        synchronized (preRollLock) {
+            if (state.get() != RecorderState.Idle) {
+                eventCatcher.recordingAlreadyStartedEvent();
+                return;
+            }
+            try {
+                stopPreRollQuietly();
+                AudioFormat preRollFormat = FormatNegotiator.negotiate(source, sampleRate, sampleSize, channels);
+                if (preRollFormat == null) {
+                    //Notifies the user the audio format they selected is not supported.
+                    eventCatcher.formatNotSupportedEvent();
+                    return;
+                }
+
+                PreRollCaptureSource armed = new PreRollCaptureSource(source, seconds);
+                armed.arm(preRollFormat);
+                preRoll = armed;
+            } catch (LineUnavailableException ex) {
+                //Notifies the user the source could not be opened.
+                eventCatcher.recordingNotStartedEvent();
+            }
+        }
+    }
+
+    /**
+     * Stops keeping the source capturing between recordings. Can only be
+     * turned off while not recording.
+     */
+    public void stopPreRoll() {
+        synchronized (preRollLock) {
+            if (state.get() != RecorderState.Idle) {
+                eventCatcher.recordingAlreadyStartedEvent();
+                return;
+            }
+            stopPreRollQuietly();
+        }
+    }
+
+    /**
+     * Closes the source kept capturing between recordings, if there is one.
+     */
+    private void stopPreRollQuietly() {
+        PreRollCaptureSource current = preRoll;
+        preRoll = null;
+        if (current != null) {
+            current.disarm();
+        }
     }
 
     /**
@@ -82,16 +413,20 @@ public class SoundRecorder {
      * @param channels The amount of channels the user has chosen.
      */
     public void startRecording(float sampleRate, int sampleSize, int channels) {
-        //Checks if the program is not recording already.
-        if (!recording) {
+        //Claims the start, so two recordings can never be started at the same time.
+        if (state.compareAndSet(RecorderState.Idle, RecorderState.Starting)) {
+            requestNanos = System.nanoTime();
+
+            //Keeps the audio format the user has defined, the byte order is chosen when the source is opened.
+            this.sampleRate = sampleRate;
+            this.sampleSize = sampleSize;
+            this.channels = channels;
+
             //Defines the new recording thread.
             recorderThread = new Thread(() -> {
                 SoundRecorder.this.start();
             });
 
-            //Sets the audio format the user has defined.
-            setAudioFormat(sampleRate, sampleSize, channels, true, true);
-
             //Starts the recording thread.
             recorderThread.start();
         } else {
@@ -101,58 +436,99 @@ public class SoundRecorder {
     }
 
     /**
-     * Captures the sound and records it into a WAV file
+     * Captures the sound into the ring buffer and starts the thread that
+     * records it into a WAV file.
      */
     private void start() {
-        //Gets the data line info, such as supported formats.
-        info = new DataLine.Info(TargetDataLine.class, format);
+        boolean started = false;
         try {
-            //Sets the input line.
-            line = (TargetDataLine) AudioSystem.getLine(info);
-
-            //Checks if the input line is set correctly.
-            if (line != null) {
-                //Checks if system supports the data line
-                if (AudioSystem.isLineSupported(info)) {
-                    try {
-                        //Start capturing
-                        line.open(format);
-                        line.start();
-
-                        AudioInputStream ais = new AudioInputStream(line);
-
-                        //This is set before the actual recording start because it will not fire otherwise.
-                        //If an error happens anyway, the recording is set back to false and the recordingNotStartedEvent is fired
-                        //This means the user will not even see the notification of the recording being started.
-                        recording = true;
+            awaitWarmUp();
+
+            //Reads from the source that is kept capturing, if any, so the recording starts in the past.
+            PreRollCaptureSource armed;
+            synchronized (preRollLock) {
+                armed = preRoll;
+            }
+            CaptureSource capture = armed != null ? armed : source;
+
+            //Captures in the supported format that needs the least converting.
+            format = FormatNegotiator.negotiate(capture, sampleRate, sampleSize, channels);
+            if (format != null) {
+                try {
+                    //Start capturing
+                    RecordingSession current = new RecordingSession(capture, format, wavFile, outputMode);
+                    current.setSegmentSeconds(segmentSeconds);
+                    current.setMetrics(metrics);
+                    current.setSilenceSettings(silenceSettings);
+                    current.setDurability(durability);
+                    current.setPeakIndex(peakIndex);
+                    //A pre-roll is not opened again, as that would start it over in the past.
+                    BufferSettings buffers = bufferSettingsFor(format);
+                    current.setBufferSettings(armed != null && buffers.canGrow() ? BufferSettings.of(BufferProfile.Balanced) : buffers);
+                    File live = liveStreamFile;
+                    if (live != null) {
+                        current.setLiveStream(new LiveStreamWriter(live, format, LIVE_STREAM_SECONDS, liveStreamWaitMillis));
+                    }
+                    current.open();
+                    session = current;
+
+                    //The capturing thread only hands blocks over, so a slow disk can not make the line overflow.
+                    writerThread = new Thread(() -> {
+                        SoundRecorder.this.write(current);
+                    });
+
+                    //Only goes on if the recording was not stopped while the line was being opened.
+                    if (state.compareAndSet(RecorderState.Starting, RecorderState.Recording)) {
+                        started = true;
                         eventCatcher.recordingStartedEvent();
+                        levelPublisher.start(current.getLevelMeter());
 
                         //Start recording
-                        AudioSystem.write(ais, fileType, wavFile);
-                    } catch (LineUnavailableException | IOException ex) {
-                        //Recording is set back to false.
-                        recording = false;
+                        writerThread.start();
+
+                        try {
+                            while (current.captureBlock()) {
+                                //Keeps capturing until the source is stopped.
+                            }
+                        } finally {
+                            current.endCapture();
 
-                        //Notifies the user the recording has not started.
-                        eventCatcher.recordingNotStartedEvent();
+                            //The next recording in this format starts with the line this one has grown to.
+                            BufferSettings grown = current.getBufferSettings();
+                            if (grown.getProfile() == BufferProfile.Adaptive) {
+                                grownBuffers.put(current.getFormat().toString(), grown);
+                            }
+                        }
+                    } else {
+                        //Completes the empty file, finishing the stop that was asked for.
+                        current.stop();
+                        current.endCapture();
+                        current.writeAll();
+
+                        state.set(RecorderState.Idle);
+                        eventCatcher.recordingStoppedEvent(fileSystem);
                     }
-                } else {
-                    //Recording is set back to false.
-                    recording = false;
+                } catch (LineUnavailableException | IOException ex) {
+                    //The recorder is free to start again.
+                    state.set(RecorderState.Idle);
+                    eventCatcher.errorEvent(ex);
 
-                    //Notifies the user the audio format they selected is not supported.
-                    eventCatcher.formatNotSupportedEvent();
+                    //Notifies the user the recording has not started.
+                    eventCatcher.recordingNotStartedEvent();
                 }
             } else {
-                //Recording is set back to false.
-                recording = false;
+                //The recorder is free to start again.
+                state.set(RecorderState.Idle);
 
-                //Notifies the user the mircophone was not found.
-                eventCatcher.lineNotFoundEvent();
+                //Notifies the user the audio format they selected is not supported.
+                eventCatcher.formatNotSupportedEvent();
             }
         } catch (Exception ex) {
-            //Recording is set back to false.
-            recording = false;
+            //A recording that did start is ended by finish(), as its file is still being written.
+            if (!started) {
+                state.set(RecorderState.Idle);
+            }
+            eventCatcher.errorEvent(ex);
 
             //Notifies the user the audio format they selected is not supported.
             eventCatcher.formatNotSupportedEvent();
@@ -160,28 +536,206 @@ public class SoundRecorder {
     }
 
     /**
-     * Closes the target data line to finish capturing and recording
+     * Writes the audio data from the ring buffer into the WAV file.
+     *
+     * @param current The recording to write.
      */
-    public void finish() {
-        //Checks if the program is indeed recording.
-        if (recording) {
-            //Stops the line monitoring.
-            line.stop();
+    private void write(RecordingSession current) {
+        try {
+            current.writeAll();
+        } catch (IOException ex) {
+            eventCatcher.errorEvent(ex);
 
-            //Closes the line.
-            line.close();
+            //Capturing has been stopped, as nothing can be recorded anymore.
+            //Unless the user is stopping the recording already, the recorder is freed here.
+            if (state.compareAndSet(RecorderState.Recording, RecorderState.Stopping)) {
+                levelPublisher.stop();
+                joinQuietly(recorderThread);
+                state.set(RecorderState.Idle);
+            }
 
-            //Stops the recording thread.
-            recorderThread.interrupt();
+            //Notifies the user the recording has not started.
+            eventCatcher.recordingNotStartedEvent();
+        }
+    }
 
-            //Recording is set back to false.
-            recording = false;
+    /**
+     * Waits for a thread to end, even if the waiting thread is interrupted.
+     *
+     * @param thread The thread to wait for.
+     */
+    private static void joinQuietly(Thread thread) {
+        boolean interrupted = false;
+        while (thread.isAlive()) {
+            try {
+                thread.join();
+            } catch (InterruptedException ex) {
+                interrupted = true;
+            }
+        }
 
-            //The user is notified of the recording having stopped.
-            eventCatcher.recordingStoppedEvent(fileSystem);
-        } else {
-            //The user is notified no recording is going on for them to stop.
-            eventCatcher.recordingAlreadyStoppedEvent();
+        //Keeps the interrupt for the code that called this.
+        if (interrupted) {
+            Thread.currentThread().interrupt();
         }
     }
+
+    /**
+     * Adds a subscriber that is given the events of the recorder in batches,
+     * on a thread of the event bus.
+     *
+     * @param listener The subscriber to add.
+     */
+    public void addEventListener(RecordingEventListener listener) {
+        eventCatcher.getBus().subscribe(listener);
+    }
+
+    /**
+     * Removes a subscriber of the events.
+     *
+     * @param listener The subscriber to remove.
+     */
+    public void removeEventListener(RecordingEventListener listener) {
+        eventCatcher.getBus().unsubscribe(listener);
+    }
+
+    /**
+     * Adds a listener that is told the levels of the running recording at a
+     * fixed rate.
+     *
+     * @param listener The listener to add.
+     */
+    public void addLevelListener(LevelListener listener) {
+        levelPublisher.addListener(listener);
+    }
+
+    /**
+     * Removes a listener of the levels.
+     *
+     * @param listener The listener to remove.
+     */
+    public void removeLevelListener(LevelListener listener) {
+        levelPublisher.removeListener(listener);
+    }
+
+    /**
+     * Gives back what the recorder is doing right now.
+     *
+     * @return The state of the recorder.
+     */
+    public RecorderState getState() {
+        return state.get();
+    }
+
+    /**
+     * Gives back the amount of blocks the capturing thread had to throw away
+     * during the current or last recording.
+     *
+     * @return The amount of overruns.
+     */
+    public long getOverruns() {
+        RecordingSession current = session;
+        return current == null ? 0 : current.getOverruns();
+    }
+
+    /**
+     * Gives back the amount of times the line was found full during the
+     * current or last recording.
+     *
+     * @return The amount of line overruns.
+     */
+    public long getLineOverruns() {
+        RecordingSession current = session;
+        return current == null ? 0 : current.getLineOverruns();
+    }
+
+    /**
+     * Gives back the amount of frames missing from the current or last
+     * recording because an adaptive line was opened again.
+     *
+     * @return The amount of frames.
+     */
+    public long getReopenGapFrames() {
+        RecordingSession current = session;
+        return current == null ? 0 : current.getReopenGapFrames();
+    }
+
+    /**
+     * Gives back the highest amount of blocks waiting to be written during
+     * the current or last recording.
+     *
+     * @return The high-water mark in blocks.
+     */
+    public int getHighWaterMark() {
+        RecordingSession current = session;
+        return current == null ? 0 : current.getHighWaterMark();
+    }
+
+    /**
+     * Gives back the metrics of every recording made by this recorder, which
+     * can be shown through JMX or written out at a fixed rate.
+     *
+     * @return The metrics.
+     */
+    public RecorderMetrics getMetrics() {
+        return metrics;
+    }
+
+    /**
+     * Gives back the time from asking the current or last recording to start
+     * up to capturing its first audio data, which is how long the user waited
+     * for the recording to begin.
+     *
+     * @return The time to the first sample in nanoseconds, or -1 if nothing
+     * has been captured yet.
+     */
+    public long getTimeToFirstSample() {
+        RecordingSession current = session;
+        long first = current == null ? 0 : current.getFirstSampleNanos();
+        return first == 0 ? -1 : first - requestNanos;
+    }
+
+    /**
+     * Closes the capture source to finish capturing and recording
+     */
+    public void finish() {
+        while (true) {
+            RecorderState current = state.get();
+            if (current == RecorderState.Recording) {
+                //Checks if the program is indeed recording, and claims the stop.
+                if (state.compareAndSet(RecorderState.Recording, RecorderState.Stopping)) {
+                    stopRecording();
+                    return;
+                }
+            } else if (current == RecorderState.Starting) {
+                //The recording thread completes the stop once the line has been opened.
+                if (state.compareAndSet(RecorderState.Starting, RecorderState.Stopping)) {
+                    return;
+                }
+            } else {
+                //The user is notified no recording is going on for them to stop.
+                eventCatcher.recordingAlreadyStoppedEvent();
+                return;
+            }
+        }
+    }
+
+    /**
+     * Stops the running recording and waits until its file is complete.
+     */
+    private void stopRecording() {
+        //Stops and closes the line.
+        session.stop();
+        levelPublisher.stop();
+
+        //Waits for both threads, so the writing thread writes what was still buffered.
+        joinQuietly(recorderThread);
+        joinQuietly(writerThread);
+
+        //The recorder is free to start again.
+        state.set(RecorderState.Idle);
+
+        //The user is notified of the recording having stopped.
+        eventCatcher.recordingStoppedEvent(fileSystem);
+    }
 }
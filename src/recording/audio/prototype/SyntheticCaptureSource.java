@@ -0,0 +1,435 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.ByteArrayOutputStream;
+import javax.sound.sampled.AudioFormat;
+import javax.sound.sampled.AudioSystem;
+import javax.sound.sampled.AudioInputStream;
+import javax.sound.sampled.LineUnavailableException;
+import javax.sound.sampled.UnsupportedAudioFileException;
+
+/**
+ * A capture source that does not need any sound hardware. Generates a sine
+ * wave, noise or speech-like sound, or replays an audio file, in any PCM
+ * format. The data is
+ * delivered in real time, at a multiple of real time or as fast as it is
+ * read. The same settings always give back the same data.
+ *
+ * @author Jafeth
+ */
+public class SyntheticCaptureSource implements CaptureSource {
+
+    private static final long NOISE_SEED = 0x5DEECE66DL;//The seed of the noise generator.
+    private static final int SPEECH_SECONDS = 30;//The length of one loop of the speech-like signal.
+
+    private final Waveform waveform;//The signal that is generated.
+    private final double frequency;//The frequency of the sine wave in Hz.
+    private final double speed;//The multiple of real time the data is delivered at, 0 for unthrottled.
+    private final File replayFile;//The audio file that is replayed.
+    private AudioFormat format;//The audio format the source was opened with.
+    private byte[] pattern;//One loop of the generated signal in the opened format.
+    private int patternPosition;//The position in the pattern the next read starts at.
+    private int frameSize;//The size of one frame in bytes.
+    private double bytesPerSecond;//The amount of bytes delivered per second.
+    private int bufferSize;//The size of the simulated line buffer, 0 for half a second of audio.
+    private long delivered;//The amount of bytes delivered since the source was opened.
+    private long startNanos;//The moment the delivery of the current bytes started.
+    private volatile boolean started;//Tells whether the source is started or not.
+    private volatile boolean everStarted;//Tells whether the source has been started since it was opened.
+    private volatile boolean open;//Tells whether the source is open or not.
+
+    /**
+     * Constructor for a source that generates a signal.
+     *
+     * @param waveform The signal to generate, Sine, Noise or Speech.
+     * @param frequency The frequency of the sine wave, or the pitch of the
+     * speech, in Hz.
+     * @param speed The multiple of real time the data is delivered at, 0 to
+     * deliver the data as fast as it is read.
+     */
+    public SyntheticCaptureSource(Waveform waveform, double frequency, double speed) {
+        if (waveform == Waveform.Replay) {
+            throw new IllegalArgumentException("A replayed source needs a file");
+        }
+        this.waveform = waveform;
+        this.frequency = frequency;
+        this.speed = speed;
+        this.replayFile = null;
+    }
+
+    /**
+     * Constructor for a source that replays an audio file in a loop.
+     *
+     * @param replayFile The audio file to replay.
+     * @param speed The multiple of real time the data is delivered at, 0 to
+     * deliver the data as fast as it is read.
+     */
+    public SyntheticCaptureSource(File replayFile, double speed) {
+        this.waveform = Waveform.Replay;
+        this.frequency = 0;
+        this.speed = speed;
+        this.replayFile = replayFile;
+    }
+
+    /**
+     * Checks if the given format is a PCM format that can be generated.
+     *
+     * @param format The audio format to check.
+     * @return True if the format is supported, false otherwise.
+     */
+    @Override
+    public boolean isFormatSupported(AudioFormat format) {
+        AudioFormat.Encoding encoding = format.getEncoding();
+        return (AudioFormat.Encoding.PCM_SIGNED.equals(encoding) || AudioFormat.Encoding.PCM_UNSIGNED.equals(encoding))
+                && format.getSampleSizeInBits() >= 8 && format.getSampleSizeInBits() <= 32
+                && format.getChannels() >= 1 && format.getSampleRate() > 0;
+    }
+
+    /**
+     * Opens the source and generates the signal in the given format.
+     *
+     * @param format The audio format to capture in.
+     * @throws LineUnavailableException If the format is not supported or the
+     * replayed file can not be read.
+     */
+    @Override
+    public void open(AudioFormat format) throws LineUnavailableException {
+        open(format, 0);
+    }
+
+    /**
+     * Opens the source with a simulated line buffer of the given size and
+     * generates the signal in the given format.
+     *
+     * @param format The audio format to capture in.
+     * @param bufferSize The size of the simulated line buffer in bytes, 0
+     * for half a second of audio.
+     * @throws LineUnavailableException If the format is not supported or the
+     * replayed file can not be read.
+     */
+    @Override
+    public void open(AudioFormat format, int bufferSize) throws LineUnavailableException {
+        if (!isFormatSupported(format)) {
+            throw new LineUnavailableException("Audio format not supported: " + format);
+        }
+
+        this.format = format;
+        frameSize = format.getFrameSize();
+        this.bufferSize = bufferSize - bufferSize % frameSize;
+
+        //One loop of the signal is generated up front, so reading is just copying.
+        if (waveform == Waveform.Replay) {
+            pattern = readReplayFile(format);
+        } else {
+            pattern = generatePattern(format);
+        }
+
+        bytesPerSecond = format.getFrameRate() * frameSize * speed;
+        patternPosition = 0;
+        delivered = 0;
+        started = false;
+        everStarted = false;
+        open = true;
+    }
+
+    /**
+     * Starts the delivery of data.
+     */
+    @Override
+    public void start() {
+        //Continues the timing where it was left when the source is restarted.
+        startNanos = System.nanoTime() - (bytesPerSecond > 0 ? (long) (delivered * 1e9 / bytesPerSecond) : 0);
+        started = true;
+        everStarted = true;
+    }
+
+    /**
+     * Copies the generated signal into the given buffer. Waits until the data
+     * is due when the source is throttled.
+     *
+     * @param buffer The buffer the audio data is read into.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to read.
+     * @return The amount of bytes read, or -1 if the source has been stopped.
+     */
+    @Override
+    public int read(byte[] buffer, int offset, int length) {
+        //Only whole frames are delivered.
+        length -= length % frameSize;
+
+        if (!waitUntilDue(length)) {
+            return -1;
+        }
+
+        //Copies the pattern into the buffer, starting over at its end.
+        int copied = 0;
+        while (copied < length) {
+            int chunk = Math.min(length - copied, pattern.length - patternPosition);
+            System.arraycopy(pattern, patternPosition, buffer, offset + copied, chunk);
+            copied += chunk;
+            patternPosition += chunk;
+            if (patternPosition == pattern.length) {
+                patternPosition = 0;
+            }
+        }
+
+        delivered += length;
+        return length;
+    }
+
+    /**
+     * Waits until the given amount of bytes is due to be delivered.
+     *
+     * @param length The amount of bytes that is going to be delivered.
+     * @return True if the data can be delivered, false if the source was
+     * stopped while waiting.
+     */
+    private boolean waitUntilDue(int length) {
+        //Waits for the source to be started, just like a real line does, a source that was stopped gives back nothing.
+        while (!started) {
+            if (!open || everStarted) {
+                return false;
+            }
+            sleepMillis(1);
+        }
+
+        if (bytesPerSecond <= 0) {
+            return true;
+        }
+
+        long due = startNanos + (long) ((delivered + length) * 1e9 / bytesPerSecond);
+        long remaining = due - System.nanoTime();
+        while (remaining > 0) {
+            if (!started) {
+                return false;
+            }
+            sleepMillis(Math.max(1, Math.min(5, remaining / 1000000)));
+            remaining = due - System.nanoTime();
+        }
+        return started;
+    }
+
+    /**
+     * Sleeps for the given amount of milliseconds, keeping the interrupted
+     * flag of the thread.
+     *
+     * @param millis The amount of milliseconds to sleep.
+     */
+    private static void sleepMillis(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException ex) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Gives back the amount of bytes that are due but not yet read. An
+     * unthrottled source has half its buffer ready at any time, as it can
+     * never fall behind.
+     *
+     * @return The amount of available bytes.
+     */
+    @Override
+    public int available() {
+        if (!started) {
+            return 0;
+        }
+        if (bytesPerSecond <= 0) {
+            int half = getBufferSize() / 2;
+            return Math.max(frameSize, half - half % frameSize);
+        }
+
+        long due = (long) ((System.nanoTime() - startNanos) * bytesPerSecond / 1e9) - delivered;
+        int available = (int) Math.max(0, Math.min(getBufferSize(), due));
+        return available - available % frameSize;
+    }
+
+    /**
+     * Gives back the amount of frames delivered since the source was opened.
+     *
+     * @return The frame position.
+     */
+    @Override
+    public long getLongFramePosition() {
+        return frameSize == 0 ? 0 : delivered / frameSize;
+    }
+
+    /**
+     * Gives back the size of the simulated line buffer, half a second of
+     * audio unless it was opened with another size.
+     *
+     * @return The buffer size.
+     */
+    @Override
+    public int getBufferSize() {
+        if (format == null) {
+            return 0;
+        }
+        return bufferSize > 0 ? bufferSize : Math.max(1, (int) (format.getFrameRate() / 2)) * frameSize;
+    }
+
+    /**
+     * Gives back the audio format the source was opened with.
+     *
+     * @return The audio format, or null if the source is not open.
+     */
+    @Override
+    public AudioFormat getFormat() {
+        return open ? format : null;
+    }
+
+    /**
+     * Stops the delivery of data.
+     */
+    @Override
+    public void stop() {
+        started = false;
+    }
+
+    /**
+     * Closes the source.
+     */
+    @Override
+    public void close() {
+        started = false;
+        open = false;
+    }
+
+    /**
+     * Generates one loop of the signal in the given format: one second, or
+     * thirty seconds of speech so the pauses vary. A sine wave with a whole
+     * frequency fits exactly, so it loops without a click.
+     *
+     * @param format The audio format to generate the signal in.
+     * @return The generated signal.
+     */
+    private byte[] generatePattern(AudioFormat format) {
+        int rate = Math.max(1, Math.round(format.getFrameRate()));
+        int frames = waveform == Waveform.Speech ? rate * SPEECH_SECONDS : rate;
+        int channels = format.getChannels();
+        int bits = format.getSampleSizeInBits();
+        int bytesPerSample = frameSize / channels;
+        boolean signed = AudioFormat.Encoding.PCM_SIGNED.equals(format.getEncoding());
+        boolean bigEndian = format.isBigEndian();
+
+        //Keeps some headroom so the signal never clips.
+        double amplitude = ((1L << (bits - 1)) - 1) * 0.5;
+        long seed = NOISE_SEED;
+        long stretchSeed = NOISE_SEED;//Picks the stretches apart from the noise, so they are the same in every format.
+        boolean talking = false;//Tells whether the speech is sounding.
+        long stretchEnd = 0;//The frame the current stretch of sound or pause ends at.
+
+        byte[] generated = new byte[frames * frameSize];
+        int position = 0;
+        for (int frame = 0; frame < frames; frame++) {
+            double time = frame / format.getFrameRate();
+            if (waveform == Waveform.Speech && frame >= stretchEnd) {
+                //Talks for 0.5 to 3 seconds, then pauses briefly between words or longer between sentences.
+                stretchSeed = next(stretchSeed);
+                double random = (stretchSeed >>> 11) * 0x1.0p-53;
+                talking = !talking;
+                double seconds = talking ? 0.5 + 2.5 * random : random < 0.5 ? 0.2 + 1.2 * random : 1.5 + 9 * (random - 0.5);
+                stretchEnd = frame + (long) (seconds * rate);
+            }
+            for (int channel = 0; channel < channels; channel++) {
+                long value;
+                if (waveform == Waveform.Sine) {
+                    value = Math.round(amplitude * Math.sin(2 * Math.PI * frequency * time));
+                } else {
+                    //Xorshift gives the same noise every time.
+                    seed = next(seed);
+                    double noise = (seed >>> 11) * 0x1.0p-53 * 2 - 1;
+                    if (waveform == Waveform.Speech) {
+                        //A buzz with falling harmonics at syllable rate while talking, a noise floor near -60 dBFS otherwise.
+                        double voice = 0;
+                        for (int harmonic = 1; harmonic <= 5; harmonic++) {
+                            voice += Math.sin(2 * Math.PI * frequency * harmonic * time) / harmonic;
+                        }
+                        double syllables = 0.55 + 0.45 * Math.sin(2 * Math.PI * 4 * time);
+                        noise = talking ? 0.6 * syllables * voice / 2.3 + 0.05 * noise : 0.002 * noise;
+                    }
+                    value = Math.round(amplitude * noise);
+                }
+                if (!signed) {
+                    value += 1L << (bits - 1);
+                }
+                encodeSample(generated, position, value, bytesPerSample, bigEndian);
+                position += bytesPerSample;
+            }
+        }
+        return generated;
+    }
+
+    /**
+     * Gives back the next state of the xorshift generator.
+     *
+     * @param seed The current state.
+     * @return The next state.
+     */
+    private static long next(long seed) {
+        seed ^= seed << 13;
+        seed ^= seed >>> 7;
+        seed ^= seed << 17;
+        return seed;
+    }
+
+    /**
+     * Stores one sample in the given buffer.
+     *
+     * @param buffer The buffer to store the sample in.
+     * @param position The position of the sample in the buffer.
+     * @param value The value of the sample.
+     * @param bytesPerSample The amount of bytes of one sample.
+     * @param bigEndian Indicates whether the sample is stored in big-endian or
+     * little-endian order.
+     */
+    private static void encodeSample(byte[] buffer, int position, long value, int bytesPerSample, boolean bigEndian) {
+        for (int i = 0; i < bytesPerSample; i++) {
+            int shift = bigEndian ? (bytesPerSample - 1 - i) * 8 : i * 8;
+            buffer[position + i] = (byte) (value >> shift);
+        }
+    }
+
+    /**
+     * Reads the replayed file completely, converted to the given format.
+     *
+     * @param format The audio format to convert the file to.
+     * @return The audio data of the file.
+     * @throws LineUnavailableException If the file can not be read or
+     * converted.
+     */
+    private byte[] readReplayFile(AudioFormat format) throws LineUnavailableException {
+        try (AudioInputStream fileStream = AudioSystem.getAudioInputStream(replayFile)) {
+            AudioInputStream converted = fileStream;
+            if (!fileStream.getFormat().matches(format)) {
+                converted = AudioSystem.getAudioInputStream(format, fileStream);
+            }
+
+            ByteArrayOutputStream data = new ByteArrayOutputStream();
+            byte[] buffer = new byte[64 * 1024];
+            int read;
+            while ((read = converted.read(buffer)) != -1) {
+                data.write(buffer, 0, read);
+            }
+
+            //Drops a half frame at the end, so the loop stays aligned.
+            byte[] replayed = data.toByteArray();
+            int length = replayed.length - replayed.length % frameSize;
+            if (length == 0) {
+                throw new LineUnavailableException("Replayed file is empty: " + replayFile);
+            }
+            if (length != replayed.length) {
+                byte[] aligned = new byte[length];
+                System.arraycopy(replayed, 0, aligned, 0, length);
+                replayed = aligned;
+            }
+            return replayed;
+        } catch (IOException | UnsupportedAudioFileException | IllegalArgumentException ex) {
+            LineUnavailableException unavailable = new LineUnavailableException("Can not replay " + replayFile + ": " + ex.getMessage());
+            unavailable.initCause(ex);
+            throw unavailable;
+        }
+    }
+}
@@ -0,0 +1,260 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * A streaming writer of WAV files. Writes the header up front and patches
+ * its sizes every now and then, so a file that is cut off by a crash is still
+ * playable up to the last patch. The audio data is written in large blocks,
+ * so the cost of a write does not depend on the length of the recording.
+ *
+ * With durability settings the writer also keeps a journal next to the file
+ * and commits to it: it writes what is buffered, patches the header, syncs
+ * the file to disk and records how much audio is safe. A file whose
+ * recording was interrupted can then be repaired with WavRecovery.
+ *
+ * @author Jafeth
+ */
+public class WavFileWriter implements AudioSink {
+
+    private static final int BUFFER_SIZE = 1024 * 1024;//The size of the buffer that is written in one go.
+    private static final long PATCH_INTERVAL_NANOS = 500000000L;//The time between two patches of the header.
+
+    private final FileChannel channel;//The channel to the file.
+    private final WavHeader header;//The header of the file.
+    private final SampleConverter converter;//Converts the samples to the layout of a WAV file.
+    private final ByteBuffer buffer;//The buffer of audio data that is not yet written.
+    private final ByteBuffer sizeBuffer;//The buffer used to patch the sizes in the header.
+    private long bytesWritten;//The amount of audio bytes handed to the writer.
+    private long lastPatch;//The moment the header was patched last.
+    private final DurabilitySettings durability;//How the file is kept safe on disk, null for no journal.
+    private final CommitJournal journal;//Records how much audio is safely on disk, if any.
+    private long committedBytes;//The amount of audio bytes safely on disk.
+    private long lastCommit;//The moment of the last commit.
+
+    /**
+     * Constructor for the WavFileWriter class. Creates the file and writes
+     * the header.
+     *
+     * @param file The file to write to, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @throws IOException If the file can not be created.
+     */
+    public WavFileWriter(File file, AudioFormat format) throws IOException {
+        this(file, format, null);
+    }
+
+    /**
+     * Constructor for the WavFileWriter class that keeps the file safe on
+     * disk as the given settings say. Creates the file, the journal and
+     * writes the header.
+     *
+     * @param file The file to write to, replaced if it exists.
+     * @param format The format of the recorded audio.
+     * @param durability How the file is kept safe on disk, or null to keep
+     * no journal.
+     * @throws IOException If the file or the journal can not be created.
+     */
+    public WavFileWriter(File file, AudioFormat format, DurabilitySettings durability) throws IOException {
+        this.durability = durability;
+        header = new WavHeader(format);
+        converter = new SampleConverter(format);
+        //Holds whole frames only, so samples are never split between two writes.
+        buffer = ByteBuffer.allocateDirect(BUFFER_SIZE - BUFFER_SIZE % format.getFrameSize());
+        sizeBuffer = ByteBuffer.allocateDirect(4).order(ByteOrder.LITTLE_ENDIAN);
+
+        channel = FileChannel.open(file.toPath(), StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+        try {
+            //The header says the file is empty until the first patch.
+            header.put(buffer, 0);
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+
+            //The journal is only created once the header is there, so recovery always finds a header.
+            journal = durability == null ? null : new CommitJournal(CommitJournal.journalFor(file), durability.getPolicy(), header.size(), format.getFrameSize());
+        } catch (IOException ex) {
+            channel.close();
+            throw ex;
+        }
+        lastPatch = System.nanoTime();
+        lastCommit = lastPatch;
+    }
+
+    /**
+     * Buffers the audio data and converts it in the buffer, writing the buffer
+     * when full or when the header has not been patched for a while, so a
+     * slow format does not keep minutes of audio in memory only.
+     *
+     * @param data The buffer holding the audio data.
+     * @param offset The offset in the buffer to start at.
+     * @param length The amount of bytes to write.
+     * @throws IOException If the data can not be written.
+     */
+    @Override
+    public void write(byte[] data, int offset, int length) throws IOException {
+        int remaining = length;
+        while (remaining > 0) {
+            int position = buffer.position();
+            int chunk = Math.min(remaining, buffer.remaining());
+            buffer.put(data, offset + length - remaining, chunk);
+            converter.convert(buffer, position, chunk);
+            remaining -= chunk;
+            if (!buffer.hasRemaining()) {
+                flush();
+            }
+        }
+        bytesWritten += length;
+
+        if (journal != null) {
+            DurabilityPolicy policy = durability.getPolicy();
+            if (policy == DurabilityPolicy.PerBlock) {
+                commit();
+            } else if (policy == DurabilityPolicy.GroupCommit && (bytesWritten - committedBytes >= durability.getIntervalBytes()
+                    || System.nanoTime() - lastCommit >= durability.getIntervalMillis() * 1000000L)) {
+                commit();
+            }
+        }
+        if (System.nanoTime() - lastPatch >= PATCH_INTERVAL_NANOS) {
+            flush();
+        }
+    }
+
+    /**
+     * Writes what is buffered, patches the header and syncs the file to
+     * disk, then records in the journal that everything written so far is
+     * safe. A crash after this loses nothing up to here, and the file plays
+     * up to here even without repairing it.
+     *
+     * @throws IOException If the file can not be written or synced.
+     */
+    private void commit() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+        patchHeader();
+        lastPatch = System.nanoTime();
+        channel.force(false);
+        journal.commit(bytesWritten);
+        committedBytes = bytesWritten;
+        lastCommit = System.nanoTime();
+    }
+
+    /**
+     * Writes the buffered audio data to the file, and patches the header if
+     * it has not been patched for a while.
+     *
+     * @throws IOException If the data can not be written.
+     */
+    private void flush() throws IOException {
+        buffer.flip();
+        writeFully(buffer);
+        buffer.clear();
+
+        long now = System.nanoTime();
+        if (now - lastPatch >= PATCH_INTERVAL_NANOS) {
+            patchHeader();
+            lastPatch = now;
+        }
+    }
+
+    /**
+     * Writes the sizes of what is in the file into the header.
+     *
+     * @throws IOException If the header can not be written.
+     */
+    private void patchHeader() throws IOException {
+        long dataLength = channel.position() - header.size();
+        patchSize(header.getRiffSizeOffset(), header.getRiffSize(dataLength));
+        patchSize(header.getDataSizeOffset(), dataLength);
+    }
+
+    /**
+     * Writes one size into the header, without moving the file position.
+     *
+     * @param position The position of the size in the file.
+     * @param size The size to write.
+     * @throws IOException If the size can not be written.
+     */
+    private void patchSize(long position, long size) throws IOException {
+        sizeBuffer.clear();
+        sizeBuffer.putInt(0, WavHeader.clamp(size));
+        while (sizeBuffer.hasRemaining()) {
+            channel.write(sizeBuffer, position + sizeBuffer.position());
+        }
+    }
+
+    /**
+     * Writes the complete buffer to the file.
+     *
+     * @param data The buffer to write.
+     * @throws IOException If the data can not be written.
+     */
+    private void writeFully(ByteBuffer data) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data);
+        }
+    }
+
+    /**
+     * Gives back the amount of audio bytes handed to the writer.
+     *
+     * @return The amount of bytes written.
+     */
+    @Override
+    public long getBytesWritten() {
+        return bytesWritten;
+    }
+
+    /**
+     * Gives back the amount of audio bytes that are safely on disk, which a
+     * crash of the machine would not lose.
+     *
+     * @return The amount of committed bytes, which only grows before the
+     * file is complete if the file is synced.
+     */
+    public long getCommittedBytes() {
+        return committedBytes;
+    }
+
+    /**
+     * Writes the rest of the audio data, pads it to an even length as RIFF
+     * requires, writes the final sizes and closes the file. Deletes the
+     * journal once the file is complete.
+     *
+     * @throws IOException If the file can not be completed.
+     */
+    @Override
+    public void finish() throws IOException {
+        try {
+            if ((bytesWritten & 1) == 1) {
+                if (!buffer.hasRemaining()) {
+                    flush();
+                }
+                buffer.put((byte) 0);
+            }
+            buffer.flip();
+            writeFully(buffer);
+            buffer.clear();
+
+            patchSize(header.getRiffSizeOffset(), header.getRiffSize(bytesWritten));
+            patchSize(header.getDataSizeOffset(), bytesWritten);
+            if (journal != null) {
+                //The complete file is synced before the journal goes, or recovery could be needed after all.
+                if (durability.getPolicy() != DurabilityPolicy.None) {
+                    channel.force(true);
+                }
+                committedBytes = bytesWritten;
+                journal.delete();
+            }
+        } finally {
+            channel.close();
+        }
+    }
+}
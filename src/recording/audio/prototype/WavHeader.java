@@ -0,0 +1,149 @@
+package recording.audio.prototype;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import javax.sound.sampled.AudioFormat;
+
+/**
+ * The header of a RIFF/WAVE file. Uses the plain PCM format for mono and
+ * stereo up to 16 bits, and the extensible format for everything else, so
+ * multi-channel and high resolution recordings are read correctly.
+ *
+ * @author Jafeth
+ */
+public class WavHeader {
+
+    private static final short FORMAT_PCM = 1;//The format tag of plain PCM data.
+    private static final short FORMAT_EXTENSIBLE = (short) 0xFFFE;//The format tag of extensible PCM data.
+    private static final int RIFF_SIZE_OFFSET = 4;//The position of the size of the RIFF chunk.
+    private static final int RIFF_OVERHEAD = 8;//The bytes of the RIFF chunk not counted in its size.
+
+    private final AudioFormat format;//The format of the recorded audio.
+    private final int containerBits;//The amount of bits a sample takes up in the file.
+    private final boolean extensible;//Tells whether the extensible format is used.
+
+    /**
+     * Constructor for the WavHeader class.
+     *
+     * @param format The format of the recorded audio.
+     */
+    public WavHeader(AudioFormat format) {
+        this.format = format;
+        containerBits = format.getFrameSize() / format.getChannels() * 8;
+        extensible = format.getChannels() > 2 || containerBits > 16 || containerBits != format.getSampleSizeInBits();
+    }
+
+    /**
+     * Gives back the size of the header in bytes.
+     *
+     * @return The header size.
+     */
+    public int size() {
+        return extensible ? 68 : 44;
+    }
+
+    /**
+     * Gives back the position of the size of the RIFF chunk.
+     *
+     * @return The position in the file.
+     */
+    public int getRiffSizeOffset() {
+        return RIFF_SIZE_OFFSET;
+    }
+
+    /**
+     * Gives back the position of the size of the data chunk.
+     *
+     * @return The position in the file.
+     */
+    public int getDataSizeOffset() {
+        return size() - 4;
+    }
+
+    /**
+     * Gives back the RIFF chunk size that belongs to the given amount of
+     * audio bytes.
+     *
+     * @param dataLength The amount of audio bytes, without the pad byte.
+     * @return The RIFF chunk size.
+     */
+    public long getRiffSize(long dataLength) {
+        return size() - RIFF_OVERHEAD + dataLength + (dataLength & 1);
+    }
+
+    /**
+     * Puts the header in the given buffer.
+     *
+     * @param buffer The buffer to put the header in.
+     * @param dataLength The amount of audio bytes that follow the header.
+     */
+    public void put(ByteBuffer buffer, long dataLength) {
+        ByteOrder order = buffer.order();
+        buffer.order(ByteOrder.LITTLE_ENDIAN);
+
+        int channels = format.getChannels();
+        int sampleRate = Math.round(format.getSampleRate());
+        int blockAlign = format.getFrameSize();
+
+        buffer.put(new byte[]{'R', 'I', 'F', 'F'});
+        buffer.putInt(clamp(getRiffSize(dataLength)));
+        buffer.put(new byte[]{'W', 'A', 'V', 'E'});
+
+        buffer.put(new byte[]{'f', 'm', 't', ' '});
+        buffer.putInt(extensible ? 40 : 16);
+        buffer.putShort(extensible ? FORMAT_EXTENSIBLE : FORMAT_PCM);
+        buffer.putShort((short) channels);
+        buffer.putInt(sampleRate);
+        buffer.putInt(sampleRate * blockAlign);
+        buffer.putShort((short) blockAlign);
+        buffer.putShort((short) containerBits);
+        if (extensible) {
+            buffer.putShort((short) 22);
+            buffer.putShort((short) format.getSampleSizeInBits());
+            buffer.putInt(getChannelMask(channels));
+
+            //The GUID of PCM data.
+            buffer.putInt(FORMAT_PCM);
+            buffer.putShort((short) 0x0000);
+            buffer.putShort((short) 0x0010);
+            buffer.put(new byte[]{(byte) 0x80, 0x00, 0x00, (byte) 0xAA, 0x00, 0x38, (byte) 0x9B, 0x71});
+        }
+
+        buffer.put(new byte[]{'d', 'a', 't', 'a'});
+        buffer.putInt(clamp(dataLength));
+
+        buffer.order(order);
+    }
+
+    /**
+     * Gives back the speaker positions of the channel layouts the program
+     * records in.
+     *
+     * @param channels The amount of channels.
+     * @return The channel mask, 0 if the layout is unknown.
+     */
+    private static int getChannelMask(int channels) {
+        switch (channels) {
+            case 1:
+                return 0x4;
+            case 2:
+                return 0x3;
+            case 4:
+                return 0x33;
+            case 6:
+                return 0x3F;
+            default:
+                return 0;
+        }
+    }
+
+    /**
+     * Limits a chunk size to what fits in the 32 bits of a RIFF header.
+     *
+     * @param size The chunk size.
+     * @return The chunk size as it is stored.
+     */
+    static int clamp(long size) {
+        return (int) Math.min(size, 0xFFFFFFFFL);
+    }
+}
@@ -0,0 +1,108 @@
+package recording.audio.prototype;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.channels.FileChannel;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Repairs a WAV file whose recording was interrupted by a crash, using the
+ * journal that was left next to it. The audio data is cut back to what the
+ * journal says is safely on disk, or for a recording without syncing to the
+ * whole frames that are in the file, and the sizes in the header are set to
+ * match. The journal is deleted afterwards.
+ *
+ * Usage: WavRecovery file.wav...
+ *
+ * @author Jafeth
+ */
+public class WavRecovery {
+
+    /**
+     * Repairs the given files.
+     *
+     * @param args The WAV files to repair.
+     * @throws IOException If a file can not be repaired.
+     */
+    public static void main(String[] args) throws IOException {
+        if (args.length == 0) {
+            System.err.println("Usage: WavRecovery file.wav...");
+            System.exit(2);
+        }
+        for (String name : args) {
+            long recovered = recover(new File(name));
+            System.out.println(name + ": " + (recovered < 0 ? "nothing to recover" : "recovered " + recovered + " audio bytes"));
+        }
+    }
+
+    /**
+     * Tells whether a WAV file was left behind by an interrupted recording.
+     *
+     * @param wavFile The WAV file.
+     * @return True if its journal is still there.
+     */
+    public static boolean needsRecovery(File wavFile) {
+        return CommitJournal.journalFor(wavFile).isFile();
+    }
+
+    /**
+     * Repairs a WAV file if its recording was interrupted.
+     *
+     * @param wavFile The WAV file.
+     * @return The amount of audio bytes kept, or -1 if there was nothing to
+     * recover.
+     * @throws IOException If the file can not be repaired.
+     */
+    public static long recover(File wavFile) throws IOException {
+        File journal = CommitJournal.journalFor(wavFile);
+        if (!journal.isFile()) {
+            return -1;
+        }
+        CommitJournal.Entry entry = CommitJournal.read(journal);
+        if (entry == null || !wavFile.isFile() || wavFile.length() < entry.getDataOffset()) {
+            //Nothing usable was written.
+            journal.delete();
+            return -1;
+        }
+
+        try (FileChannel channel = FileChannel.open(wavFile.toPath(), StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            long inFile = channel.size() - entry.getDataOffset();
+
+            //Data past the last commit may not have reached the disk, only a recording without syncing has nothing better.
+            long kept = entry.getPolicy() == DurabilityPolicy.None ? inFile : Math.min(Math.max(0, entry.getCommittedBytes()), inFile);
+            kept -= kept % entry.getFrameSize();
+            channel.truncate(entry.getDataOffset() + kept);
+            if ((kept & 1) == 1) {
+                //Pads the data to an even length, as RIFF requires.
+                writeFully(channel, ByteBuffer.allocate(1), entry.getDataOffset() + kept);
+            }
+
+            ByteBuffer size = ByteBuffer.allocate(4).order(ByteOrder.LITTLE_ENDIAN);
+            size.putInt(0, WavHeader.clamp(entry.getDataOffset() - 8 + kept + (kept & 1)));
+            writeFully(channel, size, 4);
+            size.clear();
+            size.putInt(0, WavHeader.clamp(kept));
+            writeFully(channel, size, entry.getDataOffset() - 4);
+            channel.force(true);
+
+            journal.delete();
+            return kept;
+        }
+    }
+
+    /**
+     * Writes the whole buffer at the given position.
+     *
+     * @param channel The channel to write to.
+     * @param data The data to write.
+     * @param position The position in the file.
+     * @throws IOException If the data can not be written.
+     */
+    private static void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            channel.write(data, position + data.position());
+        }
+    }
+}
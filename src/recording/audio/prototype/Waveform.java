@@ -0,0 +1,30 @@
+package recording.audio.prototype;
+
+/**
+ * An enum of signals a synthetic capture source can generate.
+ *
+ * @author Jafeth
+ */
+public enum Waveform {
+
+    /**
+     * A sine wave with a set frequency
+     */
+    Sine,
+
+    /**
+     * Deterministic white noise
+     */
+    Noise,
+
+    /**
+     * Voice-like sound in stretches of 0.5 to 3 seconds, with pauses over a quiet noise floor, sounding a bit under half the time
+     */
+    Speech,
+
+    /**
+     * The replay of an existing audio file
+     */
+    Replay;
+
+}